@@ -21,6 +21,7 @@ import mhs.src.common.exceptions.TaskNotFoundException;
 import mhs.src.logic.CommandInfo;
 import mhs.src.storage.Database;
 import mhs.src.storage.DatabaseFactory;
+import mhs.src.storage.persistence.TaskQuery;
 import mhs.src.storage.persistence.task.Task;
 import mhs.src.storage.persistence.task.TaskCategory;
 
@@ -53,6 +54,7 @@ public abstract class Command {
 	private static final int QUERY_BY_NAME = 1;
 	private static final int QUERY_BY_CATEGORY = 2;
 	private static final int QUERY_HOME = 3;
+	private static final int MAX_FUZZY_MATCHES = 10;
 
 	private static final String CONNECTOR_TIMED = " from %1$s to %2$s";
 	private static final String CONNECTOR_DEADLINE = " due %1$s";
@@ -68,6 +70,7 @@ public abstract class Command {
 	private static int lastQueryType = 0;
 	private static CommandInfo lastQueryCommandInfo;
 	private static TaskCategory lastQueryCategory;
+	private static boolean lastQueryFuzzy;
 	protected Task lastTask;
 	protected Task newTask;
 	protected String commandFeedback;
@@ -212,6 +215,9 @@ public abstract class Command {
 	/**
 	 * Queries task in database
 	 * 
+	 * - Matched tasks are a view of a query cursor, so only tasks displayed
+	 * or picked by index are copied
+	 * 
 	 * @param inputCommand
 	 * @return List of matched tasks
 	 * @throws IOException
@@ -237,6 +243,10 @@ public abstract class Command {
 	/**
 	 * Queries task based on name & startDate & end date
 	 * 
+	 * - Name with date range matches tasks with either, other queries are
+	 * built as a TaskQuery matching all parameters given<br>
+	 * - Names matching no task fall back to the closest task names
+	 * 
 	 * @param inputCommand
 	 * @param name
 	 * @param startDate
@@ -247,24 +257,51 @@ public abstract class Command {
 	private static List<Task> queryByParams(CommandInfo inputCommand,
 			boolean name, boolean startDate, boolean endDate)
 			throws IOException {
-		List<Task> queryResultList;
 		if (name && startDate && endDate) {
-			queryResultList = dataHandler.query(inputCommand.getTaskName(),
+			return dataHandler.queryCursor(inputCommand.getTaskName(),
 					inputCommand.getStartDate(), inputCommand.getEndDate(),
-					true);
-		} else if (!name && startDate && endDate) {
-			queryResultList = dataHandler.query(inputCommand.getStartDate(),
-					inputCommand.getEndDate(), false, true);
-			if (queryResultList == null) {
-			} else {
-			}
+					true).asList();
+		}
+		TaskQuery taskQuery = new TaskQuery().orderByStartDateTime(true);
+		if (!name && startDate && endDate) {
+			taskQuery = taskQuery.withinDateRange(inputCommand.getStartDate(),
+					inputCommand.getEndDate(), false);
 		} else if (name && !startDate && !endDate) {
-			queryResultList = dataHandler.query(inputCommand.getTaskName(),
-					true);
-		} else {
-			queryResultList = dataHandler.query(true);
+			taskQuery = taskQuery.withTaskName(inputCommand.getTaskName());
+			return getFuzzyMatchesIfEmpty(dataHandler.queryCursor(taskQuery)
+					.asList(), inputCommand.getTaskName());
 		}
-		return queryResultList;
+		return dataHandler.queryCursor(taskQuery).asList();
+	}
+
+	/**
+	 * Gets tasks with names closest to taskName if no task matched it exactly,
+	 * so mistyped names still find their task
+	 * 
+	 * @param exactMatches
+	 *            tasks with names containing taskName
+	 * @param taskName
+	 * @return exactMatches, or closest tasks, closest first
+	 */
+	private static List<Task> getFuzzyMatchesIfEmpty(List<Task> exactMatches,
+			String taskName) {
+		if (!exactMatches.isEmpty()) {
+			lastQueryFuzzy = false;
+			return exactMatches;
+		}
+		lastQueryFuzzy = true;
+		return dataHandler.queryFuzzyCursor(taskName, MAX_FUZZY_MATCHES)
+				.asList();
+	}
+
+	/**
+	 * Checks if last name query fell back to the closest task names, so
+	 * commands ask for a task index instead of changing a guessed task
+	 * 
+	 * @return true if matched tasks are only closest to the queried name
+	 */
+	protected static boolean isLastQueryFuzzy() {
+		return lastQueryFuzzy;
 	}
 
 	/**
@@ -321,6 +358,8 @@ public abstract class Command {
 	/**
 	 * Queries tasks exclusively by name
 	 * 
+	 * - Names matching no task fall back to the closest task names
+	 * 
 	 * @param inputCommand
 	 * @return matched Tasks
 	 * @throws IOException
@@ -329,11 +368,13 @@ public abstract class Command {
 			throws IOException {
 		boolean name;
 		lastQueryType = QUERY_BY_NAME;
+		lastQueryFuzzy = false;
 		List<Task> queryResultList;
 		name = isTaskNameInitialized(inputCommand);
 		if (name) {
-			queryResultList = dataHandler.query(inputCommand.getTaskName(),
-					true);
+			queryResultList = getFuzzyMatchesIfEmpty(
+					dataHandler.queryCursor(inputCommand.getTaskName(), true)
+							.asList(), inputCommand.getTaskName());
 		} else {
 			queryResultList = null;
 		}
@@ -356,16 +397,19 @@ public abstract class Command {
 		lastQueryType = QUERY_BY_CATEGORY;
 		switch (taskCategory) {
 		case FLOATING:
-			queryResultList = dataHandler.query(TaskCategory.FLOATING, false);
+			queryResultList = dataHandler.queryCursor(TaskCategory.FLOATING,
+					false).asList();
 			break;
 		case DEADLINE:
-			queryResultList = dataHandler.query(TaskCategory.DEADLINE, true);
+			queryResultList = dataHandler.queryCursor(TaskCategory.DEADLINE,
+					true).asList();
 			break;
 		case TIMED:
-			queryResultList = dataHandler.query(TaskCategory.TIMED, true);
+			queryResultList = dataHandler.queryCursor(TaskCategory.TIMED, true)
+					.asList();
 			break;
 		default:
-			queryResultList = dataHandler.query(true);
+			queryResultList = dataHandler.queryCursor(true).asList();
 		}
 		if (queryResultList.size() > minTaskQuery) {
 			lastQueryCategory = taskCategory;
@@ -382,9 +426,10 @@ public abstract class Command {
 	protected static List<Task> queryHome() throws IOException {
 		List<Task> queryResultList;
 		lastQueryType = QUERY_HOME;
-		queryResultList = dataHandler.query(DateTime.now().toDateMidnight()
-				.toDateTime(), DateTime.now().plusDays(2).toDateMidnight()
-				.toDateTime(), true, true);
+		queryResultList = dataHandler.queryCursor(
+				DateTime.now().toDateMidnight().toDateTime(),
+				DateTime.now().plusDays(2).toDateMidnight().toDateTime(), true,
+				true).asList();
 		return queryResultList;
 	}
 
@@ -442,7 +487,7 @@ public abstract class Command {
 		}
 		limit = setBounds(limit, taskList);
 		String taskListHtml = getTasksHtml(taskList, limit);
-		String pagination = createPagination(taskList);
+		String pagination = createPagination(taskList.size());
 		taskListHtml += HtmlCreator.NEW_LINE;
 		taskListHtml += pagination;
 		return taskListHtml;
@@ -476,22 +521,29 @@ public abstract class Command {
 		return indexString;
 	}
 
-	private static String createPagination(List<Task> taskList) {
+	/**
+	 * Creates pagination footer of displayed tasks
+	 * 
+	 * @param taskCount
+	 *            number of tasks in list, without reading the tasks
+	 * @return pagination html
+	 */
+	private static String createPagination(int taskCount) {
 		String pageInstruction = "";
-		if (lastIndexDisplayed + 1 < taskList.size()) {
+		if (lastIndexDisplayed + 1 < taskCount) {
 			pageInstruction = "n: next page";
 		}
 		if (firstIndexDisplayed > 0) {
 			pageInstruction = "p: previous page";
 		}
-		if (lastIndexDisplayed + 1 < taskList.size() && firstIndexDisplayed > 0) {
+		if (lastIndexDisplayed + 1 < taskCount && firstIndexDisplayed > 0) {
 			pageInstruction = "n: next page | p: previous page";
 		}
 
 		String pagination = "[Task "
 				+ Integer.toString(firstIndexDisplayed + 1) + " - "
 				+ Integer.toString(lastIndexDisplayed + 1) + " of "
-				+ Integer.toString(taskList.size()) + "] " + pageInstruction;
+				+ Integer.toString(taskCount) + "] " + pageInstruction;
 		pagination = htmlCreator.color(pagination, HtmlCreator.GRAY);
 		return pagination;
 	}
@@ -31,6 +31,7 @@ public class CommandEdit extends Command {
 	private static final String MESSAGE_TASK_NOT_EDITED = "Error occured. Task not Edited.";
 	private static final String CONFIRM_TASK_EDITED = "I have edited: %1$s<br/>to: %2$s %3$s";
 	protected static final String MESSAGE_MULTIPLE_MATCHES_EDIT = "Multiple matches found.<br/>Enter task index to edit.";
+	protected static final String MESSAGE_CLOSEST_MATCHES_EDIT = "No exact match found.<br/>Enter index of closest task to edit.";
 
 	private static final int FLOATING = 0;
 	private static final int DEADLINE = 1;
@@ -85,17 +86,21 @@ public class CommandEdit extends Command {
 			outputString = MESSAGE_NO_MATCH;
 			commandFeedback = outputString;
 		}
-		// if only 1 match is found then edit it
-		else if (matchedTasks.size() == 1) {
+		// if only 1 exact match is found then edit it
+		else if (matchedTasks.size() == 1 && !isLastQueryFuzzy()) {
 			storeLastTask(matchedTasks.get(0));
 			newTask = createEditedTask(tempCommandInfo, lastTask);
 			outputString = updateEditedTask();
 			commandFeedback = outputString;
 		}
-		// if multiple matches are found display the list
+		// if multiple or closest matches are found display the list
 		else {
 			indexExpected = true;
-			commandFeedback = MESSAGE_MULTIPLE_MATCHES_EDIT;
+			if (isLastQueryFuzzy()) {
+				commandFeedback = MESSAGE_CLOSEST_MATCHES_EDIT;
+			} else {
+				commandFeedback = MESSAGE_MULTIPLE_MATCHES_EDIT;
+			}
 		}
 		logExitMethod("executeCommand");
 	}
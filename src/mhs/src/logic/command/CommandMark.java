@@ -25,6 +25,7 @@ public class CommandMark extends Command {
 	private static final String MESSAGE_TASK_NOT_MARKED = "Error occured. Task not marked.";
 	private static final String CONFIRM_TASK_MARKED = "Good Job. I have marked: %1$s";
 	protected static final String MESSAGE_MULTIPLE_MATCHES_MARK = "Multiple matches found.<br/>Enter task index to mark as done.";
+	protected static final String MESSAGE_CLOSEST_MATCHES_MARK = "No exact match found.<br/>Enter index of closest task to mark as done.";
 
 	private static final Logger logger = MhsLogger.getLogger();
 
@@ -70,16 +71,20 @@ public class CommandMark extends Command {
 			outputString = MESSAGE_NO_MATCH;
 			commandFeedback = outputString;
 		}
-		// if only 1 match is found then display it
-		else if (matchedTasks.size() == 1) {
+		// if only 1 exact match is found then display it
+		else if (matchedTasks.size() == 1 && !isLastQueryFuzzy()) {
 			lastTask = matchedTasks.get(0).clone();
 			Task editedTask = markDone(matchedTasks.get(0));
 			updateTaskInDatabase(editedTask);
 		}
-		// if multiple matches are found display the list
+		// if multiple or closest matches are found display the list
 		else {
 			indexExpected = true;
-			commandFeedback = MESSAGE_MULTIPLE_MATCHES_MARK;
+			if (isLastQueryFuzzy()) {
+				commandFeedback = MESSAGE_CLOSEST_MATCHES_MARK;
+			} else {
+				commandFeedback = MESSAGE_MULTIPLE_MATCHES_MARK;
+			}
 		}
 		logExitMethod("executeCommand");
 	}
@@ -22,6 +22,7 @@ public class CommandRemove extends Command {
 	private static final String MESSAGE_TASK_NOT_DELETED = "Error occured. Task not Deleted.";
 	private static final String CONFIRM_TASK_DELETED = "I have deleted: %1$s";
 	protected static final String MESSAGE_MULTIPLE_MATCHES_REMOVE = "Multiple matches found.<br/>Enter task index to remove.";
+	protected static final String MESSAGE_CLOSEST_MATCHES_REMOVE = "No exact match found.<br/>Enter index of closest task to remove.";
 
 	private Task lastDeletedTask;
 
@@ -69,14 +70,18 @@ public class CommandRemove extends Command {
 			outputString = MESSAGE_NO_MATCH;
 			commandFeedback = outputString;
 		}
-		// if only 1 match is found then delete it
-		else if (matchedTasks.size() == 1) {
+		// if only 1 exact match is found then delete it
+		else if (matchedTasks.size() == 1 && !isLastQueryFuzzy()) {
 			deleteTaskInDatabase();
 		}
-		// if multiple matches are found display the list
+		// if multiple or closest matches are found display the list
 		else {
 			indexExpected = true;
-			commandFeedback = MESSAGE_MULTIPLE_MATCHES_REMOVE;
+			if (isLastQueryFuzzy()) {
+				commandFeedback = MESSAGE_CLOSEST_MATCHES_REMOVE;
+			} else {
+				commandFeedback = MESSAGE_MULTIPLE_MATCHES_REMOVE;
+			}
 		}
 		logExitMethod("executeCommand");
 	}
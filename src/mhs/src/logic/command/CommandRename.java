@@ -32,6 +32,7 @@ public class CommandRename extends Command {
 	private static final String MESSAGE_TASK_NOT_RENAMED = "Error occured. Task not Re-named.";
 	private static final String CONFIRM_TASK_RENAMED = "I have renamed: %1$s<br/>to: %2$s";
 	protected static final String MESSAGE_MULTIPLE_MATCHES_RENAME = "Multiple matches found.<br/>Enter task index to rename.";
+	protected static final String MESSAGE_CLOSEST_MATCHES_RENAME = "No exact match found.<br/>Enter index of closest task to rename.";
 
 	private CommandInfo tempCommandInfo;
 
@@ -88,8 +89,8 @@ public class CommandRename extends Command {
 			outputString = MESSAGE_NO_MATCH;
 			commandFeedback = outputString;
 		}
-		// if only 1 match is found then display it
-		else if (matchedTasks.size() == 1) {
+		// if only 1 exact match is found then display it
+		else if (matchedTasks.size() == 1 && !isLastQueryFuzzy()) {
 			storeLastTask(matchedTasks.get(0));
 			newTask = createRenamedTask(tempCommandInfo, matchedTasks.get(0));
 			System.out.println(lastTask.getTaskName() + "/"
@@ -103,10 +104,14 @@ public class CommandRename extends Command {
 			}
 			commandFeedback = outputString;
 		}
-		// if multiple matches are found display the list
+		// if multiple or closest matches are found display the list
 		else {
 			indexExpected = true;
-			commandFeedback = MESSAGE_MULTIPLE_MATCHES_RENAME;
+			if (isLastQueryFuzzy()) {
+				commandFeedback = MESSAGE_CLOSEST_MATCHES_RENAME;
+			} else {
+				commandFeedback = MESSAGE_MULTIPLE_MATCHES_RENAME;
+			}
 		}
 		logExitMethod("excuteCommand");
 	}
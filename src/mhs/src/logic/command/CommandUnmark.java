@@ -24,6 +24,7 @@ public class CommandUnmark extends Command {
 	private static final String MESSAGE_TASK_NOT_UNMARKED = "Error occured. Task not un-marked.";
 	private static final String CONFIRM_TASK_UNMARKED = "I have unmarked: %1$s";
 	protected static final String MESSAGE_MULTIPLE_MATCHES_UNMARK = "Multiple matches found.<br/>Enter index to mark as pending.";
+	protected static final String MESSAGE_CLOSEST_MATCHES_UNMARK = "No exact match found.<br/>Enter index of closest task to mark as pending.";
 
 	private static final Logger logger = MhsLogger.getLogger();
 
@@ -69,17 +70,21 @@ public class CommandUnmark extends Command {
 			outputString = MESSAGE_NO_MATCH;
 			commandFeedback = outputString;
 		}
-		// if only 1 match is found then display it
-		else if (matchedTasks.size() == 1) {
+		// if only 1 exact match is found then display it
+		else if (matchedTasks.size() == 1 && !isLastQueryFuzzy()) {
 			lastTask = matchedTasks.get(0).clone();
 			Task editedTask = markPending(matchedTasks.get(0));
 			outputString = unmarkTaskInDatabase(editedTask);
 			commandFeedback = outputString;
 		}
-		// if multiple matches are found display the list
+		// if multiple or closest matches are found display the list
 		else {
 			indexExpected = true;
-			commandFeedback = MESSAGE_MULTIPLE_MATCHES_UNMARK;
+			if (isLastQueryFuzzy()) {
+				commandFeedback = MESSAGE_CLOSEST_MATCHES_UNMARK;
+			} else {
+				commandFeedback = MESSAGE_MULTIPLE_MATCHES_UNMARK;
+			}
 		}
 		logExitMethod("executeCommand");
 	}
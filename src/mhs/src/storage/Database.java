@@ -2,11 +2,17 @@
 
 package mhs.src.storage;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
@@ -18,8 +24,17 @@ import mhs.src.common.MhsLogger;
 import mhs.src.common.exceptions.InvalidTaskFormatException;
 import mhs.src.common.exceptions.NoActiveCredentialException;
 import mhs.src.common.exceptions.TaskNotFoundException;
+import mhs.src.storage.TaskQueryCache.QueryType;
+import mhs.src.storage.persistence.TaskCountSummary;
 import mhs.src.storage.persistence.TaskLists;
+import mhs.src.storage.persistence.TaskQuery;
+import mhs.src.storage.persistence.TaskQueryCursor;
+import mhs.src.storage.persistence.local.TaskIdAllocator;
 import mhs.src.storage.persistence.local.TaskRecordFile;
+import mhs.src.storage.persistence.local.TaskRecordFileFormat;
+import mhs.src.storage.persistence.local.TaskRecordShardedFile;
+import mhs.src.storage.persistence.local.TaskStore;
+import mhs.src.storage.persistence.local.TaskStoreType;
 import mhs.src.storage.persistence.remote.GoogleCalendarMhs;
 import mhs.src.storage.persistence.remote.GoogleTasks;
 import mhs.src.storage.persistence.remote.MhsGoogleOAuth2;
@@ -51,7 +66,16 @@ public class Database {
 	static TaskLists taskLists;
 	static Syncronize syncronize;
 	static TaskValidator taskValidator;
-	private static TaskRecordFile taskRecordFile;
+	private static TaskStore taskRecordStore;
+	private static TaskRecordShardedFile lazyTaskRecordStore;
+	private static TaskRecordFileSnapshotter taskRecordFileSnapshotter;
+	private static TombstoneCompactor tombstoneCompactor;
+	private static TaskIdAllocator taskIdAllocator;
+	private static TaskQueryCache taskQueryCache;
+	private static boolean isShutdownHookRegistered = false;
+	private static int batchDepth = 0;
+	private static Map<Integer, Task> batchedSavedTasks = new LinkedHashMap<Integer, Task>();
+	private static Map<Integer, Task> batchedPushSyncTasks = new LinkedHashMap<Integer, Task>();
 	static ConfigFile configFile;
 	static MhsGoogleOAuth2 mhsGoogleOAuth2;
 
@@ -65,6 +89,7 @@ public class Database {
 	static final String EXCEPTION_MESSAGE_INVALID_TASK_FORMAT = "Invalid Task Format!";
 	static final String EXCEPTION_MESSAGE_TASK_DOES_NOT_EXIST = "Task does not exist!";
 	private static final String EXCEPTION_MESSAGE_NULL_PARAMETER = "%1$s cannot be null!";
+	private static final String EXCEPTION_MESSAGE_NO_BATCH_IN_PROGRESS = "No batch in progress. Call beginBatch first.";
 
 	private static final String PARAMETER_TASK_RECORD_FILE_NAME = "taskRecordFileName";
 	private static final String PARAMETER_TASK = "task";
@@ -74,6 +99,21 @@ public class Database {
 
 	// Config parameters
 	private static final String CONFIG_PARAM_GOOGLE_USER_ACCOUNT = "GOOGLE_USER_ACCOUNT";
+	private static final String CONFIG_PARAM_TASK_RECORD_FILE_JOURNAL_MODE = "TASK_RECORD_FILE_JOURNAL_MODE";
+	private static final String CONFIG_PARAM_TASK_RECORD_FILE_FLUSH_INTERVAL = "TASK_RECORD_FILE_FLUSH_INTERVAL_IN_MILLISECONDS";
+	private static final String CONFIG_PARAM_TASK_RECORD_STORE = "TASK_RECORD_STORE";
+	private static final String CONFIG_PARAM_TASK_RECORD_FILE_FORMAT = "TASK_RECORD_FILE_FORMAT";
+	private static final String CONFIG_PARAM_TASK_RECORD_LAZY_LOAD = "TASK_RECORD_LAZY_LOAD";
+	private static final String CONFIG_PARAM_TASK_RECORD_LOAD_MONTHS_BEFORE_NOW = "TASK_RECORD_LOAD_MONTHS_BEFORE_NOW";
+	private static final String CONFIG_PARAM_TASK_RECORD_LOAD_MONTHS_FROM_NOW = "TASK_RECORD_LOAD_MONTHS_FROM_NOW";
+	private static final String CONFIG_VALUE_ENABLED = "true";
+	private static final String CONFIG_PARAM_TOMBSTONE_COMPACTION_INTERVAL = "TOMBSTONE_COMPACTION_INTERVAL_IN_MINUTES";
+	private static final String CONFIG_VALUE_DISABLED = "false";
+	private static final long TASK_RECORD_FILE_DEFAULT_FLUSH_INTERVAL_IN_MILLISECONDS = 1000;
+	private static final long TOMBSTONE_COMPACTION_DEFAULT_INTERVAL_IN_MINUTES = 60;
+	private static final String CONFIG_PARAM_TASK_QUERY_CACHE_SIZE = "TASK_QUERY_CACHE_SIZE";
+	private static final String CONFIG_PARAM_TASK_LISTS_COLUMNAR_SCAN = "TASK_LISTS_COLUMNAR_SCAN";
+	private static final long TASK_QUERY_CACHE_DEFAULT_SIZE = 64;
 
 	private static final String EXCEPTION_MESSAGE_SYNCRONIZATION_WITH_REMOTE_STORAGE_FAILED = "Syncronization with remote storage failed.";
 	private static final String EXCEPTION_MESSAGE_NO_CONNECTIVITY_WITH_REMOTE_STORAGE = "No Connection with Remote Storage.";
@@ -93,6 +133,21 @@ public class Database {
 	 */
 	protected Database(String taskRecordFileName, boolean disableSyncronize)
 			throws IllegalArgumentException, IOException {
+		this(taskRecordFileName, disableSyncronize, null);
+	}
+
+	/**
+	 * Database constructor with task store type
+	 * 
+	 * @param taskRecordFileName
+	 * @param disableSyncronize
+	 * @param taskStoreType
+	 *            task store to use, or null to use store set in config file
+	 * @throws IOException
+	 */
+	protected Database(String taskRecordFileName, boolean disableSyncronize,
+			TaskStoreType taskStoreType) throws IllegalArgumentException,
+			IOException {
 		logEnterMethod("Database");
 
 		if (taskRecordFileName == null) {
@@ -102,7 +157,7 @@ public class Database {
 		}
 
 		initializeSyncDateTimes();
-		initalizeDatabase(taskRecordFileName);
+		initalizeDatabase(taskRecordFileName, taskStoreType);
 		initializeGoogleOAuth2();
 		initializeSyncronize(disableSyncronize);
 
@@ -113,19 +168,356 @@ public class Database {
 	 * Initialize database with specified taskRecordFile
 	 * 
 	 * @param taskRecordFileName
+	 * @param taskStoreType
 	 * @throws IOException
 	 * @throws ServiceException
 	 */
-	private void initalizeDatabase(String taskRecordFileName)
-			throws IOException {
+	private void initalizeDatabase(String taskRecordFileName,
+			TaskStoreType taskStoreType) throws IOException {
 		logEnterMethod("initalizeDatabase");
+		shutdownTombstoneCompactor();
+		shutdownTaskRecordFileSnapshotter();
+		closeTaskRecordStore();
 		configFile = new ConfigFile();
-		taskRecordFile = new TaskRecordFile(taskRecordFileName);
-		taskLists = new TaskLists(taskRecordFile.getTaskList());
+		long loadStartTime = System.nanoTime();
+		taskRecordStore = createTaskRecordStore(taskRecordFileName,
+				taskStoreType);
+		if (isLazyLoadEnabled()) {
+			taskLists = new TaskLists(lazyTaskRecordStore.getLoadedTaskList(),
+					isColumnarScanEnabled());
+		} else {
+			taskLists = new TaskLists(taskRecordStore.getTaskList(),
+					isColumnarScanEnabled());
+		}
+		logger.log(Level.INFO, String.format(
+				"Loaded %d task records in %d ms", taskLists.getTaskList()
+						.size(), (System.nanoTime() - loadStartTime) / 1000000));
+		taskIdAllocator = new TaskIdAllocator(taskRecordFileName,
+				getMaxStoredTaskId());
+		taskQueryCache = new TaskQueryCache((int) Math.min(
+				Integer.MAX_VALUE,
+				getNonNegativeConfigParameter(
+						CONFIG_PARAM_TASK_QUERY_CACHE_SIZE,
+						TASK_QUERY_CACHE_DEFAULT_SIZE)));
+		taskRecordFileSnapshotter = new TaskRecordFileSnapshotter(
+				getNonNegativeConfigParameter(
+						CONFIG_PARAM_TASK_RECORD_FILE_FLUSH_INTERVAL,
+						TASK_RECORD_FILE_DEFAULT_FLUSH_INTERVAL_IN_MILLISECONDS));
+		tombstoneCompactor = new TombstoneCompactor(
+				getNonNegativeConfigParameter(
+						CONFIG_PARAM_TOMBSTONE_COMPACTION_INTERVAL,
+						TOMBSTONE_COMPACTION_DEFAULT_INTERVAL_IN_MINUTES));
+		registerShutdownHook();
 
 		logExitMethod("initalizeDatabase");
 	}
 
+	/**
+	 * Flushes and stops snapshotter of previous database instance
+	 * 
+	 * @throws IOException
+	 */
+	private static void shutdownTaskRecordFileSnapshotter() throws IOException {
+		if (taskRecordFileSnapshotter != null) {
+			taskRecordFileSnapshotter.shutdown();
+			taskRecordFileSnapshotter = null;
+		}
+	}
+
+	/**
+	 * Stops scheduled tombstone compaction of previous database instance
+	 */
+	private static void shutdownTombstoneCompactor() {
+		if (tombstoneCompactor != null) {
+			tombstoneCompactor.shutdown();
+			tombstoneCompactor = null;
+		}
+	}
+
+	/**
+	 * Closes task record store of previous database instance
+	 * 
+	 * @throws IOException
+	 */
+	private static void closeTaskRecordStore() throws IOException {
+		if (taskRecordStore != null) {
+			taskRecordStore.close();
+			taskRecordStore = null;
+		}
+	}
+
+	/**
+	 * Creates specified task record store, or store selected in config file if
+	 * not specified - json task record file by default
+	 * 
+	 * @param taskRecordFileName
+	 * @param taskStoreType
+	 * @return task record store
+	 * @throws IOException
+	 */
+	private TaskStore createTaskRecordStore(String taskRecordFileName,
+			TaskStoreType taskStoreType) throws IOException {
+		lazyTaskRecordStore = null;
+		if (taskStoreType == null
+				&& CONFIG_VALUE_ENABLED.equalsIgnoreCase(configFile
+				.getConfigParameter(CONFIG_PARAM_TASK_RECORD_LAZY_LOAD))) {
+			DateTime now = DateTime.now();
+			lazyTaskRecordStore = new TaskRecordShardedFile(
+					taskRecordFileName,
+					now.minusMonths((int) getNonNegativeConfigParameter(
+							CONFIG_PARAM_TASK_RECORD_LOAD_MONTHS_BEFORE_NOW,
+							SYNC_START_DATE_TIME_MONTHS_BEFORE_NOW)),
+					now.plusMonths((int) getNonNegativeConfigParameter(
+							CONFIG_PARAM_TASK_RECORD_LOAD_MONTHS_FROM_NOW,
+							SYNC_END_DATE_TIME_MONTHS_FROM_NOW)));
+			return lazyTaskRecordStore;
+		}
+		if (taskStoreType == null) {
+			taskStoreType = getTaskStoreType();
+		}
+		switch (taskStoreType) {
+		case JSON:
+			return new TaskRecordFile(taskRecordFileName,
+					isJournalModeEnabled(), getTaskRecordFileFormat());
+		case SHARDED:
+			return new TaskRecordShardedFile(taskRecordFileName,
+					syncStartDateTime, syncEndDateTime);
+		default:
+			return taskStoreType.createTaskStore(taskRecordFileName);
+		}
+	}
+
+	/**
+	 * Gets task store type from config file - json task record file unless
+	 * set to MAPPED, SHARDED, LOG or MEMORY
+	 * 
+	 * @return task store type
+	 */
+	private TaskStoreType getTaskStoreType() {
+		if (!configFile
+				.hasNonEmptyConfigParameter(CONFIG_PARAM_TASK_RECORD_STORE)) {
+			return TaskStoreType.JSON;
+		}
+		try {
+			return TaskStoreType.valueOf(configFile.getConfigParameter(
+					CONFIG_PARAM_TASK_RECORD_STORE).toUpperCase());
+		} catch (IllegalArgumentException e) {
+			logger.log(Level.FINER, e.getMessage());
+			return TaskStoreType.JSON;
+		}
+	}
+
+	/**
+	 * Gets task record file format from config file - compact format unless
+	 * set to JSON or COMPACT_GZIP
+	 * 
+	 * @return task record file format
+	 */
+	private TaskRecordFileFormat getTaskRecordFileFormat() {
+		if (!configFile
+				.hasNonEmptyConfigParameter(CONFIG_PARAM_TASK_RECORD_FILE_FORMAT)) {
+			return TaskRecordFileFormat.COMPACT;
+		}
+		try {
+			return TaskRecordFileFormat.valueOf(configFile.getConfigParameter(
+					CONFIG_PARAM_TASK_RECORD_FILE_FORMAT).toUpperCase());
+		} catch (IllegalArgumentException e) {
+			logger.log(Level.FINER, e.getMessage());
+			return TaskRecordFileFormat.COMPACT;
+		}
+	}
+
+	/**
+	 * Registers hook to flush pending task record file writes on exit
+	 */
+	private static synchronized void registerShutdownHook() {
+		if (isShutdownHookRegistered) {
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try {
+					shutdownTaskRecordFileSnapshotter();
+				} catch (IOException e) {
+					logger.log(Level.WARNING, e.getMessage());
+				}
+			}
+		});
+		isShutdownHookRegistered = true;
+	}
+
+	/**
+	 * Gets non-negative numeric config parameter from config file
+	 * 
+	 * @param configParameter
+	 * @param defaultValue
+	 *            returned if parameter is missing or invalid
+	 * @return config parameter value
+	 */
+	private long getNonNegativeConfigParameter(String configParameter,
+			long defaultValue) {
+		if (!configFile.hasNonEmptyConfigParameter(configParameter)) {
+			return defaultValue;
+		}
+		try {
+			long value = Long.parseLong(configFile
+					.getConfigParameter(configParameter));
+			if (value >= 0) {
+				return value;
+			}
+		} catch (NumberFormatException e) {
+			logger.log(Level.FINER, e.getMessage());
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Checks config file for columnar scans of task lists - disabled unless
+	 * TASK_LISTS_COLUMNAR_SCAN is set to true
+	 * 
+	 * @return true if task lists keep tasks in columns for scans
+	 */
+	private boolean isColumnarScanEnabled() {
+		return CONFIG_VALUE_ENABLED.equalsIgnoreCase(configFile
+				.getConfigParameter(CONFIG_PARAM_TASK_LISTS_COLUMNAR_SCAN));
+	}
+
+	/**
+	 * Checks config file for task record file journal mode - enabled unless
+	 * set to false
+	 * 
+	 * @return true if journal mode is enabled
+	 */
+	private boolean isJournalModeEnabled() {
+		if (!configFile
+				.hasNonEmptyConfigParameter(CONFIG_PARAM_TASK_RECORD_FILE_JOURNAL_MODE)) {
+			return true;
+		}
+		return !CONFIG_VALUE_DISABLED.equalsIgnoreCase(configFile
+				.getConfigParameter(CONFIG_PARAM_TASK_RECORD_FILE_JOURNAL_MODE));
+	}
+
+	/**
+	 * Checks if tasks outside the load window are left on disk until a query
+	 * needs them. Enabled by setting TASK_RECORD_LAZY_LOAD to true, which
+	 * uses the sharded task record store.
+	 * 
+	 * @return true if lazy loading is enabled
+	 */
+	private static boolean isLazyLoadEnabled() {
+		return lazyTaskRecordStore != null;
+	}
+
+	/**
+	 * Adds tasks paged in from task record store to task lists, leaving task
+	 * lists and cached queries untouched if no task is new
+	 * 
+	 * @param pagedInTaskList
+	 */
+	private static void addPagedInTasks(Map<Integer, Task> pagedInTaskList) {
+		List<Task> newTasks = new ArrayList<Task>();
+		for (Task pagedInTask : pagedInTaskList.values()) {
+			if (!taskLists.containsTask(pagedInTask.getTaskId())) {
+				newTasks.add(pagedInTask);
+			}
+		}
+		if (newTasks.isEmpty()) {
+			return;
+		}
+		taskLists.updateTasksInTaskLists(newTasks);
+	}
+
+	/**
+	 * Pages in tasks from shards overlapping date range if lazy loading is
+	 * enabled, including shards of timed tasks starting before the range
+	 * 
+	 * @param startDateTime
+	 * @param endDateTime
+	 */
+	private static synchronized void pageInTasks(DateTime startDateTime,
+			DateTime endDateTime) {
+		if (!isLazyLoadEnabled()) {
+			return;
+		}
+		try {
+			addPagedInTasks(lazyTaskRecordStore.loadShards(startDateTime,
+					endDateTime));
+		} catch (IOException e) {
+			logger.log(Level.WARNING, e.getMessage());
+		}
+	}
+
+	/**
+	 * Pages in tasks from shards with matching task names if lazy loading is
+	 * enabled
+	 * 
+	 * @param taskName
+	 */
+	private static synchronized void pageInTasks(String taskName) {
+		if (!isLazyLoadEnabled()) {
+			return;
+		}
+		try {
+			addPagedInTasks(lazyTaskRecordStore
+					.loadShardsMatchingTaskName(taskName));
+		} catch (IOException e) {
+			logger.log(Level.WARNING, e.getMessage());
+		}
+	}
+
+	/**
+	 * Pages in tasks that may match query if lazy loading is enabled
+	 * 
+	 * - Tasks matching a query match each of its filters, so only shards of
+	 * the task name or else the date range are paged in
+	 * 
+	 * @param taskQuery
+	 */
+	private static void pageInTasks(TaskQuery taskQuery) {
+		Set<TaskCategory> taskCategories = taskQuery.getTaskCategories();
+		if (taskQuery.isIncludeDeletedTasks()) {
+			pageInAllTasks();
+		} else if (taskQuery.getLowercaseTaskName() != null) {
+			pageInTasks(taskQuery.getLowercaseTaskName());
+		} else if (taskQuery.getStartDateTime() != null) {
+			pageInTasks(taskQuery.getStartDateTime(),
+					taskQuery.getEndDateTime());
+		} else if (taskCategories == null
+				|| !EnumSet.of(TaskCategory.FLOATING).containsAll(
+						taskCategories)) {
+			// floating tasks are always loaded
+			pageInAllTasks();
+		}
+	}
+
+	/**
+	 * Pages in all remaining tasks if lazy loading is enabled
+	 */
+	static synchronized void pageInAllTasks() {
+		if (!isLazyLoadEnabled()) {
+			return;
+		}
+		try {
+			addPagedInTasks(lazyTaskRecordStore.loadRemainingShards());
+		} catch (IOException e) {
+			logger.log(Level.WARNING, e.getMessage());
+		}
+	}
+
+	/**
+	 * Checks if task exists, paging in remaining tasks if it is not loaded
+	 * 
+	 * @param taskId
+	 * @return true if task exists
+	 */
+	private static boolean containsTask(int taskId) {
+		if (!taskLists.containsTask(taskId)) {
+			pageInAllTasks();
+		}
+		return taskLists.containsTask(taskId);
+	}
+
 	/**
 	 * Syncronization
 	 */
@@ -472,7 +864,7 @@ public class Database {
 	 */
 	public Task query(int taskId) throws TaskNotFoundException {
 		logEnterMethod("query");
-		if (!taskLists.containsTask(taskId)) {
+		if (!containsTask(taskId)) {
 			throw new TaskNotFoundException(
 					EXCEPTION_MESSAGE_TASK_DOES_NOT_EXIST);
 		}
@@ -488,9 +880,29 @@ public class Database {
 	 * @throws IOException
 	 */
 	public List<Task> query(boolean orderByStartDateTime) throws IOException {
-		logEnterMethod("query");
-		logExitMethod("query");
-		return taskLists.getTasks(orderByStartDateTime);
+		return queryCursor(orderByStartDateTime).getTasks();
+	}
+
+	/**
+	 * Returns List of all tasks (exclusive of deleted tasks)
+	 * 
+	 * @param orderByStartDateTime
+	 * @return cursor over matched tasks
+	 * @throws IOException
+	 */
+	public TaskQueryCursor queryCursor(boolean orderByStartDateTime)
+			throws IOException {
+		logEnterMethod("queryCursor");
+		pageInAllTasks();
+		List<Object> queryKey = TaskQueryCache.createQueryKey(QueryType.ALL,
+				orderByStartDateTime);
+		TaskQueryCursor taskCursor = getCachedTaskCursor(queryKey);
+		if (taskCursor == null) {
+			taskCursor = taskQueryCache.put(queryKey,
+					taskLists.getTaskCursor(orderByStartDateTime));
+		}
+		logExitMethod("queryCursor");
+		return taskCursor;
 	}
 
 	/**
@@ -502,13 +914,35 @@ public class Database {
 	 * @return list of matched tasks
 	 */
 	public List<Task> query(String taskName, boolean orderByStartDateTime) {
-		logEnterMethod("query");
+		return queryCursor(taskName, orderByStartDateTime).getTasks();
+	}
+
+	/**
+	 * Return tasks with matching taskName, case-insensitive substring search
+	 * (exclusive of deleted tasks)
+	 * 
+	 * @param orderByStartDateTime
+	 * @param taskName
+	 * @return cursor over matched tasks
+	 */
+	public TaskQueryCursor queryCursor(String taskName,
+			boolean orderByStartDateTime) {
+		logEnterMethod("queryCursor");
 		if (taskName == null) {
 			throw new IllegalArgumentException(String.format(
 					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_NAME));
 		}
-		logExitMethod("query");
-		return taskLists.getTasks(taskName, orderByStartDateTime);
+		pageInTasks(taskName);
+		// name query is case-insensitive
+		List<Object> queryKey = TaskQueryCache.createQueryKey(QueryType.NAME,
+				taskName.toLowerCase(), orderByStartDateTime);
+		TaskQueryCursor taskCursor = getCachedTaskCursor(queryKey);
+		if (taskCursor == null) {
+			taskCursor = taskQueryCache.put(queryKey,
+					taskLists.getTaskCursor(taskName, orderByStartDateTime));
+		}
+		logExitMethod("queryCursor");
+		return taskCursor;
 	}
 
 	/**
@@ -521,13 +955,38 @@ public class Database {
 	 */
 	public List<Task> query(TaskCategory queryTaskCategory,
 			boolean orderByStartDateTime) {
-		logEnterMethod("query");
+		return queryCursor(queryTaskCategory, orderByStartDateTime).getTasks();
+	}
+
+	/**
+	 * Returns tasks that match specified TaskCategory (exclusive of deleted
+	 * tasks)
+	 * 
+	 * @param orderByStartDateTime
+	 * @param queryTaskCategory
+	 * @return cursor over matched tasks
+	 */
+	public TaskQueryCursor queryCursor(TaskCategory queryTaskCategory,
+			boolean orderByStartDateTime) {
+		logEnterMethod("queryCursor");
 		if (queryTaskCategory == null) {
 			throw new IllegalArgumentException(String.format(
 					EXCEPTION_MESSAGE_NULL_PARAMETER, "queryTaskCategory"));
 		}
-		logExitMethod("query");
-		return taskLists.getTasks(queryTaskCategory, orderByStartDateTime);
+		// floating tasks are always loaded
+		if (queryTaskCategory != TaskCategory.FLOATING) {
+			pageInAllTasks();
+		}
+		List<Object> queryKey = TaskQueryCache.createQueryKey(
+				QueryType.CATEGORY, queryTaskCategory, orderByStartDateTime);
+		TaskQueryCursor taskCursor = getCachedTaskCursor(queryKey);
+		if (taskCursor == null) {
+			taskCursor = taskQueryCache.put(queryKey,
+					taskLists.getTaskCursor(queryTaskCategory,
+							orderByStartDateTime));
+		}
+		logExitMethod("queryCursor");
+		return taskCursor;
 	}
 
 	/**
@@ -542,15 +1001,41 @@ public class Database {
 	 */
 	public List<Task> query(DateTime startDateTime, DateTime endDateTime,
 			boolean includeFloatingTasks, boolean orderByStartDateTime) {
-		logEnterMethod("query");
+		return queryCursor(startDateTime, endDateTime, includeFloatingTasks,
+				orderByStartDateTime).getTasks();
+	}
+
+	/**
+	 * Returns tasks that is within startDateTime or endDateTime inclusive
+	 * (exclusive of deleted tasks)
+	 * 
+	 * @param orderByStartDateTime
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @param includeFloatingTasks
+	 * @return cursor over matched tasks
+	 */
+	public TaskQueryCursor queryCursor(DateTime startDateTime,
+			DateTime endDateTime, boolean includeFloatingTasks,
+			boolean orderByStartDateTime) {
+		logEnterMethod("queryCursor");
 		if (startDateTime == null || endDateTime == null) {
 			throw new IllegalArgumentException(String.format(
 					EXCEPTION_MESSAGE_NULL_PARAMETER,
 					PARAMETER_START_AND_END_DATE_TIMES));
 		}
-		logExitMethod("query");
-		return taskLists.getTasks(startDateTime, endDateTime,
+		pageInTasks(startDateTime, endDateTime);
+		List<Object> queryKey = TaskQueryCache.createQueryKey(
+				QueryType.DATE_RANGE, startDateTime, endDateTime,
 				includeFloatingTasks, orderByStartDateTime);
+		TaskQueryCursor taskCursor = getCachedTaskCursor(queryKey);
+		if (taskCursor == null) {
+			taskCursor = taskQueryCache.put(queryKey,
+					taskLists.getTaskCursor(startDateTime, endDateTime,
+							includeFloatingTasks, orderByStartDateTime));
+		}
+		logExitMethod("queryCursor");
+		return taskCursor;
 	}
 
 	/**
@@ -565,7 +1050,23 @@ public class Database {
 	 */
 	public List<Task> query(String taskName, DateTime startDateTime,
 			DateTime endDateTime, boolean orderByStartDateTime) {
-		logEnterMethod("query");
+		return queryCursor(taskName, startDateTime, endDateTime,
+				orderByStartDateTime).getTasks();
+	}
+
+	/**
+	 * Returns task that matches any of the specified parameters (exclusive of
+	 * deleted tasks)
+	 * 
+	 * @param taskName
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @param orderByStartDateTime
+	 * @return cursor over matched tasks
+	 */
+	public TaskQueryCursor queryCursor(String taskName, DateTime startDateTime,
+			DateTime endDateTime, boolean orderByStartDateTime) {
+		logEnterMethod("queryCursor");
 		if (taskName == null) {
 			throw new IllegalArgumentException(String.format(
 					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_NAME));
@@ -575,9 +1076,19 @@ public class Database {
 					EXCEPTION_MESSAGE_NULL_PARAMETER,
 					PARAMETER_START_AND_END_DATE_TIMES));
 		}
-		logExitMethod("query");
-		return taskLists.getTasks(taskName, startDateTime, endDateTime,
-				orderByStartDateTime);
+		pageInTasks(taskName);
+		pageInTasks(startDateTime, endDateTime);
+		List<Object> queryKey = TaskQueryCache.createQueryKey(
+				QueryType.NAME_OR_DATE_RANGE, taskName, startDateTime,
+				endDateTime, orderByStartDateTime);
+		TaskQueryCursor taskCursor = getCachedTaskCursor(queryKey);
+		if (taskCursor == null) {
+			taskCursor = taskQueryCache.put(queryKey,
+					taskLists.getTaskCursor(taskName, startDateTime,
+							endDateTime, orderByStartDateTime));
+		}
+		logExitMethod("queryCursor");
+		return taskCursor;
 	}
 
 	/**
@@ -594,7 +1105,25 @@ public class Database {
 	public List<Task> query(String taskName, TaskCategory taskCategory,
 			DateTime startDateTime, DateTime endDateTime,
 			boolean orderByStartDateTime) {
-		logEnterMethod("query");
+		return queryCursor(taskName, taskCategory, startDateTime, endDateTime,
+				orderByStartDateTime).getTasks();
+	}
+
+	/**
+	 * Returns task that matches any of the specified parameters (exclusive of
+	 * deleted tasks)
+	 * 
+	 * @param orderByStartDateTime
+	 * @param taskName
+	 * @param taskCategory
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @return cursor over matched tasks
+	 */
+	public TaskQueryCursor queryCursor(String taskName,
+			TaskCategory taskCategory, DateTime startDateTime,
+			DateTime endDateTime, boolean orderByStartDateTime) {
+		logEnterMethod("queryCursor");
 		if (taskName == null) {
 			throw new IllegalArgumentException(String.format(
 					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_NAME));
@@ -604,10 +1133,150 @@ public class Database {
 					EXCEPTION_MESSAGE_NULL_PARAMETER,
 					PARAMETER_START_AND_END_DATE_TIMES));
 		}
+		// any task matches category query
+		pageInAllTasks();
+
+		List<Object> queryKey = TaskQueryCache.createQueryKey(
+				QueryType.NAME_CATEGORY_OR_DATE_RANGE, taskName, taskCategory,
+				startDateTime, endDateTime, orderByStartDateTime);
+		TaskQueryCursor taskCursor = getCachedTaskCursor(queryKey);
+		if (taskCursor == null) {
+			taskCursor = taskQueryCache.put(queryKey,
+					taskLists.getTaskCursor(taskName, taskCategory,
+							startDateTime, endDateTime, orderByStartDateTime));
+		}
+		logExitMethod("queryCursor");
+		return taskCursor;
+	}
 
-		logExitMethod("query");
-		return taskLists.getTasks(taskName, taskCategory, startDateTime,
-				endDateTime, orderByStartDateTime);
+	/**
+	 * Returns tasks matching every filter of query
+	 * 
+	 * @param taskQuery
+	 * @return list of matched tasks
+	 */
+	public List<Task> query(TaskQuery taskQuery) {
+		return queryCursor(taskQuery).getTasks();
+	}
+
+	/**
+	 * Returns tasks matching every filter of query
+	 * 
+	 * @param taskQuery
+	 * @return cursor over matched tasks
+	 */
+	public TaskQueryCursor queryCursor(TaskQuery taskQuery) {
+		logEnterMethod("queryCursor");
+		if (taskQuery == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskQuery"));
+		}
+		pageInTasks(taskQuery);
+		List<Object> queryKey = TaskQueryCache.createQueryKey(
+				QueryType.QUERY, taskQuery);
+		TaskQueryCursor taskCursor = getCachedTaskCursor(queryKey);
+		if (taskCursor == null) {
+			taskCursor = taskQueryCache.put(queryKey,
+					taskLists.getTaskCursor(taskQuery));
+		}
+		logExitMethod("queryCursor");
+		return taskCursor;
+	}
+
+	/**
+	 * Counts tasks matching every filter of query, without reading or copying
+	 * the tasks
+	 * 
+	 * @param taskQuery
+	 * @return task count, at most the query limit
+	 */
+	public int count(TaskQuery taskQuery) {
+		logEnterMethod("count");
+		if (taskQuery == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskQuery"));
+		}
+		pageInTasks(taskQuery);
+		int taskCount = taskLists.countTasks(taskQuery);
+		logExitMethod("count");
+		return taskCount;
+	}
+
+	/**
+	 * Counts tasks matching every filter of query by category, done state and
+	 * day, without reading or copying the tasks
+	 * 
+	 * @param taskQuery
+	 *            with a date range for daily counts
+	 * @return task count summary
+	 */
+	public TaskCountSummary getTaskCountSummary(TaskQuery taskQuery) {
+		logEnterMethod("getTaskCountSummary");
+		if (taskQuery == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskQuery"));
+		}
+		pageInTasks(taskQuery);
+		TaskCountSummary taskCountSummary = taskLists
+				.getTaskCountSummary(taskQuery);
+		logExitMethod("getTaskCountSummary");
+		return taskCountSummary;
+	}
+
+	/**
+	 * Returns non-deleted tasks with names closest to taskName, for mistyped
+	 * task names
+	 * 
+	 * @param taskName
+	 * @param maxTaskCount
+	 * @return list of closest tasks, closest first
+	 */
+	public List<Task> queryFuzzy(String taskName, int maxTaskCount) {
+		return queryFuzzyCursor(taskName, maxTaskCount).getTasks();
+	}
+
+	/**
+	 * Returns non-deleted tasks with names closest to taskName, for mistyped
+	 * task names
+	 * 
+	 * @param taskName
+	 * @param maxTaskCount
+	 *            most tasks to return
+	 * @return cursor over closest tasks, closest first
+	 */
+	public TaskQueryCursor queryFuzzyCursor(String taskName, int maxTaskCount) {
+		logEnterMethod("queryFuzzyCursor");
+		if (taskName == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_NAME));
+		}
+		// shards are only filtered by exact names, so a mistyped name may
+		// match a task in any shard
+		pageInAllTasks();
+
+		List<Object> queryKey = TaskQueryCache.createQueryKey(
+				QueryType.FUZZY_NAME, taskName.toLowerCase(), maxTaskCount);
+		TaskQueryCursor taskCursor = getCachedTaskCursor(queryKey);
+		if (taskCursor == null) {
+			taskCursor = taskQueryCache.put(queryKey,
+					taskLists.getFuzzyTaskCursor(taskName, maxTaskCount));
+		}
+		logExitMethod("queryFuzzyCursor");
+		return taskCursor;
+	}
+
+	/**
+	 * Gets cursor of query from query cache
+	 * 
+	 * - Repeated queries between edits cost a hash lookup, as cached cursors
+	 * are dropped as soon as task lists change
+	 * 
+	 * @param queryKey
+	 * @return cached cursor, or null if query is not cached for current
+	 *         generation of task lists
+	 */
+	private TaskQueryCursor getCachedTaskCursor(List<Object> queryKey) {
+		return taskQueryCache.get(queryKey, taskLists.getGeneration());
 	}
 
 	/**
@@ -637,7 +1306,7 @@ public class Database {
 		setTaskToAddParameters(taskToAdd);
 		addTaskToTaskList(taskToAdd);
 		schedulePushSyncTask(taskToAdd);
-		saveTaskRecordFile();
+		saveTaskRecord(taskToAdd);
 		logExitMethod("add");
 		return taskToAdd;
 	}
@@ -697,7 +1366,7 @@ public class Database {
 	 */
 	public void delete(int taskId) throws TaskNotFoundException, IOException {
 		logEnterMethod("delete");
-		if (!taskLists.containsTask(taskId)) {
+		if (!containsTask(taskId)) {
 			throw new TaskNotFoundException(
 					EXCEPTION_MESSAGE_TASK_DOES_NOT_EXIST);
 		}
@@ -705,7 +1374,7 @@ public class Database {
 		Task taskToDelete = taskLists.getTask(taskId);
 		deleteTaskInTaskList(taskToDelete);
 		schedulePushSyncTask(taskToDelete);
-		saveTaskRecordFile();
+		saveTaskRecord(taskToDelete);
 
 		logExitMethod("delete");
 	}
@@ -742,7 +1411,7 @@ public class Database {
 		logEnterMethod("update");
 		assert (updatedTask != null);
 
-		if (!taskLists.containsTask(updatedTask.getTaskId())) {
+		if (!containsTask(updatedTask.getTaskId())) {
 			throw new TaskNotFoundException(
 					EXCEPTION_MESSAGE_TASK_DOES_NOT_EXIST);
 		}
@@ -757,7 +1426,7 @@ public class Database {
 		updateTaskinTaskList(updatedTaskToSave);
 		schedulePushSyncTask(updatedTaskToSave);
 
-		saveTaskRecordFile();
+		saveTaskRecord(updatedTaskToSave);
 		logExitMethod("update");
 		return updatedTaskToSave;
 	}
@@ -768,7 +1437,7 @@ public class Database {
 	 * @param updatedTaskToSave
 	 */
 	private void schedulePushSyncTask(Task updatedTaskToSave) {
-		if (isRemoteSyncEnabled) {
+		if (isRemoteSyncEnabled && !deferPushSyncTask(updatedTaskToSave)) {
 			syncronize.schedulePushSyncTask(updatedTaskToSave);
 		}
 	}
@@ -833,19 +1502,307 @@ public class Database {
 	}
 
 	/**
-	 * Save Tasks to local file - Syncronized to prevent multiple File I/O
+	 * Save Tasks to local file - marks task record file dirty to be written by
+	 * snapshotter, coalescing multiple saves into a single File I/O
 	 * 
 	 * @throws IOException
 	 */
-	synchronized static void saveTaskRecordFile() throws IOException {
+	static void saveTaskRecordFile() throws IOException {
 		logEnterMethod("saveTaskRecordFile");
-		assert (taskRecordFile != null);
+		assert (taskRecordFileSnapshotter != null);
 
-		taskRecordFile.saveTaskList(taskLists.getTaskList());
+		taskRecordFileSnapshotter.markDirty();
 
 		logExitMethod("saveTaskRecordFile");
 	}
 
+	/**
+	 * Writes Tasks to local file - Syncronized to prevent multiple File I/O
+	 * 
+	 * @throws IOException
+	 */
+	synchronized static void writeTaskRecordFile() throws IOException {
+		logEnterMethod("writeTaskRecordFile");
+		assert (taskRecordStore != null);
+
+		taskRecordStore.saveTaskList(taskLists.getTaskListSnapshot());
+
+		logExitMethod("writeTaskRecordFile");
+	}
+
+	/**
+	 * Writes pending saves to local file immediately
+	 * 
+	 * @throws IOException
+	 */
+	public void flushTaskRecordFile() throws IOException {
+		logEnterMethod("flushTaskRecordFile");
+		assert (taskRecordFileSnapshotter != null);
+
+		taskRecordFileSnapshotter.flushNow();
+		taskRecordStore.flush();
+
+		logExitMethod("flushTaskRecordFile");
+	}
+
+	/**
+	 * Save single updated task to local file - saves task alone if task record
+	 * store supports it, otherwise saves entire task list
+	 * 
+	 * @param taskToSave
+	 * @throws IOException
+	 */
+	synchronized static void saveTaskRecord(Task taskToSave)
+			throws IOException {
+		logEnterMethod("saveTaskRecord");
+		assert (taskRecordStore != null);
+
+		if (isBatchInProgress()) {
+			batchedSavedTasks.put(taskToSave.getTaskId(), taskToSave);
+			logExitMethod("saveTaskRecord");
+			return;
+		}
+
+		if (!taskRecordStore.isIncrementalSaveEnabled()) {
+			saveTaskRecordFile();
+			logExitMethod("saveTaskRecord");
+			return;
+		}
+
+		taskRecordStore.saveTask(taskToSave);
+		if (taskRecordStore.isCheckpointRequired()) {
+			saveTaskRecordFile();
+		}
+
+		logExitMethod("saveTaskRecord");
+	}
+
+	/**
+	 * Removes tombstones purged from task lists from task record store right
+	 * away, without joining or committing a batch in progress
+	 * 
+	 * - Tasks added back to task lists since they were purged are kept
+	 * 
+	 * @param purgedTasks
+	 * @throws IOException
+	 */
+	synchronized static void removePurgedTaskRecords(
+			Collection<Task> purgedTasks) throws IOException {
+		logEnterMethod("removePurgedTaskRecords");
+		assert (taskRecordStore != null);
+
+		List<Integer> purgedTaskIds = new ArrayList<Integer>();
+		for (Task purgedTask : purgedTasks) {
+			int taskId = purgedTask.getTaskId();
+			if (batchedSavedTasks.get(taskId) == purgedTask) {
+				batchedSavedTasks.remove(taskId);
+			}
+			if (!taskLists.containsTask(taskId)) {
+				purgedTaskIds.add(taskId);
+			}
+		}
+		if (purgedTaskIds.isEmpty()) {
+			logExitMethod("removePurgedTaskRecords");
+			return;
+		}
+		if (!taskRecordStore.isIncrementalSaveEnabled()) {
+			saveTaskRecordFile();
+			logExitMethod("removePurgedTaskRecords");
+			return;
+		}
+		for (int purgedTaskId : purgedTaskIds) {
+			taskRecordStore.removeTask(purgedTaskId);
+		}
+		if (taskRecordStore.isCheckpointRequired()) {
+			saveTaskRecordFile();
+		}
+		taskRecordStore.flush();
+
+		logExitMethod("removePurgedTaskRecords");
+	}
+
+	/**
+	 * Begins batch of mutations applied as one unit
+	 * 
+	 * - Until commit, add, update and delete only change the in-memory task
+	 * lists<br>
+	 * - Batches can be nested, only the outermost commit saves<br>
+	 * - Batches are shared by all callers of the database, so saves from
+	 * other threads such as sync are also held until commit<br>
+	 * - There is no abort, callers must commit in a finally block so the batch
+	 * is always closed
+	 */
+	public void beginBatch() {
+		logEnterMethod("beginBatch");
+		startBatch();
+		logExitMethod("beginBatch");
+	}
+
+	/**
+	 * Commits batch with one task record store save and flush and one push
+	 * sync of all tasks changed in batch
+	 * 
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             if no batch is in progress
+	 */
+	public void commit() throws IOException {
+		logEnterMethod("commit");
+		commitBatch();
+		logExitMethod("commit");
+	}
+
+	/**
+	 * Starts or nests batch
+	 */
+	synchronized static void startBatch() {
+		batchDepth++;
+	}
+
+	/**
+	 * Checks if mutations are being batched
+	 * 
+	 * @return true if a batch is in progress
+	 */
+	synchronized static boolean isBatchInProgress() {
+		return batchDepth > 0;
+	}
+
+	/**
+	 * Holds task for push sync on commit if a batch is in progress
+	 * 
+	 * @param taskToSync
+	 * @return true if task push sync is deferred to commit
+	 */
+	private synchronized static boolean deferPushSyncTask(Task taskToSync) {
+		if (!isBatchInProgress()) {
+			return false;
+		}
+		batchedPushSyncTasks.put(taskToSync.getTaskId(), taskToSync);
+		return true;
+	}
+
+	/**
+	 * Ends batch, saving batched mutations if it is the outermost batch
+	 * 
+	 * @throws IOException
+	 */
+	synchronized static void commitBatch() throws IOException {
+		if (!isBatchInProgress()) {
+			throw new IllegalStateException(
+					EXCEPTION_MESSAGE_NO_BATCH_IN_PROGRESS);
+		}
+		batchDepth--;
+		if (isBatchInProgress()) {
+			return;
+		}
+		try {
+			saveBatchedTaskRecords();
+			if (isRemoteSyncEnabled && !batchedPushSyncTasks.isEmpty()) {
+				syncronize.schedulePushSyncTasks(batchedPushSyncTasks.values());
+			}
+		} finally {
+			batchedSavedTasks.clear();
+			batchedPushSyncTasks.clear();
+		}
+	}
+
+	/**
+	 * Saves batched mutations - a single mutation is saved alone if task
+	 * record store supports it, otherwise entire task list is written once
+	 * 
+	 * @throws IOException
+	 */
+	private static void saveBatchedTaskRecords() throws IOException {
+		if (batchedSavedTasks.isEmpty()) {
+			return;
+		}
+		if (batchedSavedTasks.size() == 1
+				&& taskRecordStore.isIncrementalSaveEnabled()) {
+			for (Task batchedTask : batchedSavedTasks.values()) {
+				saveTaskRecord(batchedTask);
+			}
+		} else {
+			writeTaskRecordFile();
+		}
+		taskRecordStore.flush();
+	}
+
+	/**
+	 * Imports tasks from csv or ics file in a single batch
+	 * 
+	 * @param importFileName
+	 *            file name ending with .csv or .ics
+	 * @return import stats
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             if file extension is not .csv or .ics
+	 */
+	public TaskTransferStats importTasks(String importFileName)
+			throws IOException {
+		logEnterMethod("importTasks");
+		if (importFileName == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "importFileName"));
+		}
+		logExitMethod("importTasks");
+		return new TaskTransfer(this).importTasks(new File(importFileName));
+	}
+
+	/**
+	 * Exports non-deleted tasks to csv or ics file
+	 * 
+	 * @param exportFileName
+	 *            file name ending with .csv or .ics
+	 * @return export stats
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             if file extension is not .csv or .ics
+	 */
+	public TaskTransferStats exportTasks(String exportFileName)
+			throws IOException {
+		logEnterMethod("exportTasks");
+		if (exportFileName == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "exportFileName"));
+		}
+		logExitMethod("exportTasks");
+		return new TaskTransfer(this).exportTasks(new File(exportFileName));
+	}
+
+	/**
+	 * Purges deleted tasks whose deletion has been synced to remote storage
+	 * 
+	 * @return stats of this compaction run
+	 * @throws IOException
+	 */
+	public TombstoneCompactionStats compactTombstones() throws IOException {
+		logEnterMethod("compactTombstones");
+		assert (tombstoneCompactor != null);
+		logExitMethod("compactTombstones");
+		return tombstoneCompactor.compact();
+	}
+
+	/**
+	 * Getter for stats accumulated over all tombstone compaction runs
+	 * 
+	 * @return compaction stats
+	 */
+	public TombstoneCompactionStats getTombstoneCompactionStats() {
+		assert (tombstoneCompactor != null);
+		return tombstoneCompactor.getCompactionStats();
+	}
+
+	/**
+	 * Getter for hit and miss stats of query cache
+	 * 
+	 * @return query cache stats
+	 */
+	public TaskQueryCacheStats getTaskQueryCacheStats() {
+		assert (taskQueryCache != null);
+		return taskQueryCache.getStats();
+	}
+
 	/**
 	 * Removes task from list
 	 * 
@@ -856,7 +1813,7 @@ public class Database {
 		logEnterMethod("removeRecord");
 		assert (taskToRemove != null);
 		assert (taskLists != null);
-		if (!taskLists.containsTask(taskToRemove.getTaskId())) {
+		if (!containsTask(taskToRemove.getTaskId())) {
 			throw new TaskNotFoundException(
 					EXCEPTION_MESSAGE_TASK_DOES_NOT_EXIST);
 		}
@@ -874,9 +1831,12 @@ public class Database {
 		logEnterMethod("clearDatabase");
 		assert (taskLists != null);
 
+		pageInAllTasks();
 		taskLists.clearTaskLists();
+		taskIdAllocator.reset();
 		clearRemoteDatabase();
 		saveTaskRecordFile();
+		flushTaskRecordFile();
 
 		logExitMethod("clearDatabase");
 	}
@@ -890,8 +1850,11 @@ public class Database {
 		logEnterMethod("clearLocalDatabase");
 		assert (taskLists != null);
 
+		pageInAllTasks();
 		taskLists.clearTaskLists();
+		taskIdAllocator.reset();
 		saveTaskRecordFile();
+		flushTaskRecordFile();
 
 		logExitMethod("clearLocalDatabase");
 	}
@@ -945,21 +1908,27 @@ public class Database {
 	/**
 	 * Returns new taskId - (unique incremental)
 	 * 
-	 * @return
+	 * @return taskId
 	 */
 	int getNewTaskId() {
 		logEnterMethod("getNewTaskId");
-		int getNewTaskId = 0;
-		Set<Integer> taskKeySet = taskLists.getTaskList().keySet();
-		Iterator<Integer> iterator = taskKeySet.iterator();
+		int newTaskId = taskIdAllocator.allocateTaskId();
+		logExitMethod("getNewTaskId");
+		return newTaskId;
+	}
 
-		while (iterator.hasNext()) {
-			getNewTaskId = iterator.next();
+	/**
+	 * Gets largest taskId in task record store, including tasks not paged in
+	 * 
+	 * @return largest taskId, 0 if store is empty
+	 */
+	private static int getMaxStoredTaskId() {
+		int maxTaskId = taskLists.getMaxTaskId();
+		if (isLazyLoadEnabled()) {
+			maxTaskId = Math.max(maxTaskId,
+					lazyTaskRecordStore.getMaxTaskId());
 		}
-
-		getNewTaskId++;
-		logExitMethod("getNewTaskId");
-		return getNewTaskId;
+		return maxTaskId;
 	}
 
 	/**
@@ -8,6 +8,7 @@ import java.util.logging.Logger;
 import mhs.src.common.MhsLogger;
 import mhs.src.common.exceptions.DatabaseAlreadyInstantiatedException;
 import mhs.src.common.exceptions.DatabaseFactoryNotInstantiatedException;
+import mhs.src.storage.persistence.local.TaskStoreType;
 
 import com.google.gdata.util.ServiceException;
 
@@ -33,6 +34,7 @@ public class DatabaseFactory {
 	private static Database databaseInstance;
 	private static String taskRecordFileName;
 	private static boolean disableSync = false;
+	private static TaskStoreType taskStoreType;
 
 	private static final Logger logger = MhsLogger.getLogger();
 
@@ -50,10 +52,29 @@ public class DatabaseFactory {
 	public synchronized static void initializeDatabaseFactory(
 			String taskRecordFileName, boolean disableSync) throws IOException,
 			DatabaseAlreadyInstantiatedException {
+		initializeDatabaseFactory(taskRecordFileName, disableSync, null);
+	}
+
+	/**
+	 * Initialize DatabaseFactory with parameters and initialize database
+	 * singleton with specified task store
+	 * 
+	 * @param taskRecordFileName
+	 * @param disableSync
+	 * @param taskStoreType
+	 *            task store to use, or null to use store set in config file
+	 * @throws IOException
+	 * @throws DatabaseAlreadyInstantiatedException
+	 */
+	public synchronized static void initializeDatabaseFactory(
+			String taskRecordFileName, boolean disableSync,
+			TaskStoreType taskStoreType) throws IOException,
+			DatabaseAlreadyInstantiatedException {
 		logEnterMethod("DatabaseFactory");
 
 		if (instance == null) {
-			instance = new DatabaseFactory(taskRecordFileName, disableSync);
+			instance = new DatabaseFactory(taskRecordFileName, disableSync,
+					taskStoreType);
 		} else {
 			throw new DatabaseAlreadyInstantiatedException(
 					EXCEPTION_MESSAGE_DATABASE_FACTORY_ALREADY_INSTANTIATED);
@@ -63,7 +84,7 @@ public class DatabaseFactory {
 
 		if (databaseInstance == null) {
 			databaseInstance = new Database(DatabaseFactory.taskRecordFileName,
-					DatabaseFactory.disableSync);
+					DatabaseFactory.disableSync, DatabaseFactory.taskStoreType);
 		}
 		logExitMethod("DatabaseFactory");
 	}
@@ -105,8 +126,10 @@ public class DatabaseFactory {
 	 * 
 	 * @param taskRecordFileName
 	 * @param disableSync
+	 * @param taskStoreType
 	 */
-	private DatabaseFactory(String taskRecordFileName, boolean disableSync) {
+	private DatabaseFactory(String taskRecordFileName, boolean disableSync,
+			TaskStoreType taskStoreType) {
 		logEnterMethod("DatabaseFactory");
 		if (taskRecordFileName == null) {
 			throw new IllegalArgumentException(String.format(
@@ -115,6 +138,7 @@ public class DatabaseFactory {
 		}
 		DatabaseFactory.taskRecordFileName = taskRecordFileName;
 		DatabaseFactory.disableSync = disableSync;
+		DatabaseFactory.taskStoreType = taskStoreType;
 		logExitMethod("DatabaseFactory");
 	}
 
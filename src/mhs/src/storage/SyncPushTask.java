@@ -2,6 +2,10 @@ package mhs.src.storage;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -17,19 +21,24 @@ import mhs.src.storage.persistence.task.Task;
 /**
  * SyncPushTask
  * 
- * Sync Task Operation to push sync single task
+ * Sync Task Operation to push sync single task, or tasks coalesced by a
+ * database batch
  * 
  * @author Timothy Lim Yi Wen A0087048X
  * 
  */
 public class SyncPushTask implements Callable<Boolean> {
-	private Task localTaskToSync;
+	private List<Task> localTasksToSync;
 	private Syncronize syncronize;
 	static final Logger logger = MhsLogger.getLogger();
 
 	public SyncPushTask(Task taskToSync, Syncronize syncronize) {
+		this(Collections.singletonList(taskToSync), syncronize);
+	}
+
+	public SyncPushTask(Collection<Task> tasksToSync, Syncronize syncronize) {
 		logEnterMethod("SyncPushTask");
-		this.localTaskToSync = taskToSync;
+		this.localTasksToSync = new ArrayList<Task>(tasksToSync);
 		this.syncronize = syncronize;
 		logExitMethod("SyncPushTask");
 	}
@@ -37,21 +46,19 @@ public class SyncPushTask implements Callable<Boolean> {
 	@Override
 	public Boolean call() throws Exception {
 		logEnterMethod("call");
-		try {
-			syncronize.pushSyncTask(localTaskToSync);
-		} catch (NullPointerException e) {
-			logger.log(Level.FINER, e.getMessage());
-		} catch (UnknownHostException e) {
-			syncronize.disableRemoteSync();
-			logger.log(Level.FINER, e.getMessage());
-		} catch (IOException e) {
-			logger.log(Level.FINER, e.getMessage());
-		} catch (TaskNotFoundException e) {
-			logger.log(Level.FINER, e.getMessage());
-		} catch (InvalidTaskFormatException e) {
-			logger.log(Level.FINER, e.getMessage());
-		} catch (ServiceException e) {
-			logger.log(Level.FINER, e.getMessage());
+		for (Task localTaskToSync : localTasksToSync) {
+			try {
+				syncronize.pushSyncTask(localTaskToSync);
+			} catch (UnknownHostException e) {
+				// no connection, remaining tasks are pushed on next sync
+				syncronize.disableRemoteSync();
+				logger.log(Level.FINER, e.getMessage());
+				break;
+			} catch (NullPointerException | IOException
+					| TaskNotFoundException | InvalidTaskFormatException
+					| ServiceException e) {
+				logger.log(Level.FINER, e.getMessage());
+			}
 		}
 		logExitMethod("call");
 		return true;
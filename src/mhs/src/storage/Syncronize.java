@@ -4,6 +4,7 @@ package mhs.src.storage;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -165,6 +166,21 @@ class Syncronize {
 		logExitMethod("schedulePushSyncTask");
 	}
 
+	/**
+	 * Schedule single Push-Sync Task for tasks coalesced by a database batch
+	 * 
+	 * @param tasksToScheduleSync
+	 */
+	synchronized void schedulePushSyncTasks(
+			Collection<Task> tasksToScheduleSync) {
+		logEnterMethod("schedulePushSyncTasks");
+		Callable<Boolean> pushTaskToSchedule = new SyncPushTask(
+				tasksToScheduleSync, this);
+		syncBackgroundTasks.put(getSyncTaskQueueUid(), pushTaskToSchedule);
+		syncronizeBackgroundExecutor.submit(pushTaskToSchedule);
+		logExitMethod("schedulePushSyncTasks");
+	}
+
 	/**
 	 * Get unique id for SyncTaskQueueUID for keeping track of background tasks
 	 * 
@@ -1070,10 +1086,13 @@ class Syncronize {
 				+ localTask.getTaskName());
 		try {
 			Database.googleTasks.deleteTask(localTask.getGTaskId());
+			confirmRemoteDeletion(localTask);
 		} catch (NullPointerException e) {
 			logger.log(Level.FINER, e.getMessage());
 		} catch (ResourceNotFoundException e) {
+			// already deleted remotely
 			logger.log(Level.FINER, e.getMessage());
+			confirmRemoteDeletion(localTask);
 		} catch (IOException e) {
 			logger.log(Level.FINER, e.getMessage());
 		}
@@ -1178,11 +1197,48 @@ class Syncronize {
 				"Removing deleted synced task : " + localTask.getTaskName());
 		try {
 			Database.googleCalendar.deleteEvent(localTask.getgCalTaskId());
+			confirmRemoteDeletion(localTask);
 		} catch (NullPointerException e) {
 			logger.log(Level.FINER, e.getMessage());
 		}
 	}
 
+	/**
+	 * Marks deleted task as synced after remote deletion so that it can be
+	 * purged by tombstone compaction
+	 * 
+	 * - Updates a clone of the task in task lists, and only if the task was
+	 * not changed since it was read, so a task restored meanwhile is kept<br>
+	 * - A task deleted again later stays pending, as it was updated after
+	 * the pushed deletion
+	 * 
+	 * @param localTask
+	 *            deleted task pushed to remote
+	 */
+	private void confirmRemoteDeletion(Task localTask) {
+		logEnterMethod("confirmRemoteDeletion");
+		Task deletedTask = Database.taskLists.getTaskList().get(
+				localTask.getTaskId());
+		if (deletedTask == null || !deletedTask.isDeleted()
+				|| TombstoneCompactor.isPurgeableTombstone(deletedTask)) {
+			logExitMethod("confirmRemoteDeletion");
+			return;
+		}
+		Task confirmedTask = deletedTask.clone();
+		confirmedTask.setTaskLastSync(localTask.getTaskUpdated());
+		if (!Database.taskLists.replaceTaskInTaskLists(deletedTask,
+				confirmedTask)) {
+			logExitMethod("confirmRemoteDeletion");
+			return;
+		}
+		try {
+			Database.saveTaskRecord(confirmedTask);
+		} catch (IOException e) {
+			logger.log(Level.FINER, e.getMessage());
+		}
+		logExitMethod("confirmRemoteDeletion");
+	}
+
 	/**
 	 * Push task that is currently not synced. Call pushSyncTask to sync tasks
 	 * instead as it contains sync validation logic.
@@ -1326,7 +1382,7 @@ class Syncronize {
 		localSyncTaskToUpdate = getUpdatedSyncTaskFromGoogleEvent(
 				localSyncTaskToUpdate, gCalEntry, syncDateTime);
 		Database.taskLists.updateTaskInTaskLists(localSyncTaskToUpdate);
-		Database.saveTaskRecordFile();
+		Database.saveTaskRecord(localSyncTaskToUpdate);
 		logExitMethod("updateSyncTask");
 		return localSyncTaskToUpdate;
 	}
@@ -1359,7 +1415,7 @@ class Syncronize {
 		localSyncTaskToUpdate = getUpdatedSyncTaskFromGoogleTask(
 				localSyncTaskToUpdate, addedGTask, syncDateTime);
 		Database.taskLists.updateTaskInTaskLists(localSyncTaskToUpdate);
-		Database.saveTaskRecordFile();
+		Database.saveTaskRecord(localSyncTaskToUpdate);
 
 		logExitMethod("updateSyncTask");
 		return localSyncTaskToUpdate;
@@ -0,0 +1,156 @@
+//@author A0087048X
+
+package mhs.src.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mhs.src.storage.persistence.TaskQueryCursor;
+
+import org.joda.time.DateTime;
+
+/**
+ * TaskQueryCache
+ * 
+ * Bounded cache of task query cursors, keyed on normalized query parameters
+ * 
+ * - Cursors are stamped with the mutation generation of TaskLists they were
+ * read from, and all cached cursors are dropped once TaskLists moves to a
+ * newer generation<br>
+ * - Least recently used queries are evicted once the cache is full<br>
+ * - Cursors are immutable and clone tasks when read, so one cursor can be
+ * handed to any number of callers
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskQueryCache {
+
+	/**
+	 * Kinds of task query, so queries with the same parameters but different
+	 * semantics get different keys
+	 */
+	enum QueryType {
+		ALL, NAME, CATEGORY, DATE_RANGE, NAME_OR_DATE_RANGE,
+		NAME_CATEGORY_OR_DATE_RANGE, QUERY, FUZZY_NAME
+	}
+
+	private final int maxCachedQueries;
+	private final Map<List<Object>, TaskQueryCursor> cachedCursors;
+	private long cachedGeneration;
+	private long hits;
+	private long misses;
+	private long invalidations;
+	private long evictions;
+
+	/**
+	 * TaskQueryCache Constructor
+	 * 
+	 * @param maxCachedQueries
+	 *            0 to disable caching
+	 */
+	TaskQueryCache(final int maxCachedQueries) {
+		this.maxCachedQueries = maxCachedQueries;
+		cachedCursors = new LinkedHashMap<List<Object>, TaskQueryCursor>(16,
+				0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<List<Object>, TaskQueryCursor> eldestEntry) {
+				if (size() <= maxCachedQueries) {
+					return false;
+				}
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Creates cache key from query parameters
+	 * 
+	 * - DateTimes are normalized to their instant, so equal instants in
+	 * different time zones share a key
+	 * 
+	 * @param queryType
+	 * @param queryParameters
+	 * @return query key
+	 */
+	static List<Object> createQueryKey(QueryType queryType,
+			Object... queryParameters) {
+		List<Object> queryKey = new ArrayList<Object>(
+				queryParameters.length + 1);
+		queryKey.add(queryType);
+		for (Object queryParameter : queryParameters) {
+			if (queryParameter instanceof DateTime) {
+				queryKey.add(((DateTime) queryParameter).getMillis());
+			} else {
+				queryKey.add(queryParameter);
+			}
+		}
+		return Collections.unmodifiableList(queryKey);
+	}
+
+	/**
+	 * Gets cached cursor of query if it was read from current generation of
+	 * TaskLists
+	 * 
+	 * @param queryKey
+	 * @param generation
+	 *            current mutation generation of TaskLists
+	 * @return cursor, or null if query is not cached
+	 */
+	synchronized TaskQueryCursor get(List<Object> queryKey, long generation) {
+		invalidateOlderGenerations(generation);
+		TaskQueryCursor cachedCursor = cachedCursors.get(queryKey);
+		if (cachedCursor == null || cachedCursor.getGeneration() != generation) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return cachedCursor;
+	}
+
+	/**
+	 * Caches cursor of query, unless TaskLists has already moved past its
+	 * generation
+	 * 
+	 * @param queryKey
+	 * @param taskCursor
+	 * @return taskCursor
+	 */
+	synchronized TaskQueryCursor put(List<Object> queryKey,
+			TaskQueryCursor taskCursor) {
+		invalidateOlderGenerations(taskCursor.getGeneration());
+		if (maxCachedQueries > 0
+				&& taskCursor.getGeneration() == cachedGeneration) {
+			cachedCursors.put(queryKey, taskCursor);
+		}
+		return taskCursor;
+	}
+
+	/**
+	 * Drops all cached cursors if generation is newer than cached generation
+	 * 
+	 * @param generation
+	 */
+	private void invalidateOlderGenerations(long generation) {
+		if (generation <= cachedGeneration) {
+			return;
+		}
+		if (!cachedCursors.isEmpty()) {
+			invalidations++;
+			cachedCursors.clear();
+		}
+		cachedGeneration = generation;
+	}
+
+	synchronized TaskQueryCacheStats getStats() {
+		return new TaskQueryCacheStats(hits, misses, invalidations, evictions,
+				cachedCursors.size());
+	}
+
+}
@@ -0,0 +1,79 @@
+//@author A0087048X
+
+package mhs.src.storage;
+
+/**
+ * TaskQueryCacheStats
+ * 
+ * Hits, misses and evictions of the task query result cache
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public class TaskQueryCacheStats {
+
+	private final long hits;
+	private final long misses;
+	private final long invalidations;
+	private final long evictions;
+	private final int cachedQueries;
+
+	TaskQueryCacheStats(long hits, long misses, long invalidations,
+			long evictions, int cachedQueries) {
+		this.hits = hits;
+		this.misses = misses;
+		this.invalidations = invalidations;
+		this.evictions = evictions;
+		this.cachedQueries = cachedQueries;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Getter for number of times cached queries were dropped because task
+	 * lists changed
+	 * 
+	 * @return invalidations
+	 */
+	public long getInvalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * Getter for number of least recently used queries dropped to keep cache
+	 * within its size
+	 * 
+	 * @return evictions
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public int getCachedQueries() {
+		return cachedQueries;
+	}
+
+	/**
+	 * Getter for fraction of queries answered from cache
+	 * 
+	 * @return hit rate from 0 to 1, or 0 if there were no queries
+	 */
+	public double getHitRate() {
+		long queries = hits + misses;
+		return queries == 0 ? 0 : (double) hits / queries;
+	}
+
+	@Override
+	public String toString() {
+		return String
+				.format("hits=%d misses=%d hitRate=%.2f invalidations=%d evictions=%d cachedQueries=%d",
+						hits, misses, getHitRate(), invalidations, evictions,
+						cachedQueries);
+	}
+
+}
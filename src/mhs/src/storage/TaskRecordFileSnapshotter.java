@@ -0,0 +1,189 @@
+//@author A0087048X
+
+package mhs.src.storage;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mhs.src.common.MhsLogger;
+
+/**
+ * TaskRecordFileSnapshotter
+ * 
+ * Coalesces task record file saves on a dedicated persistence thread
+ * 
+ * - Saves mark the task record file dirty instead of writing it<br>
+ * - Dirty task record file is written at most once per flush interval<br>
+ * - Pending writes are flushed on shutdown<br>
+ * - Flush interval of 0 writes through on the caller's thread
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskRecordFileSnapshotter {
+
+	private ScheduledThreadPoolExecutor snapshotterBackgroundExecutor;
+	private final AtomicBoolean isDirty;
+	private final AtomicBoolean isFlushScheduled;
+	private final long flushIntervalInMilliseconds;
+
+	private static final int THREADS_TO_INITIALIZE_1 = 1;
+	private static final long SHUTDOWN_FLUSH_TIMEOUT_IN_SECONDS = 30;
+	private static final String THREAD_NAME = "TaskRecordFileSnapshotter";
+
+	static final Logger logger = MhsLogger.getLogger();
+
+	/**
+	 * TaskRecordFileSnapshotter Constructor
+	 * 
+	 * @param flushIntervalInMilliseconds
+	 */
+	TaskRecordFileSnapshotter(long flushIntervalInMilliseconds) {
+		logEnterMethod("TaskRecordFileSnapshotter");
+		if (flushIntervalInMilliseconds < 0) {
+			throw new IllegalArgumentException(
+					"flushIntervalInMilliseconds cannot be negative!");
+		}
+		this.flushIntervalInMilliseconds = flushIntervalInMilliseconds;
+		isDirty = new AtomicBoolean(false);
+		isFlushScheduled = new AtomicBoolean(false);
+		initializeSnapshotterBackgroundExecutor();
+		logExitMethod("TaskRecordFileSnapshotter");
+	}
+
+	/**
+	 * Initialize Snapshotter Background Executor with a daemon thread so that
+	 * a pending flush does not hold up application exit
+	 */
+	private void initializeSnapshotterBackgroundExecutor() {
+		snapshotterBackgroundExecutor = new ScheduledThreadPoolExecutor(
+				THREADS_TO_INITIALIZE_1, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread snapshotterThread = new Thread(runnable,
+								THREAD_NAME);
+						snapshotterThread.setDaemon(true);
+						return snapshotterThread;
+					}
+				});
+		snapshotterBackgroundExecutor
+				.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	/**
+	 * Marks task record file dirty and schedules a flush if none is pending
+	 * 
+	 * @throws IOException
+	 */
+	void markDirty() throws IOException {
+		logEnterMethod("markDirty");
+		isDirty.set(true);
+		if (flushIntervalInMilliseconds == 0) {
+			flushNow();
+		} else if (isFlushScheduled.compareAndSet(false, true)) {
+			scheduleFlush();
+		}
+		logExitMethod("markDirty");
+	}
+
+	/**
+	 * Schedules flush after flush interval
+	 */
+	private void scheduleFlush() {
+		snapshotterBackgroundExecutor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				isFlushScheduled.set(false);
+				try {
+					flushNow();
+				} catch (IOException e) {
+					logger.log(Level.WARNING, e.getMessage());
+				}
+			}
+		}, flushIntervalInMilliseconds, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes task record file immediately if dirty
+	 * 
+	 * @throws IOException
+	 */
+	void flushNow() throws IOException {
+		logEnterMethod("flushNow");
+		if (!isDirty.getAndSet(false)) {
+			logExitMethod("flushNow");
+			return;
+		}
+		try {
+			Database.writeTaskRecordFile();
+		} catch (IOException e) {
+			isDirty.set(true);
+			throw e;
+		}
+		logExitMethod("flushNow");
+	}
+
+	/**
+	 * Checks if there are changes not yet written to task record file
+	 * 
+	 * @return true if dirty
+	 */
+	boolean isDirty() {
+		return isDirty.get();
+	}
+
+	/**
+	 * Stops persistence thread and flushes pending changes
+	 * 
+	 * - Scheduled flushes that have not started are cancelled<br>
+	 * - A flush already writing is waited for rather than interrupted, so the
+	 * final flush sees whether it succeeded<br>
+	 * - If the wait times out or is interrupted, the final flush writes
+	 * regardless of the dirty flag
+	 * 
+	 * @throws IOException
+	 */
+	void shutdown() throws IOException {
+		logEnterMethod("shutdown");
+		snapshotterBackgroundExecutor.shutdown();
+		try {
+			if (!snapshotterBackgroundExecutor.awaitTermination(
+					SHUTDOWN_FLUSH_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+				logger.log(Level.WARNING,
+						"Timed out waiting for background flush");
+				isDirty.set(true);
+			}
+		} catch (InterruptedException e) {
+			isDirty.set(true);
+			Thread.currentThread().interrupt();
+		}
+		flushNow();
+		logExitMethod("shutdown");
+	}
+
+	/**
+	 * Log Methods
+	 */
+
+	/**
+	 * Log trace entry method
+	 * 
+	 * @param methodName
+	 */
+	void logEnterMethod(String methodName) {
+		logger.entering(getClass().getName(), methodName);
+	}
+
+	/**
+	 * Log trace exit method
+	 * 
+	 * @param methodName
+	 */
+	void logExitMethod(String methodName) {
+		logger.exiting(getClass().getName(), methodName);
+	}
+}
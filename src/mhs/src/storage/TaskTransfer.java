@@ -0,0 +1,170 @@
+//@author A0087048X
+
+package mhs.src.storage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mhs.src.common.MhsLogger;
+import mhs.src.common.exceptions.InvalidTaskFormatException;
+import mhs.src.storage.persistence.TaskLists;
+import mhs.src.storage.persistence.local.TaskTransferFormat;
+import mhs.src.storage.persistence.local.TaskTransferReader;
+import mhs.src.storage.persistence.local.TaskTransferWriter;
+import mhs.src.storage.persistence.task.Task;
+
+/**
+ * TaskTransfer
+ * 
+ * Streams bulk task imports and exports in csv and iCalendar files, see
+ * TaskTransferFormat
+ * 
+ * - Imported records are read one at a time and added in a single database
+ * batch, so the task record store is saved once and changed tasks are pushed
+ * in one sync task<br>
+ * - Invalid records are rejected and counted, not imported<br>
+ * - Export writes non-deleted tasks straight from the task lists, without
+ * copying them
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskTransfer {
+
+	private static final Logger logger = MhsLogger.getLogger();
+	private static final String CHAR_ENCODING_UTF8 = "UTF-8";
+
+	private final Database database;
+
+	/**
+	 * TaskTransfer Constructor
+	 * 
+	 * @param database
+	 *            database to import tasks into
+	 */
+	TaskTransfer(Database database) {
+		this.database = database;
+	}
+
+	/**
+	 * Imports tasks from csv or ics file
+	 * 
+	 * - Tasks are added in one batch, committed even if reading fails partway,
+	 * so tasks read before the failure stay imported and are saved before the
+	 * exception is thrown<br>
+	 * - Batch is committed before the reader is closed, so a failed close
+	 * cannot leave the batch open
+	 * 
+	 * @param importFile
+	 * @return import stats
+	 * @throws IOException
+	 */
+	TaskTransferStats importTasks(File importFile) throws IOException {
+		logEnterMethod("importTasks");
+		TaskTransferFormat format = TaskTransferFormat.fromFileName(importFile
+				.getName());
+		long startTime = System.nanoTime();
+		int recordsImported = 0;
+		int recordsRejected = 0;
+
+		TaskTransferReader taskReader = format
+				.createReader(new BufferedReader(new InputStreamReader(
+						new FileInputStream(importFile), CHAR_ENCODING_UTF8)));
+		try {
+			database.beginBatch();
+			try {
+				Task taskToImport;
+				while ((taskToImport = taskReader.readTask()) != null) {
+					try {
+						database.add(taskToImport);
+						recordsImported++;
+					} catch (InvalidTaskFormatException e) {
+						recordsRejected++;
+					}
+				}
+			} finally {
+				database.commit();
+			}
+		} finally {
+			taskReader.close();
+		}
+
+		TaskTransferStats importStats = new TaskTransferStats(
+				recordsImported, recordsRejected, System.nanoTime()
+						- startTime);
+		logger.log(Level.INFO, "Imported " + importFile.getName() + " : "
+				+ importStats);
+		logExitMethod("importTasks");
+		return importStats;
+	}
+
+	/**
+	 * Exports non-deleted tasks to csv or ics file
+	 * 
+	 * @param exportFile
+	 * @return export stats
+	 * @throws IOException
+	 */
+	TaskTransferStats exportTasks(File exportFile) throws IOException {
+		logEnterMethod("exportTasks");
+		TaskTransferFormat format = TaskTransferFormat.fromFileName(exportFile
+				.getName());
+		long startTime = System.nanoTime();
+		int recordsExported = 0;
+
+		Database.pageInAllTasks();
+		TaskLists taskLists = Database.taskLists;
+		TaskTransferWriter taskWriter = format
+				.createWriter(new BufferedWriter(new OutputStreamWriter(
+						new FileOutputStream(exportFile), CHAR_ENCODING_UTF8)));
+		try {
+			// task list view is a snapshot, unaffected by concurrent updates
+			for (Task taskToExport : taskLists.getTaskList().values()) {
+				if (taskToExport.isDeleted()) {
+					continue;
+				}
+				taskWriter.writeTask(taskToExport);
+				recordsExported++;
+			}
+		} finally {
+			taskWriter.close();
+		}
+
+		TaskTransferStats exportStats = new TaskTransferStats(
+				recordsExported, 0, System.nanoTime() - startTime);
+		logger.log(Level.INFO, "Exported " + exportFile.getName() + " : "
+				+ exportStats);
+		logExitMethod("exportTasks");
+		return exportStats;
+	}
+
+	/**
+	 * Log Methods
+	 */
+
+	/**
+	 * Log Trace Entry Method
+	 * 
+	 * @param methodName
+	 */
+	private void logEnterMethod(String methodName) {
+		logger.entering(getClass().getName(), methodName);
+	}
+
+	/**
+	 * Log Trace Exit Method
+	 * 
+	 * @param methodName
+	 */
+	private void logExitMethod(String methodName) {
+		logger.exiting(getClass().getName(), methodName);
+	}
+
+}
@@ -0,0 +1,63 @@
+//@author A0087048X
+
+package mhs.src.storage;
+
+/**
+ * TaskTransferStats
+ * 
+ * Records transferred and rejected by a bulk task import or export
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public class TaskTransferStats {
+
+	private static final long NANOSECONDS_IN_SECOND = 1000000000L;
+	private static final long NANOSECONDS_IN_MILLISECOND = 1000000L;
+
+	private final int recordsTransferred;
+	private final int recordsRejected;
+	private final long elapsedNanoTime;
+
+	TaskTransferStats(int recordsTransferred, int recordsRejected,
+			long elapsedNanoTime) {
+		this.recordsTransferred = recordsTransferred;
+		this.recordsRejected = recordsRejected;
+		this.elapsedNanoTime = elapsedNanoTime;
+	}
+
+	public int getRecordsTransferred() {
+		return recordsTransferred;
+	}
+
+	/**
+	 * Getter for records skipped because they are not valid tasks
+	 * 
+	 * @return records rejected
+	 */
+	public int getRecordsRejected() {
+		return recordsRejected;
+	}
+
+	public long getElapsedMilliseconds() {
+		return elapsedNanoTime / NANOSECONDS_IN_MILLISECOND;
+	}
+
+	/**
+	 * Getter for throughput of transferred and rejected records
+	 * 
+	 * @return records per second
+	 */
+	public long getRecordsPerSecond() {
+		return (recordsTransferred + recordsRejected) * NANOSECONDS_IN_SECOND
+				/ Math.max(elapsedNanoTime, 1);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"recordsTransferred=%d recordsRejected=%d time=%dms recordsPerSecond=%d",
+				recordsTransferred, recordsRejected, getElapsedMilliseconds(),
+				getRecordsPerSecond());
+	}
+
+}
@@ -0,0 +1,72 @@
+//@author A0087048X
+
+package mhs.src.storage;
+
+import org.joda.time.DateTime;
+
+/**
+ * TombstoneCompactionStats
+ * 
+ * Records and bytes reclaimed by tombstone compaction
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public class TombstoneCompactionStats {
+
+	private final int compactionRuns;
+	private final int recordsReclaimed;
+	private final long bytesReclaimed;
+	private final DateTime lastCompacted;
+
+	TombstoneCompactionStats(int compactionRuns, int recordsReclaimed,
+			long bytesReclaimed, DateTime lastCompacted) {
+		this.compactionRuns = compactionRuns;
+		this.recordsReclaimed = recordsReclaimed;
+		this.bytesReclaimed = bytesReclaimed;
+		this.lastCompacted = lastCompacted;
+	}
+
+	/**
+	 * Adds stats of a compaction run
+	 * 
+	 * @param compactionRunStats
+	 * @return combined stats
+	 */
+	TombstoneCompactionStats add(TombstoneCompactionStats compactionRunStats) {
+		return new TombstoneCompactionStats(compactionRuns
+				+ compactionRunStats.compactionRuns, recordsReclaimed
+				+ compactionRunStats.recordsReclaimed, bytesReclaimed
+				+ compactionRunStats.bytesReclaimed,
+				compactionRunStats.lastCompacted);
+	}
+
+	public int getCompactionRuns() {
+		return compactionRuns;
+	}
+
+	public int getRecordsReclaimed() {
+		return recordsReclaimed;
+	}
+
+	/**
+	 * Getter for bytes reclaimed, measured as compact json size of purged
+	 * tasks
+	 * 
+	 * @return bytes reclaimed
+	 */
+	public long getBytesReclaimed() {
+		return bytesReclaimed;
+	}
+
+	public DateTime getLastCompacted() {
+		return lastCompacted;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"compactionRuns=%d recordsReclaimed=%d bytesReclaimed=%d",
+				compactionRuns, recordsReclaimed, bytesReclaimed);
+	}
+
+}
@@ -0,0 +1,181 @@
+//@author A0087048X
+
+package mhs.src.storage;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mhs.src.common.MhsLogger;
+import mhs.src.storage.persistence.task.Task;
+
+import org.joda.time.DateTime;
+
+/**
+ * TombstoneCompactor
+ * 
+ * Purges soft-deleted tasks whose deletion no longer needs to be pushed to
+ * remote storage
+ * 
+ * A deleted task is purged when:<br>
+ * - it was never synced (no gCalTaskId and gTaskId), or<br>
+ * - its remote deletion is confirmed (taskLastSync not before taskUpdated)<br>
+ * 
+ * Runs on demand and at a fixed interval on a background thread. A tombstone
+ * is only removed if task lists still hold the instance that was checked, so
+ * tasks restored or changed during compaction are kept. Removals are saved
+ * on their own, outside of any batch in progress.
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TombstoneCompactor {
+
+	private ScheduledThreadPoolExecutor compactorBackgroundExecutor;
+	private TombstoneCompactionStats compactionStats;
+
+	private static final int THREADS_TO_INITIALIZE_1 = 1;
+	private static final String THREAD_NAME = "TombstoneCompactor";
+	private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
+	static final Logger logger = MhsLogger.getLogger();
+
+	/**
+	 * TombstoneCompactor Constructor
+	 * 
+	 * @param compactionIntervalInMinutes
+	 *            0 to only compact on demand
+	 */
+	TombstoneCompactor(long compactionIntervalInMinutes) {
+		logEnterMethod("TombstoneCompactor");
+		compactionStats = new TombstoneCompactionStats(0, 0, 0, null);
+		if (compactionIntervalInMinutes > 0) {
+			scheduleCompaction(compactionIntervalInMinutes);
+		}
+		logExitMethod("TombstoneCompactor");
+	}
+
+	/**
+	 * Schedules compaction at fixed interval on a daemon thread
+	 * 
+	 * @param compactionIntervalInMinutes
+	 */
+	private void scheduleCompaction(long compactionIntervalInMinutes) {
+		compactorBackgroundExecutor = new ScheduledThreadPoolExecutor(
+				THREADS_TO_INITIALIZE_1, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread compactorThread = new Thread(runnable,
+								THREAD_NAME);
+						compactorThread.setDaemon(true);
+						return compactorThread;
+					}
+				});
+		compactorBackgroundExecutor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					compact();
+				} catch (IOException e) {
+					logger.log(Level.WARNING, e.getMessage());
+				}
+			}
+		}, compactionIntervalInMinutes, compactionIntervalInMinutes,
+				TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Purges all tombstones that can be safely removed
+	 * 
+	 * @return stats of this compaction run
+	 * @throws IOException
+	 */
+	synchronized TombstoneCompactionStats compact() throws IOException {
+		logEnterMethod("compact");
+		List<Task> purgedTasks = new ArrayList<Task>();
+		long bytesReclaimed = 0;
+		for (Task task : Database.taskLists.getTaskList().values()) {
+			if (!isPurgeableTombstone(task)
+					|| !Database.taskLists
+							.removeTaskInTaskListsIfUnchanged(task)) {
+				continue;
+			}
+			bytesReclaimed += task.toJson().getBytes(CHARSET_UTF8).length;
+			purgedTasks.add(task);
+		}
+		Database.removePurgedTaskRecords(purgedTasks);
+		int recordsReclaimed = purgedTasks.size();
+
+		TombstoneCompactionStats compactionRunStats = new TombstoneCompactionStats(
+				1, recordsReclaimed, bytesReclaimed, DateTime.now());
+		compactionStats = compactionStats.add(compactionRunStats);
+		logger.log(Level.INFO, "Tombstone compaction : " + compactionRunStats);
+		logExitMethod("compact");
+		return compactionRunStats;
+	}
+
+	/**
+	 * Checks if task is deleted and its deletion is not pending remote push
+	 * 
+	 * @param task
+	 * @return true if task can be purged
+	 */
+	static boolean isPurgeableTombstone(Task task) {
+		if (!task.isDeleted()) {
+			return false;
+		}
+		if (task.getgCalTaskId() == null && task.getGTaskId() == null) {
+			return true;
+		}
+		return task.getTaskLastSync() != null
+				&& task.getTaskUpdated() != null
+				&& !task.getTaskLastSync().isBefore(task.getTaskUpdated());
+	}
+
+	/**
+	 * Getter for stats accumulated over all compaction runs
+	 * 
+	 * @return compaction stats
+	 */
+	synchronized TombstoneCompactionStats getCompactionStats() {
+		return compactionStats;
+	}
+
+	/**
+	 * Stops scheduled compaction
+	 */
+	void shutdown() {
+		logEnterMethod("shutdown");
+		if (compactorBackgroundExecutor != null) {
+			compactorBackgroundExecutor.shutdownNow();
+		}
+		logExitMethod("shutdown");
+	}
+
+	/**
+	 * Log Methods
+	 */
+
+	/**
+	 * Log trace entry method
+	 * 
+	 * @param methodName
+	 */
+	void logEnterMethod(String methodName) {
+		logger.entering(getClass().getName(), methodName);
+	}
+
+	/**
+	 * Log trace exit method
+	 * 
+	 * @param methodName
+	 */
+	void logExitMethod(String methodName) {
+		logger.exiting(getClass().getName(), methodName);
+	}
+}
@@ -0,0 +1,599 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * PersistentSortedMap
+ * 
+ * Immutable sorted map, where put and remove return a new map sharing all
+ * unchanged nodes with the old map
+ * 
+ * - Treap with node priorities derived from key hash codes, so a map has the
+ * same shape whatever order its keys were put in<br>
+ * - put, remove and get are O(log n) and copy only the nodes on the path to
+ * the key<br>
+ * - Nodes keep subtree sizes for O(1) size and O(log n) lookup by index<br>
+ * - Maps are safe to read from any thread once published
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+final class PersistentSortedMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+	private static final Comparator<Object> NATURAL_ORDER = new Comparator<Object>() {
+		@Override
+		@SuppressWarnings("unchecked")
+		public int compare(Object key1, Object key2) {
+			return ((Comparable<Object>) key1).compareTo(key2);
+		}
+	};
+
+	private final Comparator<? super K> comparator;
+	private final Node<K, V> root;
+
+	/**
+	 * Immutable treap node
+	 */
+	private static final class Node<K, V> extends
+			AbstractMap.SimpleImmutableEntry<K, V> {
+		private static final long serialVersionUID = 1L;
+
+		final int priority;
+		final int size;
+		final Node<K, V> left;
+		final Node<K, V> right;
+
+		Node(K key, V value, int priority, Node<K, V> left, Node<K, V> right) {
+			super(key, value);
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+			this.size = 1 + sizeOf(left) + sizeOf(right);
+		}
+
+		Node<K, V> withChildren(Node<K, V> newLeft, Node<K, V> newRight) {
+			return new Node<K, V>(getKey(), getValue(), priority, newLeft,
+					newRight);
+		}
+	}
+
+	private PersistentSortedMap(Comparator<? super K> comparator,
+			Node<K, V> root) {
+		this.comparator = comparator;
+		this.root = root;
+	}
+
+	/**
+	 * Creates empty map ordered by natural ordering of keys
+	 * 
+	 * @return empty map
+	 */
+	static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty() {
+		return new PersistentSortedMap<K, V>(NATURAL_ORDER, null);
+	}
+
+	/**
+	 * Creates empty map ordered by comparator
+	 * 
+	 * @param comparator
+	 * @return empty map
+	 */
+	static <K, V> PersistentSortedMap<K, V> empty(
+			Comparator<? super K> comparator) {
+		return new PersistentSortedMap<K, V>(comparator, null);
+	}
+
+	int size() {
+		return sizeOf(root);
+	}
+
+	boolean isEmpty() {
+		return root == null;
+	}
+
+	boolean containsKey(K key) {
+		return findNode(key) != null;
+	}
+
+	/**
+	 * Gets value of key
+	 * 
+	 * @param key
+	 * @return value, or null if key is not in map
+	 */
+	V get(K key) {
+		Node<K, V> node = findNode(key);
+		return node == null ? null : node.getValue();
+	}
+
+	/**
+	 * Gets entry at index in key order
+	 * 
+	 * @param index
+	 *            from 0 to size() - 1
+	 * @return entry
+	 */
+	Map.Entry<K, V> getEntry(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+		Node<K, V> node = root;
+		while (true) {
+			int leftSize = sizeOf(node.left);
+			if (index < leftSize) {
+				node = node.left;
+			} else if (index == leftSize) {
+				return node;
+			} else {
+				index -= leftSize + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Gets last entry in key order
+	 * 
+	 * @return entry, or null if map is empty
+	 */
+	Map.Entry<K, V> getLastEntry() {
+		Node<K, V> node = root;
+		while (node != null && node.right != null) {
+			node = node.right;
+		}
+		return node;
+	}
+
+	/**
+	 * Counts keys in range in O(log n), without iterating them
+	 * 
+	 * @param fromKey
+	 *            lowest key, or null for no lower bound
+	 * @param fromInclusive
+	 * @param toKey
+	 *            highest key, or null for no upper bound
+	 * @param toInclusive
+	 * @return number of keys in range
+	 */
+	int count(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+		int toCount = toKey == null ? size() : countBefore(toKey, toInclusive);
+		int fromCount = fromKey == null ? 0 : countBefore(fromKey,
+				!fromInclusive);
+		return Math.max(0, toCount - fromCount);
+	}
+
+	/**
+	 * Counts keys before key
+	 * 
+	 * @param key
+	 * @param inclusive
+	 *            true to also count key itself
+	 * @return number of keys before key
+	 */
+	private int countBefore(K key, boolean inclusive) {
+		int count = 0;
+		Node<K, V> node = root;
+		while (node != null) {
+			int comparison = comparator.compare(key, node.getKey());
+			if (comparison > 0 || (comparison == 0 && inclusive)) {
+				count += sizeOf(node.left) + 1;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns map with key mapped to value
+	 * 
+	 * @param key
+	 * @param value
+	 * @return new map
+	 */
+	PersistentSortedMap<K, V> put(K key, V value) {
+		return new PersistentSortedMap<K, V>(comparator, put(root, key, value,
+				priorityOf(key)));
+	}
+
+	/**
+	 * Returns map without key
+	 * 
+	 * @param key
+	 * @return new map, or this map if key is not in map
+	 */
+	PersistentSortedMap<K, V> remove(K key) {
+		if (!containsKey(key)) {
+			return this;
+		}
+		return new PersistentSortedMap<K, V>(comparator, remove(root, key));
+	}
+
+	/**
+	 * Returns empty map with same ordering
+	 * 
+	 * @return empty map
+	 */
+	PersistentSortedMap<K, V> clear() {
+		return new PersistentSortedMap<K, V>(comparator, null);
+	}
+
+	/**
+	 * Iterates entries in key order
+	 */
+	@Override
+	public Iterator<Map.Entry<K, V>> iterator() {
+		return new EntryIterator<K, V>(this, null, true, null, true);
+	}
+
+	/**
+	 * Iterates entries with keys in range, in key order
+	 * 
+	 * @param fromKey
+	 *            lowest key, or null for no lower bound
+	 * @param fromInclusive
+	 * @param toKey
+	 *            highest key, or null for no upper bound
+	 * @param toInclusive
+	 * @return entries in range
+	 */
+	Iterable<Map.Entry<K, V>> entries(final K fromKey,
+			final boolean fromInclusive, final K toKey,
+			final boolean toInclusive) {
+		return new Iterable<Map.Entry<K, V>>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new EntryIterator<K, V>(PersistentSortedMap.this,
+						fromKey, fromInclusive, toKey, toInclusive);
+			}
+		};
+	}
+
+	/**
+	 * Iterates values in key order
+	 * 
+	 * @return values
+	 */
+	Iterable<V> values() {
+		return values(entries(null, true, null, true));
+	}
+
+	/**
+	 * Iterates values with keys in range, in key order
+	 * 
+	 * @param fromKey
+	 * @param fromInclusive
+	 * @param toKey
+	 * @param toInclusive
+	 * @return values in range
+	 */
+	Iterable<V> values(K fromKey, boolean fromInclusive, K toKey,
+			boolean toInclusive) {
+		return values(entries(fromKey, fromInclusive, toKey, toInclusive));
+	}
+
+	/**
+	 * Iterates keys in key order
+	 * 
+	 * @return keys
+	 */
+	Iterable<K> keys() {
+		final Iterable<Map.Entry<K, V>> entries = this;
+		return new Iterable<K>() {
+			@Override
+			public Iterator<K> iterator() {
+				final Iterator<Map.Entry<K, V>> entryIterator = entries
+						.iterator();
+				return new ReadOnlyIterator<K>() {
+					@Override
+					public boolean hasNext() {
+						return entryIterator.hasNext();
+					}
+
+					@Override
+					public K next() {
+						return entryIterator.next().getKey();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Gets read-only java.util.Map view of this map
+	 * 
+	 * @return map view
+	 */
+	Map<K, V> asMap() {
+		return new MapView<K, V>(this);
+	}
+
+	/**
+	 * Gets read-only java.util.List view of values in key order
+	 * 
+	 * - get is O(log n) by index, without copying the values
+	 * 
+	 * @return list view
+	 */
+	List<V> valueList() {
+		return new ValueListView<V>(this);
+	}
+
+	private static <K, V> Iterable<V> values(
+			final Iterable<Map.Entry<K, V>> entries) {
+		return new Iterable<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				final Iterator<Map.Entry<K, V>> entryIterator = entries
+						.iterator();
+				return new ReadOnlyIterator<V>() {
+					@Override
+					public boolean hasNext() {
+						return entryIterator.hasNext();
+					}
+
+					@Override
+					public V next() {
+						return entryIterator.next().getValue();
+					}
+				};
+			}
+		};
+	}
+
+	private Node<K, V> findNode(K key) {
+		Node<K, V> node = root;
+		while (node != null) {
+			int comparison = comparator.compare(key, node.getKey());
+			if (comparison == 0) {
+				return node;
+			}
+			node = comparison < 0 ? node.left : node.right;
+		}
+		return null;
+	}
+
+	private Node<K, V> put(Node<K, V> node, K key, V value, int priority) {
+		if (node == null) {
+			return new Node<K, V>(key, value, priority, null, null);
+		}
+		int comparison = comparator.compare(key, node.getKey());
+		if (comparison == 0) {
+			return new Node<K, V>(key, value, node.priority, node.left,
+					node.right);
+		}
+		if (comparison < 0) {
+			Node<K, V> newLeft = put(node.left, key, value, priority);
+			if (newLeft.priority > node.priority) {
+				// rotate right
+				return newLeft.withChildren(newLeft.left,
+						node.withChildren(newLeft.right, node.right));
+			}
+			return node.withChildren(newLeft, node.right);
+		}
+		Node<K, V> newRight = put(node.right, key, value, priority);
+		if (newRight.priority > node.priority) {
+			// rotate left
+			return newRight.withChildren(
+					node.withChildren(node.left, newRight.left),
+					newRight.right);
+		}
+		return node.withChildren(node.left, newRight);
+	}
+
+	private Node<K, V> remove(Node<K, V> node, K key) {
+		int comparison = comparator.compare(key, node.getKey());
+		if (comparison == 0) {
+			return merge(node.left, node.right);
+		}
+		if (comparison < 0) {
+			return node.withChildren(remove(node.left, key), node.right);
+		}
+		return node.withChildren(node.left, remove(node.right, key));
+	}
+
+	/**
+	 * Merges treaps where all keys of left are lower than keys of right
+	 */
+	private Node<K, V> merge(Node<K, V> left, Node<K, V> right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (left.priority > right.priority) {
+			return left.withChildren(left.left, merge(left.right, right));
+		}
+		return right.withChildren(merge(left, right.left), right.right);
+	}
+
+	private static int sizeOf(Node<?, ?> node) {
+		return node == null ? 0 : node.size;
+	}
+
+	/**
+	 * Derives pseudo-random priority from key hash code
+	 */
+	private static int priorityOf(Object key) {
+		int hash = key.hashCode() * 0x9E3779B9;
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		return hash ^ (hash >>> 13);
+	}
+
+	/**
+	 * In-order iterator of entries in key range
+	 */
+	private static final class EntryIterator<K, V> extends
+			ReadOnlyIterator<Map.Entry<K, V>> {
+		private final Comparator<? super K> comparator;
+		private final K toKey;
+		private final boolean toInclusive;
+		private final Deque<Node<K, V>> path = new ArrayDeque<Node<K, V>>();
+		private Node<K, V> nextNode;
+
+		EntryIterator(PersistentSortedMap<K, V> map, K fromKey,
+				boolean fromInclusive, K toKey, boolean toInclusive) {
+			this.comparator = map.comparator;
+			this.toKey = toKey;
+			this.toInclusive = toInclusive;
+			Node<K, V> node = map.root;
+			while (node != null) {
+				if (fromKey != null
+						&& !isAfterFromKey(node.getKey(), fromKey,
+								fromInclusive)) {
+					node = node.right;
+				} else {
+					path.push(node);
+					node = node.left;
+				}
+			}
+			advance();
+		}
+
+		private boolean isAfterFromKey(K key, K fromKey, boolean fromInclusive) {
+			int comparison = comparator.compare(key, fromKey);
+			return comparison > 0 || (comparison == 0 && fromInclusive);
+		}
+
+		private void advance() {
+			nextNode = path.poll();
+			if (nextNode == null) {
+				return;
+			}
+			if (toKey != null) {
+				int comparison = comparator.compare(nextNode.getKey(), toKey);
+				if (comparison > 0 || (comparison == 0 && !toInclusive)) {
+					nextNode = null;
+					path.clear();
+					return;
+				}
+			}
+			Node<K, V> node = nextNode.right;
+			while (node != null) {
+				path.push(node);
+				node = node.left;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextNode != null;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (nextNode == null) {
+				throw new NoSuchElementException();
+			}
+			Node<K, V> node = nextNode;
+			advance();
+			return node;
+		}
+	}
+
+	/**
+	 * Iterator without remove
+	 */
+	private abstract static class ReadOnlyIterator<E> implements Iterator<E> {
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Read-only java.util.Map view of a map
+	 */
+	private static final class MapView<K, V> extends AbstractMap<K, V> {
+		private final PersistentSortedMap<K, V> map;
+
+		MapView(PersistentSortedMap<K, V> map) {
+			this.map = map;
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean containsKey(Object key) {
+			try {
+				return key != null && map.containsKey((K) key);
+			} catch (ClassCastException e) {
+				return false;
+			}
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V get(Object key) {
+			try {
+				return key == null ? null : map.get((K) key);
+			} catch (ClassCastException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public Set<Map.Entry<K, V>> entrySet() {
+			return new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return map.iterator();
+				}
+
+				@Override
+				public int size() {
+					return map.size();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Read-only java.util.List view of values of a map, in key order
+	 */
+	private static final class ValueListView<V> extends AbstractList<V>
+			implements RandomAccess {
+		private final PersistentSortedMap<?, V> map;
+
+		ValueListView(PersistentSortedMap<?, V> map) {
+			this.map = map;
+		}
+
+		@Override
+		public V get(int index) {
+			return map.getEntry(index).getValue();
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		/**
+		 * Iterates values in O(n), rather than getting each by index
+		 */
+		@Override
+		public Iterator<V> iterator() {
+			return map.values().iterator();
+		}
+	}
+
+}
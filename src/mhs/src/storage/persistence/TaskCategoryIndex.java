@@ -0,0 +1,147 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+
+/**
+ * TaskCategoryIndex
+ * 
+ * Immutable index of non-deleted tasks in TaskLists by TaskCategory, with live
+ * counts, where put and remove return a new index sharing unchanged structure
+ * with the old index
+ * 
+ * - Tasks of each category are kept by taskId, in taskId order<br>
+ * - Task and done task counts of each category are kept up to date<br>
+ * - Category and done state are recorded per taskId, so tasks moved to
+ * another category or marked done are reindexed correctly
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskCategoryIndex {
+
+	static final TaskCategoryIndex EMPTY = createEmptyIndex();
+
+	private final Map<TaskCategory, PersistentSortedMap<Integer, Task>> categoryTasks;
+	private final Map<TaskCategory, Integer> doneTaskCounts;
+	private final PersistentSortedMap<Integer, TaskCategory> taskCategories;
+	private final PersistentSortedMap<Integer, Boolean> doneTaskIds;
+
+	private TaskCategoryIndex(
+			Map<TaskCategory, PersistentSortedMap<Integer, Task>> categoryTasks,
+			Map<TaskCategory, Integer> doneTaskCounts,
+			PersistentSortedMap<Integer, TaskCategory> taskCategories,
+			PersistentSortedMap<Integer, Boolean> doneTaskIds) {
+		this.categoryTasks = categoryTasks;
+		this.doneTaskCounts = doneTaskCounts;
+		this.taskCategories = taskCategories;
+		this.doneTaskIds = doneTaskIds;
+	}
+
+	private static TaskCategoryIndex createEmptyIndex() {
+		Map<TaskCategory, PersistentSortedMap<Integer, Task>> categoryTasks = new EnumMap<TaskCategory, PersistentSortedMap<Integer, Task>>(
+				TaskCategory.class);
+		Map<TaskCategory, Integer> doneTaskCounts = new EnumMap<TaskCategory, Integer>(
+				TaskCategory.class);
+		for (TaskCategory taskCategory : TaskCategory.values()) {
+			categoryTasks.put(taskCategory,
+					PersistentSortedMap.<Integer, Task> empty());
+			doneTaskCounts.put(taskCategory, 0);
+		}
+		return new TaskCategoryIndex(categoryTasks, doneTaskCounts,
+				PersistentSortedMap.<Integer, TaskCategory> empty(),
+				PersistentSortedMap.<Integer, Boolean> empty());
+	}
+
+	/**
+	 * Returns index with task, replacing any task indexed with the same taskId
+	 * 
+	 * @param taskToIndex
+	 * @return new index
+	 */
+	TaskCategoryIndex put(Task taskToIndex) {
+		TaskCategoryIndex index = remove(taskToIndex.getTaskId());
+		TaskCategory taskCategory = taskToIndex.getTaskCategory();
+		if (taskToIndex.isDeleted() || taskCategory == null) {
+			return index;
+		}
+		int taskId = taskToIndex.getTaskId();
+		Map<TaskCategory, PersistentSortedMap<Integer, Task>> newCategoryTasks = new EnumMap<TaskCategory, PersistentSortedMap<Integer, Task>>(
+				index.categoryTasks);
+		newCategoryTasks.put(taskCategory,
+				index.categoryTasks.get(taskCategory).put(taskId, taskToIndex));
+		if (!taskToIndex.isDone()) {
+			return new TaskCategoryIndex(newCategoryTasks,
+					index.doneTaskCounts, index.taskCategories.put(taskId,
+							taskCategory), index.doneTaskIds);
+		}
+		Map<TaskCategory, Integer> newDoneTaskCounts = new EnumMap<TaskCategory, Integer>(
+				index.doneTaskCounts);
+		newDoneTaskCounts.put(taskCategory,
+				index.doneTaskCounts.get(taskCategory) + 1);
+		return new TaskCategoryIndex(newCategoryTasks, newDoneTaskCounts,
+				index.taskCategories.put(taskId, taskCategory),
+				index.doneTaskIds.put(taskId, true));
+	}
+
+	/**
+	 * Returns index without task
+	 * 
+	 * @param taskId
+	 * @return new index, or this index if task is not indexed
+	 */
+	TaskCategoryIndex remove(int taskId) {
+		TaskCategory taskCategory = taskCategories.get(taskId);
+		if (taskCategory == null) {
+			return this;
+		}
+		Map<TaskCategory, PersistentSortedMap<Integer, Task>> newCategoryTasks = new EnumMap<TaskCategory, PersistentSortedMap<Integer, Task>>(
+				categoryTasks);
+		newCategoryTasks.put(taskCategory, categoryTasks.get(taskCategory)
+				.remove(taskId));
+		if (!doneTaskIds.containsKey(taskId)) {
+			return new TaskCategoryIndex(newCategoryTasks, doneTaskCounts,
+					taskCategories.remove(taskId), doneTaskIds);
+		}
+		Map<TaskCategory, Integer> newDoneTaskCounts = new EnumMap<TaskCategory, Integer>(
+				doneTaskCounts);
+		newDoneTaskCounts.put(taskCategory,
+				doneTaskCounts.get(taskCategory) - 1);
+		return new TaskCategoryIndex(newCategoryTasks, newDoneTaskCounts,
+				taskCategories.remove(taskId), doneTaskIds.remove(taskId));
+	}
+
+	/**
+	 * Gets non-deleted tasks of category in taskId order
+	 * 
+	 * @param taskCategory
+	 * @return tasks
+	 */
+	Iterable<Task> getTasks(TaskCategory taskCategory) {
+		return categoryTasks.get(taskCategory).values();
+	}
+
+	/**
+	 * Gets list view of non-deleted tasks of category in taskId order, read by
+	 * index without copying the index
+	 * 
+	 * @param taskCategory
+	 * @return tasks
+	 */
+	List<Task> getTaskList(TaskCategory taskCategory) {
+		return categoryTasks.get(taskCategory).valueList();
+	}
+
+	int getTaskCount(TaskCategory taskCategory) {
+		return categoryTasks.get(taskCategory).size();
+	}
+
+	int getDoneTaskCount(TaskCategory taskCategory) {
+		return doneTaskCounts.get(taskCategory);
+	}
+
+}
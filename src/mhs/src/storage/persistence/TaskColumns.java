@@ -0,0 +1,589 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+
+/**
+ * TaskColumns
+ * 
+ * Immutable columnar copy of all tasks in TaskLists, including deleted tasks,
+ * for queries that scan every task
+ * 
+ * - Each task is a row of primitive columns: taskId, category ordinal, done
+ * and deleted flag bits, and start and end epoch millis<br>
+ * - Rows are kept in chunks of 256, and put and remove copy only the chunks
+ * they change, so columns share unchanged chunks between snapshots<br>
+ * - Rows are found by taskId through an open addressing int map, and a
+ * removed row is filled with the last row, so rows stay dense<br>
+ * - Scans check flags, categories and dates in primitive loops, and read the
+ * Task of a row only to check the task name, or filters of tasks without the
+ * dates of their category
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+final class TaskColumns {
+
+	private static final int CHUNK_BITS = 8;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private static final int FLAG_DONE = 1;
+	private static final int FLAG_DELETED = 2;
+	/** Category dates are missing, so filters are checked on the task */
+	private static final int FLAG_CHECK_TASK = 4;
+
+	private static final int CATEGORY_FLOATING = TaskCategory.FLOATING
+			.ordinal();
+	private static final TaskCategory[] TASK_CATEGORIES = TaskCategory
+			.values();
+
+	static final TaskColumns EMPTY = new TaskColumns(new Chunk[0], 0,
+			TaskIdRowMap.EMPTY);
+
+	private final Chunk[] chunks;
+	private final int rowCount;
+	private final TaskIdRowMap rowsByTaskId;
+
+	/**
+	 * Columns of a chunk of rows
+	 */
+	private static final class Chunk {
+		final int[] taskIds;
+		final byte[] categories;
+		final byte[] flags;
+		final long[] startMillis;
+		final long[] endMillis;
+		final Task[] tasks;
+
+		Chunk() {
+			taskIds = new int[CHUNK_SIZE];
+			categories = new byte[CHUNK_SIZE];
+			flags = new byte[CHUNK_SIZE];
+			startMillis = new long[CHUNK_SIZE];
+			endMillis = new long[CHUNK_SIZE];
+			tasks = new Task[CHUNK_SIZE];
+		}
+
+		Chunk(Chunk chunk) {
+			taskIds = chunk.taskIds.clone();
+			categories = chunk.categories.clone();
+			flags = chunk.flags.clone();
+			startMillis = chunk.startMillis.clone();
+			endMillis = chunk.endMillis.clone();
+			tasks = chunk.tasks.clone();
+		}
+	}
+
+	private TaskColumns(Chunk[] chunks, int rowCount,
+			TaskIdRowMap rowsByTaskId) {
+		this.chunks = chunks;
+		this.rowCount = rowCount;
+		this.rowsByTaskId = rowsByTaskId;
+	}
+
+	int size() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns columns with task row, replacing any row with the same taskId
+	 * 
+	 * @param taskToPut
+	 * @return new columns
+	 */
+	TaskColumns put(Task taskToPut) {
+		Editor editor = new Editor(this);
+		editor.put(taskToPut);
+		return editor.toColumns();
+	}
+
+	/**
+	 * Returns columns with rows of tasks, copying each changed chunk once
+	 * 
+	 * @param tasksToPut
+	 * @return new columns
+	 */
+	TaskColumns putAll(Iterable<Task> tasksToPut) {
+		Editor editor = new Editor(this);
+		for (Task taskToPut : tasksToPut) {
+			editor.put(taskToPut);
+		}
+		return editor.toColumns();
+	}
+
+	/**
+	 * Returns columns without task row
+	 * 
+	 * @param taskId
+	 * @return new columns, or these columns if task has no row
+	 */
+	TaskColumns remove(int taskId) {
+		if (rowsByTaskId.get(taskId) < 0) {
+			return this;
+		}
+		Editor editor = new Editor(this);
+		editor.remove(taskId);
+		return editor.toColumns();
+	}
+
+	/**
+	 * Gets tasks matching every filter of query, ignoring its order and limit
+	 * 
+	 * @param taskQuery
+	 * @param maxTaskCount
+	 *            most tasks to return, the lowest taskIds
+	 * @return matched tasks by taskId
+	 */
+	List<Task> getMatchingTasks(TaskQuery taskQuery, int maxTaskCount) {
+		int[] matchedRows = getMatchingRows(taskQuery);
+		// taskId in high bits, so sorting orders rows by taskId
+		long[] taskIdRows = new long[matchedRows.length];
+		for (int i = 0; i < matchedRows.length; i++) {
+			int row = matchedRows[i];
+			taskIdRows[i] = (long) chunks[row >>> CHUNK_BITS].taskIds[row
+					& CHUNK_MASK] << Integer.SIZE | row;
+		}
+		Arrays.sort(taskIdRows);
+
+		int taskCount = Math.min(taskIdRows.length, maxTaskCount);
+		List<Task> matchedTasks = new ArrayList<Task>(taskCount);
+		for (int i = 0; i < taskCount; i++) {
+			int row = (int) taskIdRows[i];
+			matchedTasks.add(chunks[row >>> CHUNK_BITS].tasks[row & CHUNK_MASK]);
+		}
+		return matchedTasks;
+	}
+
+	/**
+	 * Counts tasks matching every filter of query, ignoring its limit
+	 * 
+	 * @param taskQuery
+	 * @return task count
+	 */
+	int countMatchingTasks(TaskQuery taskQuery) {
+		return getMatchingRows(taskQuery).length;
+	}
+
+	/**
+	 * Adds tasks matching every filter of query to summary, reading tasks only
+	 * for daily counts
+	 * 
+	 * @param taskQuery
+	 * @param taskCountSummary
+	 * @param isCountingDays
+	 *            true if summary keeps daily counts
+	 */
+	void addMatchingTasks(TaskQuery taskQuery,
+			TaskCountSummary taskCountSummary, boolean isCountingDays) {
+		for (int row : getMatchingRows(taskQuery)) {
+			Chunk chunk = chunks[row >>> CHUNK_BITS];
+			int index = row & CHUNK_MASK;
+			int rowFlags = chunk.flags[index];
+			if (isCountingDays || (rowFlags & FLAG_CHECK_TASK) != 0) {
+				taskCountSummary.addTask(chunk.tasks[index]);
+			} else {
+				taskCountSummary.addTaskCount(
+						TASK_CATEGORIES[chunk.categories[index]],
+						(rowFlags & FLAG_DONE) != 0, 1);
+			}
+		}
+	}
+
+	/**
+	 * Gets rows matching every filter of query
+	 * 
+	 * - Rows without their category dates are checked on their task
+	 * 
+	 * @param taskQuery
+	 * @return matched rows, in row order
+	 */
+	private int[] getMatchingRows(TaskQuery taskQuery) {
+		Boolean isDone = taskQuery.getDone();
+		int flagMask = FLAG_CHECK_TASK
+				| (taskQuery.isIncludeDeletedTasks() ? 0 : FLAG_DELETED)
+				| (isDone == null ? 0 : FLAG_DONE);
+		int flagValue = isDone != null && isDone ? FLAG_DONE : 0;
+		int categoryMask = getCategoryMask(taskQuery);
+		boolean hasDateRange = taskQuery.getStartDateTime() != null;
+		boolean includeFloatingTasks = taskQuery.isIncludeFloatingTasks();
+		long queryStartMillis = 0;
+		long queryEndMillis = 0;
+		if (hasDateRange) {
+			long startMillis = taskQuery.getStartDateTime().getMillis();
+			long endMillis = taskQuery.getEndDateTime().getMillis();
+			queryStartMillis = getIntervalStartMillis(startMillis, endMillis);
+			queryEndMillis = getIntervalEndMillis(startMillis, endMillis);
+		}
+		boolean hasTaskName = taskQuery.getLowercaseTaskName() != null;
+
+		int[] matchedRows = new int[Math.min(rowCount, CHUNK_SIZE)];
+		int matchedRowCount = 0;
+		for (int chunkIndex = 0; chunkIndex < chunks.length; chunkIndex++) {
+			Chunk chunk = chunks[chunkIndex];
+			int chunkRowCount = Math.min(CHUNK_SIZE, rowCount
+					- (chunkIndex << CHUNK_BITS));
+			for (int index = 0; index < chunkRowCount; index++) {
+				int rowFlags = chunk.flags[index];
+				if ((rowFlags & flagMask) != flagValue) {
+					if ((rowFlags & FLAG_CHECK_TASK) == 0
+							|| !taskQuery.matches(chunk.tasks[index])) {
+						continue;
+					}
+				} else {
+					int category = chunk.categories[index];
+					if ((categoryMask & (1 << category)) == 0) {
+						continue;
+					}
+					if (hasDateRange) {
+						if (category == CATEGORY_FLOATING) {
+							if (!includeFloatingTasks) {
+								continue;
+							}
+						} else {
+							long startMillis = chunk.startMillis[index];
+							long endMillis = chunk.endMillis[index];
+							if (queryStartMillis >= getIntervalEndMillis(
+									startMillis, endMillis)
+									|| getIntervalStartMillis(startMillis,
+											endMillis) >= queryEndMillis) {
+								continue;
+							}
+						}
+					}
+					if (hasTaskName && !taskQuery.matches(chunk.tasks[index])) {
+						continue;
+					}
+				}
+				if (matchedRowCount == matchedRows.length) {
+					matchedRows = Arrays.copyOf(matchedRows,
+							matchedRowCount * 2);
+				}
+				matchedRows[matchedRowCount++] = (chunkIndex << CHUNK_BITS)
+						| index;
+			}
+		}
+		return Arrays.copyOf(matchedRows, matchedRowCount);
+	}
+
+	/**
+	 * Gets bit mask of category ordinals matched by query
+	 * 
+	 * @param taskQuery
+	 * @return category mask
+	 */
+	private static int getCategoryMask(TaskQuery taskQuery) {
+		if (taskQuery.getTaskCategories() == null) {
+			return -1;
+		}
+		int categoryMask = 0;
+		for (TaskCategory taskCategory : taskQuery.getTaskCategories()) {
+			categoryMask |= 1 << taskCategory.ordinal();
+		}
+		return categoryMask;
+	}
+
+	/**
+	 * Gets start of inclusive interval between two instants, as TaskQuery
+	 * matches dates
+	 * 
+	 * @param millis1
+	 * @param millis2
+	 * @return interval start millis
+	 */
+	private static long getIntervalStartMillis(long millis1, long millis2) {
+		if (millis1 == millis2) {
+			return millis1;
+		}
+		return Math.min(millis1, millis2) - 1;
+	}
+
+	/**
+	 * Gets exclusive end of inclusive interval between two instants, as
+	 * TaskQuery matches dates
+	 * 
+	 * @param millis1
+	 * @param millis2
+	 * @return interval end millis
+	 */
+	private static long getIntervalEndMillis(long millis1, long millis2) {
+		if (millis1 == millis2) {
+			return millis1;
+		}
+		return Math.max(millis1, millis2) + 1;
+	}
+
+	/**
+	 * Builds new columns from columns, copying each chunk it changes once
+	 */
+	private static final class Editor {
+		private Chunk[] chunks;
+		private boolean[] isChunkCopied;
+		private int rowCount;
+		private final TaskIdRowMap.Editor rowsByTaskId;
+
+		Editor(TaskColumns columns) {
+			chunks = columns.chunks.clone();
+			isChunkCopied = new boolean[chunks.length];
+			rowCount = columns.rowCount;
+			rowsByTaskId = new TaskIdRowMap.Editor(columns.rowsByTaskId);
+		}
+
+		void put(Task taskToPut) {
+			int taskId = taskToPut.getTaskId();
+			int row = rowsByTaskId.get(taskId);
+			if (row < 0) {
+				row = rowCount++;
+				rowsByTaskId.put(taskId, row);
+			}
+			Chunk chunk = getWritableChunk(row >>> CHUNK_BITS);
+			int index = row & CHUNK_MASK;
+			chunk.taskIds[index] = taskId;
+			chunk.tasks[index] = taskToPut;
+
+			int rowFlags = 0;
+			if (taskToPut.isDone()) {
+				rowFlags |= FLAG_DONE;
+			}
+			if (taskToPut.isDeleted()) {
+				rowFlags |= FLAG_DELETED;
+			}
+			long startMillis = 0;
+			long endMillis = 0;
+			TaskCategory taskCategory = taskToPut.getTaskCategory();
+			if (taskCategory == TaskCategory.TIMED
+					&& taskToPut.getStartDateTime() != null
+					&& taskToPut.getEndDateTime() != null) {
+				startMillis = taskToPut.getStartDateTime().getMillis();
+				endMillis = taskToPut.getEndDateTime().getMillis();
+			} else if (taskCategory == TaskCategory.DEADLINE
+					&& taskToPut.getEndDateTime() != null) {
+				startMillis = taskToPut.getEndDateTime().getMillis();
+				endMillis = startMillis;
+			} else if (taskCategory != TaskCategory.FLOATING) {
+				rowFlags |= FLAG_CHECK_TASK;
+			}
+			chunk.categories[index] = (byte) (taskCategory == null ? 0
+					: taskCategory.ordinal());
+			chunk.flags[index] = (byte) rowFlags;
+			chunk.startMillis[index] = startMillis;
+			chunk.endMillis[index] = endMillis;
+		}
+
+		void remove(int taskId) {
+			int row = rowsByTaskId.get(taskId);
+			if (row < 0) {
+				return;
+			}
+			int lastRow = --rowCount;
+			if (row != lastRow) {
+				Chunk lastChunk = chunks[lastRow >>> CHUNK_BITS];
+				int lastIndex = lastRow & CHUNK_MASK;
+				Chunk chunk = getWritableChunk(row >>> CHUNK_BITS);
+				int index = row & CHUNK_MASK;
+				chunk.taskIds[index] = lastChunk.taskIds[lastIndex];
+				chunk.categories[index] = lastChunk.categories[lastIndex];
+				chunk.flags[index] = lastChunk.flags[lastIndex];
+				chunk.startMillis[index] = lastChunk.startMillis[lastIndex];
+				chunk.endMillis[index] = lastChunk.endMillis[lastIndex];
+				chunk.tasks[index] = lastChunk.tasks[lastIndex];
+				rowsByTaskId.put(chunk.taskIds[index], row);
+			}
+			// drop reference to task of the vacated last row
+			getWritableChunk(lastRow >>> CHUNK_BITS).tasks[lastRow & CHUNK_MASK] = null;
+			rowsByTaskId.remove(taskId);
+		}
+
+		TaskColumns toColumns() {
+			int chunkCount = (rowCount + CHUNK_MASK) >>> CHUNK_BITS;
+			return new TaskColumns(Arrays.copyOf(chunks, chunkCount),
+					rowCount, rowsByTaskId.toMap());
+		}
+
+		private Chunk getWritableChunk(int chunkIndex) {
+			if (chunkIndex >= chunks.length) {
+				int chunkCapacity = Math.max(chunkIndex + 1, chunks.length * 2);
+				chunks = Arrays.copyOf(chunks, chunkCapacity);
+				isChunkCopied = Arrays.copyOf(isChunkCopied, chunkCapacity);
+			}
+			if (!isChunkCopied[chunkIndex]) {
+				Chunk chunk = chunks[chunkIndex];
+				chunks[chunkIndex] = chunk == null ? new Chunk() : new Chunk(
+						chunk);
+				isChunkCopied[chunkIndex] = true;
+			}
+			return chunks[chunkIndex];
+		}
+	}
+
+	/**
+	 * Immutable open addressing map of taskIds to rows, with linear probing
+	 * 
+	 * - Slots are kept in slices of 256, and edits copy only the slices they
+	 * change<br>
+	 * - Removal shifts later entries of the probe back, so lookups never need
+	 * tombstones
+	 */
+	private static final class TaskIdRowMap {
+		private static final int SLICE_BITS = 8;
+		private static final int SLICE_SIZE = 1 << SLICE_BITS;
+		private static final int SLICE_MASK = SLICE_SIZE - 1;
+
+		static final TaskIdRowMap EMPTY = new TaskIdRowMap(
+				new int[1][SLICE_SIZE], new int[1][SLICE_SIZE], 0);
+
+		private final int[][] keySlices;
+		/** row + 1 of each slot, 0 if slot is empty */
+		private final int[][] rowSlices;
+		private final int size;
+
+		private TaskIdRowMap(int[][] keySlices, int[][] rowSlices, int size) {
+			this.keySlices = keySlices;
+			this.rowSlices = rowSlices;
+			this.size = size;
+		}
+
+		/**
+		 * Gets row of taskId
+		 * 
+		 * @param taskId
+		 * @return row, or -1 if taskId has no row
+		 */
+		int get(int taskId) {
+			return get(keySlices, rowSlices, taskId);
+		}
+
+		private static int get(int[][] keySlices, int[][] rowSlices,
+				int taskId) {
+			int slotMask = (keySlices.length << SLICE_BITS) - 1;
+			for (int slot = hash(taskId) & slotMask;; slot = (slot + 1)
+					& slotMask) {
+				int rowPlusOne = rowSlices[slot >>> SLICE_BITS][slot
+						& SLICE_MASK];
+				if (rowPlusOne == 0) {
+					return -1;
+				}
+				if (keySlices[slot >>> SLICE_BITS][slot & SLICE_MASK] == taskId) {
+					return rowPlusOne - 1;
+				}
+			}
+		}
+
+		private static int hash(int taskId) {
+			int hash = taskId * 0x9E3779B9;
+			return hash ^ (hash >>> 16);
+		}
+
+		/**
+		 * Builds new map from map, copying each slice it changes once
+		 */
+		static final class Editor {
+			private int[][] keySlices;
+			private int[][] rowSlices;
+			private boolean[] isSliceCopied;
+			private int size;
+
+			Editor(TaskIdRowMap map) {
+				keySlices = map.keySlices.clone();
+				rowSlices = map.rowSlices.clone();
+				isSliceCopied = new boolean[keySlices.length];
+				size = map.size;
+			}
+
+			int get(int taskId) {
+				return TaskIdRowMap.get(keySlices, rowSlices, taskId);
+			}
+
+			void put(int taskId, int row) {
+				if ((size + 1) * 2 > keySlices.length << SLICE_BITS) {
+					resize(keySlices.length * 2);
+				}
+				int slotMask = (keySlices.length << SLICE_BITS) - 1;
+				int slot = hash(taskId) & slotMask;
+				while (getRowPlusOne(slot) != 0 && getKey(slot) != taskId) {
+					slot = (slot + 1) & slotMask;
+				}
+				if (getRowPlusOne(slot) == 0) {
+					size++;
+				}
+				setSlot(slot, taskId, row + 1);
+			}
+
+			void remove(int taskId) {
+				int slotMask = (keySlices.length << SLICE_BITS) - 1;
+				int slot = hash(taskId) & slotMask;
+				while (getKey(slot) != taskId) {
+					if (getRowPlusOne(slot) == 0) {
+						return;
+					}
+					slot = (slot + 1) & slotMask;
+				}
+				if (getRowPlusOne(slot) == 0) {
+					return;
+				}
+				size--;
+				int emptySlot = slot;
+				for (int nextSlot = (slot + 1) & slotMask; getRowPlusOne(nextSlot) != 0; nextSlot = (nextSlot + 1)
+						& slotMask) {
+					int idealSlot = hash(getKey(nextSlot)) & slotMask;
+					// entry may move back only if its probe passed emptySlot
+					boolean isProbePastEmptySlot = emptySlot <= nextSlot ? idealSlot <= emptySlot
+							|| idealSlot > nextSlot
+							: idealSlot <= emptySlot && idealSlot > nextSlot;
+					if (isProbePastEmptySlot) {
+						setSlot(emptySlot, getKey(nextSlot),
+								getRowPlusOne(nextSlot));
+						emptySlot = nextSlot;
+					}
+				}
+				setSlot(emptySlot, 0, 0);
+			}
+
+			TaskIdRowMap toMap() {
+				return new TaskIdRowMap(keySlices, rowSlices, size);
+			}
+
+			private int getKey(int slot) {
+				return keySlices[slot >>> SLICE_BITS][slot & SLICE_MASK];
+			}
+
+			private int getRowPlusOne(int slot) {
+				return rowSlices[slot >>> SLICE_BITS][slot & SLICE_MASK];
+			}
+
+			private void setSlot(int slot, int taskId, int rowPlusOne) {
+				int sliceIndex = slot >>> SLICE_BITS;
+				if (!isSliceCopied[sliceIndex]) {
+					keySlices[sliceIndex] = keySlices[sliceIndex].clone();
+					rowSlices[sliceIndex] = rowSlices[sliceIndex].clone();
+					isSliceCopied[sliceIndex] = true;
+				}
+				keySlices[sliceIndex][slot & SLICE_MASK] = taskId;
+				rowSlices[sliceIndex][slot & SLICE_MASK] = rowPlusOne;
+			}
+
+			private void resize(int sliceCount) {
+				int[][] oldKeySlices = keySlices;
+				int[][] oldRowSlices = rowSlices;
+				keySlices = new int[sliceCount][SLICE_SIZE];
+				rowSlices = new int[sliceCount][SLICE_SIZE];
+				isSliceCopied = new boolean[sliceCount];
+				Arrays.fill(isSliceCopied, true);
+				size = 0;
+				for (int sliceIndex = 0; sliceIndex < oldKeySlices.length; sliceIndex++) {
+					for (int index = 0; index < SLICE_SIZE; index++) {
+						int rowPlusOne = oldRowSlices[sliceIndex][index];
+						if (rowPlusOne != 0) {
+							put(oldKeySlices[sliceIndex][index], rowPlusOne - 1);
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
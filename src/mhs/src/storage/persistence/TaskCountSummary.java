@@ -0,0 +1,152 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+/**
+ * TaskCountSummary
+ * 
+ * Counts of tasks matching a TaskQuery by category, done state and day
+ * 
+ * - Daily counts are by start date of timed tasks and end date of deadline
+ * tasks, and are only kept for queries with a date range<br>
+ * - Order and limit of the query are ignored
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public final class TaskCountSummary {
+
+	private static final String EXCEPTION_MESSAGE_NULL_PARAMETER = "%1$s cannot be null!";
+	private static final String PARAMETER_TASK_CATEGORY = "taskCategory";
+
+	/** task counts by category ordinal, then not done / done */
+	private final int[][] taskCounts = new int[TaskCategory.values().length][2];
+	private final SortedMap<LocalDate, Integer> dailyTaskCounts = new TreeMap<LocalDate, Integer>();
+	private final boolean isCountingDays;
+
+	/**
+	 * TaskCountSummary Constructor
+	 * 
+	 * @param isCountingDays
+	 *            true to keep daily counts of added tasks
+	 */
+	TaskCountSummary(boolean isCountingDays) {
+		this.isCountingDays = isCountingDays;
+	}
+
+	/**
+	 * Adds task counts of category and done state
+	 * 
+	 * @param taskCategory
+	 * @param isDone
+	 * @param taskCount
+	 */
+	void addTaskCount(TaskCategory taskCategory, boolean isDone, int taskCount) {
+		taskCounts[taskCategory.ordinal()][isDone ? 1 : 0] += taskCount;
+	}
+
+	/**
+	 * Adds matched task to counts
+	 * 
+	 * @param task
+	 */
+	void addTask(Task task) {
+		addTaskCount(task.getTaskCategory(), task.isDone(), 1);
+		if (!isCountingDays) {
+			return;
+		}
+		DateTime taskDateTime = null;
+		if (task.isTimed()) {
+			taskDateTime = task.getStartDateTime();
+		} else if (task.isDeadline()) {
+			taskDateTime = task.getEndDateTime();
+		}
+		if (taskDateTime == null) {
+			return;
+		}
+		LocalDate taskDate = taskDateTime.toLocalDate();
+		Integer dailyTaskCount = dailyTaskCounts.get(taskDate);
+		dailyTaskCounts.put(taskDate, dailyTaskCount == null ? 1
+				: dailyTaskCount + 1);
+	}
+
+	/**
+	 * Gets number of matched tasks
+	 * 
+	 * @return task count
+	 */
+	public int getTaskCount() {
+		return getTaskCount(false) + getTaskCount(true);
+	}
+
+	/**
+	 * Gets number of matched tasks of category
+	 * 
+	 * @param taskCategory
+	 * @return task count
+	 */
+	public int getTaskCount(TaskCategory taskCategory) {
+		return getTaskCount(taskCategory, false)
+				+ getTaskCount(taskCategory, true);
+	}
+
+	/**
+	 * Gets number of matched tasks that are done or not done
+	 * 
+	 * @param isDone
+	 * @return task count
+	 */
+	public int getTaskCount(boolean isDone) {
+		int taskCount = 0;
+		for (TaskCategory taskCategory : TaskCategory.values()) {
+			taskCount += getTaskCount(taskCategory, isDone);
+		}
+		return taskCount;
+	}
+
+	/**
+	 * Gets number of matched tasks of category that are done or not done
+	 * 
+	 * @param taskCategory
+	 * @param isDone
+	 * @return task count
+	 */
+	public int getTaskCount(TaskCategory taskCategory, boolean isDone) {
+		if (taskCategory == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_CATEGORY));
+		}
+		return taskCounts[taskCategory.ordinal()][isDone ? 1 : 0];
+	}
+
+	/**
+	 * Gets number of matched timed and deadline tasks per day, for queries
+	 * with a date range
+	 * 
+	 * @return read-only task counts by date, in date order
+	 */
+	public SortedMap<LocalDate, Integer> getDailyTaskCounts() {
+		return Collections.unmodifiableSortedMap(dailyTaskCounts);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder summary = new StringBuilder("TaskCountSummary [");
+		for (TaskCategory taskCategory : TaskCategory.values()) {
+			summary.append(taskCategory.getValue()).append('=')
+					.append(getTaskCount(taskCategory, false)).append('/')
+					.append(getTaskCount(taskCategory, true)).append(' ');
+		}
+		return summary.append("daily=").append(dailyTaskCounts).append(']')
+				.toString();
+	}
+
+}
@@ -0,0 +1,403 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import java.util.Collection;
+
+import mhs.src.storage.persistence.task.Task;
+
+import org.joda.time.DateTime;
+
+/**
+ * TaskDateIndex
+ * 
+ * Immutable date range index of non-deleted tasks in TaskLists, where put and
+ * remove return a new index sharing unchanged structure with the old index
+ * 
+ * - Timed tasks are kept in an interval tree (treap ordered by start time,
+ * augmented with the latest end time of each subtree)<br>
+ * - Deadline tasks are kept in a sorted map keyed on end time<br>
+ * - Floating tasks and tasks without dates are kept by taskId<br>
+ * - Index keys are recorded per taskId, so tasks are removed correctly even
+ * if they were changed after being indexed
+ * 
+ * Date range lookups return candidates in O(log n + k), which callers filter
+ * with their exact interval check.
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskDateIndex {
+
+	/** Widening of lookups in ms, covers the 1 ms inclusive interval padding */
+	private static final long LOOKUP_MARGIN_MILLIS = 2;
+
+	static final TaskDateIndex EMPTY = new TaskDateIndex(null,
+			PersistentSortedMap.<Integer, Long> empty(),
+			PersistentSortedMap.<TaskDateKey, Task> empty(),
+			PersistentSortedMap.<Integer, TaskDateKey> empty(),
+			PersistentSortedMap.<Integer, Task> empty(),
+			PersistentSortedMap.<Integer, Task> empty());
+
+	private final TimedTaskNode timedTaskRoot;
+	private final PersistentSortedMap<Integer, Long> timedTaskStarts;
+	private final PersistentSortedMap<TaskDateKey, Task> deadlineTasks;
+	private final PersistentSortedMap<Integer, TaskDateKey> deadlineTaskKeys;
+	private final PersistentSortedMap<Integer, Task> floatingTasks;
+	private final PersistentSortedMap<Integer, Task> undatedTasks;
+
+	/**
+	 * Sort key of a date time and taskId
+	 */
+	static final class TaskDateKey implements Comparable<TaskDateKey> {
+		final long millis;
+		final int taskId;
+
+		TaskDateKey(long millis, int taskId) {
+			this.millis = millis;
+			this.taskId = taskId;
+		}
+
+		@Override
+		public int compareTo(TaskDateKey other) {
+			if (millis != other.millis) {
+				return millis < other.millis ? -1 : 1;
+			}
+			return taskId < other.taskId ? -1 : (taskId == other.taskId ? 0
+					: 1);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof TaskDateKey
+					&& compareTo((TaskDateKey) other) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (millis ^ (millis >>> 32)) * 31 + taskId;
+		}
+	}
+
+	/**
+	 * Immutable interval tree node of a timed task
+	 */
+	private static final class TimedTaskNode {
+		final long start;
+		final long end;
+		final int taskId;
+		final int priority;
+		final Task task;
+		final long maxEnd;
+		final int size;
+		final TimedTaskNode left;
+		final TimedTaskNode right;
+
+		TimedTaskNode(long start, long end, Task task, int priority,
+				TimedTaskNode left, TimedTaskNode right) {
+			this.start = start;
+			this.end = end;
+			this.taskId = task.getTaskId();
+			this.task = task;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+			long subtreeMaxEnd = end;
+			if (left != null && left.maxEnd > subtreeMaxEnd) {
+				subtreeMaxEnd = left.maxEnd;
+			}
+			if (right != null && right.maxEnd > subtreeMaxEnd) {
+				subtreeMaxEnd = right.maxEnd;
+			}
+			this.maxEnd = subtreeMaxEnd;
+			this.size = 1 + sizeOf(left) + sizeOf(right);
+		}
+
+		TimedTaskNode withChildren(TimedTaskNode newLeft,
+				TimedTaskNode newRight) {
+			return new TimedTaskNode(start, end, task, priority, newLeft,
+					newRight);
+		}
+
+		int compareTo(long otherStart, int otherTaskId) {
+			if (start != otherStart) {
+				return start < otherStart ? -1 : 1;
+			}
+			return taskId < otherTaskId ? -1 : (taskId == otherTaskId ? 0 : 1);
+		}
+	}
+
+	private TaskDateIndex(TimedTaskNode timedTaskRoot,
+			PersistentSortedMap<Integer, Long> timedTaskStarts,
+			PersistentSortedMap<TaskDateKey, Task> deadlineTasks,
+			PersistentSortedMap<Integer, TaskDateKey> deadlineTaskKeys,
+			PersistentSortedMap<Integer, Task> floatingTasks,
+			PersistentSortedMap<Integer, Task> undatedTasks) {
+		this.timedTaskRoot = timedTaskRoot;
+		this.timedTaskStarts = timedTaskStarts;
+		this.deadlineTasks = deadlineTasks;
+		this.deadlineTaskKeys = deadlineTaskKeys;
+		this.floatingTasks = floatingTasks;
+		this.undatedTasks = undatedTasks;
+	}
+
+	/**
+	 * Returns index with task, replacing any task indexed with the same taskId
+	 * 
+	 * @param taskToIndex
+	 * @return new index
+	 */
+	TaskDateIndex put(Task taskToIndex) {
+		TaskDateIndex index = remove(taskToIndex.getTaskId());
+		if (taskToIndex.isDeleted()) {
+			return index;
+		}
+		switch (taskToIndex.getTaskCategory()) {
+		case TIMED:
+			return index.putTimedTask(taskToIndex);
+		case DEADLINE:
+			return index.putDeadlineTask(taskToIndex);
+		default:
+			return new TaskDateIndex(index.timedTaskRoot,
+					index.timedTaskStarts, index.deadlineTasks,
+					index.deadlineTaskKeys, index.floatingTasks.put(
+							taskToIndex.getTaskId(), taskToIndex),
+					index.undatedTasks);
+		}
+	}
+
+	private TaskDateIndex putTimedTask(Task timedTask) {
+		DateTime startDateTime = timedTask.getStartDateTime();
+		DateTime endDateTime = timedTask.getEndDateTime();
+		if (startDateTime == null || endDateTime == null) {
+			return putUndatedTask(timedTask);
+		}
+		long start = Math.min(startDateTime.getMillis(),
+				endDateTime.getMillis());
+		long end = Math.max(startDateTime.getMillis(), endDateTime.getMillis());
+		TimedTaskNode node = new TimedTaskNode(start, end, timedTask,
+				priorityOf(timedTask.getTaskId()), null, null);
+		return new TaskDateIndex(insert(timedTaskRoot, node),
+				timedTaskStarts.put(timedTask.getTaskId(), start),
+				deadlineTasks, deadlineTaskKeys, floatingTasks, undatedTasks);
+	}
+
+	private TaskDateIndex putDeadlineTask(Task deadlineTask) {
+		DateTime endDateTime = deadlineTask.getEndDateTime();
+		if (endDateTime == null) {
+			return putUndatedTask(deadlineTask);
+		}
+		TaskDateKey deadlineKey = new TaskDateKey(endDateTime.getMillis(),
+				deadlineTask.getTaskId());
+		return new TaskDateIndex(timedTaskRoot, timedTaskStarts,
+				deadlineTasks.put(deadlineKey, deadlineTask),
+				deadlineTaskKeys.put(deadlineTask.getTaskId(), deadlineKey),
+				floatingTasks, undatedTasks);
+	}
+
+	private TaskDateIndex putUndatedTask(Task undatedTask) {
+		return new TaskDateIndex(timedTaskRoot, timedTaskStarts,
+				deadlineTasks, deadlineTaskKeys, floatingTasks,
+				undatedTasks.put(undatedTask.getTaskId(), undatedTask));
+	}
+
+	/**
+	 * Returns index without task
+	 * 
+	 * @param taskId
+	 * @return new index, or this index if task is not indexed
+	 */
+	TaskDateIndex remove(int taskId) {
+		TimedTaskNode newTimedTaskRoot = timedTaskRoot;
+		Long start = timedTaskStarts.get(taskId);
+		if (start != null) {
+			newTimedTaskRoot = delete(timedTaskRoot, start, taskId);
+		}
+		PersistentSortedMap<TaskDateKey, Task> newDeadlineTasks = deadlineTasks;
+		TaskDateKey deadlineKey = deadlineTaskKeys.get(taskId);
+		if (deadlineKey != null) {
+			newDeadlineTasks = deadlineTasks.remove(deadlineKey);
+		}
+		if (start == null && deadlineKey == null
+				&& !floatingTasks.containsKey(taskId)
+				&& !undatedTasks.containsKey(taskId)) {
+			return this;
+		}
+		return new TaskDateIndex(newTimedTaskRoot,
+				timedTaskStarts.remove(taskId), newDeadlineTasks,
+				deadlineTaskKeys.remove(taskId), floatingTasks.remove(taskId),
+				undatedTasks.remove(taskId));
+	}
+
+	/**
+	 * Adds tasks that may fall within start and end date times to candidates
+	 * 
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @param includeFloatingTasks
+	 * @param candidateTasks
+	 */
+	void addCandidateTasks(DateTime startDateTime, DateTime endDateTime,
+			boolean includeFloatingTasks, Collection<Task> candidateTasks) {
+		long start = Math.min(startDateTime.getMillis(),
+				endDateTime.getMillis())
+				- LOOKUP_MARGIN_MILLIS;
+		long end = Math.max(startDateTime.getMillis(), endDateTime.getMillis())
+				+ LOOKUP_MARGIN_MILLIS;
+
+		addOverlappingTimedTasks(timedTaskRoot, start, end, candidateTasks);
+		for (Task deadlineTask : deadlineTasks.values(new TaskDateKey(start,
+				Integer.MIN_VALUE), true, new TaskDateKey(end,
+				Integer.MAX_VALUE), true)) {
+			candidateTasks.add(deadlineTask);
+		}
+		for (Task undatedTask : undatedTasks.values()) {
+			candidateTasks.add(undatedTask);
+		}
+		if (includeFloatingTasks) {
+			for (Task floatingTask : floatingTasks.values()) {
+				candidateTasks.add(floatingTask);
+			}
+		}
+	}
+
+	/**
+	 * Estimates number of candidates addCandidateTasks would add in O(log n),
+	 * for choosing between indexes
+	 * 
+	 * - Timed tasks are counted by start time within the range, so timed
+	 * tasks starting before the range and running into it are not counted
+	 * 
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @param includeFloatingTasks
+	 * @return estimated candidate count
+	 */
+	int estimateCandidateCount(DateTime startDateTime, DateTime endDateTime,
+			boolean includeFloatingTasks) {
+		long start = Math.min(startDateTime.getMillis(),
+				endDateTime.getMillis())
+				- LOOKUP_MARGIN_MILLIS;
+		long end = Math.max(startDateTime.getMillis(), endDateTime.getMillis())
+				+ LOOKUP_MARGIN_MILLIS;
+
+		int candidateCount = countTimedTasksStartingBefore(end + 1)
+				- countTimedTasksStartingBefore(start);
+		candidateCount += deadlineTasks.count(new TaskDateKey(start,
+				Integer.MIN_VALUE), true, new TaskDateKey(end,
+				Integer.MAX_VALUE), true);
+		candidateCount += undatedTasks.size();
+		if (includeFloatingTasks) {
+			candidateCount += floatingTasks.size();
+		}
+		return candidateCount;
+	}
+
+	/**
+	 * Counts timed tasks starting before start
+	 * 
+	 * @param start
+	 * @return number of timed tasks
+	 */
+	private int countTimedTasksStartingBefore(long start) {
+		int count = 0;
+		TimedTaskNode node = timedTaskRoot;
+		while (node != null) {
+			if (node.start < start) {
+				count += sizeOf(node.left) + 1;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Adds timed tasks in subtree overlapping start and end to candidates,
+	 * skipping subtrees that end before start or begin after end
+	 * 
+	 * @param node
+	 * @param start
+	 * @param end
+	 * @param candidateTasks
+	 */
+	private void addOverlappingTimedTasks(TimedTaskNode node, long start,
+			long end, Collection<Task> candidateTasks) {
+		while (node != null && node.maxEnd >= start) {
+			addOverlappingTimedTasks(node.left, start, end, candidateTasks);
+			if (node.start > end) {
+				return;
+			}
+			if (node.end >= start) {
+				candidateTasks.add(node.task);
+			}
+			node = node.right;
+		}
+	}
+
+	private TimedTaskNode insert(TimedTaskNode root, TimedTaskNode node) {
+		if (root == null) {
+			return node;
+		}
+		if (node.compareTo(root.start, root.taskId) < 0) {
+			TimedTaskNode newLeft = insert(root.left, node);
+			if (newLeft.priority > root.priority) {
+				// rotate right
+				return newLeft.withChildren(newLeft.left,
+						root.withChildren(newLeft.right, root.right));
+			}
+			return root.withChildren(newLeft, root.right);
+		}
+		TimedTaskNode newRight = insert(root.right, node);
+		if (newRight.priority > root.priority) {
+			// rotate left
+			return newRight.withChildren(
+					root.withChildren(root.left, newRight.left),
+					newRight.right);
+		}
+		return root.withChildren(root.left, newRight);
+	}
+
+	private TimedTaskNode delete(TimedTaskNode root, long start, int taskId) {
+		int comparison = -root.compareTo(start, taskId);
+		if (comparison < 0) {
+			return root.withChildren(delete(root.left, start, taskId),
+					root.right);
+		}
+		if (comparison > 0) {
+			return root.withChildren(root.left,
+					delete(root.right, start, taskId));
+		}
+		return merge(root.left, root.right);
+	}
+
+	/**
+	 * Merges treaps where all tasks of left start before tasks of right
+	 */
+	private TimedTaskNode merge(TimedTaskNode left, TimedTaskNode right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (left.priority > right.priority) {
+			return left.withChildren(left.left, merge(left.right, right));
+		}
+		return right.withChildren(merge(left, right.left), right.right);
+	}
+
+	private static int sizeOf(TimedTaskNode node) {
+		return node == null ? 0 : node.size;
+	}
+
+	/**
+	 * Derives pseudo-random treap priority from taskId
+	 */
+	private static int priorityOf(int taskId) {
+		int hash = taskId * 0x9E3779B9;
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		return hash ^ (hash >>> 13);
+	}
+
+}
@@ -2,11 +2,14 @@
 
 package mhs.src.storage.persistence;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 import mhs.src.common.MhsLogger;
@@ -25,21 +28,40 @@ import org.joda.time.Interval;
  * 1. taskList - by taskId<br>
  * 2. gCalTaskList - by gCalTaskId (Google Calendar)<br>
  * 3. gTaskList - by gTaskId (Google Tasks)<br>
+ * 4. dateIndex - non-deleted tasks by date range, see TaskDateIndex<br>
+ * 5. nameIndex - non-deleted tasks by task name tokens, see TaskNameIndex<br>
+ * 6. categoryIndex - non-deleted tasks and counts by TaskCategory, see
+ * TaskCategoryIndex<br>
+ * 7. orderIndex - non-deleted tasks in display order, see TaskOrderIndex<br>
+ * 8. trigramIndex - non-deleted tasks by task name trigrams, for fuzzy
+ * search, see TaskTrigramIndex<br>
+ * 9. columns - optional, all tasks in primitive columns for queries scanning
+ * every task, see TaskColumns<br>
+ * 
+ * Task lists are published as an immutable TaskListsSnapshot through a single
+ * atomic reference after each write or batch of writes. Queries read one
+ * snapshot without locking, so they never block on or see half-applied
+ * updates.
+ * 
+ * Writers take no locks. Each write builds a new snapshot from the latest one
+ * and publishes it with compare-and-set on the whole snapshot, rebuilding on
+ * the newer snapshot if another writer published first, so no write is lost.
+ * Writes of the same task are applied in the order they publish, last
+ * publish wins. Writers that must not overwrite a newer version of a task
+ * use the conditional replace and remove methods.
  * 
  * Functionality<br>
  * - logic for CRUD on tasks in all task lists<br>
  * - getters for taskLists<br>
+ * - task counts by category and done state<br>
  * 
  * @author Timothy Lim Yi Wen A0087048X
  */
 public class TaskLists {
 
-	/** Primary task list with index as key */
-	private static Map<Integer, Task> taskList = null;
-	/** task list with gCalId as key */
-	private static Map<String, Task> gCalTaskList = null;
-	/** task list with gTaskId as key */
-	private static Map<String, Task> gTaskList = null;
+	/** Latest published task lists and indexes */
+	private static final AtomicReference<TaskListsSnapshot> snapshot = new AtomicReference<TaskListsSnapshot>(
+			TaskListsSnapshot.EMPTY);
 
 	private static final Logger logger = MhsLogger.getLogger();
 
@@ -48,11 +70,21 @@ public class TaskLists {
 	private static final String PARAMETER_TASK_LIST_TO_INITIALIZE = "taskListToInitialize";
 	private static final String PARAMETER_TASK_TO_UPDATE_IN_TASK_LISTS = "taskToUpdateInTaskLists";
 	private static final String PARAMETER_TASK_TO_REMOVE_FROM_TASK_LISTS = "taskToRemoveFromTaskLists";
+	private static final String PARAMETER_TASKS_TO_UPDATE_IN_TASK_LISTS = "tasksToUpdateInTaskLists";
 	private static final String PARAMETER_QUERY_TASK_CATEGORY = "queryTaskCategory";
 	private static final String PARAMETER_G_CAL_TASK_ID = "gCalTaskId";
 	private static final String PARAMETER_TASK_NAME = "taskName";
 	private static final String PARAMETER_START_AND_END_DATE_TIMES = "start and end date times";
+	private static final String PARAMETER_TASK_QUERY = "taskQuery";
 	private static final String EXCEPTION_MESSAGE_TASK_DOES_NOT_EXIST = "Task does not exist!";
+	private static final String EXCEPTION_MESSAGE_INVALID_MAX_TASK_COUNT = "Invalid max task count %1$d";
+
+	private static final Comparator<Task> taskIdComparator = new Comparator<Task>() {
+		@Override
+		public int compare(Task task1, Task task2) {
+			return Integer.compare(task1.getTaskId(), task2.getTaskId());
+		}
+	};
 
 	/**
 	 * Constructor for TaskLists
@@ -60,6 +92,19 @@ public class TaskLists {
 	 * @param taskListToInitialize
 	 */
 	public TaskLists(Map<Integer, Task> taskListToInitialize) {
+		this(taskListToInitialize, false);
+	}
+
+	/**
+	 * Constructor for TaskLists
+	 * 
+	 * @param taskListToInitialize
+	 * @param isColumnarScanEnabled
+	 *            true to also keep tasks in primitive columns, so queries
+	 *            scanning all tasks read columns instead of task objects
+	 */
+	public TaskLists(Map<Integer, Task> taskListToInitialize,
+			boolean isColumnarScanEnabled) {
 		logEnterMethod("TaskLists");
 
 		if (taskListToInitialize == null) {
@@ -68,7 +113,7 @@ public class TaskLists {
 					PARAMETER_TASK_LIST_TO_INITIALIZE));
 		}
 
-		initializeTaskLists(taskListToInitialize);
+		initializeTaskLists(taskListToInitialize, isColumnarScanEnabled);
 
 		logExitMethod("TaskLists");
 	}
@@ -77,49 +122,45 @@ public class TaskLists {
 	 * Initialize task lists
 	 * 
 	 * @param taskListToInitialize
+	 * @param isColumnarScanEnabled
 	 */
-	private void initializeTaskLists(Map<Integer, Task> taskListToInitialize) {
+	private void initializeTaskLists(Map<Integer, Task> taskListToInitialize,
+			boolean isColumnarScanEnabled) {
 		logEnterMethod("initializeTaskLists");
 		assert (taskListToInitialize != null);
 
-		createTaskLists();
-		loadTaskListsFromTaskListToInitialize(taskListToInitialize);
+		loadTaskListsFromTaskListToInitialize(taskListToInitialize,
+				isColumnarScanEnabled);
 
 		logExitMethod("initializeTaskLists");
 	}
 
 	/**
-	 * Create task lists - taskList - gCalTaskList
-	 */
-	private void createTaskLists() {
-		logExitMethod("createTaskLists");
-
-		taskList = new LinkedHashMap<Integer, Task>();
-		gCalTaskList = new LinkedHashMap<String, Task>();
-		gTaskList = new LinkedHashMap<String, Task>();
-
-		logExitMethod("createTaskLists");
-	}
-
-	/**
-	 * Load task lists with tasks from taskListToInitialize
+	 * Load task lists with tasks from taskListToInitialize, published as one
+	 * snapshot
 	 * 
 	 * @param taskListToInitialize
+	 * @param isColumnarScanEnabled
 	 */
 	private void loadTaskListsFromTaskListToInitialize(
-			Map<Integer, Task> taskListToInitialize) {
+			Map<Integer, Task> taskListToInitialize,
+			boolean isColumnarScanEnabled) {
 		logEnterMethod("loadTaskListsFromTaskListToInitialize");
 		assert (taskListToInitialize != null);
 
-		for (Map.Entry<Integer, Task> entry : taskListToInitialize.entrySet()) {
-			Task taskToAdd = entry.getValue();
-			putTaskInTaskLists(taskToAdd);
-		}
+		TaskListsSnapshot currentSnapshot;
+		TaskListsSnapshot loadedSnapshot;
+		do {
+			currentSnapshot = snapshot.get();
+			loadedSnapshot = currentSnapshot.clear(isColumnarScanEnabled)
+					.putAll(taskListToInitialize.values());
+		} while (!snapshot.compareAndSet(currentSnapshot, loadedSnapshot));
 		logExitMethod("loadTaskListsFromTaskListToInitialize");
 	}
 
 	/**
-	 * Puts task in task lists according to task type
+	 * Puts task in task lists according to task type and publishes new
+	 * snapshot
 	 * 
 	 * Task List - All tasks<br>
 	 * gCalTaskList - Google Calendar Synced Tasks<br>
@@ -128,13 +169,11 @@ public class TaskLists {
 	 * @param taskToPut
 	 */
 	protected void putTaskInTaskLists(Task taskToPut) {
-		taskList.put(taskToPut.getTaskId(), taskToPut);
-		if (taskToPut.getgCalTaskId() != null) {
-			gCalTaskList.put(taskToPut.getgCalTaskId(), taskToPut);
-		}
-		if (taskToPut.getGTaskId() != null) {
-			gTaskList.put(taskToPut.getGTaskId(), taskToPut);
-		}
+		TaskListsSnapshot currentSnapshot;
+		do {
+			currentSnapshot = snapshot.get();
+		} while (!snapshot.compareAndSet(currentSnapshot,
+				currentSnapshot.put(taskToPut)));
 	}
 
 	// Task List task CRUD Methods
@@ -144,7 +183,7 @@ public class TaskLists {
 	 * 
 	 * @param taskToUpdateInTaskLists
 	 */
-	public synchronized void updateTaskInTaskLists(Task taskToUpdateInTaskLists) {
+	public void updateTaskInTaskLists(Task taskToUpdateInTaskLists) {
 		logEnterMethod("updateTaskInTaskLists");
 
 		if (taskToUpdateInTaskLists == null) {
@@ -157,6 +196,33 @@ public class TaskLists {
 		logExitMethod("updateTaskInTaskLists");
 	}
 
+	/**
+	 * Adds or updates tasks to task lists, published as one snapshot
+	 * 
+	 * - Batch is rebuilt on the newer snapshot if another writer published
+	 * first, so it never overwrites concurrent updates of other tasks
+	 * 
+	 * @param tasksToUpdateInTaskLists
+	 */
+	public void updateTasksInTaskLists(
+			Collection<Task> tasksToUpdateInTaskLists) {
+		logEnterMethod("updateTasksInTaskLists");
+
+		if (tasksToUpdateInTaskLists == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER,
+					PARAMETER_TASKS_TO_UPDATE_IN_TASK_LISTS));
+		}
+
+		TaskListsSnapshot currentSnapshot;
+		TaskListsSnapshot updatedSnapshot;
+		do {
+			currentSnapshot = snapshot.get();
+			updatedSnapshot = currentSnapshot.putAll(tasksToUpdateInTaskLists);
+		} while (!snapshot.compareAndSet(currentSnapshot, updatedSnapshot));
+		logExitMethod("updateTasksInTaskLists");
+	}
+
 	/**
 	 * Remove Task in task lists
 	 * 
@@ -176,15 +242,74 @@ public class TaskLists {
 	}
 
 	/**
-	 * Remove Task From Task Lists
+	 * Replaces task with updatedTask only if task lists still hold
+	 * expectedTask, the instance read from an earlier snapshot
+	 * 
+	 * @param expectedTask
+	 * @param updatedTask
+	 *            task with the same taskId as expectedTask
+	 * @return true if task was replaced
+	 */
+	public boolean replaceTaskInTaskLists(Task expectedTask, Task updatedTask) {
+		logEnterMethod("replaceTaskInTaskLists");
+		if (expectedTask == null || updatedTask == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER,
+					PARAMETER_TASK_TO_UPDATE_IN_TASK_LISTS));
+		}
+		assert (expectedTask.getTaskId() == updatedTask.getTaskId());
+		TaskListsSnapshot currentSnapshot;
+		do {
+			currentSnapshot = snapshot.get();
+			if (currentSnapshot.taskList.get(expectedTask.getTaskId()) != expectedTask) {
+				logExitMethod("replaceTaskInTaskLists");
+				return false;
+			}
+		} while (!snapshot.compareAndSet(currentSnapshot,
+				currentSnapshot.put(updatedTask)));
+		logExitMethod("replaceTaskInTaskLists");
+		return true;
+	}
+
+	/**
+	 * Removes task only if task lists still hold expectedTask, the instance
+	 * read from an earlier snapshot
+	 * 
+	 * @param expectedTask
+	 * @return true if task was removed
+	 */
+	public boolean removeTaskInTaskListsIfUnchanged(Task expectedTask) {
+		logEnterMethod("removeTaskInTaskListsIfUnchanged");
+		if (expectedTask == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER,
+					PARAMETER_TASK_TO_REMOVE_FROM_TASK_LISTS));
+		}
+		TaskListsSnapshot currentSnapshot;
+		do {
+			currentSnapshot = snapshot.get();
+			if (currentSnapshot.taskList.get(expectedTask.getTaskId()) != expectedTask) {
+				logExitMethod("removeTaskInTaskListsIfUnchanged");
+				return false;
+			}
+		} while (!snapshot.compareAndSet(currentSnapshot,
+				currentSnapshot.remove(expectedTask)));
+		logExitMethod("removeTaskInTaskListsIfUnchanged");
+		return true;
+	}
+
+	/**
+	 * Remove Task From Task Lists and publishes new snapshot
 	 * 
 	 * @param taskToRemoveFromTaskLists
 	 */
 	protected void removeTaskFromTaskLists(Task taskToRemoveFromTaskLists) {
 		logEnterMethod("removeTaskFromTaskLists");
-		taskList.remove(taskToRemoveFromTaskLists.getTaskId());
-		gCalTaskList.remove(taskToRemoveFromTaskLists.getgCalTaskId());
-		gTaskList.remove(taskToRemoveFromTaskLists.getgCalTaskUid());
+		TaskListsSnapshot currentSnapshot;
+		do {
+			currentSnapshot = snapshot.get();
+		} while (!snapshot.compareAndSet(currentSnapshot,
+				currentSnapshot.remove(taskToRemoveFromTaskLists)));
 		logExitMethod("removeTaskFromTaskLists");
 	}
 
@@ -201,12 +326,13 @@ public class TaskLists {
 	 */
 	public Task getTask(int taskId) throws TaskNotFoundException {
 		logEnterMethod("getTask");
-		if (!containsTask(taskId)) {
+		Task task = snapshot.get().taskList.get(taskId);
+		if (task == null) {
 			throw new TaskNotFoundException(
 					EXCEPTION_MESSAGE_TASK_DOES_NOT_EXIST);
 		}
 		logExitMethod("getTask");
-		return taskList.get(taskId).clone();
+		return task.clone();
 	}
 
 	/**
@@ -224,13 +350,14 @@ public class TaskLists {
 			throw new IllegalArgumentException(String.format(
 					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_G_CAL_TASK_ID));
 		}
-		if (!containsGoogleCalendarSyncTask(gCalTaskId)) {
+		Task task = snapshot.get().gCalTaskList.get(gCalTaskId);
+		if (task == null) {
 			throw new TaskNotFoundException(
 					EXCEPTION_MESSAGE_TASK_DOES_NOT_EXIST);
 		}
 
 		logExitMethod("getSyncTask");
-		return gCalTaskList.get(gCalTaskId).clone();
+		return task.clone();
 	}
 
 	/**
@@ -250,13 +377,14 @@ public class TaskLists {
 			throw new IllegalArgumentException(String.format(
 					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_G_CAL_TASK_ID));
 		}
-		if (!containsGoogleTaskSyncTask(gTaskId)) {
+		Task task = snapshot.get().gTaskList.get(gTaskId);
+		if (task == null) {
 			throw new TaskNotFoundException(
 					EXCEPTION_MESSAGE_TASK_DOES_NOT_EXIST);
 		}
 
 		logExitMethod("getGoogleTaskSyncTask");
-		return gTaskList.get(gTaskId).clone();
+		return task.clone();
 	}
 
 	/**
@@ -266,92 +394,190 @@ public class TaskLists {
 	 * @return list of all tasks
 	 */
 	public List<Task> getTasks(boolean orderByStartDateTime) {
-		logEnterMethod("getTasks");
+		return getTaskCursor(orderByStartDateTime).getTasks();
+	}
 
-		List<Task> queriedTaskRecordset = new LinkedList<Task>();
-		addAllNonDeletedTasksToRecordSet(queriedTaskRecordset);
-		sortTaskList(orderByStartDateTime, queriedTaskRecordset);
+	/**
+	 * Query all tasks from taskList
+	 * 
+	 * - Ordered tasks are read by index straight from the order index, without
+	 * collecting the tasks first
+	 * 
+	 * @param orderByStartDateTime
+	 * @return cursor over matched tasks
+	 */
+	public TaskQueryCursor getTaskCursor(boolean orderByStartDateTime) {
+		return getTaskCursor(new TaskQuery()
+				.orderByStartDateTime(orderByStartDateTime));
+	}
 
-		logExitMethod("getTasks");
-		return queriedTaskRecordset;
+	/**
+	 * Returns tasks matching every filter of query
+	 * 
+	 * @param taskQuery
+	 * @return list of matched tasks
+	 */
+	public List<Task> getTasks(TaskQuery taskQuery) {
+		return getTaskCursor(taskQuery).getTasks();
 	}
 
 	/**
-	 * Get all non-deleted tasks from taskList
+	 * Returns tasks matching every filter of query
 	 * 
-	 * @param queriedTaskRecordset
+	 * - Candidates are read from the most selective index for the query, see
+	 * TaskQueryPlanner
+	 * 
+	 * @param taskQuery
+	 * @return cursor over matched tasks
 	 */
-	private void addAllNonDeletedTasksToRecordSet(
-			List<Task> queriedTaskRecordset) {
-		logEnterMethod("getAllNonDeletedTasks");
-		for (Map.Entry<Integer, Task> entry : taskList.entrySet()) {
-			Task taskEntry = entry.getValue();
-			if (taskEntry.isDeleted()) {
-				continue;
-			}
-			queriedTaskRecordset.add(taskEntry.clone());
+	public TaskQueryCursor getTaskCursor(TaskQuery taskQuery) {
+		logEnterMethod("getTaskCursor");
+		if (taskQuery == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_QUERY));
 		}
-		logExitMethod("getAllNonDeletedTasks");
+
+		TaskListsSnapshot taskLists = snapshot.get();
+		TaskQueryPlanner taskQueryPlanner = new TaskQueryPlanner(taskLists,
+				taskQuery);
+		List<Task> matchedTasks = taskQueryPlanner.execute(taskQueryPlanner
+				.plan());
+
+		logExitMethod("getTaskCursor");
+		return new TaskQueryCursor(matchedTasks, taskLists.generation);
 	}
 
 	/**
-	 * Return tasks with matching taskName, case-insensitive substring search
-	 * (exclusive of deleted tasks)
+	 * Gets source of candidate tasks the query would be run with
+	 * 
+	 * @param taskQuery
+	 * @return plan
+	 */
+	public TaskQueryPlan getQueryPlan(TaskQuery taskQuery) {
+		if (taskQuery == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_QUERY));
+		}
+		return new TaskQueryPlanner(snapshot.get(), taskQuery).plan();
+	}
+
+	/**
+	 * Counts tasks matching every filter of query, without collecting or
+	 * cloning them
+	 * 
+	 * - Queries filtering only on category and done state are counted from
+	 * the category index counts
+	 * 
+	 * @param taskQuery
+	 * @return task count, at most the query limit
+	 */
+	public int countTasks(TaskQuery taskQuery) {
+		logEnterMethod("countTasks");
+		if (taskQuery == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_QUERY));
+		}
+		TaskQueryPlanner taskQueryPlanner = new TaskQueryPlanner(
+				snapshot.get(), taskQuery);
+		int taskCount = taskQueryPlanner.count(taskQueryPlanner.plan());
+		logExitMethod("countTasks");
+		return taskCount;
+	}
+
+	/**
+	 * Counts tasks matching every filter of query by category, done state and
+	 * day, without collecting or cloning them
+	 * 
+	 * @param taskQuery
+	 * @return task count summary
+	 */
+	public TaskCountSummary getTaskCountSummary(TaskQuery taskQuery) {
+		logEnterMethod("getTaskCountSummary");
+		if (taskQuery == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_QUERY));
+		}
+		TaskQueryPlanner taskQueryPlanner = new TaskQueryPlanner(
+				snapshot.get(), taskQuery);
+		TaskCountSummary taskCountSummary = taskQueryPlanner
+				.summarize(taskQueryPlanner.plan());
+		logExitMethod("getTaskCountSummary");
+		return taskCountSummary;
+	}
+
+	/**
+	 * Return tasks with names closest to taskName, for mistyped task names
 	 * 
 	 * @param taskName
-	 * @param orderByStartDateTime
-	 * @return list of matched tasks
+	 * @param maxTaskCount
+	 * @return list of closest tasks, closest first
 	 */
-	public List<Task> getTasks(String taskName, boolean orderByStartDateTime) {
-		logEnterMethod("getTasks");
+	public List<Task> getFuzzyTasks(String taskName, int maxTaskCount) {
+		return getFuzzyTaskCursor(taskName, maxTaskCount).getTasks();
+	}
+
+	/**
+	 * Return tasks with names closest to taskName, for mistyped task names
+	 * 
+	 * - Names match if part of the name is within a few edits of taskName,
+	 * case-insensitive, see TaskTrigramIndex<br>
+	 * - Closer names come first, and deleted tasks are excluded
+	 * 
+	 * @param taskName
+	 * @param maxTaskCount
+	 *            most tasks to return
+	 * @return cursor over closest tasks
+	 */
+	public TaskQueryCursor getFuzzyTaskCursor(String taskName, int maxTaskCount) {
+		logEnterMethod("getFuzzyTaskCursor");
 		if (taskName == null) {
 			throw new IllegalArgumentException(String.format(
 					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_NAME));
 		}
+		if (maxTaskCount < 0) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_INVALID_MAX_TASK_COUNT, maxTaskCount));
+		}
 
-		List<Task> queriedTaskRecordset = new LinkedList<Task>();
-		addAllNonDeletedTasksWithMatchingTaskNameToRecordSet(taskName,
-				queriedTaskRecordset);
-		sortTaskList(orderByStartDateTime, queriedTaskRecordset);
+		TaskListsSnapshot taskLists = snapshot.get();
+		List<Task> closestTasks = new ArrayList<Task>();
+		for (int taskId : taskLists.trigramIndex.findClosestTaskIds(taskName,
+				maxTaskCount)) {
+			closestTasks.add(taskLists.taskList.get(taskId));
+		}
 
-		logExitMethod("getTasks");
-		return queriedTaskRecordset;
+		logExitMethod("getFuzzyTaskCursor");
+		return new TaskQueryCursor(closestTasks, taskLists.generation);
 	}
 
 	/**
-	 * Get all non-deleted tasks with matching task name
+	 * Return tasks with matching taskName, case-insensitive substring search
+	 * (exclusive of deleted tasks)
 	 * 
-	 * @param queryTaskName
-	 * @param queriedTaskRecordset
+	 * @param taskName
+	 * @param orderByStartDateTime
+	 * @return list of matched tasks
 	 */
-	private void addAllNonDeletedTasksWithMatchingTaskNameToRecordSet(
-			String queryTaskName, List<Task> queriedTaskRecordset) {
-		logEnterMethod("getAllNonDeletedTasksWithMatchingTaskName");
-		for (Map.Entry<Integer, Task> entry : taskList.entrySet()) {
-			Task taskEntry = entry.getValue();
-			if (taskEntry.isDeleted()) {
-				continue;
-			}
-			if (isQueryTaskNameContainedInTaskEntryTaskName(queryTaskName,
-					taskEntry)) {
-				queriedTaskRecordset.add(taskEntry.clone());
-			}
-		}
-		logExitMethod("getAllNonDeletedTasksWithMatchingTaskName");
+	public List<Task> getTasks(String taskName, boolean orderByStartDateTime) {
+		return getTaskCursor(taskName, orderByStartDateTime).getTasks();
 	}
 
 	/**
-	 * Checks if specified query task name is contained within Task Entry's task
-	 * name
+	 * Return tasks with matching taskName, case-insensitive substring search
+	 * (exclusive of deleted tasks)
 	 * 
-	 * @param queryTaskName
-	 * @param taskEntry
-	 * @return
+	 * @param taskName
+	 * @param orderByStartDateTime
+	 * @return cursor over matched tasks
 	 */
-	protected boolean isQueryTaskNameContainedInTaskEntryTaskName(
-			String queryTaskName, Task taskEntry) {
-		return taskEntry.getTaskName().toLowerCase()
-				.contains(queryTaskName.toLowerCase());
+	public TaskQueryCursor getTaskCursor(String taskName,
+			boolean orderByStartDateTime) {
+		if (taskName == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_NAME));
+		}
+		return getTaskCursor(new TaskQuery().withTaskName(taskName)
+				.orderByStartDateTime(orderByStartDateTime));
 	}
 
 	/**
@@ -364,44 +590,30 @@ public class TaskLists {
 	 */
 	public List<Task> getTasks(TaskCategory queryTaskCategory,
 			boolean orderByStartDateTime) {
-		logEnterMethod("getTasks");
-		if (queryTaskCategory == null) {
-			throw new IllegalArgumentException(String.format(
-					EXCEPTION_MESSAGE_NULL_PARAMETER,
-					PARAMETER_QUERY_TASK_CATEGORY));
-		}
-
-		List<Task> queriedTaskRecordset = new LinkedList<Task>();
-		addAllNonDeletedTasksWithTaskCategoryToRecordSet(queryTaskCategory,
-				queriedTaskRecordset);
-		sortTaskList(orderByStartDateTime, queriedTaskRecordset);
-
-		logExitMethod("getTasks");
-		return queriedTaskRecordset;
+		return getTaskCursor(queryTaskCategory, orderByStartDateTime)
+				.getTasks();
 	}
 
 	/**
-	 * Gets non deleted tasks and adds them to queriedTaskRecordset
+	 * Returns tasks that match specified TaskCategory (exclusive of deleted
+	 * tasks)
+	 * 
+	 * - Tasks in taskId order are read by index straight from the category
+	 * index, without collecting the tasks first
 	 * 
 	 * @param queryTaskCategory
-	 * @param queriedTaskRecordset
+	 * @param orderByStartDateTime
+	 * @return cursor over matched tasks
 	 */
-	private void addAllNonDeletedTasksWithTaskCategoryToRecordSet(
-			TaskCategory queryTaskCategory, List<Task> queriedTaskRecordset) {
-		logEnterMethod("getAllNonDeletedTasksWithTaskCategory");
-
-		for (Map.Entry<Integer, Task> entry : taskList.entrySet()) {
-			Task taskEntry = entry.getValue();
-			if (taskEntry.isDeleted()) {
-				continue;
-			}
-
-			TaskCategory taskCategory = taskEntry.getTaskCategory();
-			if (taskCategory.equals(queryTaskCategory)) {
-				queriedTaskRecordset.add(taskEntry.clone());
-			}
+	public TaskQueryCursor getTaskCursor(TaskCategory queryTaskCategory,
+			boolean orderByStartDateTime) {
+		if (queryTaskCategory == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER,
+					PARAMETER_QUERY_TASK_CATEGORY));
 		}
-		logExitMethod("getAllNonDeletedTasksWithTaskCategory");
+		return getTaskCursor(new TaskQuery().withTaskCategories(
+				queryTaskCategory).orderByStartDateTime(orderByStartDateTime));
 	}
 
 	/**
@@ -416,23 +628,31 @@ public class TaskLists {
 	 */
 	public List<Task> getTasks(DateTime startDateTime, DateTime endDateTime,
 			boolean includeFloatingTasks, boolean orderByStartDateTime) {
-		logEnterMethod("getTasks");
+		return getTaskCursor(startDateTime, endDateTime, includeFloatingTasks,
+				orderByStartDateTime).getTasks();
+	}
 
+	/**
+	 * Returns tasks that is within startTime or endTime inclusive (exclusive of
+	 * deleted tasks)
+	 * 
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @param includeFloatingTasks
+	 * @param orderByStartDateTime
+	 * @return cursor over matched tasks
+	 */
+	public TaskQueryCursor getTaskCursor(DateTime startDateTime,
+			DateTime endDateTime, boolean includeFloatingTasks,
+			boolean orderByStartDateTime) {
 		if (startDateTime == null | endDateTime == null) {
 			throw new IllegalArgumentException(String.format(
 					EXCEPTION_MESSAGE_NULL_PARAMETER,
 					PARAMETER_START_AND_END_DATE_TIMES));
 		}
-
-		List<Task> queriedTaskRecordset = new LinkedList<Task>();
-		Interval dateTimeInterval = getInclusiveDateTimeInterval(startDateTime,
-				endDateTime);
-		addAllTasksWithinIntervalToRecordSet(queriedTaskRecordset,
-				dateTimeInterval, includeFloatingTasks);
-		sortTaskList(orderByStartDateTime, queriedTaskRecordset);
-
-		logExitMethod("getTasks");
-		return queriedTaskRecordset;
+		return getTaskCursor(new TaskQuery().withinDateRange(startDateTime,
+				endDateTime, includeFloatingTasks).orderByStartDateTime(
+				orderByStartDateTime));
 	}
 
 	/**
@@ -461,61 +681,19 @@ public class TaskLists {
 	}
 
 	/**
-	 * Gets tasks within DateTime interval and adds them to queriedTaskRecordset
+	 * Returns task that matches any of the specified parameters (exclusive of
+	 * deleted tasks)
 	 * 
-	 * @param queriedTaskRecordset
-	 * @param dateTimeInterval
-	 * @param includeFloatingTasks
+	 * @param taskName
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @param orderByStartDateTime
+	 * @return list of matched tasks
 	 */
-	private void addAllTasksWithinIntervalToRecordSet(
-			List<Task> queriedTaskRecordset, Interval dateTimeInterval,
-			boolean includeFloatingTasks) {
-		logEnterMethod("getAllTasksWithinInterval");
-		for (Map.Entry<Integer, Task> entry : taskList.entrySet()) {
-			Task taskEntry = entry.getValue();
-			if (taskEntry.isDeleted()) {
-				continue;
-			}
-
-			addTaskFormatWithinIntervalToRecordSet(queriedTaskRecordset,
-					dateTimeInterval, includeFloatingTasks, taskEntry);
-
-		}
-		logExitMethod("getAllTasksWithinInterval");
-	}
-
-	/**
-	 * Adds task within interval to recordset based on task format
-	 * 
-	 * @param queriedTaskRecordset
-	 * @param dateTimeInterval
-	 * @param includeFloatingTasks
-	 * @param entry
-	 * @param taskEntry
-	 */
-	private void addTaskFormatWithinIntervalToRecordSet(
-			List<Task> queriedTaskRecordset, Interval dateTimeInterval,
-			boolean includeFloatingTasks, Task taskEntry) {
-		switch (taskEntry.getTaskCategory()) {
-		case TIMED:
-			if (isWithinInterval(dateTimeInterval,
-					taskEntry.getStartDateTime(), taskEntry.getEndDateTime())) {
-				queriedTaskRecordset.add(taskEntry.clone());
-			}
-			break;
-		case DEADLINE:
-			if (isWithinInterval(dateTimeInterval, taskEntry.getEndDateTime(),
-					taskEntry.getEndDateTime())) {
-				queriedTaskRecordset.add(taskEntry.clone());
-			}
-			break;
-		case FLOATING:
-			if (includeFloatingTasks) {
-				queriedTaskRecordset.add(taskEntry.clone());
-			}
-		default:
-			break;
-		}
+	public List<Task> getTasks(String taskName, DateTime startDateTime,
+			DateTime endDateTime, boolean orderByStartDateTime) {
+		return getTaskCursor(taskName, startDateTime, endDateTime,
+				orderByStartDateTime).getTasks();
 	}
 
 	/**
@@ -526,11 +704,11 @@ public class TaskLists {
 	 * @param startDateTime
 	 * @param endDateTime
 	 * @param orderByStartDateTime
-	 * @return list of matched tasks
+	 * @return cursor over matched tasks
 	 */
-	public List<Task> getTasks(String taskName, DateTime startDateTime,
+	public TaskQueryCursor getTaskCursor(String taskName, DateTime startDateTime,
 			DateTime endDateTime, boolean orderByStartDateTime) {
-		logEnterMethod("getTasks");
+		logEnterMethod("getTaskCursor");
 		if (taskName == null) {
 			throw new IllegalArgumentException(String.format(
 					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_NAME));
@@ -542,32 +720,35 @@ public class TaskLists {
 					PARAMETER_START_AND_END_DATE_TIMES));
 		}
 
-		List<Task> queriedTaskRecordset = new LinkedList<Task>();
-		addTasksMatchingParametersToRecordSet(taskName, startDateTime,
-				endDateTime, queriedTaskRecordset);
-		sortTaskList(orderByStartDateTime, queriedTaskRecordset);
+		TaskListsSnapshot taskLists = snapshot.get();
+		List<Task> queriedTaskRecordset = new ArrayList<Task>();
+		addTasksMatchingParametersToRecordSet(taskLists, taskName,
+				startDateTime, endDateTime, queriedTaskRecordset);
+		sortTaskList(taskLists, orderByStartDateTime, queriedTaskRecordset);
 
-		logExitMethod("getTasks");
-		return queriedTaskRecordset;
+		logExitMethod("getTaskCursor");
+		return new TaskQueryCursor(queriedTaskRecordset,
+				taskLists.generation);
 	}
 
 	/**
 	 * Gets tasks matching any of the specified parameters and adds them to
 	 * queriedTaskRecordset
 	 * 
+	 * @param taskLists
 	 * @param taskName
 	 * @param startDateTime
 	 * @param endDateTime
 	 * @param includeFloatingTasks
 	 * @param queriedTaskRecordset
 	 */
-	private void addTasksMatchingParametersToRecordSet(String taskName,
+	private void addTasksMatchingParametersToRecordSet(
+			TaskListsSnapshot taskLists, String taskName,
 			DateTime startDateTime, DateTime endDateTime,
 			List<Task> queriedTaskRecordset) {
 		logEnterMethod("getTasksMatchingParameters");
-		for (Map.Entry<Integer, Task> entry : taskList.entrySet()) {
+		for (Task taskEntry : taskLists.taskList.values()) {
 
-			Task taskEntry = entry.getValue();
 			if (taskEntry.isDeleted()) {
 				continue;
 			}
@@ -576,13 +757,13 @@ public class TaskLists {
 					startDateTime, endDateTime);
 			// Task name match
 			if (taskEntry.getTaskName().contains(taskName)) {
-				queriedTaskRecordset.add(taskEntry.clone());
+				queriedTaskRecordset.add(taskEntry);
 				continue;
 			}
 			// Datetime match
 			if (dateTimeInterval.contains(taskEntry.getStartDateTime())
 					|| dateTimeInterval.contains(taskEntry.getEndDateTime())) {
-				queriedTaskRecordset.add(taskEntry.clone());
+				queriedTaskRecordset.add(taskEntry);
 				continue;
 			}
 		}
@@ -603,7 +784,25 @@ public class TaskLists {
 	public List<Task> getTasks(String taskName, TaskCategory taskCategory,
 			DateTime startDateTime, DateTime endDateTime,
 			boolean orderByStartDateTime) {
-		logEnterMethod("getTasks");
+		return getTaskCursor(taskName, taskCategory, startDateTime,
+				endDateTime, orderByStartDateTime).getTasks();
+	}
+
+	/**
+	 * Returns task that matches any of the specified parameters (exclusive of
+	 * deleted tasks)
+	 * 
+	 * @param taskName
+	 * @param taskCategory
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @param orderByStartDateTime
+	 * @return cursor over matched tasks
+	 */
+	public TaskQueryCursor getTaskCursor(String taskName,
+			TaskCategory taskCategory, DateTime startDateTime,
+			DateTime endDateTime, boolean orderByStartDateTime) {
+		logEnterMethod("getTaskCursor");
 
 		if (taskName == null) {
 			throw new IllegalArgumentException(String.format(
@@ -616,117 +815,176 @@ public class TaskLists {
 					PARAMETER_START_AND_END_DATE_TIMES));
 		}
 
-		List<Task> queriedTaskRecordset = new LinkedList<Task>();
-		addTasksMatchingParametersToRecordSet(taskName, taskCategory,
-				startDateTime, endDateTime, queriedTaskRecordset);
-		sortTaskList(orderByStartDateTime, queriedTaskRecordset);
+		TaskListsSnapshot taskLists = snapshot.get();
+		List<Task> queriedTaskRecordset = new ArrayList<Task>();
+		addTasksMatchingParametersToRecordSet(taskLists, taskName,
+				taskCategory, startDateTime, endDateTime, queriedTaskRecordset);
+		sortTaskList(taskLists, orderByStartDateTime, queriedTaskRecordset);
 
-		logExitMethod("getTasks");
-		return queriedTaskRecordset;
+		logExitMethod("getTaskCursor");
+		return new TaskQueryCursor(queriedTaskRecordset,
+				taskLists.generation);
 	}
 
 	/**
 	 * Gets tasks matching any of the specified parameters and adds them to
 	 * queriedTaskRecordset
 	 * 
+	 * - Tasks of taskCategory are taken from the category index without
+	 * checking other parameters
+	 * 
+	 * @param taskLists
 	 * @param taskName
 	 * @param taskCategory
 	 * @param startDateTime
 	 * @param endDateTime
 	 * @param queriedTaskRecordset
 	 */
-	private void addTasksMatchingParametersToRecordSet(String taskName,
+	private void addTasksMatchingParametersToRecordSet(
+			TaskListsSnapshot taskLists, String taskName,
 			TaskCategory taskCategory, DateTime startDateTime,
 			DateTime endDateTime, List<Task> queriedTaskRecordset) {
 		logEnterMethod("getTasksMatchingParameters");
 
-		for (Map.Entry<Integer, Task> entry : taskList.entrySet()) {
-			Task taskEntry = entry.getValue();
-			if (taskEntry.isDeleted()) {
-				continue;
-			}
-
-			Interval dateTimeInterval = getInclusiveDateTimeInterval(
-					startDateTime, endDateTime);
-
+		Interval dateTimeInterval = getInclusiveDateTimeInterval(
+				startDateTime, endDateTime);
+		List<Task> matchedTasks = new ArrayList<Task>();
+		for (TaskCategory otherTaskCategory : TaskCategory.values()) {
 			// Category match
-			if (taskEntry.getTaskCategory().equals(taskCategory)) {
-				queriedTaskRecordset.add(taskEntry.clone());
+			if (otherTaskCategory.equals(taskCategory)) {
+				for (Task taskEntry : taskLists.categoryIndex
+						.getTasks(taskCategory)) {
+					matchedTasks.add(taskEntry);
+				}
 				continue;
 			}
-			// Task name match
-			if (taskEntry.getTaskName().contains(taskName)) {
-				queriedTaskRecordset.add(taskEntry.clone());
-				continue;
+			for (Task taskEntry : taskLists.categoryIndex
+					.getTasks(otherTaskCategory)) {
+				// Task name match
+				if (taskEntry.getTaskName().contains(taskName)) {
+					matchedTasks.add(taskEntry);
+					continue;
+				}
+				// Datetime range match
+				if (dateTimeInterval.contains(taskEntry.getStartDateTime())
+						|| dateTimeInterval
+								.contains(taskEntry.getEndDateTime())) {
+					matchedTasks.add(taskEntry);
+					continue;
+				}
 			}
-			// Datetime range match
-			if (dateTimeInterval.contains(taskEntry.getStartDateTime())
-					|| dateTimeInterval.contains(taskEntry.getEndDateTime())) {
-				queriedTaskRecordset.add(taskEntry.clone());
+		}
+		Collections.sort(matchedTasks, taskIdComparator);
+
+		for (Task taskEntry : matchedTasks) {
+			if (taskEntry.isDeleted()) {
 				continue;
 			}
+			queriedTaskRecordset.add(taskEntry);
 		}
 		logExitMethod("getTasksMatchingParameters");
 	}
 
-	/**
-	 * Checks if startDateTime and endDateTime are within a dateTime interval
-	 * 
-	 * - Includes overlapping datetimes
-	 * 
-	 * @param dateTimeInterval
-	 * @param startDateTime
-	 * @param endDateTime
-	 * @return true if start and end DateTime are with dateTimeInterval
-	 */
-	private boolean isWithinInterval(Interval dateTimeInterval,
-			DateTime startDateTime, DateTime endDateTime) {
-		logEnterMethod("isWithinInterval");
-		logExitMethod("isWithinInterval");
-		return dateTimeInterval.overlaps(getInclusiveDateTimeInterval(
-				startDateTime, endDateTime));
-	}
-
 	/**
 	 * Sort task list by startDateTime if orderByStartDateTime is true,
 	 * otherwise, normal ordering by taskId is used
 	 * 
+	 * @param taskLists
 	 * @param orderByStartDateTime
 	 * @param queriedTaskRecordset
 	 */
-	private void sortTaskList(boolean orderByStartDateTime,
-			List<Task> queriedTaskRecordset) {
+	private void sortTaskList(TaskListsSnapshot taskLists,
+			boolean orderByStartDateTime, List<Task> queriedTaskRecordset) {
 		logEnterMethod("sortTaskList");
 		if (orderByStartDateTime) {
-			orderTaskRecordSetByStartDateTime(queriedTaskRecordset);
+			orderTaskRecordSetByStartDateTime(taskLists, queriedTaskRecordset);
 		}
 		logExitMethod("sortTaskList");
 	}
 
 	/**
-	 * Orders list of tasks by start DateTime
+	 * Orders list of tasks by start DateTime, using sort keys of order index
 	 * 
+	 * @param taskLists
 	 * @param queriedTaskRecordset
 	 */
 	private void orderTaskRecordSetByStartDateTime(
-			List<Task> queriedTaskRecordset) {
+			TaskListsSnapshot taskLists, List<Task> queriedTaskRecordset) {
 		logEnterMethod("orderTaskRecordSetByStartDateTime");
-		MhsTaskOrderingComparator taskStartDateTimeComparator = new MhsTaskOrderingComparator();
-		Collections.sort(queriedTaskRecordset, taskStartDateTimeComparator);
+		taskLists.orderIndex.order(queriedTaskRecordset);
 		logExitMethod("orderTaskRecordSetByStartDateTime");
 	}
 
+	/**
+	 * Gets number of non-deleted tasks of category
+	 * 
+	 * @param taskCategory
+	 * @return task count
+	 */
+	public int getTaskCount(TaskCategory taskCategory) {
+		logEnterMethod("getTaskCount");
+		if (taskCategory == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER,
+					PARAMETER_QUERY_TASK_CATEGORY));
+		}
+		logExitMethod("getTaskCount");
+		return snapshot.get().categoryIndex.getTaskCount(taskCategory);
+	}
+
+	/**
+	 * Gets number of non-deleted tasks of category that are done or not done
+	 * 
+	 * @param taskCategory
+	 * @param isDone
+	 * @return task count
+	 */
+	public int getTaskCount(TaskCategory taskCategory, boolean isDone) {
+		logEnterMethod("getTaskCount");
+		TaskCategoryIndex categoryIndex = snapshot.get().categoryIndex;
+		int doneTaskCount = categoryIndex.getDoneTaskCount(taskCategory);
+		int taskCount = isDone ? doneTaskCount : categoryIndex
+				.getTaskCount(taskCategory) - doneTaskCount;
+		logExitMethod("getTaskCount");
+		return taskCount;
+	}
+
+	/**
+	 * Gets largest taskId in task lists
+	 * 
+	 * @return largest taskId, 0 if task lists are empty
+	 */
+	public int getMaxTaskId() {
+		logEnterMethod("getMaxTaskId");
+		Map.Entry<Integer, Task> lastTaskEntry = snapshot.get().taskList
+				.getLastEntry();
+		logExitMethod("getMaxTaskId");
+		return lastTaskEntry == null ? 0 : lastTaskEntry.getKey();
+	}
+
 	/**
 	 * Clear all task lists
 	 */
 	public void clearTaskLists() {
 		logEnterMethod("clearTaskLists");
-		taskList.clear();
-		gCalTaskList.clear();
-		gTaskList.clear();
+		TaskListsSnapshot currentSnapshot;
+		do {
+			currentSnapshot = snapshot.get();
+		} while (!snapshot.compareAndSet(currentSnapshot,
+				currentSnapshot.clear()));
 		logExitMethod("clearTaskLists");
 	}
 
+	/**
+	 * Gets mutation generation of task lists, which increases with every put,
+	 * remove and clear of task lists
+	 * 
+	 * @return generation
+	 */
+	public long getGeneration() {
+		return snapshot.get().generation;
+	}
+
 	/**
 	 * Checks if Task Lists contains Task
 	 * 
@@ -736,7 +994,7 @@ public class TaskLists {
 	public boolean containsTask(int taskId) {
 		logEnterMethod("containsTask");
 		boolean containsTask = false;
-		if (taskList.containsKey(taskId)) {
+		if (snapshot.get().taskList.containsKey(taskId)) {
 			logExitMethod("containsTask");
 			containsTask = true;
 		}
@@ -757,7 +1015,7 @@ public class TaskLists {
 					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_G_CAL_TASK_ID));
 		}
 		boolean containsSyncTask = false;
-		if (gCalTaskList.containsKey(gCalTaskId)) {
+		if (snapshot.get().gCalTaskList.containsKey(gCalTaskId)) {
 			containsSyncTask = true;
 		}
 		logExitMethod("containsSyncTask");
@@ -777,7 +1035,7 @@ public class TaskLists {
 					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_G_CAL_TASK_ID));
 		}
 		boolean containsSyncTask = false;
-		if (gTaskList.containsKey(gTaskId)) {
+		if (snapshot.get().gTaskList.containsKey(gTaskId)) {
 			containsSyncTask = true;
 		}
 		logExitMethod("containsGoogleTaskSyncTask");
@@ -787,34 +1045,47 @@ public class TaskLists {
 	/**
 	 * Getter for task list with taskId as key
 	 * 
-	 * @return taskList
+	 * @return read-only view of taskList in latest snapshot, in taskId order,
+	 *         unaffected by later updates
 	 */
 	public Map<Integer, Task> getTaskList() {
 		logEnterMethod("getTaskList");
 		logExitMethod("getTaskList");
-		return taskList;
+		return snapshot.get().taskList.asMap();
+	}
+
+	/**
+	 * Getter for point in time copy of task list, safe to iterate while task
+	 * lists are being updated
+	 * 
+	 * @return copy of taskList
+	 */
+	public Map<Integer, Task> getTaskListSnapshot() {
+		logEnterMethod("getTaskListSnapshot");
+		logExitMethod("getTaskListSnapshot");
+		return new LinkedHashMap<Integer, Task>(snapshot.get().taskList.asMap());
 	}
 
 	/**
 	 * Getter for gTaskList with gTaskId as key
 	 * 
-	 * @return gCalTaskList
+	 * @return read-only view of gTaskList in latest snapshot
 	 */
 	public Map<String, Task> getGTaskList() {
 		logEnterMethod("getTaskList");
 		logExitMethod("getTaskList");
-		return gTaskList;
+		return snapshot.get().gTaskList.asMap();
 	}
 
 	/**
 	 * Getter for gCalTaskList with gCalTaskId as key
 	 * 
-	 * @return gCalTaskList
+	 * @return read-only view of gCalTaskList in latest snapshot
 	 */
 	public Map<String, Task> getGcalTaskList() {
 		logEnterMethod("getGcalTaskList");
 		logExitMethod("getGcalTaskList");
-		return gCalTaskList;
+		return snapshot.get().gCalTaskList.asMap();
 	}
 
 	/**
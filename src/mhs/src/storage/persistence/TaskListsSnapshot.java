@@ -0,0 +1,218 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import mhs.src.storage.persistence.task.Task;
+
+/**
+ * TaskListsSnapshot
+ * 
+ * Immutable point in time version of all task lists and indexes in TaskLists
+ * 
+ * - put and remove return a new snapshot, sharing unchanged structure with
+ * this snapshot<br>
+ * - Snapshots are safe to read from any thread once published, and never
+ * change while being read<br>
+ * - gCalTaskList and gTaskList only map sync ids of the stored version of
+ * each task, so ids changed or cleared by an update are removed<br>
+ * - Each snapshot has a mutation generation one higher than the snapshot it
+ * was derived from, so results read from a snapshot can be checked for
+ * staleness by comparing generations<br>
+ * - columns is only kept if columnar scans are enabled, and is null
+ * otherwise
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+final class TaskListsSnapshot {
+
+	static final TaskListsSnapshot EMPTY = new TaskListsSnapshot(
+			PersistentSortedMap.<Integer, Task> empty(),
+			PersistentSortedMap.<String, Task> empty(),
+			PersistentSortedMap.<String, Task> empty(), TaskDateIndex.EMPTY,
+			TaskNameIndex.EMPTY, TaskCategoryIndex.EMPTY, TaskOrderIndex.EMPTY,
+			TaskTrigramIndex.EMPTY, null, 0);
+
+	/** tasks by taskId */
+	final PersistentSortedMap<Integer, Task> taskList;
+	/** tasks by gCalTaskId */
+	final PersistentSortedMap<String, Task> gCalTaskList;
+	/** tasks by gTaskId */
+	final PersistentSortedMap<String, Task> gTaskList;
+	final TaskDateIndex dateIndex;
+	final TaskNameIndex nameIndex;
+	final TaskCategoryIndex categoryIndex;
+	final TaskOrderIndex orderIndex;
+	final TaskTrigramIndex trigramIndex;
+	/** all tasks in primitive columns, or null if not enabled */
+	final TaskColumns columns;
+	/** mutation generation, bumped by every put, remove and clear */
+	final long generation;
+
+	private TaskListsSnapshot(PersistentSortedMap<Integer, Task> taskList,
+			PersistentSortedMap<String, Task> gCalTaskList,
+			PersistentSortedMap<String, Task> gTaskList,
+			TaskDateIndex dateIndex, TaskNameIndex nameIndex,
+			TaskCategoryIndex categoryIndex, TaskOrderIndex orderIndex,
+			TaskTrigramIndex trigramIndex, TaskColumns columns,
+			long generation) {
+		this.taskList = taskList;
+		this.gCalTaskList = gCalTaskList;
+		this.gTaskList = gTaskList;
+		this.dateIndex = dateIndex;
+		this.nameIndex = nameIndex;
+		this.categoryIndex = categoryIndex;
+		this.orderIndex = orderIndex;
+		this.trigramIndex = trigramIndex;
+		this.columns = columns;
+		this.generation = generation;
+	}
+
+	/**
+	 * Returns snapshot with task put in all task lists and indexes
+	 * 
+	 * @param taskToPut
+	 * @return new snapshot
+	 */
+	TaskListsSnapshot put(Task taskToPut) {
+		return put(taskToPut, columns == null ? null : columns.put(taskToPut),
+				generation + 1);
+	}
+
+	/**
+	 * Returns snapshot with tasks put in all task lists and indexes
+	 * 
+	 * - Columns are edited once for the whole batch, copying each changed
+	 * chunk once<br>
+	 * - No tasks returns this snapshot, keeping its generation so cached
+	 * queries stay valid
+	 * 
+	 * @param tasksToPut
+	 * @return new snapshot
+	 */
+	TaskListsSnapshot putAll(Iterable<Task> tasksToPut) {
+		if (!tasksToPut.iterator().hasNext()) {
+			return this;
+		}
+		TaskListsSnapshot updatedSnapshot = this;
+		for (Task taskToPut : tasksToPut) {
+			updatedSnapshot = updatedSnapshot.put(taskToPut, null, generation);
+		}
+		return updatedSnapshot.withColumns(
+				columns == null ? null : columns.putAll(tasksToPut),
+				generation + 1);
+	}
+
+	/**
+	 * Returns snapshot with task put in all task lists and indexes besides
+	 * columns
+	 * 
+	 * @param taskToPut
+	 * @param newColumns
+	 * @param newGeneration
+	 * @return new snapshot
+	 */
+	private TaskListsSnapshot put(Task taskToPut, TaskColumns newColumns,
+			long newGeneration) {
+		Task storedTask = taskList.get(taskToPut.getTaskId());
+		PersistentSortedMap<String, Task> newGCalTaskList = gCalTaskList;
+		PersistentSortedMap<String, Task> newGTaskList = gTaskList;
+		if (storedTask != null) {
+			newGCalTaskList = removeSyncId(newGCalTaskList,
+					storedTask.getgCalTaskId(), storedTask.getTaskId());
+			newGTaskList = removeSyncId(newGTaskList, storedTask.getGTaskId(),
+					storedTask.getTaskId());
+		}
+		if (taskToPut.getgCalTaskId() != null) {
+			newGCalTaskList = newGCalTaskList.put(taskToPut.getgCalTaskId(),
+					taskToPut);
+		}
+		if (taskToPut.getGTaskId() != null) {
+			newGTaskList = newGTaskList.put(taskToPut.getGTaskId(), taskToPut);
+		}
+		return new TaskListsSnapshot(taskList.put(taskToPut.getTaskId(),
+				taskToPut), newGCalTaskList, newGTaskList,
+				dateIndex.put(taskToPut), nameIndex.put(taskToPut),
+				categoryIndex.put(taskToPut), orderIndex.put(taskToPut),
+				trigramIndex.put(taskToPut), newColumns, newGeneration);
+	}
+
+	/**
+	 * Returns snapshot with task removed from all task lists and indexes
+	 * 
+	 * @param taskToRemove
+	 * @return new snapshot
+	 */
+	TaskListsSnapshot remove(Task taskToRemove) {
+		int taskId = taskToRemove.getTaskId();
+		PersistentSortedMap<String, Task> newGCalTaskList = removeSyncId(
+				gCalTaskList, taskToRemove.getgCalTaskId(), taskId);
+		PersistentSortedMap<String, Task> newGTaskList = removeSyncId(
+				gTaskList, taskToRemove.getGTaskId(), taskId);
+		Task storedTask = taskList.get(taskId);
+		if (storedTask != null) {
+			newGCalTaskList = removeSyncId(newGCalTaskList,
+					storedTask.getgCalTaskId(), taskId);
+			newGTaskList = removeSyncId(newGTaskList, storedTask.getGTaskId(),
+					taskId);
+		}
+		return new TaskListsSnapshot(taskList.remove(taskId), newGCalTaskList,
+				newGTaskList, dateIndex.remove(taskId),
+				nameIndex.remove(taskId), categoryIndex.remove(taskId),
+				orderIndex.remove(taskId), trigramIndex.remove(taskId),
+				columns == null ? null : columns.remove(taskId), generation + 1);
+	}
+
+	/**
+	 * Returns empty snapshot with next mutation generation, keeping columns if
+	 * enabled
+	 * 
+	 * @return new snapshot
+	 */
+	TaskListsSnapshot clear() {
+		return clear(columns != null);
+	}
+
+	/**
+	 * Returns empty snapshot with next mutation generation
+	 * 
+	 * @param isColumnarScanEnabled
+	 *            true to keep all tasks in columns
+	 * @return new snapshot
+	 */
+	TaskListsSnapshot clear(boolean isColumnarScanEnabled) {
+		return new TaskListsSnapshot(EMPTY.taskList, EMPTY.gCalTaskList,
+				EMPTY.gTaskList, EMPTY.dateIndex, EMPTY.nameIndex,
+				EMPTY.categoryIndex, EMPTY.orderIndex, EMPTY.trigramIndex,
+				isColumnarScanEnabled ? TaskColumns.EMPTY : null,
+				generation + 1);
+	}
+
+	private TaskListsSnapshot withColumns(TaskColumns newColumns,
+			long newGeneration) {
+		return new TaskListsSnapshot(taskList, gCalTaskList, gTaskList,
+				dateIndex, nameIndex, categoryIndex, orderIndex, trigramIndex,
+				newColumns, newGeneration);
+	}
+
+	/**
+	 * Removes sync id from sync task list if it maps to task with taskId
+	 * 
+	 * @param syncTaskList
+	 * @param syncId
+	 *            gCalTaskId or gTaskId, may be null
+	 * @param taskId
+	 * @return sync task list without sync id of task
+	 */
+	private static PersistentSortedMap<String, Task> removeSyncId(
+			PersistentSortedMap<String, Task> syncTaskList, String syncId,
+			int taskId) {
+		if (syncId == null) {
+			return syncTaskList;
+		}
+		Task syncTask = syncTaskList.get(syncId);
+		if (syncTask == null || syncTask.getTaskId() != taskId) {
+			return syncTaskList;
+		}
+		return syncTaskList.remove(syncId);
+	}
+
+}
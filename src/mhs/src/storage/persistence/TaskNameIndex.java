@@ -0,0 +1,248 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import mhs.src.storage.persistence.task.Task;
+
+/**
+ * TaskNameIndex
+ * 
+ * Immutable inverted index of lowercase task name tokens of non-deleted tasks
+ * in TaskLists, where put and remove return a new index sharing unchanged
+ * structure with the old index
+ * 
+ * - Task names are split into tokens of letters and digits<br>
+ * - tokenIndex maps each token to taskIds of tasks with the token<br>
+ * - suffixIndex maps every suffix of each distinct token to the tokens ending
+ * with it, so tokens containing a partial word are found with a prefix range
+ * lookup<br>
+ * - Lowercase names are kept per taskId, so matches are checked without
+ * lowercasing names again
+ * 
+ * Substring lookups return candidates containing the longest token of the
+ * query, which callers check with the exact substring match.
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskNameIndex {
+
+	/** Upper bound of a prefix range in suffixIndex */
+	private static final char PREFIX_RANGE_END = Character.MAX_VALUE;
+
+	static final TaskNameIndex EMPTY = new TaskNameIndex(
+			PersistentSortedMap.<String, PersistentSortedMap<Integer, Boolean>> empty(),
+			PersistentSortedMap.<String, PersistentSortedMap<String, Boolean>> empty(),
+			PersistentSortedMap.<Integer, String> empty());
+
+	private final PersistentSortedMap<String, PersistentSortedMap<Integer, Boolean>> tokenIndex;
+	private final PersistentSortedMap<String, PersistentSortedMap<String, Boolean>> suffixIndex;
+	private final PersistentSortedMap<Integer, String> lowercaseTaskNames;
+
+	private TaskNameIndex(
+			PersistentSortedMap<String, PersistentSortedMap<Integer, Boolean>> tokenIndex,
+			PersistentSortedMap<String, PersistentSortedMap<String, Boolean>> suffixIndex,
+			PersistentSortedMap<Integer, String> lowercaseTaskNames) {
+		this.tokenIndex = tokenIndex;
+		this.suffixIndex = suffixIndex;
+		this.lowercaseTaskNames = lowercaseTaskNames;
+	}
+
+	/**
+	 * Returns index with task name, replacing any task indexed with the same
+	 * taskId
+	 * 
+	 * @param taskToIndex
+	 * @return new index
+	 */
+	TaskNameIndex put(Task taskToIndex) {
+		TaskNameIndex index = remove(taskToIndex.getTaskId());
+		if (taskToIndex.isDeleted() || taskToIndex.getTaskName() == null) {
+			return index;
+		}
+		int taskId = taskToIndex.getTaskId();
+		String lowercaseTaskName = taskToIndex.getTaskName().toLowerCase();
+		PersistentSortedMap<String, PersistentSortedMap<Integer, Boolean>> newTokenIndex = index.tokenIndex;
+		PersistentSortedMap<String, PersistentSortedMap<String, Boolean>> newSuffixIndex = index.suffixIndex;
+		for (String token : tokenize(lowercaseTaskName)) {
+			PersistentSortedMap<Integer, Boolean> taskIds = newTokenIndex
+					.get(token);
+			if (taskIds == null) {
+				taskIds = PersistentSortedMap.<Integer, Boolean> empty();
+				newSuffixIndex = putTokenSuffixes(newSuffixIndex, token);
+			}
+			newTokenIndex = newTokenIndex.put(token, taskIds.put(taskId, true));
+		}
+		return new TaskNameIndex(newTokenIndex, newSuffixIndex,
+				index.lowercaseTaskNames.put(taskId, lowercaseTaskName));
+	}
+
+	/**
+	 * Returns index without task
+	 * 
+	 * @param taskId
+	 * @return new index, or this index if task is not indexed
+	 */
+	TaskNameIndex remove(int taskId) {
+		String lowercaseTaskName = lowercaseTaskNames.get(taskId);
+		if (lowercaseTaskName == null) {
+			return this;
+		}
+		PersistentSortedMap<String, PersistentSortedMap<Integer, Boolean>> newTokenIndex = tokenIndex;
+		PersistentSortedMap<String, PersistentSortedMap<String, Boolean>> newSuffixIndex = suffixIndex;
+		for (String token : tokenize(lowercaseTaskName)) {
+			PersistentSortedMap<Integer, Boolean> taskIds = newTokenIndex
+					.get(token).remove(taskId);
+			if (taskIds.isEmpty()) {
+				newTokenIndex = newTokenIndex.remove(token);
+				newSuffixIndex = removeTokenSuffixes(newSuffixIndex, token);
+			} else {
+				newTokenIndex = newTokenIndex.put(token, taskIds);
+			}
+		}
+		return new TaskNameIndex(newTokenIndex, newSuffixIndex,
+				lowercaseTaskNames.remove(taskId));
+	}
+
+	/**
+	 * Checks if any token can be looked up in query task name
+	 * 
+	 * @param lowercaseQueryTaskName
+	 * @return true if query has a letter or digit
+	 */
+	boolean isIndexable(String lowercaseQueryTaskName) {
+		return !tokenize(lowercaseQueryTaskName).isEmpty();
+	}
+
+	/**
+	 * Adds taskIds of tasks with names that may contain query task name
+	 * 
+	 * @param lowercaseQueryTaskName
+	 *            query with at least one token, see isIndexable
+	 * @param candidateTaskIds
+	 */
+	void addCandidateTaskIds(String lowercaseQueryTaskName,
+			Collection<Integer> candidateTaskIds) {
+		for (PersistentSortedMap<String, Boolean> tokens : getMatchingTokens(lowercaseQueryTaskName)) {
+			for (String token : tokens.keys()) {
+				for (Integer taskId : tokenIndex.get(token).keys()) {
+					candidateTaskIds.add(taskId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Estimates number of candidates addCandidateTaskIds would add, for
+	 * choosing between indexes
+	 * 
+	 * - Counts taskIds of every matching token, so tasks with several
+	 * matching tokens are counted more than once
+	 * 
+	 * @param lowercaseQueryTaskName
+	 *            query with at least one token, see isIndexable
+	 * @param maxCandidateCount
+	 *            count to stop at, once the index is known to be no better
+	 * @return estimated candidate count, at most maxCandidateCount
+	 */
+	int estimateCandidateCount(String lowercaseQueryTaskName,
+			int maxCandidateCount) {
+		int candidateCount = 0;
+		for (PersistentSortedMap<String, Boolean> tokens : getMatchingTokens(lowercaseQueryTaskName)) {
+			for (String token : tokens.keys()) {
+				candidateCount += tokenIndex.get(token).size();
+				if (candidateCount >= maxCandidateCount) {
+					return maxCandidateCount;
+				}
+			}
+		}
+		return candidateCount;
+	}
+
+	/**
+	 * Looks up tokens containing the longest token of query
+	 * 
+	 * @param lowercaseQueryTaskName
+	 * @return sets of tokens, one per matching suffix
+	 */
+	private Iterable<PersistentSortedMap<String, Boolean>> getMatchingTokens(
+			String lowercaseQueryTaskName) {
+		String longestQueryToken = "";
+		for (String queryToken : tokenize(lowercaseQueryTaskName)) {
+			if (queryToken.length() > longestQueryToken.length()) {
+				longestQueryToken = queryToken;
+			}
+		}
+		return suffixIndex.values(longestQueryToken, true, longestQueryToken
+				+ PREFIX_RANGE_END, false);
+	}
+
+	/**
+	 * Checks if indexed task name contains query task name, case-insensitive
+	 * 
+	 * @param taskId
+	 * @param lowercaseQueryTaskName
+	 * @return true if task name contains query
+	 */
+	boolean isTaskNameMatched(int taskId, String lowercaseQueryTaskName) {
+		String lowercaseTaskName = lowercaseTaskNames.get(taskId);
+		return lowercaseTaskName != null
+				&& lowercaseTaskName.contains(lowercaseQueryTaskName);
+	}
+
+	private static PersistentSortedMap<String, PersistentSortedMap<String, Boolean>> putTokenSuffixes(
+			PersistentSortedMap<String, PersistentSortedMap<String, Boolean>> suffixIndex,
+			String token) {
+		for (int i = 0; i < token.length(); i++) {
+			String suffix = token.substring(i);
+			PersistentSortedMap<String, Boolean> tokens = suffixIndex
+					.get(suffix);
+			if (tokens == null) {
+				tokens = PersistentSortedMap.<String, Boolean> empty();
+			}
+			suffixIndex = suffixIndex.put(suffix, tokens.put(token, true));
+		}
+		return suffixIndex;
+	}
+
+	private static PersistentSortedMap<String, PersistentSortedMap<String, Boolean>> removeTokenSuffixes(
+			PersistentSortedMap<String, PersistentSortedMap<String, Boolean>> suffixIndex,
+			String token) {
+		for (int i = 0; i < token.length(); i++) {
+			String suffix = token.substring(i);
+			PersistentSortedMap<String, Boolean> tokens = suffixIndex.get(
+					suffix).remove(token);
+			if (tokens.isEmpty()) {
+				suffixIndex = suffixIndex.remove(suffix);
+			} else {
+				suffixIndex = suffixIndex.put(suffix, tokens);
+			}
+		}
+		return suffixIndex;
+	}
+
+	/**
+	 * Splits text into distinct tokens of letters and digits
+	 * 
+	 * @param text
+	 * @return tokens
+	 */
+	private static Set<String> tokenize(String text) {
+		Set<String> tokens = new LinkedHashSet<String>();
+		int tokenStart = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean isTokenChar = i < text.length()
+					&& Character.isLetterOrDigit(text.charAt(i));
+			if (isTokenChar && tokenStart < 0) {
+				tokenStart = i;
+			} else if (!isTokenChar && tokenStart >= 0) {
+				tokens.add(text.substring(tokenStart, i));
+				tokenStart = -1;
+			}
+		}
+		return tokens;
+	}
+
+}
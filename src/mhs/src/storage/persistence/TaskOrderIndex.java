@@ -0,0 +1,164 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+
+/**
+ * TaskOrderIndex
+ * 
+ * Immutable index of non-deleted tasks in TaskLists kept in display order,
+ * where put and remove return a new index sharing unchanged structure with the
+ * old index
+ * 
+ * Ordering Logic:<br>
+ * - floating task first, followed by timed/deadline tasks<br>
+ * - timed/deadline tasks are sorted by earliest startDateTime first<br>
+ * - tasks are sorted by isDone if other conditions are equal<br>
+ * - tasks are sorted by taskId if all other conditions are equal
+ * 
+ * Sort keys are computed once when a task is put, so ordering compares
+ * primitives instead of DateTimes.
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskOrderIndex {
+
+	static final TaskOrderIndex EMPTY = new TaskOrderIndex(
+			PersistentSortedMap.<TaskSortKey, Task> empty(),
+			PersistentSortedMap.<Integer, TaskSortKey> empty());
+
+	private final PersistentSortedMap<TaskSortKey, Task> orderedTasks;
+	private final PersistentSortedMap<Integer, TaskSortKey> sortKeys;
+
+	/**
+	 * Precomputed sort key of a task
+	 */
+	static final class TaskSortKey implements Comparable<TaskSortKey> {
+		final boolean isFloating;
+		final long startMillis;
+		final boolean isDone;
+		final int taskId;
+
+		TaskSortKey(Task task) {
+			isFloating = task.getTaskCategory() == TaskCategory.FLOATING;
+			if (isFloating || task.getStartDateTime() == null) {
+				startMillis = Long.MIN_VALUE;
+			} else {
+				startMillis = task.getStartDateTime().getMillis();
+			}
+			isDone = task.isDone();
+			taskId = task.getTaskId();
+		}
+
+		@Override
+		public int compareTo(TaskSortKey other) {
+			if (isFloating != other.isFloating) {
+				return isFloating ? -1 : 1;
+			}
+			if (startMillis != other.startMillis) {
+				return startMillis < other.startMillis ? -1 : 1;
+			}
+			if (isDone != other.isDone) {
+				return isDone ? 1 : -1;
+			}
+			return taskId < other.taskId ? -1 : (taskId == other.taskId ? 0
+					: 1);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof TaskSortKey
+					&& compareTo((TaskSortKey) other) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return taskId;
+		}
+	}
+
+	private TaskOrderIndex(PersistentSortedMap<TaskSortKey, Task> orderedTasks,
+			PersistentSortedMap<Integer, TaskSortKey> sortKeys) {
+		this.orderedTasks = orderedTasks;
+		this.sortKeys = sortKeys;
+	}
+
+	/**
+	 * Returns index with task, replacing any task indexed with the same taskId
+	 * 
+	 * @param taskToIndex
+	 * @return new index
+	 */
+	TaskOrderIndex put(Task taskToIndex) {
+		TaskOrderIndex index = remove(taskToIndex.getTaskId());
+		if (taskToIndex.isDeleted()) {
+			return index;
+		}
+		TaskSortKey sortKey = new TaskSortKey(taskToIndex);
+		return new TaskOrderIndex(index.orderedTasks.put(sortKey, taskToIndex),
+				index.sortKeys.put(sortKey.taskId, sortKey));
+	}
+
+	/**
+	 * Returns index without task
+	 * 
+	 * @param taskId
+	 * @return new index, or this index if task is not indexed
+	 */
+	TaskOrderIndex remove(int taskId) {
+		TaskSortKey sortKey = sortKeys.get(taskId);
+		if (sortKey == null) {
+			return this;
+		}
+		return new TaskOrderIndex(orderedTasks.remove(sortKey),
+				sortKeys.remove(taskId));
+	}
+
+	/**
+	 * Gets list view of non-deleted tasks in display order, read by index
+	 * without copying the index
+	 * 
+	 * @return tasks
+	 */
+	List<Task> getTaskList() {
+		return orderedTasks.valueList();
+	}
+
+	int getTaskCount() {
+		return orderedTasks.size();
+	}
+
+	/**
+	 * Orders tasks by their precomputed sort keys
+	 * 
+	 * @param tasksToOrder
+	 *            tasks with distinct taskIds
+	 */
+	void order(List<Task> tasksToOrder) {
+		TaskSortKey[] taskSortKeys = new TaskSortKey[tasksToOrder.size()];
+		Map<Integer, Task> tasksById = new HashMap<Integer, Task>(
+				tasksToOrder.size() * 2);
+		int i = 0;
+		for (Task taskToOrder : tasksToOrder) {
+			TaskSortKey sortKey = sortKeys.get(taskToOrder.getTaskId());
+			if (sortKey == null) {
+				sortKey = new TaskSortKey(taskToOrder);
+			}
+			taskSortKeys[i++] = sortKey;
+			tasksById.put(sortKey.taskId, taskToOrder);
+		}
+		Arrays.sort(taskSortKeys);
+
+		tasksToOrder.clear();
+		for (TaskSortKey sortKey : taskSortKeys) {
+			tasksToOrder.add(tasksById.get(sortKey.taskId));
+		}
+	}
+
+}
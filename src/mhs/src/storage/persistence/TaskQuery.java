@@ -0,0 +1,365 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
+/**
+ * TaskQuery
+ * 
+ * Immutable task query built up from filters, where each with method returns
+ * a new query with the filter added
+ * 
+ * - A task matches the query if it matches every filter set<br>
+ * - Deleted tasks are excluded unless withDeletedTasks is set<br>
+ * - Results are ordered by taskId unless orderByStartDateTime is set<br>
+ * - Queries with the same filters are equal, so a query can be used as a
+ * cache key
+ * 
+ * Queries are run against TaskLists by TaskQueryPlanner, which reads the most
+ * selective index for the filters set and checks the other filters on its
+ * candidates only.
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public final class TaskQuery {
+
+	private static final String EXCEPTION_MESSAGE_NULL_PARAMETER = "%1$s cannot be null!";
+	private static final String EXCEPTION_MESSAGE_NO_TASK_CATEGORIES = "At least one task category is required";
+	private static final String EXCEPTION_MESSAGE_INVALID_LIMIT = "Invalid limit %1$d";
+	private static final String PARAMETER_TASK_NAME = "taskName";
+	private static final String PARAMETER_TASK_CATEGORIES = "taskCategories";
+	private static final String PARAMETER_START_AND_END_DATE_TIMES = "start and end date times";
+
+	/** Limit of queries without a limit */
+	static final int NO_LIMIT = Integer.MAX_VALUE;
+
+	private final String lowercaseTaskName;
+	private final Set<TaskCategory> taskCategories;
+	private final DateTime startDateTime;
+	private final DateTime endDateTime;
+	private final boolean includeFloatingTasks;
+	private final Interval dateTimeInterval;
+	private final Boolean isDone;
+	private final boolean includeDeletedTasks;
+	private final boolean orderByStartDateTime;
+	private final int limit;
+
+	/**
+	 * TaskQuery Constructor
+	 * 
+	 * Creates query matching all non-deleted tasks
+	 */
+	public TaskQuery() {
+		this(null, null, null, null, false, null, false, false, NO_LIMIT);
+	}
+
+	private TaskQuery(String lowercaseTaskName,
+			Set<TaskCategory> taskCategories, DateTime startDateTime,
+			DateTime endDateTime, boolean includeFloatingTasks,
+			Boolean isDone, boolean includeDeletedTasks,
+			boolean orderByStartDateTime, int limit) {
+		this.lowercaseTaskName = lowercaseTaskName;
+		this.taskCategories = taskCategories;
+		this.startDateTime = startDateTime;
+		this.endDateTime = endDateTime;
+		this.includeFloatingTasks = includeFloatingTasks;
+		this.isDone = isDone;
+		this.includeDeletedTasks = includeDeletedTasks;
+		this.orderByStartDateTime = orderByStartDateTime;
+		this.limit = limit;
+		if (startDateTime == null) {
+			dateTimeInterval = null;
+		} else {
+			dateTimeInterval = getInclusiveDateTimeInterval(startDateTime,
+					endDateTime);
+		}
+	}
+
+	/**
+	 * Returns query of tasks with names containing taskName, case-insensitive
+	 * 
+	 * @param taskName
+	 * @return new query
+	 */
+	public TaskQuery withTaskName(String taskName) {
+		if (taskName == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_NAME));
+		}
+		return new TaskQuery(taskName.toLowerCase(), taskCategories,
+				startDateTime, endDateTime, includeFloatingTasks, isDone,
+				includeDeletedTasks, orderByStartDateTime, limit);
+	}
+
+	/**
+	 * Returns query of tasks in any of taskCategories
+	 * 
+	 * @param taskCategories
+	 * @return new query
+	 */
+	public TaskQuery withTaskCategories(TaskCategory... taskCategories) {
+		if (taskCategories == null
+				|| Arrays.asList(taskCategories).contains(null)) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, PARAMETER_TASK_CATEGORIES));
+		}
+		if (taskCategories.length == 0) {
+			throw new IllegalArgumentException(
+					EXCEPTION_MESSAGE_NO_TASK_CATEGORIES);
+		}
+		return new TaskQuery(lowercaseTaskName,
+				Collections.unmodifiableSet(EnumSet.copyOf(Arrays
+						.asList(taskCategories))), startDateTime,
+				endDateTime, includeFloatingTasks, isDone,
+				includeDeletedTasks, orderByStartDateTime, limit);
+	}
+
+	/**
+	 * Returns query of tasks within start and end date times inclusive
+	 * 
+	 * - Timed tasks match if they overlap the range, deadline tasks if their
+	 * deadline is in the range<br>
+	 * - Floating tasks match only if includeFloatingTasks is true
+	 * 
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @param includeFloatingTasks
+	 * @return new query
+	 */
+	public TaskQuery withinDateRange(DateTime startDateTime,
+			DateTime endDateTime, boolean includeFloatingTasks) {
+		if (startDateTime == null || endDateTime == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER,
+					PARAMETER_START_AND_END_DATE_TIMES));
+		}
+		return new TaskQuery(lowercaseTaskName, taskCategories,
+				startDateTime, endDateTime, includeFloatingTasks, isDone,
+				includeDeletedTasks, orderByStartDateTime, limit);
+	}
+
+	/**
+	 * Returns query of tasks that are done, or not done
+	 * 
+	 * @param isDone
+	 * @return new query
+	 */
+	public TaskQuery withDone(boolean isDone) {
+		return new TaskQuery(lowercaseTaskName, taskCategories,
+				startDateTime, endDateTime, includeFloatingTasks, isDone,
+				includeDeletedTasks, orderByStartDateTime, limit);
+	}
+
+	/**
+	 * Returns query that also matches deleted tasks
+	 * 
+	 * - Deleted tasks are not indexed, so these queries scan all tasks
+	 * 
+	 * @return new query
+	 */
+	public TaskQuery withDeletedTasks() {
+		return new TaskQuery(lowercaseTaskName, taskCategories,
+				startDateTime, endDateTime, includeFloatingTasks, isDone,
+				true, orderByStartDateTime, limit);
+	}
+
+	/**
+	 * Returns query with results ordered by start DateTime, or by taskId
+	 * 
+	 * @param orderByStartDateTime
+	 * @return new query
+	 */
+	public TaskQuery orderByStartDateTime(boolean orderByStartDateTime) {
+		return new TaskQuery(lowercaseTaskName, taskCategories,
+				startDateTime, endDateTime, includeFloatingTasks, isDone,
+				includeDeletedTasks, orderByStartDateTime, limit);
+	}
+
+	/**
+	 * Returns query of at most limit tasks, the first in result order
+	 * 
+	 * @param limit
+	 * @return new query
+	 */
+	public TaskQuery withLimit(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_INVALID_LIMIT, limit));
+		}
+		return new TaskQuery(lowercaseTaskName, taskCategories,
+				startDateTime, endDateTime, includeFloatingTasks, isDone,
+				includeDeletedTasks, orderByStartDateTime, limit);
+	}
+
+	public String getLowercaseTaskName() {
+		return lowercaseTaskName;
+	}
+
+	public Set<TaskCategory> getTaskCategories() {
+		return taskCategories;
+	}
+
+	public DateTime getStartDateTime() {
+		return startDateTime;
+	}
+
+	public DateTime getEndDateTime() {
+		return endDateTime;
+	}
+
+	public Boolean getDone() {
+		return isDone;
+	}
+
+	public boolean isIncludeFloatingTasks() {
+		return includeFloatingTasks;
+	}
+
+	public boolean isIncludeDeletedTasks() {
+		return includeDeletedTasks;
+	}
+
+	public boolean isOrderByStartDateTime() {
+		return orderByStartDateTime;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Checks if query has any filter besides excluding deleted tasks
+	 * 
+	 * @return true if query filters tasks
+	 */
+	boolean hasFilters() {
+		return lowercaseTaskName != null || taskCategories != null
+				|| startDateTime != null || isDone != null;
+	}
+
+	/**
+	 * Checks if task matches every filter of query
+	 * 
+	 * @param task
+	 * @return true if task matches
+	 */
+	boolean matches(Task task) {
+		if (task.isDeleted() && !includeDeletedTasks) {
+			return false;
+		}
+		if (isDone != null && task.isDone() != isDone) {
+			return false;
+		}
+		if (taskCategories != null
+				&& !taskCategories.contains(task.getTaskCategory())) {
+			return false;
+		}
+		if (lowercaseTaskName != null
+				&& !task.getTaskName().toLowerCase()
+						.contains(lowercaseTaskName)) {
+			return false;
+		}
+		return startDateTime == null || isWithinDateRange(task);
+	}
+
+	/**
+	 * Checks if task is within date range of query, based on task format
+	 * 
+	 * @param task
+	 * @return true if task is within date range
+	 */
+	private boolean isWithinDateRange(Task task) {
+		switch (task.getTaskCategory()) {
+		case TIMED:
+			return dateTimeInterval.overlaps(getInclusiveDateTimeInterval(
+					task.getStartDateTime(), task.getEndDateTime()));
+		case DEADLINE:
+			return dateTimeInterval.overlaps(getInclusiveDateTimeInterval(
+					task.getEndDateTime(), task.getEndDateTime()));
+		case FLOATING:
+			return includeFloatingTasks;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Get DateTime interval from two DateTimes inclusive
+	 * 
+	 * @param dateTime1
+	 * @param dateTime2
+	 * @return dateTimeInterval
+	 */
+	private static Interval getInclusiveDateTimeInterval(DateTime dateTime1,
+			DateTime dateTime2) {
+		// Set interval for matched range (increase endtime by 1 ms to include)
+		if (dateTime1.isBefore(dateTime2)) {
+			return new Interval(dateTime1.minusMillis(1),
+					dateTime2.plusMillis(1));
+		} else if (dateTime1.isAfter(dateTime2)) {
+			return new Interval(dateTime2.minusMillis(1),
+					dateTime1.plusMillis(1));
+		}
+		return new Interval(dateTime1, dateTime1);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof TaskQuery)) {
+			return false;
+		}
+		TaskQuery otherQuery = (TaskQuery) other;
+		return equal(lowercaseTaskName, otherQuery.lowercaseTaskName)
+				&& equal(taskCategories, otherQuery.taskCategories)
+				&& equal(getMillis(startDateTime),
+						getMillis(otherQuery.startDateTime))
+				&& equal(getMillis(endDateTime),
+						getMillis(otherQuery.endDateTime))
+				&& includeFloatingTasks == otherQuery.includeFloatingTasks
+				&& equal(isDone, otherQuery.isDone)
+				&& includeDeletedTasks == otherQuery.includeDeletedTasks
+				&& orderByStartDateTime == otherQuery.orderByStartDateTime
+				&& limit == otherQuery.limit;
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(new Object[] { lowercaseTaskName,
+				taskCategories, getMillis(startDateTime),
+				getMillis(endDateTime), includeFloatingTasks, isDone,
+				includeDeletedTasks, orderByStartDateTime, limit });
+	}
+
+	@Override
+	public String toString() {
+		return "TaskQuery [taskName=" + lowercaseTaskName
+				+ ", taskCategories=" + taskCategories + ", startDateTime="
+				+ startDateTime + ", endDateTime=" + endDateTime
+				+ ", includeFloatingTasks=" + includeFloatingTasks
+				+ ", isDone=" + isDone + ", includeDeletedTasks="
+				+ includeDeletedTasks + ", orderByStartDateTime="
+				+ orderByStartDateTime + ", limit=" + limit + "]";
+	}
+
+	/**
+	 * Normalizes DateTime to its instant, so equal instants in different time
+	 * zones give equal queries
+	 */
+	private static Long getMillis(DateTime dateTime) {
+		return dateTime == null ? null : dateTime.getMillis();
+	}
+
+	private static boolean equal(Object object1, Object object2) {
+		return object1 == null ? object2 == null : object1.equals(object2);
+	}
+
+}
@@ -0,0 +1,143 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import mhs.src.storage.persistence.task.Task;
+
+/**
+ * TaskQueryCursor
+ * 
+ * Result of a task query, read a page at a time
+ * 
+ * - Matched tasks are referenced from the TaskLists snapshot the query ran
+ * against, so later updates do not change the result<br>
+ * - Tasks are only cloned when read, so displaying a page copies only the
+ * tasks on that page<br>
+ * - Total task count is known without reading any task<br>
+ * - Cursor is stamped with the mutation generation of the snapshot, so it
+ * can be cached until task lists change
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public final class TaskQueryCursor {
+
+	private static final String EXCEPTION_MESSAGE_INVALID_PAGE = "Invalid page offset %1$d and limit %2$d";
+
+	/** matched tasks in result order, read-only and not cloned */
+	private final List<Task> matchedTasks;
+	private final long generation;
+
+	/**
+	 * TaskQueryCursor Constructor
+	 * 
+	 * @param matchedTasks
+	 *            random access list of matched tasks, not modified afterwards
+	 * @param generation
+	 *            mutation generation of snapshot tasks were matched in
+	 */
+	TaskQueryCursor(List<Task> matchedTasks, long generation) {
+		this.matchedTasks = matchedTasks;
+		this.generation = generation;
+	}
+
+	/**
+	 * Gets mutation generation of task lists the query ran against
+	 * 
+	 * @return generation
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Gets number of matched tasks
+	 * 
+	 * @return task count
+	 */
+	public int getTaskCount() {
+		return matchedTasks.size();
+	}
+
+	/**
+	 * Gets matched task at index
+	 * 
+	 * @param index
+	 *            from 0 to getTaskCount() - 1
+	 * @return clone of task
+	 */
+	public Task getTask(int index) {
+		return matchedTasks.get(index).clone();
+	}
+
+	/**
+	 * Gets page of matched tasks
+	 * 
+	 * - Pages running past the last matched task are cut short
+	 * 
+	 * @param offset
+	 *            index of first task in page
+	 * @param limit
+	 *            maximum number of tasks in page
+	 * @return clones of tasks in page
+	 */
+	public List<Task> page(int offset, int limit) {
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_INVALID_PAGE, offset, limit));
+		}
+		int taskCount = getTaskCount();
+		int pageStart = Math.min(offset, taskCount);
+		int pageEnd = (int) Math.min((long) offset + limit, taskCount);
+		List<Task> pageTasks = new ArrayList<Task>(pageEnd - pageStart);
+		for (int i = pageStart; i < pageEnd; i++) {
+			pageTasks.add(getTask(i));
+		}
+		return pageTasks;
+	}
+
+	/**
+	 * Gets all matched tasks
+	 * 
+	 * @return clones of all tasks
+	 */
+	public List<Task> getTasks() {
+		return page(0, getTaskCount());
+	}
+
+	/**
+	 * Gets read-only java.util.List view of matched tasks, cloning each task
+	 * when it is read
+	 * 
+	 * @return list view
+	 */
+	public List<Task> asList() {
+		return new TaskListView(this);
+	}
+
+	/**
+	 * Read-only java.util.List view of a cursor
+	 */
+	private static final class TaskListView extends AbstractList<Task>
+			implements RandomAccess {
+		private final TaskQueryCursor cursor;
+
+		TaskListView(TaskQueryCursor cursor) {
+			this.cursor = cursor;
+		}
+
+		@Override
+		public Task get(int index) {
+			return cursor.getTask(index);
+		}
+
+		@Override
+		public int size() {
+			return cursor.getTaskCount();
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+/**
+ * TaskQueryPlan
+ * 
+ * Source of candidate tasks chosen by TaskQueryPlanner for a TaskQuery
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public enum TaskQueryPlan {
+	/** all tasks by taskId, including deleted tasks */
+	FULL_SCAN,
+	/** non-deleted tasks in display order */
+	ORDER_INDEX,
+	/** non-deleted tasks of the queried categories */
+	CATEGORY_INDEX,
+	/** non-deleted tasks with a name token containing the queried name */
+	NAME_INDEX,
+	/** non-deleted tasks that may fall within the queried date range */
+	DATE_INDEX
+}
@@ -0,0 +1,434 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+
+/**
+ * TaskQueryPlanner
+ * 
+ * Runs a TaskQuery against one snapshot of TaskLists
+ * 
+ * - Candidate counts of each index usable for the query are estimated
+ * without reading candidates: exact counts of the category index, taskId
+ * counts of matching name tokens, and range counts of the date index<br>
+ * - Candidates are read from the index with the fewest, and every filter of
+ * the query is checked on those candidates only<br>
+ * - Queries without a usable index read the order index if ordered by start
+ * DateTime, otherwise all tasks by taskId<br>
+ * - Queries including deleted tasks always read all tasks, as deleted tasks
+ * are not indexed<br>
+ * - If task lists keep columns, unordered scans of all tasks read columns,
+ * which cost a fraction of reading as many candidate tasks, and only read
+ * tasks of matched rows
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+final class TaskQueryPlanner {
+
+	/** Rows of columns scanned for the cost of reading one candidate task */
+	private static final int COLUMN_SCAN_COST_RATIO = 8;
+
+	private static final Comparator<Task> taskIdComparator = new Comparator<Task>() {
+		@Override
+		public int compare(Task task1, Task task2) {
+			return Integer.compare(task1.getTaskId(), task2.getTaskId());
+		}
+	};
+
+	private final TaskListsSnapshot taskLists;
+	private final TaskQuery taskQuery;
+
+	/**
+	 * TaskQueryPlanner Constructor
+	 * 
+	 * @param taskLists
+	 *            snapshot to run query against
+	 * @param taskQuery
+	 */
+	TaskQueryPlanner(TaskListsSnapshot taskLists, TaskQuery taskQuery) {
+		this.taskLists = taskLists;
+		this.taskQuery = taskQuery;
+	}
+
+	/**
+	 * Chooses source of candidate tasks with the fewest estimated candidates
+	 * 
+	 * @return plan
+	 */
+	TaskQueryPlan plan() {
+		if (taskQuery.isIncludeDeletedTasks()) {
+			return TaskQueryPlan.FULL_SCAN;
+		}
+		TaskQueryPlan bestPlan = TaskQueryPlan.FULL_SCAN;
+		int bestCandidateCount = taskLists.taskList.size();
+		if (taskQuery.isOrderByStartDateTime()) {
+			bestPlan = TaskQueryPlan.ORDER_INDEX;
+			bestCandidateCount = taskLists.orderIndex.getTaskCount();
+		} else if (taskLists.columns != null) {
+			bestCandidateCount = taskLists.columns.size()
+					/ COLUMN_SCAN_COST_RATIO;
+		}
+
+		if (taskQuery.getTaskCategories() != null) {
+			int candidateCount = estimateCategoryCandidateCount();
+			// a single category without other filters is returned as a view
+			// of the category index, without reading any task
+			if (candidateCount <= bestCandidateCount
+					|| isReadFromCategoryView()) {
+				bestPlan = TaskQueryPlan.CATEGORY_INDEX;
+				bestCandidateCount = candidateCount;
+			}
+		}
+		if (taskQuery.getStartDateTime() != null) {
+			int candidateCount = taskLists.dateIndex.estimateCandidateCount(
+					taskQuery.getStartDateTime(), taskQuery.getEndDateTime(),
+					taskQuery.isIncludeFloatingTasks());
+			if (candidateCount < bestCandidateCount) {
+				bestPlan = TaskQueryPlan.DATE_INDEX;
+				bestCandidateCount = candidateCount;
+			}
+		}
+		String lowercaseTaskName = taskQuery.getLowercaseTaskName();
+		if (lowercaseTaskName != null
+				&& taskLists.nameIndex.isIndexable(lowercaseTaskName)) {
+			int candidateCount = taskLists.nameIndex.estimateCandidateCount(
+					lowercaseTaskName, bestCandidateCount);
+			if (candidateCount < bestCandidateCount) {
+				bestPlan = TaskQueryPlan.NAME_INDEX;
+				bestCandidateCount = candidateCount;
+			}
+		}
+		return bestPlan;
+	}
+
+	/**
+	 * Runs query with plan
+	 * 
+	 * @param plan
+	 * @return matched tasks in result order, not cloned
+	 */
+	List<Task> execute(TaskQueryPlan plan) {
+		boolean isOrderByStartDateTime = taskQuery.isOrderByStartDateTime();
+		switch (plan) {
+		case ORDER_INDEX:
+			return getMatchingTasks(taskLists.orderIndex.getTaskList(), true,
+					!taskQuery.hasFilters());
+		case FULL_SCAN:
+			boolean isAllMatched = taskQuery.isIncludeDeletedTasks()
+					&& !taskQuery.hasFilters();
+			if (taskLists.columns != null && !isAllMatched) {
+				return getColumnMatchingTasks();
+			}
+			return getMatchingTasks(taskLists.taskList.valueList(),
+					!isOrderByStartDateTime, isAllMatched);
+		case CATEGORY_INDEX:
+			Set<TaskCategory> taskCategories = taskQuery.getTaskCategories();
+			if (taskCategories.size() == 1) {
+				return getMatchingTasks(
+						taskLists.categoryIndex.getTaskList(taskCategories
+								.iterator().next()), !isOrderByStartDateTime,
+						!hasFiltersBesideCategories());
+			}
+			return getMatchingTasks(getCandidateTasks(plan), false);
+		default:
+			return getMatchingTasks(getCandidateTasks(plan), false);
+		}
+	}
+
+	/**
+	 * Counts tasks query would return with plan, without collecting them
+	 * 
+	 * @param plan
+	 * @return task count, at most the query limit
+	 */
+	int count(TaskQueryPlan plan) {
+		if (isAnsweredByCategoryCounts()) {
+			TaskCountSummary taskCountSummary = new TaskCountSummary(false);
+			addCategoryCounts(taskCountSummary);
+			return Math.min(taskCountSummary.getTaskCount(),
+					taskQuery.getLimit());
+		}
+		if (plan == TaskQueryPlan.FULL_SCAN && taskLists.columns != null) {
+			return Math.min(taskLists.columns.countMatchingTasks(taskQuery),
+					taskQuery.getLimit());
+		}
+		int taskCount = 0;
+		for (Task taskEntry : getCandidateTasks(plan)) {
+			if (taskCount >= taskQuery.getLimit()) {
+				break;
+			}
+			if (taskQuery.matches(taskEntry)) {
+				taskCount++;
+			}
+		}
+		return taskCount;
+	}
+
+	/**
+	 * Counts tasks matching query with plan by category, done state and day,
+	 * without collecting them
+	 * 
+	 * @param plan
+	 * @return task count summary
+	 */
+	TaskCountSummary summarize(TaskQueryPlan plan) {
+		TaskCountSummary taskCountSummary = new TaskCountSummary(
+				taskQuery.getStartDateTime() != null);
+		if (isAnsweredByCategoryCounts()) {
+			addCategoryCounts(taskCountSummary);
+			return taskCountSummary;
+		}
+		if (plan == TaskQueryPlan.FULL_SCAN && taskLists.columns != null) {
+			taskLists.columns.addMatchingTasks(taskQuery, taskCountSummary,
+					taskQuery.getStartDateTime() != null);
+			return taskCountSummary;
+		}
+		for (Task taskEntry : getCandidateTasks(plan)) {
+			if (taskQuery.matches(taskEntry)) {
+				taskCountSummary.addTask(taskEntry);
+			}
+		}
+		return taskCountSummary;
+	}
+
+	/**
+	 * Checks if query only filters on category and done state, so its counts
+	 * are read from the category index counts
+	 * 
+	 * @return true if counts are kept by category index
+	 */
+	private boolean isAnsweredByCategoryCounts() {
+		return !taskQuery.isIncludeDeletedTasks()
+				&& taskQuery.getLowercaseTaskName() == null
+				&& taskQuery.getStartDateTime() == null;
+	}
+
+	/**
+	 * Adds task counts of queried categories and done state from category
+	 * index
+	 * 
+	 * @param taskCountSummary
+	 */
+	private void addCategoryCounts(TaskCountSummary taskCountSummary) {
+		Set<TaskCategory> taskCategories = taskQuery.getTaskCategories();
+		if (taskCategories == null) {
+			taskCategories = EnumSet.allOf(TaskCategory.class);
+		}
+		Boolean isDone = taskQuery.getDone();
+		for (TaskCategory taskCategory : taskCategories) {
+			int doneTaskCount = taskLists.categoryIndex
+					.getDoneTaskCount(taskCategory);
+			if (isDone == null || isDone) {
+				taskCountSummary.addTaskCount(taskCategory, true,
+						doneTaskCount);
+			}
+			if (isDone == null || !isDone) {
+				taskCountSummary.addTaskCount(taskCategory, false,
+						taskLists.categoryIndex.getTaskCount(taskCategory)
+								- doneTaskCount);
+			}
+		}
+	}
+
+	/**
+	 * Checks if query results are a view of one category of category index
+	 * 
+	 * @return true if query only filters on one category
+	 */
+	private boolean isReadFromCategoryView() {
+		return taskQuery.getTaskCategories().size() == 1
+				&& !hasFiltersBesideCategories();
+	}
+
+	private boolean hasFiltersBesideCategories() {
+		return taskQuery.getLowercaseTaskName() != null
+				|| taskQuery.getStartDateTime() != null
+				|| taskQuery.getDone() != null;
+	}
+
+	/**
+	 * Counts non-deleted tasks of queried categories, and done state if
+	 * queried
+	 * 
+	 * @return candidate count
+	 */
+	private int estimateCategoryCandidateCount() {
+		Boolean isDone = taskQuery.getDone();
+		int candidateCount = 0;
+		for (TaskCategory taskCategory : taskQuery.getTaskCategories()) {
+			int doneTaskCount = taskLists.categoryIndex
+					.getDoneTaskCount(taskCategory);
+			if (isDone == null) {
+				candidateCount += taskLists.categoryIndex
+						.getTaskCount(taskCategory);
+			} else if (isDone) {
+				candidateCount += doneTaskCount;
+			} else {
+				candidateCount += taskLists.categoryIndex
+						.getTaskCount(taskCategory) - doneTaskCount;
+			}
+		}
+		return candidateCount;
+	}
+
+	/**
+	 * Gets candidate tasks of plan, in no particular order
+	 * 
+	 * @param plan
+	 * @return candidates, each task at most once
+	 */
+	private Iterable<Task> getCandidateTasks(TaskQueryPlan plan) {
+		switch (plan) {
+		case CATEGORY_INDEX:
+			return getCategoryCandidateTasks();
+		case NAME_INDEX:
+			return getNameCandidateTasks();
+		case DATE_INDEX:
+			List<Task> candidateTasks = new ArrayList<Task>();
+			taskLists.dateIndex.addCandidateTasks(
+					taskQuery.getStartDateTime(), taskQuery.getEndDateTime(),
+					taskQuery.isIncludeFloatingTasks(), candidateTasks);
+			return candidateTasks;
+		default:
+			return taskLists.taskList.values();
+		}
+	}
+
+	/**
+	 * Gets tasks of queried categories
+	 * 
+	 * @return candidates
+	 */
+	private Iterable<Task> getCategoryCandidateTasks() {
+		Set<TaskCategory> taskCategories = taskQuery.getTaskCategories();
+		if (taskCategories.size() == 1) {
+			return taskLists.categoryIndex.getTasks(taskCategories.iterator()
+					.next());
+		}
+		List<Task> candidateTasks = new ArrayList<Task>();
+		for (TaskCategory taskCategory : taskCategories) {
+			for (Task taskEntry : taskLists.categoryIndex
+					.getTasks(taskCategory)) {
+				candidateTasks.add(taskEntry);
+			}
+		}
+		return candidateTasks;
+	}
+
+	/**
+	 * Gets tasks with a name token containing queried name
+	 * 
+	 * @return candidates
+	 */
+	private Iterable<Task> getNameCandidateTasks() {
+		Set<Integer> candidateTaskIds = new HashSet<Integer>();
+		taskLists.nameIndex.addCandidateTaskIds(
+				taskQuery.getLowercaseTaskName(), candidateTaskIds);
+		List<Task> candidateTasks = new ArrayList<Task>(candidateTaskIds.size());
+		for (int taskId : candidateTaskIds) {
+			Task taskEntry = taskLists.taskList.get(taskId);
+			if (taskEntry != null) {
+				candidateTasks.add(taskEntry);
+			}
+		}
+		return candidateTasks;
+	}
+
+	/**
+	 * Checks candidates against every filter of query, then orders and limits
+	 * matched tasks
+	 * 
+	 * - Candidates already in result order stop being read once the limit is
+	 * reached<br>
+	 * - Candidates in result order that all match are returned as they are,
+	 * without being collected
+	 * 
+	 * @param candidateTasks
+	 * @param isInResultOrder
+	 *            true if candidates are in the order query results are in
+	 * @param isAllMatched
+	 *            true if every candidate matches query
+	 * @return matched tasks
+	 */
+	private List<Task> getMatchingTasks(List<Task> candidateTasks,
+			boolean isInResultOrder, boolean isAllMatched) {
+		if (isInResultOrder && isAllMatched) {
+			return limit(candidateTasks);
+		}
+		return getMatchingTasks((Iterable<Task>) candidateTasks,
+				isInResultOrder);
+	}
+
+	/**
+	 * Checks candidates against every filter of query, then orders and limits
+	 * matched tasks
+	 * 
+	 * @param candidateTasks
+	 * @param isInResultOrder
+	 *            true if candidates are in the order query results are in, so
+	 *            reading stops once the limit is reached
+	 * @return matched tasks
+	 */
+	private List<Task> getMatchingTasks(Iterable<Task> candidateTasks,
+			boolean isInResultOrder) {
+
+		List<Task> matchedTasks = new ArrayList<Task>();
+		for (Task taskEntry : candidateTasks) {
+			if (isInResultOrder && matchedTasks.size() >= taskQuery.getLimit()) {
+				break;
+			}
+			if (taskQuery.matches(taskEntry)) {
+				matchedTasks.add(taskEntry);
+			}
+		}
+		if (isInResultOrder) {
+			return matchedTasks;
+		}
+		if (taskQuery.isOrderByStartDateTime()) {
+			taskLists.orderIndex.order(matchedTasks);
+		} else {
+			Collections.sort(matchedTasks, taskIdComparator);
+		}
+		return limit(matchedTasks);
+	}
+
+	/**
+	 * Gets tasks matching query from columns, reading only tasks of matched
+	 * rows
+	 * 
+	 * @return matched tasks
+	 */
+	private List<Task> getColumnMatchingTasks() {
+		if (!taskQuery.isOrderByStartDateTime()) {
+			return taskLists.columns.getMatchingTasks(taskQuery,
+					taskQuery.getLimit());
+		}
+		List<Task> matchedTasks = taskLists.columns.getMatchingTasks(
+				taskQuery, TaskQuery.NO_LIMIT);
+		taskLists.orderIndex.order(matchedTasks);
+		return limit(matchedTasks);
+	}
+
+	/**
+	 * Cuts tasks down to query limit
+	 * 
+	 * @param tasks
+	 * @return first tasks up to limit
+	 */
+	private List<Task> limit(List<Task> tasks) {
+		if (tasks.size() <= taskQuery.getLimit()) {
+			return tasks;
+		}
+		return tasks.subList(0, taskQuery.getLimit());
+	}
+
+}
@@ -0,0 +1,466 @@
+//@author A0087048X
+package mhs.src.storage.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import mhs.src.storage.persistence.task.Task;
+
+/**
+ * TaskTrigramIndex
+ * 
+ * Immutable character trigram index of task names of non-deleted tasks in
+ * TaskLists, for fuzzy task name search, where put and remove return a new
+ * index sharing unchanged structure with the old index
+ * 
+ * - Task names are normalized to lowercase words of letters and digits, and
+ * each word is padded with two leading and one trailing space before being
+ * split into trigrams<br>
+ * - trigramIndex maps each trigram to the indexed names of tasks with the
+ * trigram, by taskId<br>
+ * - Indexed names are kept per taskId, for scoring and removal
+ * 
+ * Fuzzy lookups read candidates from the rarest trigrams of the query only,
+ * as a name within the allowed edit distance must share all but a few
+ * trigrams with the query. Candidates are then ranked by the edit distance
+ * of the closest part of their name to the query, then by trigram
+ * similarity.
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskTrigramIndex {
+
+	/** Most edits allowed between a query and part of a task name */
+	private static final int MAX_EDIT_DISTANCE = 3;
+	/** Query characters per allowed edit */
+	private static final int CHARACTERS_PER_EDIT = 4;
+	/** Most trigrams a single edit can change */
+	private static final int TRIGRAMS_PER_EDIT = 3;
+	private static final int INITIAL_MATCH_CAPACITY = 16;
+
+	static final TaskTrigramIndex EMPTY = new TaskTrigramIndex(
+			PersistentSortedMap.<String, PersistentSortedMap<Integer, IndexedTaskName>> empty(),
+			PersistentSortedMap.<Integer, IndexedTaskName> empty());
+
+	private final PersistentSortedMap<String, PersistentSortedMap<Integer, IndexedTaskName>> trigramIndex;
+	private final PersistentSortedMap<Integer, IndexedTaskName> indexedTaskNames;
+
+	/**
+	 * Task name as indexed
+	 * 
+	 * - paddedTaskName is the padded words of the name joined together, which
+	 * contains a query trigram exactly when the name has the trigram, so
+	 * shared trigrams are counted without splitting the name again
+	 */
+	private static final class IndexedTaskName {
+		final int taskId;
+		final String normalizedTaskName;
+		final String paddedTaskName;
+		final int trigramCount;
+
+		IndexedTaskName(int taskId, String normalizedTaskName) {
+			this.taskId = taskId;
+			this.normalizedTaskName = normalizedTaskName;
+			this.paddedTaskName = pad(normalizedTaskName);
+			this.trigramCount = getTrigrams(normalizedTaskName).size();
+		}
+	}
+
+	/**
+	 * Query compiled for Myers' bit-parallel approximate string matching
+	 * 
+	 * - Each query character has a bit mask of its positions in the query, so
+	 * a column of edit distances is updated with a few bitwise operations per
+	 * text character<br>
+	 * - Queries longer than 64 characters fall back to a row by row edit
+	 * distance
+	 */
+	private static final class QueryPattern {
+		private static final int MAX_BIT_PARALLEL_LENGTH = Long.SIZE;
+		private static final int ASCII_CHARACTERS = 128;
+
+		private final String query;
+		private final long[] asciiMatchMasks = new long[ASCII_CHARACTERS];
+		private final String otherCharacters;
+		private final long[] otherMatchMasks;
+
+		QueryPattern(String query) {
+			this.query = query;
+			StringBuilder otherCharacterBuilder = new StringBuilder();
+			long[] otherMasks = new long[query.length()];
+			for (int i = 0; i < query.length()
+					&& i < MAX_BIT_PARALLEL_LENGTH; i++) {
+				char character = query.charAt(i);
+				if (character < ASCII_CHARACTERS) {
+					asciiMatchMasks[character] |= 1L << i;
+					continue;
+				}
+				int otherIndex = otherCharacterBuilder.indexOf(String
+						.valueOf(character));
+				if (otherIndex < 0) {
+					otherIndex = otherCharacterBuilder.length();
+					otherCharacterBuilder.append(character);
+				}
+				otherMasks[otherIndex] |= 1L << i;
+			}
+			this.otherCharacters = otherCharacterBuilder.toString();
+			this.otherMatchMasks = otherMasks;
+		}
+
+		/**
+		 * Gets fewest edits turning query into any part of text
+		 * 
+		 * @param text
+		 * @param maxEditDistance
+		 * @return edit distance, or maxEditDistance + 1 if it is larger
+		 */
+		int getSubstringEditDistance(String text, int maxEditDistance) {
+			if (query.length() > MAX_BIT_PARALLEL_LENGTH) {
+				return TaskTrigramIndex.getSubstringEditDistance(query, text,
+						maxEditDistance);
+			}
+			// vertical positive and negative deltas of the current column
+			long positiveVertical = -1L;
+			long negativeVertical = 0L;
+			long lastBit = 1L << (query.length() - 1);
+			int editDistance = query.length();
+			int minEditDistance = editDistance;
+			for (int j = 0; j < text.length(); j++) {
+				long matchMask = getMatchMask(text.charAt(j));
+				long crossVertical = matchMask | negativeVertical;
+				long crossHorizontal = (((matchMask & positiveVertical) + positiveVertical) ^ positiveVertical)
+						| matchMask;
+				long positiveHorizontal = negativeVertical
+						| ~(crossHorizontal | positiveVertical);
+				long negativeHorizontal = positiveVertical & crossHorizontal;
+				if ((positiveHorizontal & lastBit) != 0) {
+					editDistance++;
+				} else if ((negativeHorizontal & lastBit) != 0) {
+					editDistance--;
+				}
+				minEditDistance = Math.min(minEditDistance, editDistance);
+				// matches may start anywhere in text, so the first row stays 0
+				positiveHorizontal <<= 1;
+				negativeHorizontal <<= 1;
+				positiveVertical = negativeHorizontal
+						| ~(crossVertical | positiveHorizontal);
+				negativeVertical = positiveHorizontal & crossVertical;
+			}
+			return Math.min(minEditDistance, maxEditDistance + 1);
+		}
+
+		private long getMatchMask(char character) {
+			if (character < ASCII_CHARACTERS) {
+				return asciiMatchMasks[character];
+			}
+			int otherIndex = otherCharacters.indexOf(character);
+			return otherIndex < 0 ? 0L : otherMatchMasks[otherIndex];
+		}
+	}
+
+	/**
+	 * Task matched by fuzzy lookup
+	 */
+	private static final class FuzzyMatch {
+		final int taskId;
+		final int editDistance;
+		final double similarity;
+
+		FuzzyMatch(int taskId, int editDistance, double similarity) {
+			this.taskId = taskId;
+			this.editDistance = editDistance;
+			this.similarity = similarity;
+		}
+	}
+
+	private static final Comparator<FuzzyMatch> fuzzyMatchComparator = new Comparator<FuzzyMatch>() {
+		@Override
+		public int compare(FuzzyMatch match1, FuzzyMatch match2) {
+			if (match1.editDistance != match2.editDistance) {
+				return match1.editDistance < match2.editDistance ? -1 : 1;
+			}
+			int similarityComparison = Double.compare(match2.similarity,
+					match1.similarity);
+			if (similarityComparison != 0) {
+				return similarityComparison;
+			}
+			return Integer.compare(match1.taskId, match2.taskId);
+		}
+	};
+
+	private TaskTrigramIndex(
+			PersistentSortedMap<String, PersistentSortedMap<Integer, IndexedTaskName>> trigramIndex,
+			PersistentSortedMap<Integer, IndexedTaskName> indexedTaskNames) {
+		this.trigramIndex = trigramIndex;
+		this.indexedTaskNames = indexedTaskNames;
+	}
+
+	/**
+	 * Returns index with task name, replacing any task indexed with the same
+	 * taskId
+	 * 
+	 * @param taskToIndex
+	 * @return new index
+	 */
+	TaskTrigramIndex put(Task taskToIndex) {
+		TaskTrigramIndex index = remove(taskToIndex.getTaskId());
+		if (taskToIndex.isDeleted() || taskToIndex.getTaskName() == null) {
+			return index;
+		}
+		int taskId = taskToIndex.getTaskId();
+		IndexedTaskName indexedTaskName = new IndexedTaskName(taskId,
+				normalize(taskToIndex.getTaskName()));
+		PersistentSortedMap<String, PersistentSortedMap<Integer, IndexedTaskName>> newTrigramIndex = index.trigramIndex;
+		for (String trigram : getTrigrams(indexedTaskName.normalizedTaskName)) {
+			PersistentSortedMap<Integer, IndexedTaskName> taskNames = newTrigramIndex
+					.get(trigram);
+			if (taskNames == null) {
+				taskNames = PersistentSortedMap.<Integer, IndexedTaskName> empty();
+			}
+			newTrigramIndex = newTrigramIndex.put(trigram,
+					taskNames.put(taskId, indexedTaskName));
+		}
+		return new TaskTrigramIndex(newTrigramIndex,
+				index.indexedTaskNames.put(taskId, indexedTaskName));
+	}
+
+	/**
+	 * Returns index without task
+	 * 
+	 * @param taskId
+	 * @return new index, or this index if task is not indexed
+	 */
+	TaskTrigramIndex remove(int taskId) {
+		IndexedTaskName indexedTaskName = indexedTaskNames.get(taskId);
+		if (indexedTaskName == null) {
+			return this;
+		}
+		PersistentSortedMap<String, PersistentSortedMap<Integer, IndexedTaskName>> newTrigramIndex = trigramIndex;
+		for (String trigram : getTrigrams(indexedTaskName.normalizedTaskName)) {
+			PersistentSortedMap<Integer, IndexedTaskName> taskNames = newTrigramIndex
+					.get(trigram).remove(taskId);
+			if (taskNames.isEmpty()) {
+				newTrigramIndex = newTrigramIndex.remove(trigram);
+			} else {
+				newTrigramIndex = newTrigramIndex.put(trigram, taskNames);
+			}
+		}
+		return new TaskTrigramIndex(newTrigramIndex,
+				indexedTaskNames.remove(taskId));
+	}
+
+	/**
+	 * Finds taskIds of tasks with names closest to query task name
+	 * 
+	 * - Names match if part of the name is within a few edits of the query,
+	 * one edit per 4 query characters, up to 3 edits<br>
+	 * - Closer names come first, then names sharing more trigrams with the
+	 * query, then lower taskIds<br>
+	 * - Only the closest maxTaskCount matches are kept while scoring, so
+	 * common names cost no sort of all matches
+	 * 
+	 * @param queryTaskName
+	 * @param maxTaskCount
+	 *            most taskIds to return
+	 * @return taskIds of closest tasks, closest first
+	 */
+	List<Integer> findClosestTaskIds(String queryTaskName, int maxTaskCount) {
+		String normalizedQuery = normalize(queryTaskName);
+		Set<String> queryTrigrams = getTrigrams(normalizedQuery);
+		if (queryTrigrams.isEmpty() || maxTaskCount <= 0) {
+			return Collections.emptyList();
+		}
+		int maxEditDistance = Math.min(MAX_EDIT_DISTANCE,
+				normalizedQuery.length() / CHARACTERS_PER_EDIT);
+		int minSharedTrigramCount = Math.max(1, queryTrigrams.size()
+				- maxEditDistance * TRIGRAMS_PER_EDIT);
+
+		QueryPattern queryPattern = new QueryPattern(normalizedQuery);
+		// furthest kept match at head, to be replaced by closer matches
+		PriorityQueue<FuzzyMatch> closestMatches = new PriorityQueue<FuzzyMatch>(
+				Math.min(maxTaskCount, INITIAL_MATCH_CAPACITY),
+				Collections.reverseOrder(fuzzyMatchComparator));
+		for (IndexedTaskName indexedTaskName : getCandidateTaskNames(
+				queryTrigrams, minSharedTrigramCount)) {
+			int sharedTrigramCount = 0;
+			for (String queryTrigram : queryTrigrams) {
+				if (indexedTaskName.paddedTaskName.contains(queryTrigram)) {
+					sharedTrigramCount++;
+				}
+			}
+			if (sharedTrigramCount < minSharedTrigramCount) {
+				continue;
+			}
+			int editDistance = queryPattern.getSubstringEditDistance(
+					indexedTaskName.normalizedTaskName, maxEditDistance);
+			if (editDistance > maxEditDistance) {
+				continue;
+			}
+			double similarity = (double) sharedTrigramCount
+					/ (queryTrigrams.size() + indexedTaskName.trigramCount - sharedTrigramCount);
+			FuzzyMatch fuzzyMatch = new FuzzyMatch(indexedTaskName.taskId,
+					editDistance, similarity);
+			if (closestMatches.size() < maxTaskCount) {
+				closestMatches.add(fuzzyMatch);
+			} else if (fuzzyMatchComparator.compare(fuzzyMatch,
+					closestMatches.peek()) < 0) {
+				closestMatches.poll();
+				closestMatches.add(fuzzyMatch);
+			}
+		}
+
+		List<FuzzyMatch> fuzzyMatches = new ArrayList<FuzzyMatch>(
+				closestMatches);
+		Collections.sort(fuzzyMatches, fuzzyMatchComparator);
+		List<Integer> closestTaskIds = new ArrayList<Integer>();
+		for (FuzzyMatch fuzzyMatch : fuzzyMatches) {
+			closestTaskIds.add(fuzzyMatch.taskId);
+		}
+		return closestTaskIds;
+	}
+
+	/**
+	 * Gets indexed names of tasks with any of the rarest query trigrams
+	 * 
+	 * - A task sharing minSharedTrigramCount trigrams with the query has at
+	 * least one of its rarest (size - minSharedTrigramCount + 1) trigrams, so
+	 * the most common trigrams are never read
+	 * 
+	 * @param queryTrigrams
+	 * @param minSharedTrigramCount
+	 * @return candidate task names
+	 */
+	private Set<IndexedTaskName> getCandidateTaskNames(Set<String> queryTrigrams,
+			int minSharedTrigramCount) {
+		List<PersistentSortedMap<Integer, IndexedTaskName>> trigramTaskNames = new ArrayList<PersistentSortedMap<Integer, IndexedTaskName>>();
+		for (String queryTrigram : queryTrigrams) {
+			PersistentSortedMap<Integer, IndexedTaskName> taskNames = trigramIndex
+					.get(queryTrigram);
+			trigramTaskNames.add(taskNames == null ? PersistentSortedMap
+					.<Integer, IndexedTaskName> empty() : taskNames);
+		}
+		Collections.sort(trigramTaskNames,
+				new Comparator<PersistentSortedMap<Integer, IndexedTaskName>>() {
+					@Override
+					public int compare(
+							PersistentSortedMap<Integer, IndexedTaskName> taskNames1,
+							PersistentSortedMap<Integer, IndexedTaskName> taskNames2) {
+						return Integer.compare(taskNames1.size(), taskNames2.size());
+					}
+				});
+
+		// each task has one indexed name shared by all its trigrams, so
+		// candidates are told apart by identity
+		Set<IndexedTaskName> candidateTaskNames = new HashSet<IndexedTaskName>();
+		int prefixLength = queryTrigrams.size() - minSharedTrigramCount + 1;
+		for (int i = 0; i < prefixLength; i++) {
+			for (IndexedTaskName indexedTaskName : trigramTaskNames.get(i)
+					.values()) {
+				candidateTaskNames.add(indexedTaskName);
+			}
+		}
+		return candidateTaskNames;
+	}
+
+	/**
+	 * Gets fewest edits turning query into any part of text
+	 * 
+	 * @param query
+	 * @param text
+	 * @param maxEditDistance
+	 *            edit distance to stop at
+	 * @return edit distance, or maxEditDistance + 1 if it is larger
+	 */
+	static int getSubstringEditDistance(String query, String text,
+			int maxEditDistance) {
+		// previousRow[j] is distance of query prefix to best part of text
+		// ending before j, starting anywhere in text
+		int[] previousRow = new int[text.length() + 1];
+		int[] currentRow = new int[text.length() + 1];
+		for (int i = 1; i <= query.length(); i++) {
+			currentRow[0] = i;
+			int rowMinimum = i;
+			for (int j = 1; j <= text.length(); j++) {
+				int substitutionCost = query.charAt(i - 1) == text.charAt(j - 1) ? 0
+						: 1;
+				currentRow[j] = Math.min(previousRow[j - 1] + substitutionCost,
+						Math.min(previousRow[j], currentRow[j - 1]) + 1);
+				rowMinimum = Math.min(rowMinimum, currentRow[j]);
+			}
+			if (rowMinimum > maxEditDistance) {
+				return maxEditDistance + 1;
+			}
+			int[] swapRow = previousRow;
+			previousRow = currentRow;
+			currentRow = swapRow;
+		}
+		int editDistance = maxEditDistance + 1;
+		for (int distance : previousRow) {
+			editDistance = Math.min(editDistance, distance);
+		}
+		return editDistance;
+	}
+
+	/**
+	 * Normalizes text to lowercase words of letters and digits separated by
+	 * single spaces
+	 * 
+	 * @param text
+	 * @return normalized text
+	 */
+	static String normalize(String text) {
+		StringBuilder normalizedText = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char character = text.charAt(i);
+			if (Character.isLetterOrDigit(character)) {
+				normalizedText.append(Character.toLowerCase(character));
+			} else if (normalizedText.length() > 0
+					&& normalizedText.charAt(normalizedText.length() - 1) != ' ') {
+				normalizedText.append(' ');
+			}
+		}
+		int length = normalizedText.length();
+		if (length > 0 && normalizedText.charAt(length - 1) == ' ') {
+			normalizedText.setLength(length - 1);
+		}
+		return normalizedText.toString();
+	}
+
+	/**
+	 * Splits normalized text into distinct trigrams of padded words
+	 * 
+	 * @param normalizedText
+	 * @return trigrams
+	 */
+	static Set<String> getTrigrams(String normalizedText) {
+		Set<String> trigrams = new LinkedHashSet<String>();
+		if (normalizedText.isEmpty()) {
+			return trigrams;
+		}
+		for (String word : normalizedText.split(" ")) {
+			String paddedWord = pad(word);
+			for (int i = 0; i + 3 <= paddedWord.length(); i++) {
+				trigrams.add(paddedWord.substring(i, i + 3));
+			}
+		}
+		return trigrams;
+	}
+
+	/**
+	 * Pads each word of normalized text with two leading and one trailing
+	 * space
+	 * 
+	 * @param normalizedText
+	 * @return padded text
+	 */
+	private static String pad(String normalizedText) {
+		return "  " + normalizedText.replace(" ", "   ") + " ";
+	}
+
+}
@@ -0,0 +1,365 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mhs.src.common.MhsLogger;
+import mhs.src.storage.persistence.task.DeadlineTask;
+import mhs.src.storage.persistence.task.FloatingTask;
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+import mhs.src.storage.persistence.task.TimedTask;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * TaskCompactJsonCodec
+ * 
+ * Reads and writes the compact task record format (format version 2)
+ * 
+ * {"formatVersion":2,"zones":["Asia/Singapore"],"tasks":[{"i":1,...}]}
+ * 
+ * - No indentation and null fields are omitted<br>
+ * - DateTimes are written as epoch millis<br>
+ * - Time zones are interned in a zone table, tasks refer to it by index "z"
+ * (omitted for index 0)<br>
+ * - Flags "d" (done) and "x" (deleted) are omitted when false
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskCompactJsonCodec {
+
+	private static final int FORMAT_VERSION = 2;
+
+	private static final String JSON_KEY_FORMAT_VERSION = "formatVersion";
+	private static final String JSON_KEY_ZONES = "zones";
+	private static final String JSON_KEY_TASKS = "tasks";
+
+	private static final String JSON_KEY_TASK_ID = "i";
+	private static final String JSON_KEY_TASK_NAME = "n";
+	private static final String JSON_KEY_TASK_CATEGORY = "c";
+	private static final String JSON_KEY_START_DATE_TIME = "s";
+	private static final String JSON_KEY_END_DATE_TIME = "e";
+	private static final String JSON_KEY_TASK_CREATED = "cr";
+	private static final String JSON_KEY_TASK_UPDATED = "u";
+	private static final String JSON_KEY_TASK_LAST_SYNC = "ls";
+	private static final String JSON_KEY_ZONE_INDEX = "z";
+	private static final String JSON_KEY_G_TASK_ID = "gt";
+	private static final String JSON_KEY_G_CAL_TASK_ID = "gc";
+	private static final String JSON_KEY_G_CAL_TASK_UID = "gu";
+	private static final String JSON_KEY_IS_DONE = "d";
+	private static final String JSON_KEY_IS_DELETED = "x";
+
+	private static final int DEFAULT_ZONE_INDEX = 0;
+	private static final String EXCEPTION_MESSAGE_UNSUPPORTED_FORMAT_VERSION = "Unsupported task record file format version : %1$d";
+
+	private static final Logger logger = MhsLogger.getLogger();
+
+	/**
+	 * Writes task list in compact format
+	 * 
+	 * @param jsonWriter
+	 * @param taskList
+	 * @throws IOException
+	 */
+	void writeTaskList(JsonWriter jsonWriter, Map<Integer, Task> taskList)
+			throws IOException {
+		List<DateTimeZone> zoneTable = new ArrayList<DateTimeZone>();
+		Map<DateTimeZone, Integer> zoneIndexes = new HashMap<DateTimeZone, Integer>();
+		for (Task task : taskList.values()) {
+			DateTimeZone taskZone = getTaskZone(task);
+			if (!zoneIndexes.containsKey(taskZone)) {
+				zoneIndexes.put(taskZone, zoneTable.size());
+				zoneTable.add(taskZone);
+			}
+		}
+
+		jsonWriter.beginObject();
+		jsonWriter.name(JSON_KEY_FORMAT_VERSION).value(FORMAT_VERSION);
+		jsonWriter.name(JSON_KEY_ZONES).beginArray();
+		for (DateTimeZone zone : zoneTable) {
+			jsonWriter.value(zone.getID());
+		}
+		jsonWriter.endArray();
+		jsonWriter.name(JSON_KEY_TASKS).beginArray();
+		for (Task task : taskList.values()) {
+			writeTask(jsonWriter, task, zoneIndexes.get(getTaskZone(task)));
+		}
+		jsonWriter.endArray();
+		jsonWriter.endObject();
+	}
+
+	/**
+	 * Writes single task object, skipping null and false fields
+	 * 
+	 * @param jsonWriter
+	 * @param task
+	 * @param zoneIndex
+	 * @throws IOException
+	 */
+	private void writeTask(JsonWriter jsonWriter, Task task, int zoneIndex)
+			throws IOException {
+		jsonWriter.beginObject();
+		jsonWriter.name(JSON_KEY_TASK_ID).value(task.getTaskId());
+		writeString(jsonWriter, JSON_KEY_TASK_NAME, task.getTaskName());
+		writeString(jsonWriter, JSON_KEY_TASK_CATEGORY, task.getTaskCategory()
+				.getValue());
+		if (task.isTimed()) {
+			writeDateTime(jsonWriter, JSON_KEY_START_DATE_TIME,
+					task.getStartDateTime());
+		}
+		writeDateTime(jsonWriter, JSON_KEY_END_DATE_TIME, task.getEndDateTime());
+		writeDateTime(jsonWriter, JSON_KEY_TASK_CREATED, task.getTaskCreated());
+		writeDateTime(jsonWriter, JSON_KEY_TASK_UPDATED, task.getTaskUpdated());
+		writeDateTime(jsonWriter, JSON_KEY_TASK_LAST_SYNC,
+				task.getTaskLastSync());
+		if (zoneIndex != DEFAULT_ZONE_INDEX) {
+			jsonWriter.name(JSON_KEY_ZONE_INDEX).value(zoneIndex);
+		}
+		writeString(jsonWriter, JSON_KEY_G_TASK_ID, task.getGTaskId());
+		writeString(jsonWriter, JSON_KEY_G_CAL_TASK_ID, task.getgCalTaskId());
+		writeString(jsonWriter, JSON_KEY_G_CAL_TASK_UID, task.getgCalTaskUid());
+		if (task.isDone()) {
+			jsonWriter.name(JSON_KEY_IS_DONE).value(true);
+		}
+		if (task.isDeleted()) {
+			jsonWriter.name(JSON_KEY_IS_DELETED).value(true);
+		}
+		jsonWriter.endObject();
+	}
+
+	private void writeString(JsonWriter jsonWriter, String jsonKey,
+			String value) throws IOException {
+		if (value != null) {
+			jsonWriter.name(jsonKey).value(value);
+		}
+	}
+
+	private void writeDateTime(JsonWriter jsonWriter, String jsonKey,
+			DateTime dateTime) throws IOException {
+		if (dateTime != null) {
+			jsonWriter.name(jsonKey).value(dateTime.getMillis());
+		}
+	}
+
+	/**
+	 * Gets zone of task date times. All date times of a task are restored in
+	 * this zone.
+	 * 
+	 * @param task
+	 * @return zone of first non null date time or default zone
+	 */
+	private DateTimeZone getTaskZone(Task task) {
+		DateTime[] taskDateTimes = { task.getTaskCreated(),
+				task.getTaskUpdated(), task.getEndDateTime(),
+				task.getStartDateTime(), task.getTaskLastSync() };
+		for (DateTime dateTime : taskDateTimes) {
+			if (dateTime != null) {
+				return dateTime.getZone();
+			}
+		}
+		return DateTimeZone.getDefault();
+	}
+
+	/**
+	 * Reads task list in compact format. Json reader must be positioned at
+	 * the start of the format header object.
+	 * 
+	 * @param jsonReader
+	 * @param taskList
+	 *            tasks read are put into task list
+	 * @throws IOException
+	 *             if format version is not supported
+	 */
+	void readTaskList(JsonReader jsonReader, Map<Integer, Task> taskList)
+			throws IOException {
+		List<DateTimeZone> zoneTable = new ArrayList<DateTimeZone>();
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			switch (jsonReader.nextName()) {
+			case JSON_KEY_FORMAT_VERSION:
+				int formatVersion = jsonReader.nextInt();
+				if (formatVersion > FORMAT_VERSION) {
+					throw new IOException(String.format(
+							EXCEPTION_MESSAGE_UNSUPPORTED_FORMAT_VERSION,
+							formatVersion));
+				}
+				break;
+			case JSON_KEY_ZONES:
+				jsonReader.beginArray();
+				while (jsonReader.hasNext()) {
+					zoneTable.add(DateTimeZone.forID(jsonReader.nextString()));
+				}
+				jsonReader.endArray();
+				break;
+			case JSON_KEY_TASKS:
+				jsonReader.beginArray();
+				while (jsonReader.hasNext()) {
+					Task task = readTask(jsonReader, zoneTable);
+					if (task != null) {
+						taskList.put(task.getTaskId(), task);
+					}
+				}
+				jsonReader.endArray();
+				break;
+			default:
+				jsonReader.skipValue();
+				break;
+			}
+		}
+		jsonReader.endObject();
+	}
+
+	/**
+	 * Reads single task object
+	 * 
+	 * @param jsonReader
+	 * @param zoneTable
+	 * @return task or null if task category is missing or unknown
+	 * @throws IOException
+	 */
+	private Task readTask(JsonReader jsonReader, List<DateTimeZone> zoneTable)
+			throws IOException {
+		int taskId = 0;
+		String taskName = null;
+		String taskCategory = null;
+		Long startMillis = null;
+		Long endMillis = null;
+		Long createdMillis = null;
+		Long updatedMillis = null;
+		Long lastSyncMillis = null;
+		int zoneIndex = DEFAULT_ZONE_INDEX;
+		String gTaskId = null;
+		String gCalTaskId = null;
+		String gCalTaskUid = null;
+		boolean isDone = false;
+		boolean isDeleted = false;
+
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			String jsonKey = jsonReader.nextName();
+			if (jsonReader.peek() == JsonToken.NULL) {
+				jsonReader.nextNull();
+				continue;
+			}
+			switch (jsonKey) {
+			case JSON_KEY_TASK_ID:
+				taskId = jsonReader.nextInt();
+				break;
+			case JSON_KEY_TASK_NAME:
+				taskName = jsonReader.nextString();
+				break;
+			case JSON_KEY_TASK_CATEGORY:
+				taskCategory = jsonReader.nextString();
+				break;
+			case JSON_KEY_START_DATE_TIME:
+				startMillis = jsonReader.nextLong();
+				break;
+			case JSON_KEY_END_DATE_TIME:
+				endMillis = jsonReader.nextLong();
+				break;
+			case JSON_KEY_TASK_CREATED:
+				createdMillis = jsonReader.nextLong();
+				break;
+			case JSON_KEY_TASK_UPDATED:
+				updatedMillis = jsonReader.nextLong();
+				break;
+			case JSON_KEY_TASK_LAST_SYNC:
+				lastSyncMillis = jsonReader.nextLong();
+				break;
+			case JSON_KEY_ZONE_INDEX:
+				zoneIndex = jsonReader.nextInt();
+				break;
+			case JSON_KEY_G_TASK_ID:
+				gTaskId = jsonReader.nextString();
+				break;
+			case JSON_KEY_G_CAL_TASK_ID:
+				gCalTaskId = jsonReader.nextString();
+				break;
+			case JSON_KEY_G_CAL_TASK_UID:
+				gCalTaskUid = jsonReader.nextString();
+				break;
+			case JSON_KEY_IS_DONE:
+				isDone = jsonReader.nextBoolean();
+				break;
+			case JSON_KEY_IS_DELETED:
+				isDeleted = jsonReader.nextBoolean();
+				break;
+			default:
+				jsonReader.skipValue();
+				break;
+			}
+		}
+		jsonReader.endObject();
+
+		DateTimeZone zone = getZone(zoneTable, zoneIndex);
+		DateTime startDateTime = toDateTime(startMillis, zone);
+		DateTime endDateTime = toDateTime(endMillis, zone);
+		DateTime taskCreated = toDateTime(createdMillis, zone);
+		DateTime taskUpdated = toDateTime(updatedMillis, zone);
+		DateTime taskLastSync = toDateTime(lastSyncMillis, zone);
+
+		if (taskCategory == null) {
+			logger.log(Level.INFO, "Task category missing.");
+			return null;
+		}
+		switch (taskCategory) {
+		case "TIMED":
+			return new TimedTask(taskId, taskName, TaskCategory.TIMED,
+					startDateTime, endDateTime, taskCreated, taskUpdated,
+					taskLastSync, gCalTaskId, gCalTaskUid, isDone, isDeleted);
+		case "DEADLINE":
+			return new DeadlineTask(taskId, taskName, TaskCategory.DEADLINE,
+					endDateTime, taskCreated, taskUpdated, taskLastSync,
+					gCalTaskId, gCalTaskUid, isDone, isDeleted);
+		case "FLOATING":
+			return new FloatingTask(taskId, taskName, TaskCategory.FLOATING,
+					taskCreated, taskUpdated, taskLastSync, gTaskId, isDone,
+					isDeleted);
+		default:
+			logger.log(Level.INFO, "Unknown task category : " + taskCategory);
+			return null;
+		}
+	}
+
+	/**
+	 * Gets zone from zone table
+	 * 
+	 * @param zoneTable
+	 * @param zoneIndex
+	 * @return zone, or default zone if zone table is empty
+	 * @throws MalformedJsonException
+	 *             if zone index is not in zone table
+	 */
+	private DateTimeZone getZone(List<DateTimeZone> zoneTable, int zoneIndex)
+			throws MalformedJsonException {
+		if (zoneTable.isEmpty() && zoneIndex == DEFAULT_ZONE_INDEX) {
+			return DateTimeZone.getDefault();
+		}
+		if (zoneIndex < 0 || zoneIndex >= zoneTable.size()) {
+			throw new MalformedJsonException("Unknown zone index : "
+					+ zoneIndex);
+		}
+		return zoneTable.get(zoneIndex);
+	}
+
+	private DateTime toDateTime(Long millis, DateTimeZone zone) {
+		if (millis == null) {
+			return null;
+		}
+		return new DateTime(millis.longValue(), zone);
+	}
+
+}
@@ -0,0 +1,165 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+
+import org.joda.time.DateTime;
+
+/**
+ * TaskCsvReader
+ * 
+ * Reads tasks from RFC 4180 csv records written by TaskCsvWriter
+ * 
+ * - Header record is skipped<br>
+ * - Blank category is inferred from start and end date times<br>
+ * - Quoted fields may contain commas, escaped quotes and line breaks
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskCsvReader extends TaskTransferReader {
+
+	private static final int COLUMN_CATEGORY = 0;
+	private static final int COLUMN_NAME = 1;
+	private static final int COLUMN_START = 2;
+	private static final int COLUMN_END = 3;
+	private static final int COLUMN_DONE = 4;
+	private static final int END_OF_STREAM = -1;
+
+	private final Reader reader;
+	private int lookahead;
+	private boolean isLookaheadRead;
+	private boolean isHeaderChecked;
+
+	/**
+	 * TaskCsvReader Constructor
+	 * 
+	 * @param reader
+	 *            buffered reader of csv file
+	 */
+	TaskCsvReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	@Override
+	public Task readTask() throws IOException {
+		List<String> record = readRecord();
+		if (!isHeaderChecked && record != null
+				&& TaskCsvWriter.CSV_HEADER_FIRST_COLUMN
+						.equalsIgnoreCase(record.get(COLUMN_CATEGORY))) {
+			record = readRecord();
+		}
+		isHeaderChecked = true;
+		if (record == null) {
+			return null;
+		}
+		return createTask(
+				parseTaskCategory(getField(record, COLUMN_CATEGORY)),
+				getField(record, COLUMN_NAME),
+				parseDateTime(getField(record, COLUMN_START)),
+				parseDateTime(getField(record, COLUMN_END)),
+				Boolean.parseBoolean(getField(record, COLUMN_DONE)));
+	}
+
+	private String getField(List<String> record, int column) {
+		if (column >= record.size() || record.get(column).isEmpty()) {
+			return null;
+		}
+		return record.get(column);
+	}
+
+	private TaskCategory parseTaskCategory(String category) {
+		if (category == null) {
+			return null;
+		}
+		try {
+			return TaskCategory.valueOf(category.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private DateTime parseDateTime(String dateTime) {
+		if (dateTime == null) {
+			return null;
+		}
+		try {
+			return new DateTime(dateTime.trim());
+		} catch (IllegalArgumentException e) {
+			// rejected by validation
+			return null;
+		}
+	}
+
+	/**
+	 * Reads fields of next non-empty record
+	 * 
+	 * @return fields, or null at end of file
+	 * @throws IOException
+	 */
+	private List<String> readRecord() throws IOException {
+		int c = read();
+		while (c == '\r' || c == '\n') {
+			c = read();
+		}
+		if (c == END_OF_STREAM) {
+			return null;
+		}
+		List<String> record = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean isQuoted = false;
+		while (c != END_OF_STREAM) {
+			if (isQuoted) {
+				if (c == TaskCsvWriter.CSV_QUOTE) {
+					if (peek() == TaskCsvWriter.CSV_QUOTE) {
+						field.append(TaskCsvWriter.CSV_QUOTE);
+						read();
+					} else {
+						isQuoted = false;
+					}
+				} else {
+					field.append((char) c);
+				}
+			} else if (c == TaskCsvWriter.CSV_QUOTE) {
+				isQuoted = true;
+			} else if (c == TaskCsvWriter.CSV_SEPARATOR) {
+				record.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\r' || c == '\n') {
+				break;
+			} else {
+				field.append((char) c);
+			}
+			c = read();
+		}
+		record.add(field.toString());
+		return record;
+	}
+
+	private int read() throws IOException {
+		if (isLookaheadRead) {
+			isLookaheadRead = false;
+			return lookahead;
+		}
+		return reader.read();
+	}
+
+	private int peek() throws IOException {
+		if (!isLookaheadRead) {
+			lookahead = reader.read();
+			isLookaheadRead = true;
+		}
+		return lookahead;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
@@ -0,0 +1,88 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import mhs.src.storage.persistence.task.Task;
+
+import org.joda.time.DateTime;
+
+/**
+ * TaskCsvWriter
+ * 
+ * Writes tasks as RFC 4180 csv records under a header record
+ * 
+ * - Columns: category,name,start,end,done<br>
+ * - Date times are ISO 8601, start is only written for timed tasks<br>
+ * - Fields containing commas, quotes or line breaks are quoted
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskCsvWriter implements TaskTransferWriter {
+
+	static final String CSV_HEADER_FIRST_COLUMN = "category";
+	static final String CSV_HEADER = CSV_HEADER_FIRST_COLUMN
+			+ ",name,start,end,done";
+	static final char CSV_SEPARATOR = ',';
+	static final char CSV_QUOTE = '"';
+	private static final String CSV_RECORD_SEPARATOR = "\r\n";
+	private static final String CSV_ESCAPED_QUOTE = "\"\"";
+
+	private final Writer writer;
+
+	/**
+	 * TaskCsvWriter Constructor, writes header record
+	 * 
+	 * @param writer
+	 * @throws IOException
+	 */
+	TaskCsvWriter(Writer writer) throws IOException {
+		this.writer = writer;
+		writer.write(CSV_HEADER);
+		writer.write(CSV_RECORD_SEPARATOR);
+	}
+
+	@Override
+	public void writeTask(Task taskToWrite) throws IOException {
+		writeField(taskToWrite.getTaskCategory().getValue());
+		writer.write(CSV_SEPARATOR);
+		writeField(taskToWrite.getTaskName());
+		writer.write(CSV_SEPARATOR);
+		if (taskToWrite.isTimed()) {
+			writeField(taskToWrite.getStartDateTime());
+		}
+		writer.write(CSV_SEPARATOR);
+		writeField(taskToWrite.getEndDateTime());
+		writer.write(CSV_SEPARATOR);
+		writeField(String.valueOf(taskToWrite.isDone()));
+		writer.write(CSV_RECORD_SEPARATOR);
+	}
+
+	private void writeField(DateTime dateTime) throws IOException {
+		if (dateTime != null) {
+			writeField(dateTime.toString());
+		}
+	}
+
+	private void writeField(String field) throws IOException {
+		if (field == null) {
+			return;
+		}
+		if (field.indexOf(CSV_SEPARATOR) < 0 && field.indexOf(CSV_QUOTE) < 0
+				&& field.indexOf('\r') < 0 && field.indexOf('\n') < 0) {
+			writer.write(field);
+			return;
+		}
+		writer.write(CSV_QUOTE);
+		writer.write(field.replace(String.valueOf(CSV_QUOTE),
+				CSV_ESCAPED_QUOTE));
+		writer.write(CSV_QUOTE);
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+}
@@ -0,0 +1,266 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * TaskIcsReader
+ * 
+ * Reads tasks from VEVENT and VTODO components of an RFC 5545 iCalendar file
+ * 
+ * - VEVENT is read as timed task, VTODO with DUE as deadline task and VTODO
+ * without DUE as floating task<br>
+ * - Folded lines are unfolded and escaped text is unescaped<br>
+ * - Date times may be UTC, local with TZID parameter or floating, and dates
+ * are read as start of day<br>
+ * - Components nested in events, such as VALARM, are skipped
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskIcsReader extends TaskTransferReader {
+
+	private static final String ICS_PARAMETER_TZID = "TZID=";
+	private static final String ICS_LOCAL_DATE_TIME_PATTERN = "yyyyMMdd'T'HHmmss";
+	private static final String ICS_DATE_PATTERN = "yyyyMMdd";
+	private static final String ICS_UTC_SUFFIX = "Z";
+	private static final int ICS_DATE_LENGTH = 8;
+
+	private static final DateTimeFormatter utcDateTimeFormatter = DateTimeFormat
+			.forPattern(TaskIcsWriter.ICS_UTC_DATE_TIME_PATTERN).withZoneUTC();
+	private static final DateTimeFormatter localDateTimeFormatter = DateTimeFormat
+			.forPattern(ICS_LOCAL_DATE_TIME_PATTERN);
+	private static final DateTimeFormatter dateFormatter = DateTimeFormat
+			.forPattern(ICS_DATE_PATTERN);
+
+	private final BufferedReader reader;
+	private String nextLine;
+
+	private String component;
+	private int nestedComponentDepth;
+	private String taskName;
+	private DateTime startDateTime;
+	private DateTime endDateTime;
+	private DateTime dueDateTime;
+	private boolean isDone;
+
+	/**
+	 * TaskIcsReader Constructor
+	 * 
+	 * @param reader
+	 */
+	TaskIcsReader(Reader reader) {
+		this.reader = new BufferedReader(reader);
+	}
+
+	@Override
+	public Task readTask() throws IOException {
+		String line;
+		while ((line = readUnfoldedLine()) != null) {
+			Task task = readProperty(line);
+			if (task != null) {
+				return task;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Applies content line to component being read
+	 * 
+	 * @param line
+	 * @return task if line ends a task component, otherwise null
+	 */
+	private Task readProperty(String line) {
+		int valueIndex = findValueIndex(line);
+		if (valueIndex < 0) {
+			return null;
+		}
+		String nameAndParameters = line.substring(0, valueIndex);
+		String value = line.substring(valueIndex + 1);
+		String name = nameAndParameters.split(";", 2)[0].toUpperCase();
+
+		if (TaskIcsWriter.ICS_BEGIN.equals(name)) {
+			beginComponent(value.toUpperCase());
+			return null;
+		}
+		if (TaskIcsWriter.ICS_END.equals(name)) {
+			return endComponent(value.toUpperCase());
+		}
+		if (component == null || nestedComponentDepth > 0) {
+			return null;
+		}
+		switch (name) {
+		case TaskIcsWriter.ICS_SUMMARY:
+			taskName = unescapeText(value);
+			break;
+		case TaskIcsWriter.ICS_DTSTART:
+			startDateTime = parseDateTime(nameAndParameters, value);
+			break;
+		case TaskIcsWriter.ICS_DTEND:
+			endDateTime = parseDateTime(nameAndParameters, value);
+			break;
+		case TaskIcsWriter.ICS_DUE:
+			dueDateTime = parseDateTime(nameAndParameters, value);
+			break;
+		case TaskIcsWriter.ICS_STATUS:
+			isDone |= TaskIcsWriter.ICS_STATUS_COMPLETED
+					.equalsIgnoreCase(value);
+			break;
+		case TaskIcsWriter.ICS_X_MHS_DONE:
+			isDone |= TaskIcsWriter.ICS_TRUE.equalsIgnoreCase(value);
+			break;
+		default:
+			break;
+		}
+		return null;
+	}
+
+	private void beginComponent(String componentToBegin) {
+		if (component != null) {
+			nestedComponentDepth++;
+			return;
+		}
+		if (TaskIcsWriter.ICS_VEVENT.equals(componentToBegin)
+				|| TaskIcsWriter.ICS_VTODO.equals(componentToBegin)) {
+			component = componentToBegin;
+			taskName = null;
+			startDateTime = null;
+			endDateTime = null;
+			dueDateTime = null;
+			isDone = false;
+		}
+	}
+
+	private Task endComponent(String componentToEnd) {
+		if (component == null) {
+			return null;
+		}
+		if (nestedComponentDepth > 0) {
+			nestedComponentDepth--;
+			return null;
+		}
+		component = null;
+		if (TaskIcsWriter.ICS_VEVENT.equals(componentToEnd)) {
+			if (endDateTime == null) {
+				endDateTime = startDateTime;
+			}
+			return createTask(TaskCategory.TIMED, taskName, startDateTime,
+					endDateTime, isDone);
+		}
+		if (dueDateTime != null) {
+			return createTask(TaskCategory.DEADLINE, taskName, null,
+					dueDateTime, isDone);
+		}
+		return createTask(TaskCategory.FLOATING, taskName, null, null, isDone);
+	}
+
+	/**
+	 * Finds colon separating property name and parameters from value,
+	 * skipping colons in quoted parameter values
+	 * 
+	 * @param line
+	 * @return index of colon, -1 if line has no value
+	 */
+	private int findValueIndex(String line) {
+		boolean isQuoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				isQuoted = !isQuoted;
+			} else if (c == ':' && !isQuoted) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses UTC, local or floating date time, or date
+	 * 
+	 * @param nameAndParameters
+	 * @param value
+	 * @return date time, null if value cannot be parsed
+	 */
+	private DateTime parseDateTime(String nameAndParameters, String value) {
+		value = value.trim();
+		try {
+			if (value.endsWith(ICS_UTC_SUFFIX)) {
+				return utcDateTimeFormatter.parseDateTime(value).withZone(
+						DateTimeZone.getDefault());
+			}
+			DateTimeZone timeZone = parseTimeZone(nameAndParameters);
+			if (value.length() == ICS_DATE_LENGTH) {
+				return dateFormatter.withZone(timeZone).parseDateTime(value);
+			}
+			return localDateTimeFormatter.withZone(timeZone).parseDateTime(
+					value);
+		} catch (IllegalArgumentException e) {
+			// rejected by validation
+			return null;
+		}
+	}
+
+	private DateTimeZone parseTimeZone(String nameAndParameters) {
+		for (String parameter : nameAndParameters.split(";")) {
+			if (parameter.toUpperCase().startsWith(ICS_PARAMETER_TZID)) {
+				try {
+					return DateTimeZone.forID(parameter.substring(
+							ICS_PARAMETER_TZID.length()).replace("\"", ""));
+				} catch (IllegalArgumentException e) {
+					break;
+				}
+			}
+		}
+		return DateTimeZone.getDefault();
+	}
+
+	private String unescapeText(String text) {
+		StringBuilder unescapedText = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\\' && i + 1 < text.length()) {
+				c = text.charAt(++i);
+				if (c == 'n' || c == 'N') {
+					c = '\n';
+				}
+			}
+			unescapedText.append(c);
+		}
+		return unescapedText.toString();
+	}
+
+	/**
+	 * Reads content line, joining folded continuation lines
+	 * 
+	 * @return unfolded line, or null at end of file
+	 * @throws IOException
+	 */
+	private String readUnfoldedLine() throws IOException {
+		String line = nextLine != null ? nextLine : reader.readLine();
+		if (line == null) {
+			return null;
+		}
+		StringBuilder unfoldedLine = new StringBuilder(line);
+		while ((nextLine = reader.readLine()) != null
+				&& (nextLine.startsWith(" ") || nextLine.startsWith("\t"))) {
+			unfoldedLine.append(nextLine, 1, nextLine.length());
+		}
+		return unfoldedLine.toString();
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
@@ -0,0 +1,148 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import mhs.src.storage.persistence.task.Task;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * TaskIcsWriter
+ * 
+ * Writes tasks as an RFC 5545 iCalendar file
+ * 
+ * - Timed tasks are written as VEVENT with DTSTART and DTEND<br>
+ * - Deadline tasks are written as VTODO with DUE, floating tasks as VTODO
+ * without DUE<br>
+ * - Date times are written in UTC<br>
+ * - Done tasks are marked STATUS:COMPLETED (VTODO) or X-MHS-DONE:TRUE
+ * (VEVENT)<br>
+ * - Lines longer than 75 characters are folded
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskIcsWriter implements TaskTransferWriter {
+
+	static final String ICS_BEGIN = "BEGIN";
+	static final String ICS_END = "END";
+	static final String ICS_VCALENDAR = "VCALENDAR";
+	static final String ICS_VEVENT = "VEVENT";
+	static final String ICS_VTODO = "VTODO";
+	static final String ICS_UID = "UID";
+	static final String ICS_SUMMARY = "SUMMARY";
+	static final String ICS_DTSTART = "DTSTART";
+	static final String ICS_DTEND = "DTEND";
+	static final String ICS_DUE = "DUE";
+	static final String ICS_STATUS = "STATUS";
+	static final String ICS_STATUS_COMPLETED = "COMPLETED";
+	static final String ICS_X_MHS_DONE = "X-MHS-DONE";
+	static final String ICS_TRUE = "TRUE";
+	static final String ICS_UTC_DATE_TIME_PATTERN = "yyyyMMdd'T'HHmmss'Z'";
+	private static final String ICS_DTSTAMP = "DTSTAMP";
+	private static final String ICS_VERSION = "VERSION:2.0";
+	private static final String ICS_PRODID = "PRODID:-//MHS//Task Export//EN";
+	private static final String ICS_UID_FORMAT = "mhs-task-%1$d@mhs";
+	private static final String ICS_LINE_SEPARATOR = "\r\n";
+	private static final String ICS_FOLDED_LINE_PREFIX = " ";
+	private static final int ICS_MAX_LINE_LENGTH = 75;
+
+	private static final DateTimeFormatter utcDateTimeFormatter = DateTimeFormat
+			.forPattern(ICS_UTC_DATE_TIME_PATTERN).withZoneUTC();
+
+	private final Writer writer;
+
+	/**
+	 * TaskIcsWriter Constructor, writes calendar header
+	 * 
+	 * @param writer
+	 * @throws IOException
+	 */
+	TaskIcsWriter(Writer writer) throws IOException {
+		this.writer = writer;
+		writeProperty(ICS_BEGIN, ICS_VCALENDAR);
+		writeLine(ICS_VERSION);
+		writeLine(ICS_PRODID);
+	}
+
+	@Override
+	public void writeTask(Task taskToWrite) throws IOException {
+		String component = taskToWrite.isTimed() ? ICS_VEVENT : ICS_VTODO;
+		writeProperty(ICS_BEGIN, component);
+		writeProperty(ICS_UID,
+				String.format(ICS_UID_FORMAT, taskToWrite.getTaskId()));
+		DateTime dateTimeStamp = taskToWrite.getTaskUpdated();
+		writeProperty(ICS_DTSTAMP, dateTimeStamp == null ? DateTime.now()
+				: dateTimeStamp);
+		writeProperty(ICS_SUMMARY, escapeText(taskToWrite.getTaskName()));
+		if (taskToWrite.isTimed()) {
+			writeProperty(ICS_DTSTART, taskToWrite.getStartDateTime());
+			writeProperty(ICS_DTEND, taskToWrite.getEndDateTime());
+			if (taskToWrite.isDone()) {
+				writeProperty(ICS_X_MHS_DONE, ICS_TRUE);
+			}
+		} else {
+			if (taskToWrite.isDeadline()) {
+				writeProperty(ICS_DUE, taskToWrite.getEndDateTime());
+			}
+			if (taskToWrite.isDone()) {
+				writeProperty(ICS_STATUS, ICS_STATUS_COMPLETED);
+			}
+		}
+		writeProperty(ICS_END, component);
+	}
+
+	private void writeProperty(String name, DateTime value) throws IOException {
+		if (value != null) {
+			writeProperty(name, utcDateTimeFormatter.print(value));
+		}
+	}
+
+	private void writeProperty(String name, String value) throws IOException {
+		writeLine(name + ":" + value);
+	}
+
+	/**
+	 * Writes content line, folding it if it is too long
+	 * 
+	 * @param line
+	 * @throws IOException
+	 */
+	private void writeLine(String line) throws IOException {
+		while (line.length() > ICS_MAX_LINE_LENGTH) {
+			writer.write(line, 0, ICS_MAX_LINE_LENGTH);
+			writer.write(ICS_LINE_SEPARATOR);
+			line = ICS_FOLDED_LINE_PREFIX
+					+ line.substring(ICS_MAX_LINE_LENGTH);
+		}
+		writer.write(line);
+		writer.write(ICS_LINE_SEPARATOR);
+	}
+
+	private String escapeText(String text) {
+		if (text == null) {
+			return "";
+		}
+		return text.replace("\\", "\\\\").replace(";", "\\;")
+				.replace(",", "\\,").replace("\r\n", "\\n")
+				.replace("\n", "\\n");
+	}
+
+	/**
+	 * Writes calendar footer and closes writer
+	 * 
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			writeProperty(ICS_END, ICS_VCALENDAR);
+		} finally {
+			writer.close();
+		}
+	}
+
+}
@@ -0,0 +1,213 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mhs.src.common.MhsLogger;
+
+/**
+ * TaskIdAllocator
+ * 
+ * Allocates unique incremental taskIds in O(1), safe for concurrent adds
+ * 
+ * - Last allocated taskId is kept in an AtomicInteger high-water mark<br>
+ * - taskIds are reserved on disk in blocks, in a taskId file alongside the
+ * task record file, so most allocations do not write to disk<br>
+ * - On startup allocation continues after the larger of the reserved taskId
+ * and the largest taskId in the task record store, so taskIds of removed
+ * tasks are never reused<br>
+ * - Ranges of taskIds can be reserved at once for batches of new tasks<br>
+ * - Allocation restarts from taskId 1 when reset after all tasks are cleared
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public class TaskIdAllocator {
+
+	private static final Logger logger = MhsLogger.getLogger();
+
+	private static final String CHAR_ENCODING_UTF8 = "UTF-8";
+	private static final String TASK_ID_FILE_EXTENSION = ".taskid";
+	private static final String TEMP_FILE_EXTENSION = ".tmp";
+	private static final String EXCEPTION_MESSAGE_NULL_PARAMETER = "%1$s cannot be null!";
+	private static final String EXCEPTION_MESSAGE_INVALID_TASK_ID_COUNT = "Task id count must be positive : %1$d";
+
+	/** Number of taskIds reserved on disk at a time */
+	static final int TASK_ID_RESERVATION_BLOCK = 256;
+
+	private final File taskIdFile;
+	private final AtomicInteger lastTaskId;
+	/** Largest taskId reserved on disk, written while holding this */
+	private volatile int reservedTaskId;
+
+	/**
+	 * TaskIdAllocator Constructor
+	 * 
+	 * @param taskRecordFileName
+	 *            name of task record file the taskId file is kept alongside
+	 * @param maxTaskId
+	 *            largest taskId in task record store
+	 */
+	public TaskIdAllocator(String taskRecordFileName, int maxTaskId) {
+		logEnterMethod("TaskIdAllocator");
+		if (taskRecordFileName == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskRecordFileName"));
+		}
+		taskIdFile = new File(taskRecordFileName + TASK_ID_FILE_EXTENSION);
+		reservedTaskId = Math.max(readReservedTaskId(), maxTaskId);
+		lastTaskId = new AtomicInteger(reservedTaskId);
+		logExitMethod("TaskIdAllocator");
+	}
+
+	/**
+	 * Allocates new taskId
+	 * 
+	 * @return taskId
+	 */
+	public int allocateTaskId() {
+		int taskId = lastTaskId.incrementAndGet();
+		ensureReserved(taskId);
+		return taskId;
+	}
+
+	/**
+	 * Reserves range of consecutive taskIds
+	 * 
+	 * @param taskIdCount
+	 * @return first taskId of range, range ends at first taskId + taskIdCount
+	 *         - 1
+	 */
+	public int reserveTaskIds(int taskIdCount) {
+		if (taskIdCount <= 0) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_INVALID_TASK_ID_COUNT, taskIdCount));
+		}
+		int lastReservedTaskId = lastTaskId.addAndGet(taskIdCount);
+		ensureReserved(lastReservedTaskId);
+		return lastReservedTaskId - taskIdCount + 1;
+	}
+
+	/**
+	 * Restarts allocation from taskId 1, for use once all tasks are cleared
+	 */
+	public synchronized void reset() {
+		logEnterMethod("reset");
+		lastTaskId.set(0);
+		try {
+			writeReservedTaskId(0);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, e.getMessage());
+		}
+		reservedTaskId = 0;
+		logExitMethod("reset");
+	}
+
+	/**
+	 * Getter for last allocated taskId
+	 * 
+	 * @return last taskId
+	 */
+	public int getLastTaskId() {
+		return lastTaskId.get();
+	}
+
+	/**
+	 * Reserves next block of taskIds on disk if taskId is not yet reserved
+	 * 
+	 * - Failures to write the taskId file are logged, taskIds stay unique
+	 * until restart
+	 * 
+	 * @param taskId
+	 */
+	private void ensureReserved(int taskId) {
+		if (taskId <= reservedTaskId) {
+			return;
+		}
+		synchronized (this) {
+			if (taskId <= reservedTaskId) {
+				return;
+			}
+			int newReservedTaskId = taskId + TASK_ID_RESERVATION_BLOCK;
+			try {
+				writeReservedTaskId(newReservedTaskId);
+			} catch (IOException e) {
+				logger.log(Level.WARNING, e.getMessage());
+			}
+			reservedTaskId = newReservedTaskId;
+		}
+	}
+
+	/**
+	 * Reads reserved taskId from taskId file
+	 * 
+	 * @return reserved taskId, or 0 if taskId file is missing or unreadable
+	 */
+	private int readReservedTaskId() {
+		if (!taskIdFile.exists()) {
+			return 0;
+		}
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(taskIdFile), CHAR_ENCODING_UTF8));
+			try {
+				String line = reader.readLine();
+				return line == null ? 0 : Integer.parseInt(line.trim());
+			} finally {
+				reader.close();
+			}
+		} catch (IOException | NumberFormatException e) {
+			logger.log(Level.WARNING, e.getMessage());
+			return 0;
+		}
+	}
+
+	/**
+	 * Writes reserved taskId to temp file and replaces taskId file with it
+	 * 
+	 * @param taskIdToReserve
+	 * @throws IOException
+	 */
+	private void writeReservedTaskId(int taskIdToReserve) throws IOException {
+		File tempTaskIdFile = new File(taskIdFile.getPath()
+				+ TEMP_FILE_EXTENSION);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(
+				tempTaskIdFile), CHAR_ENCODING_UTF8);
+		try {
+			writer.write(String.valueOf(taskIdToReserve));
+		} finally {
+			writer.close();
+		}
+		Files.move(tempTaskIdFile.toPath(), taskIdFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Logger Trace Method Entry
+	 * 
+	 * @param methodName
+	 */
+	private void logEnterMethod(String methodName) {
+		logger.entering(getClass().getName(), methodName);
+	}
+
+	/**
+	 * Logger Trace Method Exit
+	 * 
+	 * @param methodName
+	 */
+	private void logExitMethod(String methodName) {
+		logger.exiting(getClass().getName(), methodName);
+	}
+}
@@ -0,0 +1,159 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mhs.src.common.MhsLogger;
+import mhs.src.storage.persistence.task.DeadlineTask;
+import mhs.src.storage.persistence.task.FloatingTask;
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+import mhs.src.storage.persistence.task.TimedTask;
+
+import org.joda.time.DateTime;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * TaskJsonStreamReader
+ * 
+ * Reads tasks token by token from a json reader without building a json tree
+ * 
+ * - Reads task objects in the format written by MhsGson<br>
+ * - Unknown fields are skipped<br>
+ * - Supports floating, timed and deadline tasks
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskJsonStreamReader {
+
+	private static final Logger logger = MhsLogger.getLogger();
+
+	private static final String JSON_KEY_IS_DELETED = "isDeleted";
+	private static final String JSON_KEY_IS_DONE = "isDone";
+	private static final String JSON_KEY_TASK_NAME = "taskName";
+	private static final String JSON_KEY_TASK_ID = "taskId";
+	private static final String JSON_KEY_G_CAL_TASK_ID = "gCalTaskId";
+	private static final String JSON_KEY_G_CAL_TASK_UID = "gCalTaskUid";
+	private static final String JSON_KEY_G_TASK_ID = "gTaskId";
+	private static final String JSON_KEY_END_DATE_TIME = "endDateTime";
+	private static final String JSON_KEY_START_DATE_TIME = "startDateTime";
+	private static final String JSON_KEY_TASK_CATEGORY = "taskCategory";
+	private static final String JSON_KEY_TASK_LAST_SYNC = "taskLastSync";
+	private static final String JSON_KEY_TASK_UPDATED = "taskUpdated";
+	private static final String JSON_KEY_TASK_CREATED = "taskCreated";
+
+	private final JsonReader jsonReader;
+
+	/**
+	 * TaskJsonStreamReader Constructor
+	 * 
+	 * @param jsonReader
+	 */
+	TaskJsonStreamReader(JsonReader jsonReader) {
+		assert (jsonReader != null);
+		this.jsonReader = jsonReader;
+	}
+
+	/**
+	 * Reads next task object from json reader
+	 * 
+	 * @return task or null if task category is missing or unknown
+	 * @throws IOException
+	 */
+	Task readTask() throws IOException {
+		int taskId = 0;
+		String taskName = null;
+		String taskCategory = null;
+		DateTime startDateTime = null;
+		DateTime endDateTime = null;
+		DateTime taskCreated = null;
+		DateTime taskUpdated = null;
+		DateTime taskLastSync = null;
+		String gTaskId = null;
+		String gCalTaskId = null;
+		String gCalTaskUid = null;
+		boolean isDone = false;
+		boolean isDeleted = false;
+
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			String jsonKey = jsonReader.nextName();
+			if (jsonReader.peek() == JsonToken.NULL) {
+				jsonReader.nextNull();
+				continue;
+			}
+			switch (jsonKey) {
+			case JSON_KEY_TASK_ID:
+				taskId = jsonReader.nextInt();
+				break;
+			case JSON_KEY_TASK_NAME:
+				taskName = jsonReader.nextString();
+				break;
+			case JSON_KEY_TASK_CATEGORY:
+				taskCategory = jsonReader.nextString();
+				break;
+			case JSON_KEY_START_DATE_TIME:
+				startDateTime = new DateTime(jsonReader.nextString());
+				break;
+			case JSON_KEY_END_DATE_TIME:
+				endDateTime = new DateTime(jsonReader.nextString());
+				break;
+			case JSON_KEY_TASK_CREATED:
+				taskCreated = new DateTime(jsonReader.nextString());
+				break;
+			case JSON_KEY_TASK_UPDATED:
+				taskUpdated = new DateTime(jsonReader.nextString());
+				break;
+			case JSON_KEY_TASK_LAST_SYNC:
+				taskLastSync = new DateTime(jsonReader.nextString());
+				break;
+			case JSON_KEY_G_TASK_ID:
+				gTaskId = jsonReader.nextString();
+				break;
+			case JSON_KEY_G_CAL_TASK_ID:
+				gCalTaskId = jsonReader.nextString();
+				break;
+			case JSON_KEY_G_CAL_TASK_UID:
+				gCalTaskUid = jsonReader.nextString();
+				break;
+			case JSON_KEY_IS_DONE:
+				isDone = jsonReader.nextBoolean();
+				break;
+			case JSON_KEY_IS_DELETED:
+				isDeleted = jsonReader.nextBoolean();
+				break;
+			default:
+				jsonReader.skipValue();
+				break;
+			}
+		}
+		jsonReader.endObject();
+
+		if (taskCategory == null) {
+			logger.log(Level.INFO, "Task category missing.");
+			return null;
+		}
+		switch (taskCategory) {
+		case "TIMED":
+			return new TimedTask(taskId, taskName, TaskCategory.TIMED,
+					startDateTime, endDateTime, taskCreated, taskUpdated,
+					taskLastSync, gCalTaskId, gCalTaskUid, isDone, isDeleted);
+		case "DEADLINE":
+			return new DeadlineTask(taskId, taskName, TaskCategory.DEADLINE,
+					endDateTime, taskCreated, taskUpdated, taskLastSync,
+					gCalTaskId, gCalTaskUid, isDone, isDeleted);
+		case "FLOATING":
+			return new FloatingTask(taskId, taskName, TaskCategory.FLOATING,
+					taskCreated, taskUpdated, taskLastSync, gTaskId, isDone,
+					isDeleted);
+		default:
+			logger.log(Level.INFO, "Unknown task category : " + taskCategory);
+			return null;
+		}
+	}
+
+}
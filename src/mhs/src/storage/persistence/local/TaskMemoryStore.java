@@ -0,0 +1,89 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mhs.src.storage.persistence.task.Task;
+
+/**
+ * TaskMemoryStore
+ * 
+ * Task store held in memory only, for tests and benchmarks that should not
+ * touch the file system
+ * 
+ * - Tasks are lost when the store is discarded<br>
+ * - Saved tasks are held by reference, not copied
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public class TaskMemoryStore implements TaskStore {
+
+	private static final String EXCEPTION_MESSAGE_NULL_PARAMETER = "%1$s cannot be null!";
+
+	private Map<Integer, Task> taskList;
+
+	/**
+	 * TaskMemoryStore Constructor
+	 */
+	public TaskMemoryStore() {
+		taskList = new LinkedHashMap<Integer, Task>();
+	}
+
+	@Override
+	public synchronized Map<Integer, Task> getTaskList() {
+		return new LinkedHashMap<Integer, Task>(taskList);
+	}
+
+	@Override
+	public synchronized void saveTaskList(Map<Integer, Task> taskListToSave) {
+		if (taskListToSave == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskListToSave"));
+		}
+		taskList = new LinkedHashMap<Integer, Task>(taskListToSave);
+	}
+
+	@Override
+	public synchronized void saveTask(Task taskToSave) {
+		if (taskToSave == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskToSave"));
+		}
+		taskList.put(taskToSave.getTaskId(), taskToSave);
+	}
+
+	@Override
+	public synchronized void removeTask(int taskId) {
+		taskList.remove(taskId);
+	}
+
+	@Override
+	public boolean isIncrementalSaveEnabled() {
+		return true;
+	}
+
+	@Override
+	public boolean isCheckpointRequired() {
+		return false;
+	}
+
+	@Override
+	public void flush() {
+		// nothing is buffered
+	}
+
+	@Override
+	public void close() {
+		// nothing to release
+	}
+
+	@Override
+	public Iterator<Task> iterator() {
+		return Collections.unmodifiableCollection(getTaskList().values())
+				.iterator();
+	}
+
+}
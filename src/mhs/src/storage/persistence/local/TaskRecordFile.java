@@ -1,60 +1,81 @@
 //@author A0087048X
 package mhs.src.storage.persistence.local;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import mhs.src.common.MhsGson;
 import mhs.src.common.MhsLogger;
 import mhs.src.storage.persistence.task.Task;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 
 /**
  * TaskRecordFile
  * 
  * Handles File I/O operations for tasks in json file
  * 
+ * Journal Mode:<br>
+ * - Task mutations are appended to a journal instead of rewriting the file<br>
+ * - Journal is replayed over the snapshot when the task list is loaded<br>
+ * - saveTaskList checkpoints the snapshot and clears the journal
+ * 
+ * File Format:<br>
+ * - Saved in compact format by default, see TaskRecordFileFormat<br>
+ * - Format of existing file is detected on load (json array, compact header
+ * object, gzip magic bytes)<br>
+ * - Files in another format are migrated to the configured format on load
+ * 
  * @author Timothy Lim Yi Wen A0087048X
  */
 
-public class TaskRecordFile {
+public class TaskRecordFile implements TaskStore {
 
 	private static final String JSON_INDENT = "  ";
+	private static final int GZIP_MAGIC_LENGTH = 2;
 	private JsonWriter jsonWriter;
 	private JsonReader jsonReader;
 	private InputStream inputStream;
 	private OutputStream outputStream;
+	private boolean isInputCompressed;
 	private File taskRecordFile;
 
 	private static Gson gson = MhsGson.getInstance();
 	private static final Logger logger = MhsLogger.getLogger();
 
-	private static String RECORD_FILE_NAME;
+	private String recordFileName;
 
 	private static final String CHAR_ENCODING_UTF8 = "UTF-8";
 	private static final String DEFAULT_TASK_RECORD_FILENAME = "taskRecordFile.json";
+	private static final String JOURNAL_FILE_EXTENSION = ".journal";
+	private static final int JOURNAL_CHECKPOINT_RECORD_THRESHOLD = 500;
 	private static final String EXCEPTION_MESSAGE_NULL_PARAMETER = "%1$s cannot be null!";
 
 	private Map<Integer, Task> taskList;
+	private TaskRecordJournal taskRecordJournal;
+	private TaskRecordFileFormat taskRecordFileFormat = TaskRecordFileFormat.COMPACT;
+	private TaskRecordFileFormat loadedTaskRecordFileFormat;
 
 	/**
 	 * TaskRecordFile Default Constructor
@@ -64,7 +85,7 @@ public class TaskRecordFile {
 	public TaskRecordFile() throws IOException {
 		logEnterMethod("TaskRecordFile");
 
-		RECORD_FILE_NAME = DEFAULT_TASK_RECORD_FILENAME;
+		recordFileName = DEFAULT_TASK_RECORD_FILENAME;
 		initializeTaskList();
 		initalizeRecordFile();
 
@@ -78,20 +99,113 @@ public class TaskRecordFile {
 	 * @throws IOException
 	 */
 	public TaskRecordFile(String taskRecordFileName) throws IOException {
+		this(taskRecordFileName, false);
+	}
+
+	/**
+	 * TaskRecordFile Constructor with journal mode
+	 * 
+	 * @param taskRecordFileName
+	 * @param isJournalModeEnabled
+	 *            appends task mutations to journal instead of rewriting file
+	 * @throws IOException
+	 */
+	public TaskRecordFile(String taskRecordFileName,
+			boolean isJournalModeEnabled) throws IOException {
+		this(taskRecordFileName, isJournalModeEnabled,
+				TaskRecordFileFormat.COMPACT);
+	}
+
+	/**
+	 * TaskRecordFile Constructor with journal mode and file format
+	 * 
+	 * @param taskRecordFileName
+	 * @param isJournalModeEnabled
+	 *            appends task mutations to journal instead of rewriting file
+	 * @param taskRecordFileFormat
+	 *            format to save file in, existing files are migrated
+	 * @throws IOException
+	 */
+	public TaskRecordFile(String taskRecordFileName,
+			boolean isJournalModeEnabled,
+			TaskRecordFileFormat taskRecordFileFormat) throws IOException {
 		logEnterMethod("TaskRecordFile");
 
 		if (taskRecordFileName == null) {
 			throw new IllegalArgumentException(String.format(
 					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskRecordFileName"));
 		}
+		if (taskRecordFileFormat == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskRecordFileFormat"));
+		}
 
-		RECORD_FILE_NAME = taskRecordFileName;
+		recordFileName = taskRecordFileName;
+		this.taskRecordFileFormat = taskRecordFileFormat;
 		initializeTaskList();
+		initializeJournal(isJournalModeEnabled);
 		initalizeRecordFile();
 
 		logExitMethod("TaskRecordFile");
 	}
 
+	/**
+	 * TaskRecordFile Constructor for reading only
+	 * 
+	 * Loads tasks from existing file and journal without creating, migrating
+	 * or writing any file
+	 * 
+	 * @param taskRecordFileToRead
+	 * @throws IOException
+	 */
+	private TaskRecordFile(File taskRecordFileToRead) throws IOException {
+		logEnterMethod("TaskRecordFile");
+		recordFileName = taskRecordFileToRead.getPath();
+		taskRecordFile = taskRecordFileToRead;
+		initializeTaskList();
+		openJsonInputStream();
+		loadTaskListFromJsonStream();
+		closeJsonInputStream();
+		File journalFile = new File(recordFileName + JOURNAL_FILE_EXTENSION);
+		if (journalFile.exists()) {
+			new TaskRecordJournal(journalFile.getPath()).replay(taskList);
+		}
+		logExitMethod("TaskRecordFile");
+	}
+
+	/**
+	 * Reads tasks of task record file and its journal, leaving both files
+	 * unmodified
+	 * 
+	 * @param taskRecordFileName
+	 * @return task list with taskId as key
+	 * @throws IOException
+	 */
+	public static Map<Integer, Task> readTaskList(String taskRecordFileName)
+			throws IOException {
+		if (taskRecordFileName == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskRecordFileName"));
+		}
+		return new TaskRecordFile(new File(taskRecordFileName)).taskList;
+	}
+
+	/**
+	 * Initialize journal if journal mode is enabled
+	 * 
+	 * @param isJournalModeEnabled
+	 * @throws IOException
+	 */
+	private void initializeJournal(boolean isJournalModeEnabled)
+			throws IOException {
+		logEnterMethod("initializeJournal");
+		if (isJournalModeEnabled) {
+			taskRecordJournal = new TaskRecordJournal(recordFileName
+					+ JOURNAL_FILE_EXTENSION);
+		}
+		logExitMethod("initializeJournal");
+	}
+
 	/**
 	 * Initialize task list
 	 */
@@ -108,9 +222,9 @@ public class TaskRecordFile {
 	 */
 	private void initalizeRecordFile() throws IOException {
 		logEnterMethod("initalizeRecordFile");
-		assert (RECORD_FILE_NAME != null);
+		assert (recordFileName != null);
 
-		taskRecordFile = new File(RECORD_FILE_NAME);
+		taskRecordFile = new File(recordFileName);
 
 		if (!taskRecordFile.exists()) {
 			createNewJsonFile();
@@ -131,23 +245,26 @@ public class TaskRecordFile {
 		assert (taskRecordFile != null);
 		taskRecordFile.createNewFile();
 		openJsonOutputStream();
-		writeEmptyJsonArray();
+		writeTaskRecords(new LinkedHashMap<Integer, Task>());
 		closeJsonOutputStream();
 		logExitMethod("createNewJsonFile");
 	}
 
 	/**
-	 * Opens json output stream for writing
+	 * Opens json output stream for writing, gzip compressed if file format is
+	 * compressed
 	 * 
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
+	 * @throws IOException
 	 */
-	private void openJsonOutputStream() throws FileNotFoundException,
-			UnsupportedEncodingException {
+	private void openJsonOutputStream() throws IOException {
 		logEnterMethod("openJsonOutputStream");
-		assert (RECORD_FILE_NAME != null);
+		assert (recordFileName != null);
 
-		outputStream = new FileOutputStream(RECORD_FILE_NAME);
+		outputStream = new BufferedOutputStream(new FileOutputStream(
+				recordFileName));
+		if (taskRecordFileFormat.isCompressed()) {
+			outputStream = new GZIPOutputStream(outputStream);
+		}
 		jsonWriter = new JsonWriter(new OutputStreamWriter(outputStream,
 				CHAR_ENCODING_UTF8));
 
@@ -166,19 +283,6 @@ public class TaskRecordFile {
 		logExitMethod("closeJsonOutputStream");
 	}
 
-	/**
-	 * Writes empty json array
-	 * 
-	 * @throws IOException
-	 */
-	private void writeEmptyJsonArray() throws IOException {
-		logEnterMethod("writeEmptyJsonArray");
-		jsonWriter.setIndent(JSON_INDENT);
-		jsonWriter.beginArray();
-		jsonWriter.endArray();
-		logExitMethod("writeEmptyJsonArray");
-	}
-
 	/**
 	 * Load task list with tasks from file
 	 * 
@@ -187,69 +291,135 @@ public class TaskRecordFile {
 	public void loadTaskListFromFile() throws IOException {
 		logEnterMethod("loadTaskListFromFile");
 		openJsonInputStream();
-		loadTaskListFromJarray();
+		loadTaskListFromJsonStream();
 		closeJsonInputStream();
+		replayJournal();
+		migrateTaskRecordFile();
 		logExitMethod("loadTaskListFromFile");
 	}
 
 	/**
-	 * Loads Jarray from json reader
+	 * Rewrites file in configured format if it was loaded from another format
+	 * 
+	 * @throws IOException
+	 */
+	private void migrateTaskRecordFile() throws IOException {
+		logEnterMethod("migrateTaskRecordFile");
+		if (loadedTaskRecordFileFormat != null
+				&& loadedTaskRecordFileFormat != taskRecordFileFormat) {
+			logger.log(Level.INFO, "Migrating task record file from "
+					+ loadedTaskRecordFileFormat + " to "
+					+ taskRecordFileFormat);
+			saveTaskList(taskList);
+		}
+		logExitMethod("migrateTaskRecordFile");
+	}
+
+	/**
+	 * Streams tasks from json reader into task list, one task object at a
+	 * time. Tasks read before a corrupted record are kept.
+	 * 
+	 * Json arrays are read as format version 1 and objects as compact format
+	 * with a format version header.
+	 * 
+	 * @throws IOException
+	 *             if format version is not supported
 	 */
-	private void loadTaskListFromJarray() {
-		logEnterMethod("loadTaskListFromJarray");
-		assert (gson != null);
+	private void loadTaskListFromJsonStream() throws IOException {
+		logEnterMethod("loadTaskListFromJsonStream");
 		assert (jsonReader != null);
 		assert (taskList != null);
 
-		JsonParser parser = new JsonParser();
-		JsonArray Jarray = null;
+		loadedTaskRecordFileFormat = null;
 		try {
-			Jarray = parser.parse(jsonReader).getAsJsonArray();
-		} catch (JsonSyntaxException | java.lang.IllegalStateException e) {
+			TaskRecordFileFormat detectedFormat;
+			if (jsonReader.peek() == JsonToken.BEGIN_OBJECT) {
+				new TaskCompactJsonCodec().readTaskList(jsonReader, taskList);
+				detectedFormat = isInputCompressed ? TaskRecordFileFormat.COMPACT_GZIP
+						: TaskRecordFileFormat.COMPACT;
+			} else {
+				readJsonArray();
+				detectedFormat = TaskRecordFileFormat.JSON;
+			}
+			loadedTaskRecordFileFormat = detectedFormat;
+		} catch (MalformedJsonException | EOFException
+				| IllegalArgumentException | IllegalStateException e) {
 			// File corrupted
 			logger.log(Level.INFO, "Json file corrupted.");
-		} finally {
-			addTasksToTaskListFromJarray(Jarray);
 		}
-		logExitMethod("loadTaskListFromJarray");
+		logExitMethod("loadTaskListFromJsonStream");
 	}
 
 	/**
-	 * Add tasks to task list from Jarray
+	 * Reads json array of tasks in format version 1
 	 * 
-	 * @param Jarray
+	 * @throws IOException
 	 */
-	private void addTasksToTaskListFromJarray(JsonArray Jarray) {
-		logExitMethod("addTasksToTaskListFromJarray");
-		if (Jarray == null) {
-			return;
-		}
-		for (JsonElement obj : Jarray) {
-			if (obj != null) {
-				Task newTask = gson.fromJson(obj, Task.class);
+	private void readJsonArray() throws IOException {
+		TaskJsonStreamReader taskReader = new TaskJsonStreamReader(jsonReader);
+		jsonReader.beginArray();
+		while (jsonReader.hasNext()) {
+			Task newTask = taskReader.readTask();
+			if (newTask != null) {
 				taskList.put(newTask.getTaskId(), newTask);
 			}
 		}
-		logExitMethod("addTasksToTaskListFromJarray");
+		jsonReader.endArray();
+	}
+
+	/**
+	 * Replays journal over loaded task list if journal mode is enabled
+	 * 
+	 * @throws IOException
+	 */
+	private void replayJournal() throws IOException {
+		logEnterMethod("replayJournal");
+		if (isJournalModeEnabled()) {
+			int recordsReplayed = taskRecordJournal.replay(taskList);
+			logger.log(Level.INFO, "Replayed journal records : "
+					+ recordsReplayed);
+		}
+		logExitMethod("replayJournal");
 	}
 
 	/**	
-	 * Open json input stream
+	 * Open json input stream, decompressing gzip files detected by their magic
+	 * bytes
 	 * 
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
+	 * @throws IOException
 	 */
-	private void openJsonInputStream() throws FileNotFoundException,
-			UnsupportedEncodingException {
+	private void openJsonInputStream() throws IOException {
 		logEnterMethod("openJsonInputStream");
-		assert (RECORD_FILE_NAME != null);
+		assert (recordFileName != null);
 
-		inputStream = new FileInputStream(RECORD_FILE_NAME);
+		inputStream = new BufferedInputStream(new FileInputStream(
+				recordFileName));
+		isInputCompressed = hasGzipMagic(inputStream);
+		if (isInputCompressed) {
+			inputStream = new GZIPInputStream(inputStream);
+		}
 		jsonReader = new JsonReader(new InputStreamReader(inputStream,
 				CHAR_ENCODING_UTF8));
 		logExitMethod("openJsonInputStream");
 	}
 
+	/**
+	 * Checks if stream starts with gzip magic bytes without consuming them
+	 * 
+	 * @param bufferedInputStream
+	 * @return true if stream is gzip compressed
+	 * @throws IOException
+	 */
+	private boolean hasGzipMagic(InputStream bufferedInputStream)
+			throws IOException {
+		bufferedInputStream.mark(GZIP_MAGIC_LENGTH);
+		int firstByte = bufferedInputStream.read();
+		int secondByte = bufferedInputStream.read();
+		bufferedInputStream.reset();
+		return firstByte == (GZIPInputStream.GZIP_MAGIC & 0xFF)
+				&& secondByte == (GZIPInputStream.GZIP_MAGIC >> 8);
+	}
+
 	/**
 	 * Close json input stream
 	 * 
@@ -268,16 +438,135 @@ public class TaskRecordFile {
 	 * @param taskList
 	 * @throws IOException
 	 */
+	@Override
 	public void saveTaskList(Map<Integer, Task> taskList) throws IOException {
 		logEnterMethod("saveTaskList");
 
 		openJsonOutputStream();
-		writeJsonArray(taskList);
+		writeTaskRecords(taskList);
 		closeJsonOutputStream();
+		clearJournal();
+		if (taskList != this.taskList) {
+			this.taskList = new LinkedHashMap<Integer, Task>(taskList);
+		}
 
 		logEnterMethod("saveTaskList");
 	}
 
+	/**
+	 * Clears journal after snapshot is saved
+	 * 
+	 * @throws IOException
+	 */
+	private void clearJournal() throws IOException {
+		if (isJournalModeEnabled()) {
+			taskRecordJournal.clear();
+		}
+	}
+
+	/**
+	 * Appends added or updated task to journal
+	 * 
+	 * @param taskToSave
+	 * @throws IOException
+	 */
+	@Override
+	public void saveTask(Task taskToSave) throws IOException {
+		logEnterMethod("saveTask");
+		if (taskToSave == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskToSave"));
+		}
+		assert (isJournalModeEnabled());
+		taskRecordJournal.appendPutRecord(taskToSave);
+		taskList.put(taskToSave.getTaskId(), taskToSave);
+		logExitMethod("saveTask");
+	}
+
+	/**
+	 * Appends removal of task to journal
+	 * 
+	 * @param taskId
+	 * @throws IOException
+	 */
+	@Override
+	public void removeTask(int taskId) throws IOException {
+		logEnterMethod("removeTask");
+		assert (isJournalModeEnabled());
+		taskRecordJournal.appendRemoveRecord(taskId);
+		taskList.remove(taskId);
+		logExitMethod("removeTask");
+	}
+
+	/**
+	 * Checks if journal has grown enough to be folded into the snapshot
+	 * 
+	 * @return true if saveTaskList should be called
+	 */
+	@Override
+	public boolean isCheckpointRequired() {
+		return isJournalModeEnabled()
+				&& taskRecordJournal.getRecordCount() >= JOURNAL_CHECKPOINT_RECORD_THRESHOLD;
+	}
+
+	/**
+	 * Checks if journal mode is enabled
+	 * 
+	 * @return true if task mutations are journaled
+	 */
+	public boolean isJournalModeEnabled() {
+		return taskRecordJournal != null;
+	}
+
+	@Override
+	public boolean isIncrementalSaveEnabled() {
+		return isJournalModeEnabled();
+	}
+
+	/**
+	 * Nothing to flush - snapshots are written on save and journal records are
+	 * flushed on append
+	 */
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * Closes journal if journal mode is enabled
+	 * 
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if (isJournalModeEnabled()) {
+			taskRecordJournal.close();
+		}
+	}
+
+	/**
+	 * Getter for format the file is saved in
+	 * 
+	 * @return task record file format
+	 */
+	public TaskRecordFileFormat getTaskRecordFileFormat() {
+		return taskRecordFileFormat;
+	}
+
+	/**
+	 * Writes task list in configured file format
+	 * 
+	 * @param taskList
+	 * @throws IOException
+	 */
+	private void writeTaskRecords(Map<Integer, Task> taskList)
+			throws IOException {
+		if (taskRecordFileFormat == TaskRecordFileFormat.JSON) {
+			writeJsonArray(taskList);
+		} else {
+			new TaskCompactJsonCodec().writeTaskList(jsonWriter, taskList);
+		}
+	}
+
 	/**
 	 * Write Map to Json Array
 	 * 
@@ -305,12 +594,19 @@ public class TaskRecordFile {
 	 * 
 	 * @return Task List with taskId as key
 	 */
+	@Override
 	public Map<Integer, Task> getTaskList() {
 		logEnterMethod("getTaskList");
 		logExitMethod("getTaskList");
 		return taskList;
 	}
 
+	@Override
+	public Iterator<Task> iterator() {
+		return Collections.unmodifiableCollection(taskList.values())
+				.iterator();
+	}
+
 	/**
 	 * Log Methods
 	 */
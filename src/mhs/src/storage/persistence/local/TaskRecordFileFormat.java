@@ -0,0 +1,34 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+/**
+ * TaskRecordFileFormat
+ * 
+ * On-disk encodings of the task record file<br>
+ * 
+ * Formats:<br>
+ * 1. JSON - indented json array of MhsGson tasks (format version 1)<br>
+ * 2. COMPACT - versioned compact json (format version 2)<br>
+ * 3. COMPACT_GZIP - gzip compressed compact json (format version 2)
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public enum TaskRecordFileFormat {
+	JSON(1, false), COMPACT(2, false), COMPACT_GZIP(2, true);
+
+	private final int formatVersion;
+	private final boolean isCompressed;
+
+	private TaskRecordFileFormat(int formatVersion, boolean isCompressed) {
+		this.formatVersion = formatVersion;
+		this.isCompressed = isCompressed;
+	}
+
+	public int getFormatVersion() {
+		return formatVersion;
+	}
+
+	public boolean isCompressed() {
+		return isCompressed;
+	}
+}
@@ -0,0 +1,303 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mhs.src.common.MhsGson;
+import mhs.src.common.MhsLogger;
+import mhs.src.storage.persistence.task.Task;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * TaskRecordJournal
+ * 
+ * Append-only write-ahead log for task mutations
+ * 
+ * - Each mutation appends a single compact json record on its own line<br>
+ * - Records are replayed over the task record snapshot on startup<br>
+ * - Journal is cleared whenever the snapshot is checkpointed<br>
+ * - A partially written last record (crash during append) is ignored
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public class TaskRecordJournal {
+
+	private static Gson gson = MhsGson.getInstance();
+	private static final Logger logger = MhsLogger.getLogger();
+
+	private static final String CHAR_ENCODING_UTF8 = "UTF-8";
+	private static final String EXCEPTION_MESSAGE_NULL_PARAMETER = "%1$s cannot be null!";
+
+	private static final String JSON_KEY_OPERATION = "op";
+	private static final String JSON_KEY_TASK = "task";
+	private static final String JSON_KEY_TASK_ID = "taskId";
+	private static final String OPERATION_PUT = "PUT";
+	private static final String OPERATION_REMOVE = "REMOVE";
+
+	private File journalFile;
+	private Writer journalWriter;
+	private int recordCount;
+
+	/**
+	 * TaskRecordJournal Constructor
+	 * 
+	 * @param journalFileName
+	 * @throws IOException
+	 */
+	public TaskRecordJournal(String journalFileName) throws IOException {
+		logEnterMethod("TaskRecordJournal");
+		if (journalFileName == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "journalFileName"));
+		}
+		journalFile = new File(journalFileName);
+		if (!journalFile.exists()) {
+			journalFile.createNewFile();
+		}
+		recordCount = 0;
+		logExitMethod("TaskRecordJournal");
+	}
+
+	/**
+	 * Appends record of added or updated task
+	 * 
+	 * @param taskToPut
+	 * @throws IOException
+	 */
+	public synchronized void appendPutRecord(Task taskToPut) throws IOException {
+		logEnterMethod("appendPutRecord");
+		if (taskToPut == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskToPut"));
+		}
+		JsonObject record = new JsonObject();
+		record.addProperty(JSON_KEY_OPERATION, OPERATION_PUT);
+		record.add(JSON_KEY_TASK, gson.toJsonTree(taskToPut));
+		appendRecord(record);
+		logExitMethod("appendPutRecord");
+	}
+
+	/**
+	 * Appends records of added or updated tasks, flushing them to disk once
+	 * 
+	 * @param tasksToPut
+	 * @throws IOException
+	 */
+	public synchronized void appendPutRecords(Iterable<Task> tasksToPut)
+			throws IOException {
+		logEnterMethod("appendPutRecords");
+		if (tasksToPut == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "tasksToPut"));
+		}
+		openJournalWriter();
+		for (Task taskToPut : tasksToPut) {
+			JsonObject record = new JsonObject();
+			record.addProperty(JSON_KEY_OPERATION, OPERATION_PUT);
+			record.add(JSON_KEY_TASK, gson.toJsonTree(taskToPut));
+			writeRecord(record);
+		}
+		journalWriter.flush();
+		logExitMethod("appendPutRecords");
+	}
+
+	/**
+	 * Appends record of removed task
+	 * 
+	 * @param taskId
+	 * @throws IOException
+	 */
+	public synchronized void appendRemoveRecord(int taskId) throws IOException {
+		logEnterMethod("appendRemoveRecord");
+		JsonObject record = new JsonObject();
+		record.addProperty(JSON_KEY_OPERATION, OPERATION_REMOVE);
+		record.addProperty(JSON_KEY_TASK_ID, taskId);
+		appendRecord(record);
+		logExitMethod("appendRemoveRecord");
+	}
+
+	/**
+	 * Writes single record line to journal and flushes it to disk
+	 * 
+	 * @param record
+	 * @throws IOException
+	 */
+	private void appendRecord(JsonObject record) throws IOException {
+		openJournalWriter();
+		writeRecord(record);
+		journalWriter.flush();
+	}
+
+	/**
+	 * Writes single record line to open journal writer without flushing
+	 * 
+	 * @param record
+	 * @throws IOException
+	 */
+	private void writeRecord(JsonObject record) throws IOException {
+		journalWriter.write(gson.toJson(record));
+		journalWriter.write('\n');
+		recordCount++;
+	}
+
+	/**
+	 * Opens journal writer in append mode if it is not already open
+	 * 
+	 * @throws IOException
+	 */
+	private void openJournalWriter() throws IOException {
+		if (journalWriter != null) {
+			return;
+		}
+		journalWriter = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(journalFile, true), CHAR_ENCODING_UTF8));
+	}
+
+	/**
+	 * Closes journal writer
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		logEnterMethod("close");
+		if (journalWriter != null) {
+			journalWriter.close();
+			journalWriter = null;
+		}
+		logExitMethod("close");
+	}
+
+	/**
+	 * Replays journal records over specified task list
+	 * 
+	 * @param taskList
+	 * @return number of records replayed
+	 * @throws IOException
+	 */
+	public synchronized int replay(Map<Integer, Task> taskList)
+			throws IOException {
+		logEnterMethod("replay");
+		if (taskList == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskList"));
+		}
+		int recordsReplayed = 0;
+		BufferedReader journalReader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(journalFile),
+						CHAR_ENCODING_UTF8));
+		try {
+			JsonParser parser = new JsonParser();
+			String recordLine;
+			while ((recordLine = journalReader.readLine()) != null) {
+				if (recordLine.isEmpty()) {
+					continue;
+				}
+				if (replayRecord(parser, recordLine, taskList)) {
+					recordsReplayed++;
+				}
+			}
+		} finally {
+			journalReader.close();
+		}
+		recordCount = recordsReplayed;
+		logExitMethod("replay");
+		return recordsReplayed;
+	}
+
+	/**
+	 * Applies single journal record to task list
+	 * 
+	 * @param parser
+	 * @param recordLine
+	 * @param taskList
+	 * @return true if record is valid and applied
+	 */
+	private boolean replayRecord(JsonParser parser, String recordLine,
+			Map<Integer, Task> taskList) {
+		try {
+			JsonObject record = parser.parse(recordLine).getAsJsonObject();
+			String operation = record.get(JSON_KEY_OPERATION).getAsString();
+			if (OPERATION_PUT.equals(operation)) {
+				JsonElement taskElement = record.get(JSON_KEY_TASK);
+				Task task = gson.fromJson(taskElement, Task.class);
+				if (task == null) {
+					return false;
+				}
+				taskList.put(task.getTaskId(), task);
+				return true;
+			}
+			if (OPERATION_REMOVE.equals(operation)) {
+				taskList.remove(record.get(JSON_KEY_TASK_ID).getAsInt());
+				return true;
+			}
+		} catch (JsonParseException | IllegalStateException
+				| NullPointerException e) {
+			// Partially written record
+			logger.log(Level.INFO, "Journal record corrupted.");
+		}
+		return false;
+	}
+
+	/**
+	 * Clears all records in journal, called after snapshot checkpoint
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void clear() throws IOException {
+		logEnterMethod("clear");
+		close();
+		FileOutputStream truncatedJournal = new FileOutputStream(journalFile,
+				false);
+		truncatedJournal.close();
+		recordCount = 0;
+		logExitMethod("clear");
+	}
+
+	/**
+	 * Getter for number of records in journal since last checkpoint
+	 * 
+	 * @return record count
+	 */
+	public synchronized int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Log Methods
+	 */
+
+	/**
+	 * Log Trace Entry Method
+	 * 
+	 * @param methodName
+	 */
+	private void logEnterMethod(String methodName) {
+		logger.entering(getClass().getName(), methodName);
+	}
+
+	/**
+	 * Log Trace Exit Method
+	 * 
+	 * @param methodName
+	 */
+	private void logExitMethod(String methodName) {
+		logger.exiting(getClass().getName(), methodName);
+	}
+
+}
@@ -0,0 +1,189 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import mhs.src.common.MhsLogger;
+import mhs.src.storage.persistence.task.Task;
+
+/**
+ * TaskRecordLogFile
+ * 
+ * Log-structured task store, keeping all tasks in a single append-only log
+ * with no separate snapshot file
+ * 
+ * - Every saved or removed task is appended to the log<br>
+ * - Log is replayed from the start on load<br>
+ * - saveTaskList compacts the log to one record per live task, written to a
+ * temporary log and moved over the old log
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public class TaskRecordLogFile implements TaskStore {
+
+	private static final Logger logger = MhsLogger.getLogger();
+
+	private static final String LOG_FILE_EXTENSION = ".log";
+	private static final String COMPACTED_LOG_FILE_EXTENSION = ".compacting";
+	private static final int LOG_COMPACTION_MINIMUM_RECORD_COUNT = 1000;
+	private static final int LOG_COMPACTION_RECORDS_PER_TASK = 2;
+	private static final String EXCEPTION_MESSAGE_NULL_PARAMETER = "%1$s cannot be null!";
+
+	private final File logFile;
+	private TaskRecordJournal taskRecordLog;
+	private Map<Integer, Task> taskList;
+	private int logRecordCount;
+
+	/**
+	 * TaskRecordLogFile Constructor
+	 * 
+	 * @param taskRecordFileName
+	 *            log is saved to taskRecordFileName.log
+	 * @throws IOException
+	 */
+	public TaskRecordLogFile(String taskRecordFileName) throws IOException {
+		logEnterMethod("TaskRecordLogFile");
+		if (taskRecordFileName == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskRecordFileName"));
+		}
+		logFile = new File(taskRecordFileName + LOG_FILE_EXTENSION);
+		taskRecordLog = new TaskRecordJournal(logFile.getPath());
+		taskList = new LinkedHashMap<Integer, Task>();
+		logRecordCount = taskRecordLog.replay(taskList);
+		logExitMethod("TaskRecordLogFile");
+	}
+
+	@Override
+	public synchronized Map<Integer, Task> getTaskList() {
+		return new LinkedHashMap<Integer, Task>(taskList);
+	}
+
+	/**
+	 * Compacts log to put records of specified tasks only
+	 * 
+	 * @param taskListToSave
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void saveTaskList(Map<Integer, Task> taskListToSave)
+			throws IOException {
+		logEnterMethod("saveTaskList");
+		if (taskListToSave == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskListToSave"));
+		}
+		File compactedLogFile = new File(logFile.getPath()
+				+ COMPACTED_LOG_FILE_EXTENSION);
+		compactedLogFile.delete();
+		TaskRecordJournal compactedLog = new TaskRecordJournal(
+				compactedLogFile.getPath());
+		try {
+			compactedLog.appendPutRecords(taskListToSave.values());
+		} finally {
+			compactedLog.close();
+		}
+		taskRecordLog.close();
+		Files.move(compactedLogFile.toPath(), logFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		taskRecordLog = new TaskRecordJournal(logFile.getPath());
+		taskList = new LinkedHashMap<Integer, Task>(taskListToSave);
+		logRecordCount = taskList.size();
+		logExitMethod("saveTaskList");
+	}
+
+	@Override
+	public synchronized void saveTask(Task taskToSave) throws IOException {
+		logEnterMethod("saveTask");
+		if (taskToSave == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskToSave"));
+		}
+		taskRecordLog.appendPutRecord(taskToSave);
+		taskList.put(taskToSave.getTaskId(), taskToSave);
+		logRecordCount++;
+		logExitMethod("saveTask");
+	}
+
+	@Override
+	public synchronized void removeTask(int taskId) throws IOException {
+		logEnterMethod("removeTask");
+		taskRecordLog.appendRemoveRecord(taskId);
+		taskList.remove(taskId);
+		logRecordCount++;
+		logExitMethod("removeTask");
+	}
+
+	@Override
+	public boolean isIncrementalSaveEnabled() {
+		return true;
+	}
+
+	/**
+	 * Checks if log holds mostly superseded records
+	 * 
+	 * @return true if saveTaskList should be called to compact log
+	 */
+	@Override
+	public synchronized boolean isCheckpointRequired() {
+		return logRecordCount >= LOG_COMPACTION_MINIMUM_RECORD_COUNT
+				&& logRecordCount > LOG_COMPACTION_RECORDS_PER_TASK
+						* taskList.size();
+	}
+
+	/**
+	 * Getter for number of records in log, including superseded records
+	 * 
+	 * @return log record count
+	 */
+	public synchronized int getLogRecordCount() {
+		return logRecordCount;
+	}
+
+	@Override
+	public void flush() {
+		// log records are flushed on append
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		taskRecordLog.close();
+	}
+
+	@Override
+	public Iterator<Task> iterator() {
+		return Collections.unmodifiableCollection(getTaskList().values())
+				.iterator();
+	}
+
+	/**
+	 * Log Methods
+	 */
+
+	/**
+	 * Log Trace Entry Method
+	 * 
+	 * @param methodName
+	 */
+	private void logEnterMethod(String methodName) {
+		logger.entering(getClass().getName(), methodName);
+	}
+
+	/**
+	 * Log Trace Exit Method
+	 * 
+	 * @param methodName
+	 */
+	private void logExitMethod(String methodName) {
+		logger.exiting(getClass().getName(), methodName);
+	}
+
+}
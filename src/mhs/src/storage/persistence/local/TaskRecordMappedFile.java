@@ -0,0 +1,904 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mhs.src.common.MhsLogger;
+import mhs.src.storage.persistence.task.DeadlineTask;
+import mhs.src.storage.persistence.task.FloatingTask;
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+import mhs.src.storage.persistence.task.TimedTask;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * TaskRecordMappedFile
+ * 
+ * Binary task store backed by memory mapped files
+ * 
+ * Records file:<br>
+ * - Fixed size header with format version, slot count, heap sizes and active
+ * heap<br>
+ * - One fixed size record slot per task holding ids, flags and DateTimes as
+ * epoch millis<br>
+ * - Strings and the time zone id of the task DateTimes are stored as offset
+ * and length into a heap file, with one set of string references per heap<br>
+ * 
+ * Heap files:<br>
+ * - Two append only UTF-8 string heaps, of which one is active<br>
+ * - Checkpoints copy live strings into the inactive heap and then switch the
+ * active heap in the header, so an interrupted compaction leaves the previous
+ * heap and its references intact<br>
+ * 
+ * Saving a task patches its record slot in place and only appends to the heap
+ * when a string field has changed. An existing json task record file is
+ * migrated on first start without modifying it.
+ * 
+ * Java 7 cannot unmap a MappedByteBuffer, the mapping is only released when
+ * the buffer is garbage collected. On Windows the records and heap files
+ * cannot be deleted or replaced while mapped, so a closed store drops its
+ * buffers and the files may stay locked until the next garbage collection.
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public class TaskRecordMappedFile implements TaskStore {
+
+	private static final Logger logger = MhsLogger.getLogger();
+	private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
+	private static final String RECORDS_FILE_EXTENSION = ".records";
+	private static final String HEAP_FILE_EXTENSION = ".heap.";
+	private static final String FILE_MODE_READ_WRITE = "rw";
+	private static final String EXCEPTION_MESSAGE_NULL_PARAMETER = "%1$s cannot be null!";
+	private static final String EXCEPTION_MESSAGE_INVALID_RECORDS_FILE = "Invalid task records file: %1$s";
+
+	// Records file header layout
+	private static final int FORMAT_MAGIC = 0x4D485352;
+	private static final int FORMAT_VERSION = 2;
+	private static final int HEADER_OFFSET_MAGIC = 0;
+	private static final int HEADER_OFFSET_VERSION = 4;
+	private static final int HEADER_OFFSET_SLOT_COUNT = 8;
+	private static final int HEADER_OFFSET_HEAP_SIZES = 12;
+	private static final int HEADER_OFFSET_ACTIVE_HEAP = 20;
+	private static final int HEADER_SIZE = 32;
+
+	// Record slot layout
+	private static final int RECORD_OFFSET_TASK_ID = 0;
+	private static final int RECORD_OFFSET_TASK_CATEGORY = 4;
+	private static final int RECORD_OFFSET_FLAGS = 5;
+	private static final int RECORD_OFFSET_START_DATE_TIME = 8;
+	private static final int RECORD_OFFSET_END_DATE_TIME = 16;
+	private static final int RECORD_OFFSET_TASK_CREATED = 24;
+	private static final int RECORD_OFFSET_TASK_UPDATED = 32;
+	private static final int RECORD_OFFSET_TASK_LAST_SYNC = 40;
+	private static final int RECORD_OFFSET_STRING_REFERENCES = 48;
+
+	// String reference set layout, one set per heap
+	private static final int STRING_REFERENCE_TASK_NAME = 0;
+	private static final int STRING_REFERENCE_G_TASK_ID = 8;
+	private static final int STRING_REFERENCE_G_CAL_TASK_ID = 16;
+	private static final int STRING_REFERENCE_G_CAL_TASK_UID = 24;
+	private static final int STRING_REFERENCE_TIME_ZONE = 32;
+	private static final int STRING_REFERENCE_SIZE = 8;
+	private static final int STRING_REFERENCES_SIZE = 40;
+
+	private static final int HEAP_COUNT = 2;
+	private static final int RECORD_SIZE = RECORD_OFFSET_STRING_REFERENCES
+			+ HEAP_COUNT * STRING_REFERENCES_SIZE;
+
+	private static final byte FLAG_IN_USE = 1;
+	private static final byte FLAG_IS_DONE = 2;
+	private static final byte FLAG_IS_DELETED = 4;
+
+	private static final long NULL_DATE_TIME = Long.MIN_VALUE;
+	private static final int NULL_STRING_OFFSET = -1;
+
+	private static final int INITIAL_SLOT_CAPACITY = 256;
+	private static final int INITIAL_HEAP_CAPACITY = 16 * 1024;
+	private static final int HEAP_COMPACTION_MINIMUM_GARBAGE_BYTES = 64 * 1024;
+
+	private final File recordsFile;
+	private final File[] heapFiles = new File[HEAP_COUNT];
+	private RandomAccessFile recordsRandomAccessFile;
+	private final RandomAccessFile[] heapRandomAccessFiles = new RandomAccessFile[HEAP_COUNT];
+	private MappedByteBuffer recordsBuffer;
+	private final MappedByteBuffer[] heapBuffers = new MappedByteBuffer[HEAP_COUNT];
+
+	private Map<Integer, Task> taskList;
+	private Map<Integer, Integer> slotIndex;
+	private LinkedList<Integer> freeSlots;
+	private int slotCount;
+	private int activeHeap;
+	private int heapSize;
+	private int garbageHeapBytes;
+
+	/**
+	 * TaskRecordMappedFile Constructor
+	 * 
+	 * Opens mapped files for specified task record file name, migrating tasks
+	 * from json task record file if mapped files do not exist yet
+	 * 
+	 * @param taskRecordFileName
+	 * @throws IOException
+	 */
+	public TaskRecordMappedFile(String taskRecordFileName) throws IOException {
+		logEnterMethod("TaskRecordMappedFile");
+		if (taskRecordFileName == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskRecordFileName"));
+		}
+		recordsFile = new File(taskRecordFileName + RECORDS_FILE_EXTENSION);
+		for (int heap = 0; heap < HEAP_COUNT; heap++) {
+			heapFiles[heap] = new File(taskRecordFileName + HEAP_FILE_EXTENSION
+					+ heap);
+		}
+		taskList = new LinkedHashMap<Integer, Task>();
+		slotIndex = new HashMap<Integer, Integer>();
+		freeSlots = new LinkedList<Integer>();
+
+		openMappedFiles();
+		if (isNewRecordsFile()) {
+			initializeRecordsFile(taskRecordFileName);
+		} else {
+			validateHeader();
+			loadTaskListFromRecords();
+		}
+		logExitMethod("TaskRecordMappedFile");
+	}
+
+	/**
+	 * Checks if records file has not been completely initialized
+	 * 
+	 * @return true if records file is new
+	 */
+	private boolean isNewRecordsFile() {
+		return recordsBuffer.getInt(HEADER_OFFSET_MAGIC) == 0;
+	}
+
+	/**
+	 * Initializes empty records file, migrating tasks from json task record
+	 * file if it exists. Magic number is written last so that an interrupted
+	 * migration is restarted.
+	 * 
+	 * @param taskRecordFileName
+	 * @throws IOException
+	 */
+	private void initializeRecordsFile(String taskRecordFileName)
+			throws IOException {
+		logEnterMethod("initializeRecordsFile");
+		recordsBuffer.putInt(HEADER_OFFSET_VERSION, FORMAT_VERSION);
+		recordsBuffer.putInt(HEADER_OFFSET_SLOT_COUNT, 0);
+		for (int heap = 0; heap < HEAP_COUNT; heap++) {
+			recordsBuffer.putInt(getHeapSizeHeaderOffset(heap), 0);
+		}
+		recordsBuffer.putInt(HEADER_OFFSET_ACTIVE_HEAP, 0);
+		slotCount = 0;
+		activeHeap = 0;
+		heapSize = 0;
+		if (new File(taskRecordFileName).exists()) {
+			migrateFromTaskRecordFile(taskRecordFileName);
+		}
+		recordsBuffer.putInt(HEADER_OFFSET_MAGIC, FORMAT_MAGIC);
+		recordsBuffer.force();
+		logExitMethod("initializeRecordsFile");
+	}
+
+	/**
+	 * Opens and maps records and heap files
+	 * 
+	 * @throws IOException
+	 */
+	private void openMappedFiles() throws IOException {
+		logEnterMethod("openMappedFiles");
+		recordsRandomAccessFile = new RandomAccessFile(recordsFile,
+				FILE_MODE_READ_WRITE);
+		mapRecordsBuffer(Math.max(recordsRandomAccessFile.length(),
+				HEADER_SIZE + INITIAL_SLOT_CAPACITY * RECORD_SIZE));
+		slotCount = recordsBuffer.getInt(HEADER_OFFSET_SLOT_COUNT);
+		activeHeap = recordsBuffer.getInt(HEADER_OFFSET_ACTIVE_HEAP);
+
+		for (int heap = 0; heap < HEAP_COUNT; heap++) {
+			heapRandomAccessFiles[heap] = new RandomAccessFile(
+					heapFiles[heap], FILE_MODE_READ_WRITE);
+			int savedHeapSize = recordsBuffer
+					.getInt(getHeapSizeHeaderOffset(heap));
+			mapHeapBuffer(heap, Math.max(heapRandomAccessFiles[heap].length(),
+					Math.max(savedHeapSize, INITIAL_HEAP_CAPACITY)));
+		}
+		if (activeHeap >= 0 && activeHeap < HEAP_COUNT) {
+			heapSize = recordsBuffer.getInt(getHeapSizeHeaderOffset(activeHeap));
+		}
+		logExitMethod("openMappedFiles");
+	}
+
+	/**
+	 * Validates records file header
+	 * 
+	 * @throws IOException
+	 */
+	private void validateHeader() throws IOException {
+		if (recordsBuffer.getInt(HEADER_OFFSET_MAGIC) != FORMAT_MAGIC
+				|| recordsBuffer.getInt(HEADER_OFFSET_VERSION) != FORMAT_VERSION
+				|| activeHeap < 0 || activeHeap >= HEAP_COUNT) {
+			throw new IOException(String.format(
+					EXCEPTION_MESSAGE_INVALID_RECORDS_FILE,
+					recordsFile.getName()));
+		}
+	}
+
+	/**
+	 * Maps records file with specified size, growing file if required
+	 * 
+	 * @param size
+	 * @throws IOException
+	 */
+	private void mapRecordsBuffer(long size) throws IOException {
+		recordsBuffer = recordsRandomAccessFile.getChannel().map(
+				FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	/**
+	 * Maps heap file with specified size, growing file if required
+	 * 
+	 * @param heap
+	 * @param size
+	 * @throws IOException
+	 */
+	private void mapHeapBuffer(int heap, long size) throws IOException {
+		heapBuffers[heap] = heapRandomAccessFiles[heap].getChannel().map(
+				FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	/**
+	 * Gets offset of heap size of heap in records file header
+	 * 
+	 * @param heap
+	 * @return offset
+	 */
+	private static int getHeapSizeHeaderOffset(int heap) {
+		return HEADER_OFFSET_HEAP_SIZES + heap * 4;
+	}
+
+	/**
+	 * Loads tasks from all record slots in use
+	 */
+	private void loadTaskListFromRecords() {
+		logEnterMethod("loadTaskListFromRecords");
+		int liveHeapBytes = 0;
+		for (int slot = 0; slot < slotCount; slot++) {
+			int recordOffset = getRecordOffset(slot);
+			if ((recordsBuffer.get(recordOffset + RECORD_OFFSET_FLAGS) & FLAG_IN_USE) == 0) {
+				freeSlots.add(slot);
+				continue;
+			}
+			Task task = readRecord(recordOffset);
+			taskList.put(task.getTaskId(), task);
+			slotIndex.put(task.getTaskId(), slot);
+			liveHeapBytes += getRecordHeapBytes(recordOffset);
+		}
+		garbageHeapBytes = heapSize - liveHeapBytes;
+		logger.log(Level.INFO, "Loaded mapped task records : " + taskList.size());
+		logExitMethod("loadTaskListFromRecords");
+	}
+
+	/**
+	 * Migrates tasks from json task record file, leaving it unmodified
+	 * 
+	 * @param taskRecordFileName
+	 * @throws IOException
+	 */
+	private void migrateFromTaskRecordFile(String taskRecordFileName)
+			throws IOException {
+		logEnterMethod("migrateFromTaskRecordFile");
+		saveTaskList(TaskRecordFile.readTaskList(taskRecordFileName));
+		logger.log(Level.INFO, "Migrated task records from "
+				+ taskRecordFileName);
+		logExitMethod("migrateFromTaskRecordFile");
+	}
+
+	/**
+	 * Saves entire task list, removing tasks not in task list and compacting
+	 * heap if required
+	 * 
+	 * @param taskListToSave
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void saveTaskList(Map<Integer, Task> taskListToSave)
+			throws IOException {
+		logEnterMethod("saveTaskList");
+		if (taskListToSave == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskList"));
+		}
+		Iterator<Integer> savedTaskIds = slotIndex.keySet().iterator();
+		while (savedTaskIds.hasNext()) {
+			int taskId = savedTaskIds.next();
+			if (!taskListToSave.containsKey(taskId)) {
+				freeRecordSlot(slotIndex.get(taskId));
+				taskList.remove(taskId);
+				savedTaskIds.remove();
+			}
+		}
+		for (Task taskToSave : taskListToSave.values()) {
+			putTask(taskToSave);
+		}
+		if (isCheckpointRequired()) {
+			compactHeap();
+		}
+		forceMappedFiles();
+		logExitMethod("saveTaskList");
+	}
+
+	/**
+	 * Saves single task by patching its record slot in place
+	 * 
+	 * @param taskToSave
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void saveTask(Task taskToSave) throws IOException {
+		logEnterMethod("saveTask");
+		if (taskToSave == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskToSave"));
+		}
+		putTask(taskToSave);
+		logExitMethod("saveTask");
+	}
+
+	/**
+	 * Removes single task by freeing its record slot
+	 * 
+	 * @param taskId
+	 */
+	@Override
+	public synchronized void removeTask(int taskId) {
+		logEnterMethod("removeTask");
+		Integer slot = slotIndex.remove(taskId);
+		if (slot != null) {
+			freeRecordSlot(slot);
+			taskList.remove(taskId);
+		}
+		logExitMethod("removeTask");
+	}
+
+	/**
+	 * Writes task to its existing record slot or a newly allocated slot
+	 * 
+	 * @param taskToPut
+	 * @throws IOException
+	 */
+	private void putTask(Task taskToPut) throws IOException {
+		Integer slot = slotIndex.get(taskToPut.getTaskId());
+		if (slot == null) {
+			slot = allocateRecordSlot();
+			slotIndex.put(taskToPut.getTaskId(), slot);
+		}
+		writeRecord(slot, taskToPut);
+		taskList.put(taskToPut.getTaskId(), taskToPut);
+	}
+
+	/**
+	 * Allocates free record slot, growing records file if required
+	 * 
+	 * @return slot
+	 * @throws IOException
+	 */
+	private int allocateRecordSlot() throws IOException {
+		if (!freeSlots.isEmpty()) {
+			return freeSlots.removeFirst();
+		}
+		int slot = slotCount;
+		int requiredCapacity = getRecordOffset(slot + 1);
+		if (requiredCapacity > recordsBuffer.capacity()) {
+			mapRecordsBuffer(HEADER_SIZE + 2L
+					* (recordsBuffer.capacity() - HEADER_SIZE));
+		}
+		recordsBuffer.put(getRecordOffset(slot) + RECORD_OFFSET_FLAGS, (byte) 0);
+		slotCount++;
+		recordsBuffer.putInt(HEADER_OFFSET_SLOT_COUNT, slotCount);
+		return slot;
+	}
+
+	/**
+	 * Marks record slot as free and counts its strings as heap garbage
+	 * 
+	 * @param slot
+	 */
+	private void freeRecordSlot(int slot) {
+		int recordOffset = getRecordOffset(slot);
+		garbageHeapBytes += getRecordHeapBytes(recordOffset);
+		recordsBuffer.put(recordOffset + RECORD_OFFSET_FLAGS, (byte) 0);
+		freeSlots.add(slot);
+	}
+
+	/**
+	 * Writes task fields into record slot. Strings are appended to heap only
+	 * if they differ from the strings currently referenced by the slot.
+	 * 
+	 * @param slot
+	 * @param task
+	 * @throws IOException
+	 */
+	private void writeRecord(int slot, Task task) throws IOException {
+		int recordOffset = getRecordOffset(slot);
+		boolean isSlotInUse = (recordsBuffer.get(recordOffset
+				+ RECORD_OFFSET_FLAGS) & FLAG_IN_USE) != 0;
+		writeRecord(recordOffset, task, isSlotInUse);
+	}
+
+	/**
+	 * Writes task fields into record
+	 * 
+	 * @param recordOffset
+	 * @param task
+	 * @param isSlotInUse
+	 *            true if existing string references of record are valid
+	 * @throws IOException
+	 */
+	private void writeRecord(int recordOffset, Task task, boolean isSlotInUse)
+			throws IOException {
+		int stringReferencesOffset = getStringReferencesOffset(recordOffset,
+				activeHeap);
+		writeString(stringReferencesOffset + STRING_REFERENCE_TASK_NAME,
+				task.getTaskName(), isSlotInUse);
+		writeString(stringReferencesOffset + STRING_REFERENCE_G_TASK_ID,
+				task.getGTaskId(), isSlotInUse);
+		writeString(stringReferencesOffset + STRING_REFERENCE_G_CAL_TASK_ID,
+				task.getgCalTaskId(), isSlotInUse);
+		writeString(stringReferencesOffset + STRING_REFERENCE_G_CAL_TASK_UID,
+				task.getgCalTaskUid(), isSlotInUse);
+		writeString(stringReferencesOffset + STRING_REFERENCE_TIME_ZONE,
+				getTaskZone(task).getID(), isSlotInUse);
+
+		recordsBuffer.putInt(recordOffset + RECORD_OFFSET_TASK_ID,
+				task.getTaskId());
+		recordsBuffer.put(recordOffset + RECORD_OFFSET_TASK_CATEGORY,
+				(byte) task.getTaskCategory().ordinal());
+		writeDateTime(recordOffset + RECORD_OFFSET_START_DATE_TIME,
+				task.getStartDateTime());
+		writeDateTime(recordOffset + RECORD_OFFSET_END_DATE_TIME,
+				task.getEndDateTime());
+		writeDateTime(recordOffset + RECORD_OFFSET_TASK_CREATED,
+				task.getTaskCreated());
+		writeDateTime(recordOffset + RECORD_OFFSET_TASK_UPDATED,
+				task.getTaskUpdated());
+		writeDateTime(recordOffset + RECORD_OFFSET_TASK_LAST_SYNC,
+				task.getTaskLastSync());
+		recordsBuffer.put(recordOffset + RECORD_OFFSET_FLAGS,
+				getRecordFlags(task));
+	}
+
+	/**
+	 * Gets record flags for task
+	 * 
+	 * @param task
+	 * @return flags
+	 */
+	private byte getRecordFlags(Task task) {
+		byte flags = FLAG_IN_USE;
+		if (task.isDone()) {
+			flags |= FLAG_IS_DONE;
+		}
+		if (task.isDeleted()) {
+			flags |= FLAG_IS_DELETED;
+		}
+		return flags;
+	}
+
+	/**
+	 * Gets zone of task DateTimes. All DateTimes of a task are read back in
+	 * this zone.
+	 * 
+	 * @param task
+	 * @return zone of first non null DateTime or default zone
+	 */
+	private DateTimeZone getTaskZone(Task task) {
+		DateTime[] taskDateTimes = { task.getTaskCreated(),
+				task.getTaskUpdated(), task.getEndDateTime(),
+				task.getStartDateTime(), task.getTaskLastSync() };
+		for (DateTime dateTime : taskDateTimes) {
+			if (dateTime != null) {
+				return dateTime.getZone();
+			}
+		}
+		return DateTimeZone.getDefault();
+	}
+
+	/**
+	 * Writes DateTime as epoch millis
+	 * 
+	 * @param position
+	 * @param dateTime
+	 */
+	private void writeDateTime(int position, DateTime dateTime) {
+		if (dateTime == null) {
+			recordsBuffer.putLong(position, NULL_DATE_TIME);
+		} else {
+			recordsBuffer.putLong(position, dateTime.getMillis());
+		}
+	}
+
+	/**
+	 * Writes string reference at position, appending string to heap if it
+	 * differs from currently referenced string
+	 * 
+	 * @param position
+	 * @param string
+	 * @param isReferenceValid
+	 *            false if position holds no previous reference
+	 * @throws IOException
+	 */
+	private void writeString(int position, String string,
+			boolean isReferenceValid) throws IOException {
+		int currentOffset = NULL_STRING_OFFSET;
+		int currentLength = 0;
+		if (isReferenceValid) {
+			currentOffset = recordsBuffer.getInt(position);
+			currentLength = recordsBuffer.getInt(position + 4);
+		}
+
+		if (string == null) {
+			if (currentOffset != NULL_STRING_OFFSET) {
+				garbageHeapBytes += currentLength;
+			}
+			recordsBuffer.putInt(position, NULL_STRING_OFFSET);
+			recordsBuffer.putInt(position + 4, 0);
+			return;
+		}
+
+		byte[] stringBytes = string.getBytes(CHARSET_UTF8);
+		if (currentOffset != NULL_STRING_OFFSET
+				&& Arrays.equals(stringBytes,
+						readHeapBytes(activeHeap, currentOffset, currentLength))) {
+			return;
+		}
+		if (currentOffset != NULL_STRING_OFFSET) {
+			garbageHeapBytes += currentLength;
+		}
+		int newOffset = appendToHeap(stringBytes);
+		recordsBuffer.putInt(position, newOffset);
+		recordsBuffer.putInt(position + 4, stringBytes.length);
+	}
+
+	/**
+	 * Appends bytes to active heap
+	 * 
+	 * @param bytes
+	 * @return heap offset of appended bytes
+	 * @throws IOException
+	 */
+	private int appendToHeap(byte[] bytes) throws IOException {
+		int offset = heapSize;
+		writeHeapBytes(activeHeap, offset, bytes);
+		heapSize += bytes.length;
+		recordsBuffer.putInt(getHeapSizeHeaderOffset(activeHeap), heapSize);
+		return offset;
+	}
+
+	/**
+	 * Writes bytes to heap at offset, growing heap file if required
+	 * 
+	 * @param heap
+	 * @param offset
+	 * @param bytes
+	 * @throws IOException
+	 */
+	private void writeHeapBytes(int heap, int offset, byte[] bytes)
+			throws IOException {
+		if (offset + bytes.length > heapBuffers[heap].capacity()) {
+			mapHeapBuffer(heap, Math.max(2L * heapBuffers[heap].capacity(),
+					offset + bytes.length));
+		}
+		heapBuffers[heap].position(offset);
+		heapBuffers[heap].put(bytes);
+	}
+
+	/**
+	 * Reads bytes from heap
+	 * 
+	 * @param heap
+	 * @param offset
+	 * @param length
+	 * @return bytes
+	 */
+	private byte[] readHeapBytes(int heap, int offset, int length) {
+		byte[] bytes = new byte[length];
+		heapBuffers[heap].position(offset);
+		heapBuffers[heap].get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Reads string referenced at position
+	 * 
+	 * @param position
+	 * @return string or null
+	 */
+	private String readString(int position) {
+		int offset = recordsBuffer.getInt(position);
+		if (offset == NULL_STRING_OFFSET) {
+			return null;
+		}
+		int length = recordsBuffer.getInt(position + 4);
+		return new String(readHeapBytes(activeHeap, offset, length),
+				CHARSET_UTF8);
+	}
+
+	/**
+	 * Reads DateTime at position in zone
+	 * 
+	 * @param position
+	 * @param zone
+	 * @return DateTime or null
+	 */
+	private DateTime readDateTime(int position, DateTimeZone zone) {
+		long millis = recordsBuffer.getLong(position);
+		if (millis == NULL_DATE_TIME) {
+			return null;
+		}
+		return new DateTime(millis, zone);
+	}
+
+	/**
+	 * Reads task from record
+	 * 
+	 * @param recordOffset
+	 * @return task
+	 */
+	private Task readRecord(int recordOffset) {
+		int taskId = recordsBuffer.getInt(recordOffset + RECORD_OFFSET_TASK_ID);
+		TaskCategory taskCategory = TaskCategory.values()[recordsBuffer
+				.get(recordOffset + RECORD_OFFSET_TASK_CATEGORY)];
+		byte flags = recordsBuffer.get(recordOffset + RECORD_OFFSET_FLAGS);
+		boolean isDone = (flags & FLAG_IS_DONE) != 0;
+		boolean isDeleted = (flags & FLAG_IS_DELETED) != 0;
+		int stringReferencesOffset = getStringReferencesOffset(recordOffset,
+				activeHeap);
+		String taskName = readString(stringReferencesOffset
+				+ STRING_REFERENCE_TASK_NAME);
+		String gTaskId = readString(stringReferencesOffset
+				+ STRING_REFERENCE_G_TASK_ID);
+		String gCalTaskId = readString(stringReferencesOffset
+				+ STRING_REFERENCE_G_CAL_TASK_ID);
+		String gCalTaskUid = readString(stringReferencesOffset
+				+ STRING_REFERENCE_G_CAL_TASK_UID);
+		String zoneId = readString(stringReferencesOffset
+				+ STRING_REFERENCE_TIME_ZONE);
+		DateTimeZone zone = zoneId == null ? DateTimeZone.getDefault()
+				: DateTimeZone.forID(zoneId);
+		DateTime startDateTime = readDateTime(recordOffset
+				+ RECORD_OFFSET_START_DATE_TIME, zone);
+		DateTime endDateTime = readDateTime(recordOffset
+				+ RECORD_OFFSET_END_DATE_TIME, zone);
+		DateTime taskCreated = readDateTime(recordOffset
+				+ RECORD_OFFSET_TASK_CREATED, zone);
+		DateTime taskUpdated = readDateTime(recordOffset
+				+ RECORD_OFFSET_TASK_UPDATED, zone);
+		DateTime taskLastSync = readDateTime(recordOffset
+				+ RECORD_OFFSET_TASK_LAST_SYNC, zone);
+
+		Task task;
+		switch (taskCategory) {
+		case TIMED:
+			task = new TimedTask(taskId, taskName, taskCategory,
+					startDateTime, endDateTime, taskCreated, taskUpdated,
+					taskLastSync, gCalTaskId, gCalTaskUid, isDone, isDeleted);
+			break;
+		case DEADLINE:
+			task = new DeadlineTask(taskId, taskName, taskCategory,
+					endDateTime, taskCreated, taskUpdated, taskLastSync,
+					gCalTaskId, gCalTaskUid, isDone, isDeleted);
+			break;
+		default:
+			task = new FloatingTask(taskId, taskName, taskCategory,
+					taskCreated, taskUpdated, taskLastSync, gTaskId, isDone,
+					isDeleted);
+			break;
+		}
+		task.setGTaskId(gTaskId);
+		task.setGcalTaskId(gCalTaskId);
+		task.setGcalTaskUid(gCalTaskUid);
+		return task;
+	}
+
+	/**
+	 * Gets number of active heap bytes referenced by record
+	 * 
+	 * @param recordOffset
+	 * @return heap bytes
+	 */
+	private int getRecordHeapBytes(int recordOffset) {
+		int heapBytes = 0;
+		int stringReferencesOffset = getStringReferencesOffset(recordOffset,
+				activeHeap);
+		for (int position = stringReferencesOffset; position < stringReferencesOffset
+				+ STRING_REFERENCES_SIZE; position += STRING_REFERENCE_SIZE) {
+			if (recordsBuffer.getInt(position) != NULL_STRING_OFFSET) {
+				heapBytes += recordsBuffer.getInt(position + 4);
+			}
+		}
+		return heapBytes;
+	}
+
+	/**
+	 * Copies strings of records in use into the inactive heap, then switches
+	 * to it. The active heap and its string references are not written until
+	 * the switch, which is a single header write after everything else has
+	 * been forced to disk.
+	 * 
+	 * @throws IOException
+	 */
+	private void compactHeap() throws IOException {
+		logEnterMethod("compactHeap");
+		int compactedHeap = (activeHeap + 1) % HEAP_COUNT;
+		int compactedHeapSize = 0;
+		for (int slot : slotIndex.values()) {
+			int recordOffset = getRecordOffset(slot);
+			int activeReferencesOffset = getStringReferencesOffset(
+					recordOffset, activeHeap);
+			int compactedReferencesOffset = getStringReferencesOffset(
+					recordOffset, compactedHeap);
+			for (int reference = 0; reference < STRING_REFERENCES_SIZE; reference += STRING_REFERENCE_SIZE) {
+				int offset = recordsBuffer.getInt(activeReferencesOffset
+						+ reference);
+				int length = recordsBuffer.getInt(activeReferencesOffset
+						+ reference + 4);
+				if (offset != NULL_STRING_OFFSET) {
+					writeHeapBytes(compactedHeap, compactedHeapSize,
+							readHeapBytes(activeHeap, offset, length));
+					offset = compactedHeapSize;
+					compactedHeapSize += length;
+				}
+				recordsBuffer.putInt(compactedReferencesOffset + reference,
+						offset);
+				recordsBuffer.putInt(compactedReferencesOffset + reference
+						+ 4, length);
+			}
+		}
+		recordsBuffer.putInt(getHeapSizeHeaderOffset(compactedHeap),
+				compactedHeapSize);
+		heapBuffers[compactedHeap].force();
+		recordsBuffer.force();
+
+		recordsBuffer.putInt(HEADER_OFFSET_ACTIVE_HEAP, compactedHeap);
+		recordsBuffer.force();
+		int reclaimedHeapBytes = heapSize - compactedHeapSize;
+		activeHeap = compactedHeap;
+		heapSize = compactedHeapSize;
+		garbageHeapBytes = 0;
+		logger.log(Level.INFO, "Compacted task records heap, bytes reclaimed : "
+				+ reclaimedHeapBytes);
+		logExitMethod("compactHeap");
+	}
+
+	/**
+	 * Gets offset of record slot in records file
+	 * 
+	 * @param slot
+	 * @return offset
+	 */
+	private int getRecordOffset(int slot) {
+		return HEADER_SIZE + slot * RECORD_SIZE;
+	}
+
+	/**
+	 * Gets offset of the string references of record into heap
+	 * 
+	 * @param recordOffset
+	 * @param heap
+	 * @return offset
+	 */
+	private int getStringReferencesOffset(int recordOffset, int heap) {
+		return recordOffset + RECORD_OFFSET_STRING_REFERENCES + heap
+				* STRING_REFERENCES_SIZE;
+	}
+
+	/**
+	 * Forces records and heap files to disk
+	 */
+	private void forceMappedFiles() {
+		recordsBuffer.force();
+		for (MappedByteBuffer heapBuffer : heapBuffers) {
+			heapBuffer.force();
+		}
+	}
+
+	@Override
+	public synchronized Map<Integer, Task> getTaskList() {
+		return new LinkedHashMap<Integer, Task>(taskList);
+	}
+
+	@Override
+	public boolean isIncrementalSaveEnabled() {
+		return true;
+	}
+
+	/**
+	 * Checks if unreferenced heap bytes outweigh live heap bytes
+	 * 
+	 * @return true if saveTaskList should be called to compact heap
+	 */
+	@Override
+	public synchronized boolean isCheckpointRequired() {
+		return garbageHeapBytes >= HEAP_COMPACTION_MINIMUM_GARBAGE_BYTES
+				&& garbageHeapBytes * 2 > heapSize;
+	}
+
+	/**
+	 * Forces mapped files to disk
+	 */
+	@Override
+	public synchronized void flush() {
+		forceMappedFiles();
+	}
+
+	@Override
+	public Iterator<Task> iterator() {
+		return Collections.unmodifiableCollection(getTaskList().values())
+				.iterator();
+	}
+
+	/**
+	 * Forces mapped files to disk, drops the mapped buffers so their mappings
+	 * can be garbage collected and closes the files
+	 * 
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		logEnterMethod("close");
+		if (recordsBuffer == null) {
+			logExitMethod("close");
+			return;
+		}
+		forceMappedFiles();
+		recordsBuffer = null;
+		Arrays.fill(heapBuffers, null);
+		recordsRandomAccessFile.close();
+		for (RandomAccessFile heapRandomAccessFile : heapRandomAccessFiles) {
+			heapRandomAccessFile.close();
+		}
+		logExitMethod("close");
+	}
+
+	/**
+	 * Log Methods
+	 */
+
+	/**
+	 * Log Trace Entry Method
+	 * 
+	 * @param methodName
+	 */
+	private void logEnterMethod(String methodName) {
+		logger.entering(getClass().getName(), methodName);
+	}
+
+	/**
+	 * Log Trace Exit Method
+	 * 
+	 * @param methodName
+	 */
+	private void logExitMethod(String methodName) {
+		logger.exiting(getClass().getName(), methodName);
+	}
+
+}
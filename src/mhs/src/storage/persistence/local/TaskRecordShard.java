@@ -0,0 +1,360 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import mhs.src.storage.persistence.task.Task;
+
+import org.joda.time.DateTime;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * TaskRecordShard
+ * 
+ * Single shard of a sharded task record file, holding tasks of one month or
+ * all floating tasks in its own compact task record file
+ * 
+ * - Shard file is only read when the shard is loaded<br>
+ * - Tasks are fingerprinted so unchanged tasks do not dirty the shard<br>
+ * - Only dirty shards are rewritten on save<br>
+ * - Lower case names of non-deleted tasks are saved in a names index file
+ * next to the shard file, so name searches can skip unloaded shards
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+class TaskRecordShard {
+
+	private static final long FINGERPRINT_SEED = 1125899906842597L;
+	private static final long FINGERPRINT_NULL = 0x9E3779B97F4A7C15L;
+	private static final int FINGERPRINT_MULTIPLIER = 31;
+	private static final String CHAR_ENCODING_UTF8 = "UTF-8";
+	private static final String NAMES_INDEX_FILE_EXTENSION = ".names";
+
+	/** Largest end millis of a shard without timed and deadline tasks */
+	static final long NO_END_MILLIS = Long.MIN_VALUE;
+	/** Largest end millis of a shard not recorded in manifest yet */
+	static final long UNKNOWN_END_MILLIS = Long.MAX_VALUE;
+
+	private final String shardKey;
+	private final File shardFile;
+	private final File namesIndexFile;
+	private TaskRecordFile shardRecordFile;
+	private Map<Integer, Task> taskList;
+	private Map<Integer, Long> taskFingerprints;
+	private int taskCount;
+	private int manifestTaskCount;
+	private int maxTaskId;
+	private int manifestMaxTaskId;
+	private long maxEndMillis;
+	private long manifestMaxEndMillis;
+	private boolean isDirty;
+	private boolean hasPutTasks;
+
+	/**
+	 * TaskRecordShard Constructor
+	 * 
+	 * @param shardKey
+	 * @param shardFile
+	 * @param taskCount
+	 *            task count recorded in manifest, or -1 for new shard
+	 * @param maxTaskId
+	 *            largest taskId recorded in manifest
+	 * @param maxEndMillis
+	 *            largest end date time of tasks recorded in manifest, or
+	 *            UNKNOWN_END_MILLIS if not recorded
+	 */
+	TaskRecordShard(String shardKey, File shardFile, int taskCount,
+			int maxTaskId, long maxEndMillis) {
+		this.shardKey = shardKey;
+		this.shardFile = shardFile;
+		this.namesIndexFile = new File(shardFile.getPath()
+				+ NAMES_INDEX_FILE_EXTENSION);
+		this.taskCount = taskCount;
+		this.manifestTaskCount = taskCount;
+		this.maxTaskId = maxTaskId;
+		this.manifestMaxTaskId = maxTaskId;
+		this.maxEndMillis = maxEndMillis;
+		this.manifestMaxEndMillis = maxEndMillis;
+	}
+
+	String getShardKey() {
+		return shardKey;
+	}
+
+	int getTaskCount() {
+		return isLoaded() ? taskList.size() : taskCount;
+	}
+
+	/**
+	 * Getter for largest taskId in shard
+	 * 
+	 * @return largest taskId, 0 if shard is empty
+	 */
+	int getMaxTaskId() {
+		if (!isLoaded()) {
+			return maxTaskId;
+		}
+		int loadedMaxTaskId = 0;
+		for (int taskId : taskList.keySet()) {
+			loadedMaxTaskId = Math.max(loadedMaxTaskId, taskId);
+		}
+		return loadedMaxTaskId;
+	}
+
+	/**
+	 * Getter for largest end date time of timed and deadline tasks in shard,
+	 * so date range loads can include timed tasks starting before the range
+	 * 
+	 * @return largest end epoch millis, NO_END_MILLIS if shard has no timed
+	 *         or deadline task, UNKNOWN_END_MILLIS if shard is not loaded and
+	 *         its end is not recorded in manifest
+	 */
+	long getMaxEndMillis() {
+		if (!isLoaded()) {
+			return maxEndMillis;
+		}
+		long loadedMaxEndMillis = NO_END_MILLIS;
+		for (Task task : taskList.values()) {
+			if ((task.isTimed() || task.isDeadline())
+					&& task.getEndDateTime() != null) {
+				loadedMaxEndMillis = Math.max(loadedMaxEndMillis, task
+						.getEndDateTime().getMillis());
+			}
+		}
+		return loadedMaxEndMillis;
+	}
+
+	boolean isLoaded() {
+		return taskList != null;
+	}
+
+	boolean isDirty() {
+		return isDirty;
+	}
+
+	/**
+	 * Checks if task count, largest taskId or largest end date time recorded
+	 * in manifest is outdated
+	 * 
+	 * @return true if manifest should be rewritten
+	 */
+	boolean isManifestEntryChanged() {
+		return getTaskCount() != manifestTaskCount
+				|| getMaxTaskId() != manifestMaxTaskId
+				|| getMaxEndMillis() != manifestMaxEndMillis;
+	}
+
+	/**
+	 * Records that current task count, largest taskId and largest end date
+	 * time are written to manifest
+	 */
+	void markManifestEntrySaved() {
+		manifestTaskCount = getTaskCount();
+		manifestMaxTaskId = getMaxTaskId();
+		manifestMaxEndMillis = getMaxEndMillis();
+	}
+
+	/**
+	 * Checks if tasks were added or changed since last save
+	 * 
+	 * @return true if shard has unsaved added or changed tasks
+	 */
+	boolean hasPutTasks() {
+		return hasPutTasks;
+	}
+
+	/**
+	 * Loads tasks from shard file if shard is not loaded
+	 * 
+	 * @throws IOException
+	 */
+	void load() throws IOException {
+		if (isLoaded()) {
+			return;
+		}
+		shardRecordFile = new TaskRecordFile(shardFile.getPath(), false,
+				TaskRecordFileFormat.COMPACT);
+		taskList = shardRecordFile.getTaskList();
+		taskFingerprints = new HashMap<Integer, Long>();
+		for (Task task : taskList.values()) {
+			taskFingerprints.put(task.getTaskId(), computeFingerprint(task));
+		}
+	}
+
+	/**
+	 * Getter for tasks in loaded shard
+	 * 
+	 * @return task list with taskId as key
+	 */
+	Map<Integer, Task> getTaskList() {
+		assert (isLoaded());
+		return taskList;
+	}
+
+	/**
+	 * Puts task into loaded shard, dirtying the shard if the task is new or
+	 * changed
+	 * 
+	 * @param task
+	 */
+	void putTask(Task task) {
+		assert (isLoaded());
+		long fingerprint = computeFingerprint(task);
+		Long savedFingerprint = taskFingerprints.get(task.getTaskId());
+		taskList.put(task.getTaskId(), task);
+		if (savedFingerprint == null || savedFingerprint != fingerprint) {
+			taskFingerprints.put(task.getTaskId(), fingerprint);
+			isDirty = true;
+			hasPutTasks = true;
+		}
+	}
+
+	/**
+	 * Removes task from loaded shard
+	 * 
+	 * @param taskId
+	 */
+	void removeTask(int taskId) {
+		assert (isLoaded());
+		if (taskList.remove(taskId) != null) {
+			taskFingerprints.remove(taskId);
+			isDirty = true;
+		}
+	}
+
+	/**
+	 * Rewrites shard file if shard is dirty, deleting it if shard is empty
+	 * 
+	 * @throws IOException
+	 */
+	void save() throws IOException {
+		if (!isDirty) {
+			return;
+		}
+		if (taskList.isEmpty()) {
+			shardFile.delete();
+			namesIndexFile.delete();
+		} else {
+			shardRecordFile.saveTaskList(taskList);
+			saveNamesIndex();
+		}
+		isDirty = false;
+		hasPutTasks = false;
+	}
+
+	/**
+	 * Writes lower case names of non-deleted tasks to names index file
+	 * 
+	 * @throws IOException
+	 */
+	private void saveNamesIndex() throws IOException {
+		JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(
+				new FileOutputStream(namesIndexFile), CHAR_ENCODING_UTF8));
+		try {
+			jsonWriter.beginArray();
+			for (Task task : taskList.values()) {
+				if (!task.isDeleted() && task.getTaskName() != null) {
+					jsonWriter.value(task.getTaskName().toLowerCase());
+				}
+			}
+			jsonWriter.endArray();
+		} finally {
+			jsonWriter.close();
+		}
+	}
+
+	/**
+	 * Checks if a non-deleted task in shard may contain task name, using the
+	 * names index file if shard is not loaded
+	 * 
+	 * @param taskName
+	 *            case-insensitive substring of task name
+	 * @return false only if no non-deleted task name contains task name
+	 * @throws IOException
+	 */
+	boolean mayContainTaskName(String taskName) throws IOException {
+		String lowerCaseTaskName = taskName.toLowerCase();
+		if (isLoaded()) {
+			for (Task task : taskList.values()) {
+				if (!task.isDeleted() && task.getTaskName() != null
+						&& task.getTaskName().toLowerCase()
+								.contains(lowerCaseTaskName)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (!namesIndexFile.exists()) {
+			return true;
+		}
+		JsonReader jsonReader = new JsonReader(new InputStreamReader(
+				new FileInputStream(namesIndexFile), CHAR_ENCODING_UTF8));
+		try {
+			jsonReader.beginArray();
+			while (jsonReader.hasNext()) {
+				if (jsonReader.nextString().contains(lowerCaseTaskName)) {
+					return true;
+				}
+			}
+			jsonReader.endArray();
+		} finally {
+			jsonReader.close();
+		}
+		return false;
+	}
+
+	/**
+	 * Computes 64 bit fingerprint over all persisted fields of task
+	 * 
+	 * @param task
+	 * @return fingerprint
+	 */
+	static long computeFingerprint(Task task) {
+		long fingerprint = FINGERPRINT_SEED;
+		fingerprint = FINGERPRINT_MULTIPLIER * fingerprint + task.getTaskId();
+		fingerprint = addToFingerprint(fingerprint, task.getTaskName());
+		fingerprint = addToFingerprint(fingerprint, task.getTaskCategory()
+				.getValue());
+		fingerprint = addToFingerprint(fingerprint, task.getStartDateTime());
+		fingerprint = addToFingerprint(fingerprint, task.getEndDateTime());
+		fingerprint = addToFingerprint(fingerprint, task.getTaskCreated());
+		fingerprint = addToFingerprint(fingerprint, task.getTaskUpdated());
+		fingerprint = addToFingerprint(fingerprint, task.getTaskLastSync());
+		fingerprint = addToFingerprint(fingerprint, task.getGTaskId());
+		fingerprint = addToFingerprint(fingerprint, task.getgCalTaskId());
+		fingerprint = addToFingerprint(fingerprint, task.getgCalTaskUid());
+		fingerprint = FINGERPRINT_MULTIPLIER * fingerprint
+				+ (task.isDone() ? 1 : 0);
+		fingerprint = FINGERPRINT_MULTIPLIER * fingerprint
+				+ (task.isDeleted() ? 1 : 0);
+		return fingerprint;
+	}
+
+	private static long addToFingerprint(long fingerprint, String value) {
+		if (value == null) {
+			return FINGERPRINT_MULTIPLIER * fingerprint + FINGERPRINT_NULL;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			fingerprint = FINGERPRINT_MULTIPLIER * fingerprint
+					+ value.charAt(i);
+		}
+		return FINGERPRINT_MULTIPLIER * fingerprint + value.length();
+	}
+
+	private static long addToFingerprint(long fingerprint, DateTime dateTime) {
+		if (dateTime == null) {
+			return FINGERPRINT_MULTIPLIER * fingerprint + FINGERPRINT_NULL;
+		}
+		return FINGERPRINT_MULTIPLIER * fingerprint + dateTime.getMillis();
+	}
+
+}
@@ -0,0 +1,675 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mhs.src.common.MhsLogger;
+import mhs.src.storage.persistence.task.Task;
+
+import org.joda.time.DateTime;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * TaskRecordShardedFile
+ * 
+ * Task store split into one compact task record file per month and one for
+ * floating tasks, listed in a manifest
+ * 
+ * Layout:<br>
+ * - [taskRecordFileName].shards/manifest.json - shard keys, task counts,
+ * largest taskIds and largest end date times<br>
+ * - [taskRecordFileName].shards/2012-10.json - tasks starting (timed) or due
+ * (deadline) in October 2012<br>
+ * - [taskRecordFileName].shards/floating.json - floating tasks<br>
+ * - [shard file].names - names index of shard<br>
+ * 
+ * - A task mutation only rewrites its shard (and its previous shard if the
+ * task moved between months)<br>
+ * - Shards overlapping the load window and the floating shard are loaded on
+ * start, other shards are loaded when first needed. A month shard overlaps a
+ * date range if its month starts before the range ends, and its month or the
+ * largest end date time of its tasks is after the range starts, so timed
+ * tasks starting months before the range are loaded too<br>
+ * - An existing json task record file is migrated on first start
+ * 
+ * Shards are written before the manifest. A task found in two shards after an
+ * interrupted move keeps the copy updated last.
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public class TaskRecordShardedFile implements TaskStore {
+
+	private static final Logger logger = MhsLogger.getLogger();
+
+	private static final String CHAR_ENCODING_UTF8 = "UTF-8";
+	private static final String SHARD_DIRECTORY_EXTENSION = ".shards";
+	private static final String SHARD_FILE_EXTENSION = ".json";
+	private static final String MANIFEST_FILE_NAME = "manifest.json";
+	private static final String TEMP_FILE_EXTENSION = ".tmp";
+	private static final String FLOATING_SHARD_KEY = "floating";
+	private static final String MONTH_SHARD_KEY_FORMAT = "%04d-%02d";
+	private static final String MONTH_SHARD_KEY_SEPARATOR = "-";
+	private static final int NEW_SHARD_TASK_COUNT = -1;
+
+	private static final String JSON_KEY_FORMAT_VERSION = "formatVersion";
+	private static final String JSON_KEY_SHARDS = "shards";
+	private static final String JSON_KEY_SHARD_KEY = "key";
+	private static final String JSON_KEY_TASK_COUNT = "taskCount";
+	private static final String JSON_KEY_MAX_TASK_ID = "maxTaskId";
+	private static final String JSON_KEY_MAX_END_MILLIS = "maxEndMillis";
+	private static final int MANIFEST_FORMAT_VERSION = 1;
+
+	private static final String EXCEPTION_MESSAGE_NULL_PARAMETER = "%1$s cannot be null!";
+	private static final String EXCEPTION_MESSAGE_UNSUPPORTED_FORMAT_VERSION = "Unsupported shard manifest format version : %1$d";
+
+	private final File shardDirectory;
+	private final File manifestFile;
+	private final Map<String, TaskRecordShard> shards;
+	private final Map<Integer, String> shardKeys;
+
+	/**
+	 * TaskRecordShardedFile Constructor, loads all shards
+	 * 
+	 * @param taskRecordFileName
+	 * @throws IOException
+	 */
+	public TaskRecordShardedFile(String taskRecordFileName) throws IOException {
+		this(taskRecordFileName, null, null);
+	}
+
+	/**
+	 * TaskRecordShardedFile Constructor, loads floating shard and month
+	 * shards overlapping load window. Other shards are loaded when needed.
+	 * 
+	 * @param taskRecordFileName
+	 * @param loadStartDateTime
+	 *            start of load window, null to load all shards
+	 * @param loadEndDateTime
+	 *            end of load window, null to load all shards
+	 * @throws IOException
+	 */
+	public TaskRecordShardedFile(String taskRecordFileName,
+			DateTime loadStartDateTime, DateTime loadEndDateTime)
+			throws IOException {
+		logEnterMethod("TaskRecordShardedFile");
+		if (taskRecordFileName == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskRecordFileName"));
+		}
+		shardDirectory = new File(taskRecordFileName
+				+ SHARD_DIRECTORY_EXTENSION);
+		manifestFile = new File(shardDirectory, MANIFEST_FILE_NAME);
+		shards = new TreeMap<String, TaskRecordShard>();
+		shardKeys = new HashMap<Integer, String>();
+
+		if (manifestFile.exists()) {
+			readManifest();
+		} else {
+			shardDirectory.mkdirs();
+			migrateFromTaskRecordFile(taskRecordFileName);
+		}
+		if (loadStartDateTime == null || loadEndDateTime == null) {
+			loadRemainingShards();
+		} else {
+			loadShards(loadStartDateTime, loadEndDateTime);
+			loadShard(shards.get(FLOATING_SHARD_KEY));
+		}
+		logExitMethod("TaskRecordShardedFile");
+	}
+
+	/**
+	 * Migrates tasks from json task record file and its journal if it exists,
+	 * leaving both files unmodified
+	 * 
+	 * @param taskRecordFileName
+	 * @throws IOException
+	 */
+	private void migrateFromTaskRecordFile(String taskRecordFileName)
+			throws IOException {
+		logEnterMethod("migrateFromTaskRecordFile");
+		if (new File(taskRecordFileName).exists()) {
+			saveTaskList(TaskRecordFile.readTaskList(taskRecordFileName));
+			logger.log(Level.INFO, "Migrated task records from "
+					+ taskRecordFileName);
+		} else {
+			writeManifest();
+		}
+		logExitMethod("migrateFromTaskRecordFile");
+	}
+
+	/**
+	 * Getter for all tasks, loading shards not loaded yet
+	 * 
+	 * @return task list with taskId as key
+	 */
+	@Override
+	public synchronized Map<Integer, Task> getTaskList() {
+		try {
+			loadRemainingShards();
+		} catch (IOException e) {
+			logger.log(Level.WARNING, e.getMessage());
+		}
+		return getLoadedTaskList();
+	}
+
+	/**
+	 * Getter for tasks in loaded shards
+	 * 
+	 * @return task list with taskId as key
+	 */
+	public synchronized Map<Integer, Task> getLoadedTaskList() {
+		Map<Integer, Task> loadedTasks = new TreeMap<Integer, Task>();
+		for (TaskRecordShard shard : shards.values()) {
+			if (shard.isLoaded()) {
+				loadedTasks.putAll(shard.getTaskList());
+			}
+		}
+		return new LinkedHashMap<Integer, Task>(loadedTasks);
+	}
+
+	/**
+	 * Loads month shards overlapping date range that are not loaded yet
+	 * 
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @return tasks in newly loaded shards with taskId as key
+	 * @throws IOException
+	 */
+	public synchronized Map<Integer, Task> loadShards(DateTime startDateTime,
+			DateTime endDateTime) throws IOException {
+		logEnterMethod("loadShards");
+		Map<Integer, Task> loadedTasks = new LinkedHashMap<Integer, Task>();
+		for (TaskRecordShard shard : shards.values()) {
+			if (!shard.isLoaded()
+					&& isShardInDateRange(shard, startDateTime, endDateTime)) {
+				loadShard(shard);
+				loadedTasks.putAll(shard.getTaskList());
+			}
+		}
+		logExitMethod("loadShards");
+		return loadedTasks;
+	}
+
+	/**
+	 * Loads shards not loaded yet whose names index has a non-deleted task
+	 * name containing task name
+	 * 
+	 * @param taskName
+	 *            case-insensitive substring of task name
+	 * @return tasks in newly loaded shards with taskId as key
+	 * @throws IOException
+	 */
+	public synchronized Map<Integer, Task> loadShardsMatchingTaskName(
+			String taskName) throws IOException {
+		logEnterMethod("loadShardsMatchingTaskName");
+		Map<Integer, Task> loadedTasks = new LinkedHashMap<Integer, Task>();
+		for (TaskRecordShard shard : shards.values()) {
+			if (!shard.isLoaded() && shard.mayContainTaskName(taskName)) {
+				loadShard(shard);
+				loadedTasks.putAll(shard.getTaskList());
+			}
+		}
+		logExitMethod("loadShardsMatchingTaskName");
+		return loadedTasks;
+	}
+
+	/**
+	 * Loads all shards not loaded yet
+	 * 
+	 * @return tasks in newly loaded shards with taskId as key
+	 * @throws IOException
+	 */
+	public synchronized Map<Integer, Task> loadRemainingShards()
+			throws IOException {
+		logEnterMethod("loadRemainingShards");
+		Map<Integer, Task> loadedTasks = new LinkedHashMap<Integer, Task>();
+		for (TaskRecordShard shard : shards.values()) {
+			if (!shard.isLoaded()) {
+				loadShard(shard);
+				loadedTasks.putAll(shard.getTaskList());
+			}
+		}
+		logExitMethod("loadRemainingShards");
+		return loadedTasks;
+	}
+
+	/**
+	 * Getter for largest taskId in store, including shards not loaded yet
+	 * 
+	 * @return largest taskId, 0 if store is empty
+	 */
+	public synchronized int getMaxTaskId() {
+		int maxTaskId = 0;
+		for (TaskRecordShard shard : shards.values()) {
+			maxTaskId = Math.max(maxTaskId, shard.getMaxTaskId());
+		}
+		return maxTaskId;
+	}
+
+	/**
+	 * Checks if month shard may hold tasks overlapping date range, including
+	 * timed tasks starting before the range and ending in or after it
+	 * 
+	 * @param shard
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @return false for floating shard
+	 */
+	private boolean isShardInDateRange(TaskRecordShard shard,
+			DateTime startDateTime, DateTime endDateTime) {
+		if (FLOATING_SHARD_KEY.equals(shard.getShardKey())) {
+			return false;
+		}
+		String[] yearAndMonth = shard.getShardKey().split(
+				MONTH_SHARD_KEY_SEPARATOR);
+		DateTime shardStartDateTime = new DateTime(
+				Integer.parseInt(yearAndMonth[0]),
+				Integer.parseInt(yearAndMonth[1]), 1, 0, 0);
+		DateTime shardEndDateTime = shardStartDateTime.plusMonths(1);
+		return shardStartDateTime.isBefore(endDateTime)
+				&& (shardEndDateTime.isAfter(startDateTime) || shard
+						.getMaxEndMillis() >= startDateTime.getMillis());
+	}
+
+	/**
+	 * Loads shard and indexes its tasks. A task already loaded from another
+	 * shard keeps the copy updated last.
+	 * 
+	 * @param shard
+	 *            shard to load, ignored if null or loaded
+	 * @throws IOException
+	 */
+	private void loadShard(TaskRecordShard shard) throws IOException {
+		if (shard == null || shard.isLoaded()) {
+			return;
+		}
+		shard.load();
+		Iterator<Task> shardTasks = shard.getTaskList().values().iterator();
+		while (shardTasks.hasNext()) {
+			Task task = shardTasks.next();
+			String otherShardKey = shardKeys.get(task.getTaskId());
+			if (otherShardKey != null) {
+				TaskRecordShard otherShard = shards.get(otherShardKey);
+				Task otherTask = otherShard.getTaskList().get(task.getTaskId());
+				if (!isUpdatedAfter(task, otherTask)) {
+					shardTasks.remove();
+					continue;
+				}
+				otherShard.removeTask(task.getTaskId());
+			}
+			shardKeys.put(task.getTaskId(), shard.getShardKey());
+		}
+		logger.log(Level.INFO, "Loaded task record shard "
+				+ shard.getShardKey() + " : " + shard.getTaskCount());
+	}
+
+	private boolean isUpdatedAfter(Task task, Task otherTask) {
+		if (task.getTaskUpdated() == null) {
+			return false;
+		}
+		return otherTask.getTaskUpdated() == null
+				|| task.getTaskUpdated().isAfter(otherTask.getTaskUpdated());
+	}
+
+	/**
+	 * Saves entire task list, rewriting only shards with added, changed or
+	 * removed tasks. Tasks in shards not loaded yet are kept.
+	 * 
+	 * @param taskList
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void saveTaskList(Map<Integer, Task> taskList)
+			throws IOException {
+		logEnterMethod("saveTaskList");
+		if (taskList == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskList"));
+		}
+		Iterator<Map.Entry<Integer, String>> savedShardKeys = shardKeys
+				.entrySet().iterator();
+		while (savedShardKeys.hasNext()) {
+			Map.Entry<Integer, String> savedShardKey = savedShardKeys.next();
+			if (!taskList.containsKey(savedShardKey.getKey())) {
+				shards.get(savedShardKey.getValue()).removeTask(
+						savedShardKey.getKey());
+				savedShardKeys.remove();
+			}
+		}
+		for (Task task : taskList.values()) {
+			putTask(task);
+		}
+		saveDirtyShards();
+		logExitMethod("saveTaskList");
+	}
+
+	/**
+	 * Saves added or updated task, rewriting its shard
+	 * 
+	 * @param taskToSave
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void saveTask(Task taskToSave) throws IOException {
+		logEnterMethod("saveTask");
+		if (taskToSave == null) {
+			throw new IllegalArgumentException(String.format(
+					EXCEPTION_MESSAGE_NULL_PARAMETER, "taskToSave"));
+		}
+		putTask(taskToSave);
+		saveDirtyShards();
+		logExitMethod("saveTask");
+	}
+
+	/**
+	 * Removes task, rewriting its shard
+	 * 
+	 * @param taskId
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void removeTask(int taskId) throws IOException {
+		logEnterMethod("removeTask");
+		String shardKey = shardKeys.remove(taskId);
+		if (shardKey != null) {
+			shards.get(shardKey).removeTask(taskId);
+			saveDirtyShards();
+		}
+		logExitMethod("removeTask");
+	}
+
+	/**
+	 * Puts task into its shard, removing it from its previous shard if it
+	 * moved
+	 * 
+	 * @param task
+	 * @throws IOException
+	 */
+	private void putTask(Task task) throws IOException {
+		String shardKey = getShardKey(task);
+		TaskRecordShard shard = shards.get(shardKey);
+		if (shard == null) {
+			shard = new TaskRecordShard(shardKey, new File(shardDirectory,
+					shardKey + SHARD_FILE_EXTENSION), NEW_SHARD_TASK_COUNT, 0,
+					TaskRecordShard.NO_END_MILLIS);
+			shards.put(shardKey, shard);
+		}
+		loadShard(shard);
+		shard.putTask(task);
+
+		String previousShardKey = shardKeys.put(task.getTaskId(), shardKey);
+		if (previousShardKey != null && !previousShardKey.equals(shardKey)) {
+			shards.get(previousShardKey).removeTask(task.getTaskId());
+		}
+	}
+
+	/**
+	 * Rewrites dirty shards and manifest. Shards with added or changed tasks
+	 * are written before the manifest and shards with only removed tasks
+	 * after it, so a task moving between shards is never only in memory.
+	 * 
+	 * @throws IOException
+	 */
+	private void saveDirtyShards() throws IOException {
+		boolean isManifestChanged = false;
+		for (TaskRecordShard shard : shards.values()) {
+			if (shard.hasPutTasks()) {
+				shard.save();
+			}
+		}
+		List<TaskRecordShard> emptyShards = new ArrayList<TaskRecordShard>();
+		Iterator<TaskRecordShard> shardIterator = shards.values().iterator();
+		while (shardIterator.hasNext()) {
+			TaskRecordShard shard = shardIterator.next();
+			if (shard.getTaskCount() == 0) {
+				emptyShards.add(shard);
+				shardIterator.remove();
+			}
+			isManifestChanged |= shard.isManifestEntryChanged();
+		}
+		if (isManifestChanged) {
+			writeManifest();
+		}
+		for (TaskRecordShard shard : shards.values()) {
+			shard.save();
+		}
+		for (TaskRecordShard shard : emptyShards) {
+			shard.save();
+		}
+	}
+
+	/**
+	 * Gets key of shard task belongs to
+	 * 
+	 * @param task
+	 * @return month of start date time of timed task or end date time of
+	 *         deadline task, floating shard key otherwise
+	 */
+	private String getShardKey(Task task) {
+		DateTime shardDateTime = null;
+		if (task.isTimed()) {
+			shardDateTime = task.getStartDateTime();
+		} else if (task.isDeadline()) {
+			shardDateTime = task.getEndDateTime();
+		}
+		if (shardDateTime == null) {
+			return FLOATING_SHARD_KEY;
+		}
+		return String.format(MONTH_SHARD_KEY_FORMAT, shardDateTime.getYear(),
+				shardDateTime.getMonthOfYear());
+	}
+
+	/**
+	 * Reads shard keys, task counts, largest taskIds and largest end date
+	 * times from manifest. Shards without a recorded end date time, from
+	 * manifests written before it was recorded, are loaded by every date range
+	 * from their month on until they are saved again.
+	 * 
+	 * @throws IOException
+	 */
+	private void readManifest() throws IOException {
+		logEnterMethod("readManifest");
+		JsonReader jsonReader = new JsonReader(new InputStreamReader(
+				new FileInputStream(manifestFile), CHAR_ENCODING_UTF8));
+		try {
+			jsonReader.beginObject();
+			while (jsonReader.hasNext()) {
+				switch (jsonReader.nextName()) {
+				case JSON_KEY_FORMAT_VERSION:
+					int formatVersion = jsonReader.nextInt();
+					if (formatVersion > MANIFEST_FORMAT_VERSION) {
+						throw new IOException(String.format(
+								EXCEPTION_MESSAGE_UNSUPPORTED_FORMAT_VERSION,
+								formatVersion));
+					}
+					break;
+				case JSON_KEY_SHARDS:
+					readManifestShards(jsonReader);
+					break;
+				default:
+					jsonReader.skipValue();
+					break;
+				}
+			}
+			jsonReader.endObject();
+		} finally {
+			jsonReader.close();
+		}
+		logExitMethod("readManifest");
+	}
+
+	private void readManifestShards(JsonReader jsonReader) throws IOException {
+		jsonReader.beginArray();
+		while (jsonReader.hasNext()) {
+			String shardKey = null;
+			int taskCount = 0;
+			int maxTaskId = 0;
+			long maxEndMillis = TaskRecordShard.UNKNOWN_END_MILLIS;
+			jsonReader.beginObject();
+			while (jsonReader.hasNext()) {
+				switch (jsonReader.nextName()) {
+				case JSON_KEY_SHARD_KEY:
+					shardKey = jsonReader.nextString();
+					break;
+				case JSON_KEY_TASK_COUNT:
+					taskCount = jsonReader.nextInt();
+					break;
+				case JSON_KEY_MAX_TASK_ID:
+					maxTaskId = jsonReader.nextInt();
+					break;
+				case JSON_KEY_MAX_END_MILLIS:
+					maxEndMillis = jsonReader.nextLong();
+					break;
+				default:
+					jsonReader.skipValue();
+					break;
+				}
+			}
+			jsonReader.endObject();
+			if (shardKey != null) {
+				shards.put(shardKey, new TaskRecordShard(shardKey, new File(
+						shardDirectory, shardKey + SHARD_FILE_EXTENSION),
+						taskCount, maxTaskId, maxEndMillis));
+			}
+		}
+		jsonReader.endArray();
+	}
+
+	/**
+	 * Writes manifest to temp file and replaces existing manifest with it
+	 * 
+	 * @throws IOException
+	 */
+	private void writeManifest() throws IOException {
+		logEnterMethod("writeManifest");
+		File tempManifestFile = new File(shardDirectory, MANIFEST_FILE_NAME
+				+ TEMP_FILE_EXTENSION);
+		JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(
+				new FileOutputStream(tempManifestFile), CHAR_ENCODING_UTF8));
+		try {
+			jsonWriter.beginObject();
+			jsonWriter.name(JSON_KEY_FORMAT_VERSION).value(
+					MANIFEST_FORMAT_VERSION);
+			jsonWriter.name(JSON_KEY_SHARDS).beginArray();
+			for (TaskRecordShard shard : shards.values()) {
+				jsonWriter.beginObject();
+				jsonWriter.name(JSON_KEY_SHARD_KEY).value(shard.getShardKey());
+				jsonWriter.name(JSON_KEY_TASK_COUNT)
+						.value(shard.getTaskCount());
+				jsonWriter.name(JSON_KEY_MAX_TASK_ID).value(
+						shard.getMaxTaskId());
+				jsonWriter.name(JSON_KEY_MAX_END_MILLIS).value(
+						shard.getMaxEndMillis());
+				jsonWriter.endObject();
+				shard.markManifestEntrySaved();
+			}
+			jsonWriter.endArray();
+			jsonWriter.endObject();
+		} finally {
+			jsonWriter.close();
+		}
+		Files.move(tempManifestFile.toPath(), manifestFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		logExitMethod("writeManifest");
+	}
+
+	/**
+	 * Getter for number of shards
+	 * 
+	 * @return shard count
+	 */
+	public synchronized int getShardCount() {
+		return shards.size();
+	}
+
+	/**
+	 * Getter for number of loaded shards
+	 * 
+	 * @return loaded shard count
+	 */
+	public synchronized int getLoadedShardCount() {
+		int loadedShardCount = 0;
+		for (TaskRecordShard shard : shards.values()) {
+			if (shard.isLoaded()) {
+				loadedShardCount++;
+			}
+		}
+		return loadedShardCount;
+	}
+
+	@Override
+	public boolean isIncrementalSaveEnabled() {
+		return true;
+	}
+
+	@Override
+	public boolean isCheckpointRequired() {
+		return false;
+	}
+
+	/**
+	 * Writes shards left dirty by load, such as removed duplicate tasks
+	 * 
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		saveDirtyShards();
+	}
+
+	@Override
+	public void close() throws IOException {
+		// shards are written on every save
+	}
+
+	/**
+	 * Iterates over tasks of all shards, loading remaining shards
+	 */
+	@Override
+	public Iterator<Task> iterator() {
+		return Collections.unmodifiableCollection(getTaskList().values())
+				.iterator();
+	}
+
+	/**
+	 * Log Methods
+	 */
+
+	/**
+	 * Log Trace Entry Method
+	 * 
+	 * @param methodName
+	 */
+	private void logEnterMethod(String methodName) {
+		logger.entering(getClass().getName(), methodName);
+	}
+
+	/**
+	 * Log Trace Exit Method
+	 * 
+	 * @param methodName
+	 */
+	private void logExitMethod(String methodName) {
+		logger.exiting(getClass().getName(), methodName);
+	}
+
+}
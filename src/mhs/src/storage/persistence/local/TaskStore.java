@@ -0,0 +1,81 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.IOException;
+import java.util.Map;
+
+import mhs.src.storage.persistence.task.Task;
+
+/**
+ * TaskStore
+ * 
+ * Local persistent storage backend for tasks
+ * 
+ * Implementations are listed in TaskStoreType and are checked against the
+ * same contract by TaskStoreConformanceTest
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public interface TaskStore extends Iterable<Task> {
+
+	/**
+	 * Getter for tasks loaded from store
+	 * 
+	 * @return task list with taskId as key
+	 */
+	Map<Integer, Task> getTaskList();
+
+	/**
+	 * Saves entire task list to store, replacing existing tasks
+	 * 
+	 * @param taskList
+	 * @throws IOException
+	 */
+	void saveTaskList(Map<Integer, Task> taskList) throws IOException;
+
+	/**
+	 * Saves single added or updated task to store
+	 * 
+	 * @param taskToSave
+	 * @throws IOException
+	 */
+	void saveTask(Task taskToSave) throws IOException;
+
+	/**
+	 * Removes single task from store
+	 * 
+	 * @param taskId
+	 * @throws IOException
+	 */
+	void removeTask(int taskId) throws IOException;
+
+	/**
+	 * Checks if store supports saving single tasks with saveTask and
+	 * removeTask
+	 * 
+	 * @return true if single task saves are supported
+	 */
+	boolean isIncrementalSaveEnabled();
+
+	/**
+	 * Checks if store should be rewritten with saveTaskList
+	 * 
+	 * @return true if saveTaskList should be called
+	 */
+	boolean isCheckpointRequired();
+
+	/**
+	 * Writes saved tasks still buffered by store to disk
+	 * 
+	 * @throws IOException
+	 */
+	void flush() throws IOException;
+
+	/**
+	 * Releases resources held by store
+	 * 
+	 * @throws IOException
+	 */
+	void close() throws IOException;
+
+}
@@ -0,0 +1,55 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.IOException;
+
+/**
+ * TaskStoreType
+ * 
+ * Task store implementations selectable with TASK_RECORD_STORE in config
+ * file<br>
+ * 
+ * Types:<br>
+ * 1. JSON - task record file with journal (default)<br>
+ * 2. MAPPED - memory mapped task record file<br>
+ * 3. SHARDED - monthly sharded task record file<br>
+ * 4. LOG - log-structured task record file<br>
+ * 5. MEMORY - in-memory store, not persisted
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public enum TaskStoreType {
+	JSON, MAPPED, SHARDED, LOG, MEMORY;
+
+	/**
+	 * Creates task store of this type with all tasks loaded
+	 * 
+	 * @param taskRecordFileName
+	 * @return task store
+	 * @throws IOException
+	 */
+	public TaskStore createTaskStore(String taskRecordFileName)
+			throws IOException {
+		switch (this) {
+		case MAPPED:
+			return new TaskRecordMappedFile(taskRecordFileName);
+		case SHARDED:
+			return new TaskRecordShardedFile(taskRecordFileName);
+		case LOG:
+			return new TaskRecordLogFile(taskRecordFileName);
+		case MEMORY:
+			return new TaskMemoryStore();
+		default:
+			return new TaskRecordFile(taskRecordFileName, true);
+		}
+	}
+
+	/**
+	 * Checks if tasks of this store type outlive the store instance
+	 * 
+	 * @return true if tasks are saved to disk
+	 */
+	public boolean isPersistent() {
+		return this != MEMORY;
+	}
+}
@@ -0,0 +1,84 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * TaskTransferFormat
+ * 
+ * File formats for bulk import and export of tasks<br>
+ * 
+ * Formats:<br>
+ * 1. CSV - category,name,start,end,done records with ISO 8601 date times<br>
+ * 2. ICS - iCalendar, timed tasks as VEVENT, deadline and floating tasks as
+ * VTODO
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public enum TaskTransferFormat {
+	CSV(".csv"), ICS(".ics");
+
+	private static final String EXCEPTION_MESSAGE_UNKNOWN_FILE_EXTENSION = "Unknown task transfer file extension : %1$s";
+
+	private final String fileExtension;
+
+	private TaskTransferFormat(String fileExtension) {
+		this.fileExtension = fileExtension;
+	}
+
+	public String getFileExtension() {
+		return fileExtension;
+	}
+
+	/**
+	 * Gets format of file from its extension
+	 * 
+	 * @param fileName
+	 * @return task transfer format
+	 * @throws IllegalArgumentException
+	 *             if extension is not .csv or .ics
+	 */
+	public static TaskTransferFormat fromFileName(String fileName) {
+		String lowerCaseFileName = fileName.toLowerCase();
+		for (TaskTransferFormat format : values()) {
+			if (lowerCaseFileName.endsWith(format.fileExtension)) {
+				return format;
+			}
+		}
+		throw new IllegalArgumentException(String.format(
+				EXCEPTION_MESSAGE_UNKNOWN_FILE_EXTENSION, fileName));
+	}
+
+	/**
+	 * Creates reader streaming tasks of this format
+	 * 
+	 * @param reader
+	 * @return task transfer reader
+	 */
+	public TaskTransferReader createReader(Reader reader) {
+		switch (this) {
+		case ICS:
+			return new TaskIcsReader(reader);
+		default:
+			return new TaskCsvReader(reader);
+		}
+	}
+
+	/**
+	 * Creates writer streaming tasks in this format
+	 * 
+	 * @param writer
+	 * @return task transfer writer
+	 * @throws IOException
+	 */
+	public TaskTransferWriter createWriter(Writer writer) throws IOException {
+		switch (this) {
+		case ICS:
+			return new TaskIcsWriter(writer);
+		default:
+			return new TaskCsvWriter(writer);
+		}
+	}
+}
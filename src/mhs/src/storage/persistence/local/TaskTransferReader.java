@@ -0,0 +1,85 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import mhs.src.storage.persistence.task.DeadlineTask;
+import mhs.src.storage.persistence.task.FloatingTask;
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+import mhs.src.storage.persistence.task.TimedTask;
+
+import org.joda.time.DateTime;
+
+/**
+ * TaskTransferReader
+ * 
+ * Reads tasks one record at a time from an import file
+ * 
+ * - Tasks are returned without taskId, created and updated date times<br>
+ * - Records with missing or unparseable fields are returned as incomplete
+ * tasks so they can be rejected by validation
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public abstract class TaskTransferReader implements Closeable {
+
+	private static final int TASK_ID_UNASSIGNED = 0;
+
+	/**
+	 * Reads next task
+	 * 
+	 * @return task, or null if there are no more records
+	 * @throws IOException
+	 */
+	public abstract Task readTask() throws IOException;
+
+	/**
+	 * Creates task of category, inferring category from date times if it is
+	 * not specified
+	 * 
+	 * @param taskCategory
+	 *            category, or null to infer category
+	 * @param taskName
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @param isDone
+	 * @return task
+	 */
+	protected Task createTask(TaskCategory taskCategory, String taskName,
+			DateTime startDateTime, DateTime endDateTime, boolean isDone) {
+		if (taskCategory == null) {
+			taskCategory = inferTaskCategory(startDateTime, endDateTime);
+		}
+		switch (taskCategory) {
+		case TIMED:
+			return new TimedTask(TASK_ID_UNASSIGNED, taskName,
+					TaskCategory.TIMED, startDateTime, endDateTime, null,
+					null, null, null, null, isDone, false);
+		case DEADLINE:
+			if (endDateTime == null) {
+				endDateTime = startDateTime;
+			}
+			return new DeadlineTask(TASK_ID_UNASSIGNED, taskName,
+					TaskCategory.DEADLINE, endDateTime, null, null, null,
+					null, null, isDone, false);
+		default:
+			return new FloatingTask(TASK_ID_UNASSIGNED, taskName,
+					TaskCategory.FLOATING, null, null, null, null, isDone,
+					false);
+		}
+	}
+
+	private TaskCategory inferTaskCategory(DateTime startDateTime,
+			DateTime endDateTime) {
+		if (startDateTime != null && endDateTime != null) {
+			return TaskCategory.TIMED;
+		}
+		if (startDateTime != null || endDateTime != null) {
+			return TaskCategory.DEADLINE;
+		}
+		return TaskCategory.FLOATING;
+	}
+
+}
@@ -0,0 +1,27 @@
+//@author A0087048X
+package mhs.src.storage.persistence.local;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import mhs.src.storage.persistence.task.Task;
+
+/**
+ * TaskTransferWriter
+ * 
+ * Writes tasks one record at a time to an export file, close writes any
+ * trailer of the format
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public interface TaskTransferWriter extends Closeable {
+
+	/**
+	 * Writes single task record
+	 * 
+	 * @param taskToWrite
+	 * @throws IOException
+	 */
+	void writeTask(Task taskToWrite) throws IOException;
+
+}
@@ -50,6 +50,16 @@ public class DeadlineTask extends Task {
 		setEndDateTime(endDt);
 	}
 
+	/**
+	 * Copy Constructor
+	 * 
+	 * @param taskToCopy
+	 */
+	public DeadlineTask(DeadlineTask taskToCopy) {
+		super(taskToCopy);
+		endDateTime = taskToCopy.endDateTime;
+	}
+
 	/**
 	 * Construct synced DeadlineTask from Google CalendarEventEntry
 	 * 
@@ -64,6 +74,13 @@ public class DeadlineTask extends Task {
 		setEndDateTime(new DateTime(gCalEntry.getEnd().getDateTime().getValue()));
 	}
 
+	/**
+	 * Returns cloned DeadlineTask
+	 */
+	public Task clone() {
+		return new DeadlineTask(this);
+	}
+
 	/**
 	 * Return endDateTime for startDateTime
 	 */
@@ -39,6 +39,15 @@ public class FloatingTask extends Task {
 		setGTaskId(gTaskId);
 	}
 
+	/**
+	 * Copy Constructor
+	 * 
+	 * @param taskToCopy
+	 */
+	public FloatingTask(FloatingTask taskToCopy) {
+		super(taskToCopy);
+	}
+
 	/**
 	 * Construct synced floating task with google task
 	 * 
@@ -56,6 +65,13 @@ public class FloatingTask extends Task {
 		setGTaskId(googleTask.getId());
 	}
 
+	/**
+	 * Returns cloned FloatingTask
+	 */
+	public Task clone() {
+		return new FloatingTask(this);
+	}
+
 	/**
 	 * To String
 	 */
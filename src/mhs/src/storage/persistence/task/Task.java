@@ -68,11 +68,32 @@ public class Task {
 		setDeleted(isDeleted);
 	}
 
+	/**
+	 * Copy Constructor
+	 * 
+	 * DateTimes are immutable and shared with taskToCopy
+	 * 
+	 * @param taskToCopy
+	 */
+	public Task(Task taskToCopy) {
+		taskId = taskToCopy.taskId;
+		taskName = taskToCopy.taskName;
+		taskCategory = taskToCopy.taskCategory;
+		taskCreated = taskToCopy.taskCreated;
+		taskUpdated = taskToCopy.taskUpdated;
+		taskLastSync = taskToCopy.taskLastSync;
+		isDone = taskToCopy.isDone;
+		isDeleted = taskToCopy.isDeleted;
+		gTaskId = taskToCopy.gTaskId;
+		gCalTaskId = taskToCopy.gCalTaskId;
+		gCalTaskUid = taskToCopy.gCalTaskUid;
+	}
+
 	/**
 	 * Returns cloned Task
 	 */
 	public Task clone() {
-		return gson.fromJson(gson.toJson(this), this.getClass());
+		return new Task(this);
 	}
 
 	/**
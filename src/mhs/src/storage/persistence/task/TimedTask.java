@@ -60,6 +60,24 @@ public class TimedTask extends Task {
 
 	}
 
+	/**
+	 * Copy Constructor
+	 * 
+	 * @param taskToCopy
+	 */
+	public TimedTask(TimedTask taskToCopy) {
+		super(taskToCopy);
+		startDateTime = taskToCopy.startDateTime;
+		endDateTime = taskToCopy.endDateTime;
+	}
+
+	/**
+	 * Returns cloned TimedTask
+	 */
+	public Task clone() {
+		return new TimedTask(this);
+	}
+
 	/**
 	 * Construct synced TimedTask from Google CalendarEventEntry
 	 * 
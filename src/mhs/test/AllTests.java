@@ -17,7 +17,9 @@ import org.junit.runners.Suite.SuiteClasses;
 @SuiteClasses({ DatabaseFactoryTest.class, DatabaseTest.class,
 		ConfigFileTest.class, TaskRecordFileTest.class,
 		GoogleCalendarMhsTest.class, GoogleTasksTest.class, MhsFrameTest.class,
-		CommandParserTest.class, TaskListsTest.class, SystemTest.class })
+		CommandParserTest.class, TaskListsTest.class, SystemTest.class,
+		TaskRecordMappedFileTest.class, TaskRecordShardedFileTest.class,
+		TaskStoreConformanceTest.class, TaskIdAllocatorTest.class })
 public class AllTests {
 
 }
@@ -5,8 +5,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -14,6 +19,7 @@ import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 
+import mhs.src.common.ConfigFile;
 import mhs.src.common.exceptions.DatabaseAlreadyInstantiatedException;
 import mhs.src.common.exceptions.DatabaseFactoryNotInstantiatedException;
 import mhs.src.common.exceptions.InvalidTaskFormatException;
@@ -21,6 +27,11 @@ import mhs.src.common.exceptions.NoActiveCredentialException;
 import mhs.src.common.exceptions.TaskNotFoundException;
 import mhs.src.storage.Database;
 import mhs.src.storage.DatabaseFactory;
+import mhs.src.storage.TaskQueryCacheStats;
+import mhs.src.storage.TaskTransferStats;
+import mhs.src.storage.TombstoneCompactionStats;
+import mhs.src.storage.persistence.TaskQuery;
+import mhs.src.storage.persistence.local.TaskRecordFile;
 import mhs.src.storage.persistence.remote.GoogleCalendarMhs;
 import mhs.src.storage.persistence.remote.GoogleTasks;
 import mhs.src.storage.persistence.remote.MhsGoogleOAuth2;
@@ -56,6 +67,7 @@ public class DatabaseTest {
 	Database database;
 	Map<Integer, Task> taskList;
 	List<Task> queryList;
+	List<String> testConfigParameters = new ArrayList<String>();
 
 	Task task;
 	Task task2;
@@ -78,6 +90,16 @@ public class DatabaseTest {
 
 	private static final String PARAMETER_TASK_NAME = "taskName";
 	private final static String TEST_TASK_RECORD_FILENAME = "testTaskRecordFile.json";
+	private final static String TEST_EXPORT_CSV_FILENAME = "testExport.csv";
+	private final static String TEST_EXPORT_ICS_FILENAME = "testExport.ics";
+	private final static String TEST_IMPORT_ICS_FILENAME = "testImport.ics";
+
+	private static final String CONFIG_PARAM_JOURNAL_MODE = "TASK_RECORD_FILE_JOURNAL_MODE";
+	private static final String CONFIG_PARAM_FLUSH_INTERVAL = "TASK_RECORD_FILE_FLUSH_INTERVAL_IN_MILLISECONDS";
+	private static final String CONFIG_PARAM_LAZY_LOAD = "TASK_RECORD_LAZY_LOAD";
+	private static final String CONFIG_VALUE_ENABLED = "true";
+	private static final String CONFIG_VALUE_DISABLED = "false";
+	private static final String TEST_FLUSH_INTERVAL_IN_MILLISECONDS = "3600000";
 
 	@Rule
 	public ExpectedException thrown = ExpectedException.none();
@@ -321,6 +343,287 @@ public class DatabaseTest {
 		assertEquals(queriedTask.getTaskId(), 1);
 	}
 
+	@Test
+	/**
+	 * Tests saves are held by the snapshotter until flush, with journal mode
+	 * disabled so task record file is only written by the snapshotter
+	 * 
+	 * @throws IOException
+	 * @throws ServiceException
+	 * @throws InvalidTaskFormatException
+	 */
+	public void testFlushTaskRecordFile() throws IOException,
+			ServiceException, InvalidTaskFormatException,
+			IllegalArgumentException, DatabaseAlreadyInstantiatedException,
+			DatabaseFactoryNotInstantiatedException {
+		setTestConfigParameter(CONFIG_PARAM_JOURNAL_MODE,
+				CONFIG_VALUE_DISABLED);
+		setTestConfigParameter(CONFIG_PARAM_FLUSH_INTERVAL,
+				TEST_FLUSH_INTERVAL_IN_MILLISECONDS);
+		initializeDatabase();
+		getCleanDatabaseWithoutSync();
+
+		database.add(task);
+		database.add(task2);
+		database.add(task3);
+		assertEquals(0, readTaskRecordFileSnapshot().size());
+
+		database.flushTaskRecordFile();
+		Map<Integer, Task> savedTaskList = readTaskRecordFileSnapshot();
+		assertEquals(3, savedTaskList.size());
+		assertEquals(database.query(false).size(), savedTaskList.size());
+	}
+
+	/**
+	 * Reads tasks in task record file without replaying its journal
+	 * 
+	 * @return task list with taskId as key
+	 * @throws IOException
+	 */
+	private Map<Integer, Task> readTaskRecordFileSnapshot() throws IOException {
+		return new TaskRecordFile(TEST_TASK_RECORD_FILENAME, false)
+				.getTaskList();
+	}
+
+	@Test
+	/**
+	 * Tests batched mutations are only saved on commit
+	 * @throws IOException
+	 */
+	public void testBatchMutations() throws IOException, ServiceException,
+			InvalidTaskFormatException, TaskNotFoundException,
+			IllegalArgumentException, DatabaseAlreadyInstantiatedException,
+			DatabaseFactoryNotInstantiatedException {
+		getCleanDatabaseWithoutSync();
+
+		database.beginBatch();
+		database.add(task);
+		database.add(task2);
+		database.beginBatch();
+		database.add(task3);
+		database.commit();
+		database.delete(1);
+		assertEquals(2, database.query(false).size());
+		assertEquals(0, new TaskRecordFile(TEST_TASK_RECORD_FILENAME, true)
+				.getTaskList().size());
+
+		database.commit();
+		Map<Integer, Task> savedTaskList = new TaskRecordFile(
+				TEST_TASK_RECORD_FILENAME, true).getTaskList();
+		assertEquals(3, savedTaskList.size());
+		assertTrue(savedTaskList.get(1).isDeleted());
+
+		thrown.expect(IllegalStateException.class);
+		database.commit();
+	}
+
+	@Test
+	/**
+	 * Tests task counts match queried tasks
+	 */
+	public void testCountQuery() throws IOException, ServiceException,
+			InvalidTaskFormatException, TaskNotFoundException,
+			IllegalArgumentException, DatabaseAlreadyInstantiatedException,
+			DatabaseFactoryNotInstantiatedException {
+		getCleanDatabaseWithoutSync();
+
+		database.add(task);
+		database.add(task2);
+		database.add(task3);
+		database.delete(task2.getTaskId());
+		assertEquals(database.query(false).size(),
+				database.count(new TaskQuery()));
+		TaskQuery taskQuery = new TaskQuery().withTaskCategories(task
+				.getTaskCategory());
+		assertEquals(database.query(taskQuery).size(),
+				database.count(taskQuery));
+		assertEquals(database.query(taskQuery).size(), database
+				.getTaskCountSummary(new TaskQuery()).getTaskCount(
+						task.getTaskCategory()));
+	}
+
+	@Test
+	/**
+	 * Tests fuzzy query finds mistyped task names that exact name query misses
+	 */
+	public void testFuzzyQuery() throws IOException, ServiceException,
+			InvalidTaskFormatException, TaskNotFoundException,
+			IllegalArgumentException, DatabaseAlreadyInstantiatedException,
+			DatabaseFactoryNotInstantiatedException {
+		getCleanDatabaseWithoutSync();
+
+		database.add(task);
+		database.add(task2);
+		database.add(task3);
+		assertEquals(0, database.query("meting", false).size());
+		List<Task> queriedTasks = database.queryFuzzy("meting", 10);
+		assertEquals(2, queriedTasks.size());
+		assertEquals(task.getTaskId(), queriedTasks.get(0).getTaskId());
+		assertEquals(task2.getTaskId(), queriedTasks.get(1).getTaskId());
+
+		database.delete(task.getTaskId());
+		queriedTasks = database.queryFuzzy("meting", 10);
+		assertEquals(1, queriedTasks.size());
+		assertEquals(task2.getTaskId(), queriedTasks.get(0).getTaskId());
+	}
+
+	@Test
+	/**
+	 * Tests repeated queries are answered from query cache until tasks change
+	 */
+	public void testQueryCache() throws IOException, ServiceException,
+			InvalidTaskFormatException, TaskNotFoundException,
+			IllegalArgumentException, DatabaseAlreadyInstantiatedException,
+			DatabaseFactoryNotInstantiatedException {
+		getCleanDatabaseWithoutSync();
+
+		database.add(task);
+		database.add(task2);
+		TaskQueryCacheStats initialStats = database.getTaskQueryCacheStats();
+		assertEquals(2, database.query(true).size());
+		assertEquals(2, database.query(true).size());
+		// name query is case-insensitive, so differently cased names share
+		// cached results
+		assertEquals(2, database.query("MEETING", false).size());
+		assertEquals(2, database.query("meeting", false).size());
+
+		TaskQueryCacheStats cacheStats = database.getTaskQueryCacheStats();
+		assertEquals(initialStats.getHits() + 2, cacheStats.getHits());
+		assertEquals(initialStats.getMisses() + 2, cacheStats.getMisses());
+		assertTrue(cacheStats.getHitRate() > 0);
+
+		database.add(task3);
+		database.delete(task.getTaskId());
+		assertEquals(2, database.query(true).size());
+		assertEquals(1, database.query("meeting", false).size());
+		cacheStats = database.getTaskQueryCacheStats();
+		assertEquals(initialStats.getHits() + 2, cacheStats.getHits());
+		assertEquals(initialStats.getInvalidations() + 1,
+				cacheStats.getInvalidations());
+
+		// equal task queries share cached results
+		assertEquals(1,
+				database.query(new TaskQuery().withTaskName("MEETING"))
+						.size());
+		assertEquals(1,
+				database.query(new TaskQuery().withTaskName("meeting"))
+						.size());
+		assertEquals(initialStats.getHits() + 3, database
+				.getTaskQueryCacheStats().getHits());
+	}
+
+	@Test
+	/**
+	 * Tests queries paging in no new tasks keep cached queries valid when
+	 * lazy loading is enabled
+	 */
+	public void testQueryCacheWithLazyLoad() throws IOException,
+			ServiceException, InvalidTaskFormatException,
+			IllegalArgumentException, DatabaseAlreadyInstantiatedException,
+			DatabaseFactoryNotInstantiatedException {
+		setTestConfigParameter(CONFIG_PARAM_LAZY_LOAD, CONFIG_VALUE_ENABLED);
+		initializeDatabase();
+		getCleanDatabaseWithoutSync();
+
+		database.add(task);
+		database.add(task2);
+		assertEquals(2, database.query(true).size());
+		TaskQueryCacheStats initialStats = database.getTaskQueryCacheStats();
+		assertEquals(2, database.query(true).size());
+		assertEquals(2, database.query(true).size());
+		assertEquals(2, database.query("meeting", false).size());
+		assertEquals(2, database.query("meeting", false).size());
+
+		TaskQueryCacheStats cacheStats = database.getTaskQueryCacheStats();
+		assertEquals(initialStats.getHits() + 3, cacheStats.getHits());
+		assertEquals(initialStats.getInvalidations(),
+				cacheStats.getInvalidations());
+	}
+
+	@Test
+	/**
+	 * Tests tasks exported to csv and ics files are imported back
+	 * @throws IOException
+	 */
+	public void testExportAndImportTasks() throws IOException,
+			ServiceException, InvalidTaskFormatException,
+			TaskNotFoundException, IllegalArgumentException,
+			DatabaseAlreadyInstantiatedException,
+			DatabaseFactoryNotInstantiatedException {
+		getCleanDatabaseWithoutSync();
+
+		task.setTaskName("task 1, a \"quoted\" meeting");
+		database.add(task);
+		database.add(task3);
+		database.add(task5);
+		database.delete(database.add(task4).getTaskId());
+
+		for (String exportFileName : new String[] { TEST_EXPORT_CSV_FILENAME,
+				TEST_EXPORT_ICS_FILENAME }) {
+			TaskTransferStats exportStats = database
+					.exportTasks(exportFileName);
+			assertEquals(3, exportStats.getRecordsTransferred());
+
+			database.clearLocalDatabase();
+			TaskTransferStats importStats = database
+					.importTasks(exportFileName);
+			new File(exportFileName).delete();
+			assertEquals(3, importStats.getRecordsTransferred());
+			assertEquals(0, importStats.getRecordsRejected());
+
+			List<Task> importedTasks = database.query(task.getTaskName(),
+					false);
+			assertEquals(1, importedTasks.size());
+			assertTrue(importedTasks.get(0).isTimed());
+			assertEquals(task.getStartDateTime().getMillis() / 1000,
+					importedTasks.get(0).getStartDateTime().getMillis() / 1000);
+			assertTrue(database.query(TEST_TASK_5_NAME, false).get(0)
+					.isFloating());
+			assertEquals(3, database.query(false).size());
+		}
+	}
+
+	@Test
+	/**
+	 * Tests ics import of folded lines, nested components, time zones and
+	 * invalid events
+	 * @throws IOException
+	 */
+	public void testImportIcsTasks() throws IOException, ServiceException,
+			IllegalArgumentException, DatabaseAlreadyInstantiatedException,
+			DatabaseFactoryNotInstantiatedException {
+		getCleanDatabaseWithoutSync();
+
+		Writer icsWriter = new OutputStreamWriter(new FileOutputStream(
+				TEST_IMPORT_ICS_FILENAME), "UTF-8");
+		icsWriter.write("BEGIN:VCALENDAR\r\nVERSION:2.0\r\n"
+				+ "BEGIN:VEVENT\r\nSUMMARY:folded\r\n  meeting\\, room 1\r\n"
+				+ "DTSTART;TZID=Asia/Singapore:20121115T100000\r\n"
+				+ "DTEND;TZID=Asia/Singapore:20121115T110000\r\n"
+				+ "BEGIN:VALARM\r\nSUMMARY:alarm\r\nEND:VALARM\r\n"
+				+ "END:VEVENT\r\n"
+				+ "BEGIN:VTODO\r\nSUMMARY:report\r\nDUE:20121116T020000Z\r\n"
+				+ "STATUS:COMPLETED\r\nEND:VTODO\r\n"
+				+ "BEGIN:VEVENT\r\nSUMMARY:no start\r\nEND:VEVENT\r\n"
+				+ "END:VCALENDAR\r\n");
+		icsWriter.close();
+
+		TaskTransferStats importStats = database
+				.importTasks(TEST_IMPORT_ICS_FILENAME);
+		new File(TEST_IMPORT_ICS_FILENAME).delete();
+		assertEquals(2, importStats.getRecordsTransferred());
+		assertEquals(1, importStats.getRecordsRejected());
+
+		Task importedEvent = database.query("folded meeting, room 1", false)
+				.get(0);
+		assertEquals(new DateTime(2012, 11, 15, 2, 0, 0, 0,
+				org.joda.time.DateTimeZone.UTC).getMillis(), importedEvent
+				.getStartDateTime().getMillis());
+		Task importedTodo = database.query("report", false).get(0);
+		assertTrue(importedTodo.isDeadline());
+		assertTrue(importedTodo.isDone());
+	}
+
 	@Test
 	/**
 	 * Test IllegalArgumentException for query
@@ -580,6 +883,63 @@ public class DatabaseTest {
 		}
 	}
 
+	@Test
+	/**
+	 * Test compaction purges unsynced deleted tasks only
+	 */
+	public void testCompactTombstones() throws IOException, ServiceException,
+			InvalidTaskFormatException, TaskNotFoundException,
+			IllegalArgumentException, DatabaseAlreadyInstantiatedException,
+			DatabaseFactoryNotInstantiatedException {
+
+		getCleanDatabaseWithoutSync();
+
+		database.add(task);
+		database.add(task2);
+		database.add(task3);
+		database.delete(1);
+
+		TombstoneCompactionStats compactionStats = database
+				.compactTombstones();
+		assertEquals(1, compactionStats.getRecordsReclaimed());
+		assertTrue(compactionStats.getBytesReclaimed() > 0);
+		assertEquals(2, database.query(false).size());
+
+		thrown.expect(TaskNotFoundException.class);
+		database.query(1);
+	}
+
+	@Test
+	/**
+	 * Test compaction saves its removals without committing a batch in
+	 * progress
+	 */
+	public void testCompactTombstonesDuringBatch() throws IOException,
+			ServiceException, InvalidTaskFormatException,
+			TaskNotFoundException, IllegalArgumentException,
+			DatabaseAlreadyInstantiatedException,
+			DatabaseFactoryNotInstantiatedException {
+
+		getCleanDatabaseWithoutSync();
+
+		database.add(task);
+		database.add(task2);
+		database.delete(1);
+		database.beginBatch();
+		database.add(task3);
+
+		assertEquals(1, database.compactTombstones().getRecordsReclaimed());
+		Map<Integer, Task> savedTaskList = TaskRecordFile
+				.readTaskList(TEST_TASK_RECORD_FILENAME);
+		assertEquals(1, savedTaskList.size());
+		assertFalse(savedTaskList.containsKey(1));
+
+		database.commit();
+		savedTaskList = TaskRecordFile.readTaskList(TEST_TASK_RECORD_FILENAME);
+		assertEquals(2, savedTaskList.size());
+		assertFalse(savedTaskList.containsKey(1));
+	}
+
 	@Test
 	/**
 	 * Tests Sync methods 
@@ -879,6 +1239,20 @@ public class DatabaseTest {
 		database = DatabaseFactory.getDatabaseInstance();
 	}
 
+	/**
+	 * Sets config parameter read by the next initialized database, removed
+	 * after the test
+	 * 
+	 * @param parameter
+	 * @param value
+	 * @throws IOException
+	 */
+	private void setTestConfigParameter(String parameter, String value)
+			throws IOException {
+		new ConfigFile().setConfigParameter(parameter, value);
+		testConfigParameters.add(parameter);
+	}
+
 	/**
 	 * Initialize empty database with sync enabled
 	 * 
@@ -921,5 +1295,25 @@ public class DatabaseTest {
 			database.clearDatabase();
 		}
 		DatabaseFactory.destroy();
+		if (!testConfigParameters.isEmpty()) {
+			ConfigFile configFile = new ConfigFile();
+			for (String parameter : testConfigParameters) {
+				configFile.removeConfigParameter(parameter);
+			}
+		}
+		deleteTestShardDirectory();
+	}
+
+	/**
+	 * Deletes shards written by tests with lazy loading enabled
+	 */
+	private void deleteTestShardDirectory() {
+		File shardDirectory = new File(TEST_TASK_RECORD_FILENAME + ".shards");
+		if (shardDirectory.exists()) {
+			for (File shardFile : shardDirectory.listFiles()) {
+				shardFile.delete();
+			}
+			shardDirectory.delete();
+		}
 	}
 }
@@ -0,0 +1,491 @@
+//@author A0087048X
+package mhs.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import mhs.src.common.MhsGson;
+import mhs.src.storage.persistence.TaskLists;
+import mhs.src.storage.persistence.local.TaskRecordFile;
+import mhs.src.storage.persistence.local.TaskRecordFileFormat;
+import mhs.src.storage.persistence.local.TaskRecordShardedFile;
+import mhs.src.storage.persistence.local.TaskStore;
+import mhs.src.storage.persistence.local.TaskStoreType;
+import mhs.src.storage.persistence.task.DeadlineTask;
+import mhs.src.storage.persistence.task.FloatingTask;
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+import mhs.src.storage.persistence.task.TimedTask;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
+import com.google.gson.Gson;
+
+/**
+ * StorageBenchmark
+ * 
+ * Benchmarks for local task storage, run manually and not part of AllTests
+ * 
+ * Usage: StorageBenchmark
+ * load|encoding|shard|coldstart|stores|daterange|display [taskCount...]
+ * 
+ * - load: time and peak heap to load task record file with synthetic tasks<br>
+ * - encoding: file size and save/load time of each task record file format<br>
+ * - shard: time to persist single task edits with full file rewrites and with
+ * monthly shards<br>
+ * - coldstart: startup load time with all tasks loaded and with tasks outside
+ * the sync window left on disk<br>
+ * - stores: single task save, reload and remove throughput of each task store
+ * type<br>
+ * - daterange: home view (two day) date range queries on the TaskLists date
+ * index and with a scan of all tasks<br>
+ * - display: ordered query of all tasks with copy constructor clones and with
+ * the Gson round-trip clones they replaced
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ */
+public class StorageBenchmark {
+
+	private static final String BENCHMARK_TASK_RECORD_FILENAME = "benchmarkTaskRecordFile.json";
+	private static final String BENCHMARK_LOAD = "load";
+	private static final String BENCHMARK_ENCODING = "encoding";
+	private static final String BENCHMARK_SHARD = "shard";
+	private static final String BENCHMARK_COLD_START = "coldstart";
+	private static final String BENCHMARK_STORES = "stores";
+	private static final String BENCHMARK_DATE_RANGE = "daterange";
+	private static final int BENCHMARK_QUERY_COUNT = 200;
+	private static final int HOME_VIEW_DAYS = 2;
+	private static final String BENCHMARK_DISPLAY = "display";
+	private static final int BENCHMARK_DISPLAY_COUNT = 20;
+	private static final int LOAD_WINDOW_MONTHS_BEFORE_NOW = 1;
+	private static final int LOAD_WINDOW_MONTHS_FROM_NOW = 12;
+	private static final int BENCHMARK_EDIT_COUNT = 50;
+	private static final int[] DEFAULT_TASK_COUNTS = { 100000, 1000000 };
+	private static final int BYTES_IN_MEGABYTE = 1024 * 1024;
+
+	public static void main(String[] args) throws IOException {
+		String benchmark = BENCHMARK_LOAD;
+		int[] taskCounts = DEFAULT_TASK_COUNTS;
+		if (args.length > 0) {
+			benchmark = args[0];
+		}
+		if (args.length > 1) {
+			taskCounts = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				taskCounts[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		for (int taskCount : taskCounts) {
+			switch (benchmark) {
+			case BENCHMARK_LOAD:
+				benchmarkLoad(taskCount);
+				break;
+			case BENCHMARK_ENCODING:
+				benchmarkEncoding(taskCount);
+				break;
+			case BENCHMARK_SHARD:
+				benchmarkShard(taskCount);
+				break;
+			case BENCHMARK_COLD_START:
+				benchmarkColdStart(taskCount);
+				break;
+			case BENCHMARK_STORES:
+				benchmarkStores(taskCount);
+				break;
+			case BENCHMARK_DATE_RANGE:
+				benchmarkDateRange(taskCount);
+				break;
+			case BENCHMARK_DISPLAY:
+				benchmarkDisplay(taskCount);
+				break;
+			default:
+				System.out.println("Unknown benchmark : " + benchmark);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Benchmarks loading task record file with synthetic tasks
+	 * 
+	 * @param taskCount
+	 * @throws IOException
+	 */
+	private static void benchmarkLoad(int taskCount) throws IOException {
+		deleteBenchmarkFiles();
+		new TaskRecordFile(BENCHMARK_TASK_RECORD_FILENAME)
+				.saveTaskList(createSyntheticTaskList(taskCount));
+		long fileSize = new File(BENCHMARK_TASK_RECORD_FILENAME).length();
+
+		resetPeakHeapUsage();
+		long startTime = System.nanoTime();
+		TaskRecordFile taskRecordFile = new TaskRecordFile(
+				BENCHMARK_TASK_RECORD_FILENAME);
+		long loadTime = System.nanoTime() - startTime;
+		int tasksLoaded = taskRecordFile.getTaskList().size();
+
+		System.out.println(String.format(
+				"load tasks=%d file=%dMB time=%dms peakHeap=%dMB", tasksLoaded,
+				fileSize / BYTES_IN_MEGABYTE, loadTime / 1000000,
+				getPeakHeapUsage() / BYTES_IN_MEGABYTE));
+		deleteBenchmarkFiles();
+	}
+
+	/**
+	 * Benchmarks save and load of synthetic tasks in each task record file
+	 * format
+	 * 
+	 * @param taskCount
+	 * @throws IOException
+	 */
+	private static void benchmarkEncoding(int taskCount) throws IOException {
+		Map<Integer, Task> taskList = createSyntheticTaskList(taskCount);
+		for (TaskRecordFileFormat format : TaskRecordFileFormat.values()) {
+			deleteBenchmarkFiles();
+			TaskRecordFile taskRecordFile = new TaskRecordFile(
+					BENCHMARK_TASK_RECORD_FILENAME, false, format);
+			long startTime = System.nanoTime();
+			taskRecordFile.saveTaskList(taskList);
+			long saveTime = System.nanoTime() - startTime;
+			long fileSize = new File(BENCHMARK_TASK_RECORD_FILENAME).length();
+
+			resetPeakHeapUsage();
+			startTime = System.nanoTime();
+			taskRecordFile = new TaskRecordFile(BENCHMARK_TASK_RECORD_FILENAME,
+					false, format);
+			long loadTime = System.nanoTime() - startTime;
+
+			System.out.println(String.format(
+					"encoding=%s tasks=%d file=%dKB save=%dms load=%dms peakHeap=%dMB",
+					format, taskRecordFile.getTaskList().size(),
+					fileSize / 1024, saveTime / 1000000, loadTime / 1000000,
+					getPeakHeapUsage() / BYTES_IN_MEGABYTE));
+		}
+		deleteBenchmarkFiles();
+	}
+
+	/**
+	 * Benchmarks single task edits persisted by rewriting the whole task
+	 * record file and by rewriting the task's shard
+	 * 
+	 * @param taskCount
+	 * @throws IOException
+	 */
+	private static void benchmarkShard(int taskCount) throws IOException {
+		Map<Integer, Task> taskList = createSyntheticTaskList(taskCount);
+		deleteBenchmarkFiles();
+		TaskRecordFile taskRecordFile = new TaskRecordFile(
+				BENCHMARK_TASK_RECORD_FILENAME);
+		taskRecordFile.saveTaskList(taskList);
+		long startTime = System.nanoTime();
+		for (int i = 1; i <= BENCHMARK_EDIT_COUNT; i++) {
+			editSyntheticTask(taskList.get(i));
+			taskRecordFile.saveTaskList(taskList);
+		}
+		long fullRewriteTime = (System.nanoTime() - startTime)
+				/ BENCHMARK_EDIT_COUNT;
+
+		TaskRecordShardedFile shardedFile = new TaskRecordShardedFile(
+				BENCHMARK_TASK_RECORD_FILENAME);
+		startTime = System.nanoTime();
+		for (int i = 1; i <= BENCHMARK_EDIT_COUNT; i++) {
+			editSyntheticTask(taskList.get(i));
+			shardedFile.saveTask(taskList.get(i));
+		}
+		long shardRewriteTime = (System.nanoTime() - startTime)
+				/ BENCHMARK_EDIT_COUNT;
+
+		System.out.println(String.format(
+				"shard tasks=%d shards=%d fullRewrite=%dms/edit shardRewrite=%dms/edit",
+				taskCount, shardedFile.getShardCount(),
+				fullRewriteTime / 1000000, shardRewriteTime / 1000000));
+		deleteBenchmarkFiles();
+	}
+
+	/**
+	 * Benchmarks startup load of all tasks against loading only tasks in the
+	 * default sync window
+	 * 
+	 * @param taskCount
+	 * @throws IOException
+	 */
+	private static void benchmarkColdStart(int taskCount) throws IOException {
+		deleteBenchmarkFiles();
+		new TaskRecordShardedFile(BENCHMARK_TASK_RECORD_FILENAME)
+				.saveTaskList(createSyntheticTaskList(taskCount));
+
+		resetPeakHeapUsage();
+		long startTime = System.nanoTime();
+		DateTime now = DateTime.now();
+		int tasksLoaded = new TaskRecordShardedFile(
+				BENCHMARK_TASK_RECORD_FILENAME,
+				now.minusMonths(LOAD_WINDOW_MONTHS_BEFORE_NOW),
+				now.plusMonths(LOAD_WINDOW_MONTHS_FROM_NOW))
+				.getLoadedTaskList().size();
+		System.out.println(String.format(
+				"coldstart mode=lazy tasks=%d time=%dms peakHeap=%dMB",
+				tasksLoaded, (System.nanoTime() - startTime) / 1000000,
+				getPeakHeapUsage() / BYTES_IN_MEGABYTE));
+
+		resetPeakHeapUsage();
+		startTime = System.nanoTime();
+		tasksLoaded = new TaskRecordShardedFile(
+				BENCHMARK_TASK_RECORD_FILENAME).getLoadedTaskList().size();
+		System.out.println(String.format(
+				"coldstart mode=eager tasks=%d time=%dms peakHeap=%dMB",
+				tasksLoaded, (System.nanoTime() - startTime) / 1000000,
+				getPeakHeapUsage() / BYTES_IN_MEGABYTE));
+		deleteBenchmarkFiles();
+	}
+
+	/**
+	 * Benchmarks each task store type with the same single task saves, reload
+	 * and single task removes
+	 * 
+	 * @param taskCount
+	 * @throws IOException
+	 */
+	private static void benchmarkStores(int taskCount) throws IOException {
+		Map<Integer, Task> taskList = createSyntheticTaskList(taskCount);
+		for (TaskStoreType taskStoreType : TaskStoreType.values()) {
+			deleteBenchmarkFiles();
+			TaskStore taskStore = taskStoreType
+					.createTaskStore(BENCHMARK_TASK_RECORD_FILENAME);
+			long startTime = System.nanoTime();
+			for (Task task : taskList.values()) {
+				taskStore.saveTask(task);
+			}
+			taskStore.flush();
+			long saveTime = System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			if (taskStoreType.isPersistent()) {
+				taskStore.close();
+				taskStore = taskStoreType
+						.createTaskStore(BENCHMARK_TASK_RECORD_FILENAME);
+			}
+			int tasksLoaded = taskStore.getTaskList().size();
+			long loadTime = System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			for (int taskId : taskList.keySet()) {
+				taskStore.removeTask(taskId);
+			}
+			taskStore.flush();
+			long removeTime = System.nanoTime() - startTime;
+			taskStore.close();
+
+			System.out.println(String.format(
+					"store=%s tasks=%d save=%d/s load=%dms remove=%d/s",
+					taskStoreType, tasksLoaded,
+					getOperationsPerSecond(taskCount, saveTime),
+					loadTime / 1000000,
+					getOperationsPerSecond(taskCount, removeTime)));
+		}
+		deleteBenchmarkFiles();
+	}
+
+	/**
+	 * Benchmarks home view (two day) date range queries with the TaskLists
+	 * date index against a scan of all tasks
+	 * 
+	 * @param taskCount
+	 */
+	private static void benchmarkDateRange(int taskCount) {
+		TaskLists taskLists = new TaskLists(createSyntheticTaskList(taskCount));
+		DateTime baseDateTime = DateTime.now().minusYears(2);
+		int tasksMatched = 0;
+
+		long startTime = System.nanoTime();
+		for (int i = 0; i < BENCHMARK_QUERY_COUNT; i++) {
+			DateTime startDateTime = baseDateTime.plusDays(i * 3);
+			tasksMatched += taskLists.getTasks(startDateTime,
+					startDateTime.plusDays(HOME_VIEW_DAYS), false, false).size();
+		}
+		long indexTime = System.nanoTime() - startTime;
+
+		startTime = System.nanoTime();
+		for (int i = 0; i < BENCHMARK_QUERY_COUNT; i++) {
+			DateTime startDateTime = baseDateTime.plusDays(i * 3);
+			scanTasksWithinDateRange(taskLists.getTaskList(), startDateTime,
+					startDateTime.plusDays(HOME_VIEW_DAYS));
+		}
+		long scanTime = System.nanoTime() - startTime;
+
+		System.out.println(String.format(
+				"daterange tasks=%d matched=%d index=%d/s scan=%d/s",
+				taskCount, tasksMatched / BENCHMARK_QUERY_COUNT,
+				getOperationsPerSecond(BENCHMARK_QUERY_COUNT, indexTime),
+				getOperationsPerSecond(BENCHMARK_QUERY_COUNT, scanTime)));
+	}
+
+	/**
+	 * Benchmarks display of all tasks, cloning each task with copy
+	 * constructors and with Gson round-trips
+	 * 
+	 * @param taskCount
+	 */
+	private static void benchmarkDisplay(int taskCount) {
+		TaskLists taskLists = new TaskLists(createSyntheticTaskList(taskCount));
+		Gson gson = MhsGson.getInstance();
+		int tasksDisplayed = 0;
+
+		long startTime = System.nanoTime();
+		for (int i = 0; i < BENCHMARK_DISPLAY_COUNT; i++) {
+			tasksDisplayed = taskLists.getTasks(true).size();
+		}
+		long copyTime = System.nanoTime() - startTime;
+
+		startTime = System.nanoTime();
+		for (int i = 0; i < BENCHMARK_DISPLAY_COUNT; i++) {
+			List<Task> displayedTasks = new LinkedList<Task>();
+			for (Task task : taskLists.getTaskList().values()) {
+				displayedTasks.add(gson.fromJson(gson.toJson(task),
+						task.getClass()));
+			}
+		}
+		long gsonTime = System.nanoTime() - startTime;
+
+		System.out.println(String.format(
+				"display tasks=%d copy=%dms gson=%dms", tasksDisplayed,
+				copyTime / 1000000 / BENCHMARK_DISPLAY_COUNT, gsonTime
+						/ 1000000 / BENCHMARK_DISPLAY_COUNT));
+	}
+
+	/**
+	 * Date range query by scan of all tasks, as done before the date index
+	 * 
+	 * @param taskList
+	 * @param startDateTime
+	 * @param endDateTime
+	 * @return tasks within date range
+	 */
+	private static List<Task> scanTasksWithinDateRange(
+			Map<Integer, Task> taskList, DateTime startDateTime,
+			DateTime endDateTime) {
+		List<Task> queriedTasks = new LinkedList<Task>();
+		Interval queryInterval = new Interval(startDateTime.minusMillis(1),
+				endDateTime.plusMillis(1));
+		for (Task task : taskList.values()) {
+			if (task.isDeleted() || task.isFloating()) {
+				continue;
+			}
+			DateTime taskStartDateTime = task.isTimed() ? task
+					.getStartDateTime() : task.getEndDateTime();
+			if (queryInterval.overlaps(new Interval(taskStartDateTime
+					.minusMillis(1), task.getEndDateTime().plusMillis(1)))) {
+				queriedTasks.add(task.clone());
+			}
+		}
+		return queriedTasks;
+	}
+
+	private static long getOperationsPerSecond(int operationCount,
+			long elapsedNanoTime) {
+		return operationCount * 1000000000L / Math.max(elapsedNanoTime, 1);
+	}
+
+	private static void editSyntheticTask(Task task) {
+		task.setTaskName(task.getTaskName() + " edited");
+		task.setTaskUpdated(DateTime.now());
+	}
+
+	/**
+	 * Creates task list with equal mix of timed, deadline and floating tasks
+	 * 
+	 * @param taskCount
+	 * @return task list
+	 */
+	static Map<Integer, Task> createSyntheticTaskList(int taskCount) {
+		Map<Integer, Task> taskList = new LinkedHashMap<Integer, Task>();
+		DateTime baseDateTime = DateTime.now().minusYears(2);
+		for (int taskId = 1; taskId <= taskCount; taskId++) {
+			taskList.put(taskId, createSyntheticTask(taskId, baseDateTime));
+		}
+		return taskList;
+	}
+
+	/**
+	 * Creates synthetic task spread over time
+	 * 
+	 * @param taskId
+	 * @param baseDateTime
+	 * @return task
+	 */
+	static Task createSyntheticTask(int taskId, DateTime baseDateTime) {
+		DateTime startDateTime = baseDateTime.plusHours(taskId % 26280);
+		String taskName = "benchmark task " + taskId + " meeting";
+		switch (taskId % 3) {
+		case 0:
+			return new TimedTask(taskId, taskName, TaskCategory.TIMED,
+					startDateTime, startDateTime.plusHours(1), startDateTime,
+					startDateTime, null, null, null, false, taskId % 10 == 0);
+		case 1:
+			return new DeadlineTask(taskId, taskName, TaskCategory.DEADLINE,
+					startDateTime, startDateTime, startDateTime, null, null,
+					null, taskId % 7 == 0, false);
+		default:
+			return new FloatingTask(taskId, taskName, TaskCategory.FLOATING,
+					startDateTime, startDateTime, null, null, false, false);
+		}
+	}
+
+	/**
+	 * Runs garbage collection and resets peak usage of heap memory pools
+	 */
+	static void resetPeakHeapUsage() {
+		System.gc();
+		for (MemoryPoolMXBean memoryPool : ManagementFactory
+				.getMemoryPoolMXBeans()) {
+			if (memoryPool.getType() == MemoryType.HEAP) {
+				memoryPool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Gets sum of peak usage of heap memory pools since last reset
+	 * 
+	 * @return peak heap usage in bytes
+	 */
+	static long getPeakHeapUsage() {
+		long peakHeapUsage = 0;
+		for (MemoryPoolMXBean memoryPool : ManagementFactory
+				.getMemoryPoolMXBeans()) {
+			if (memoryPool.getType() == MemoryType.HEAP) {
+				peakHeapUsage += memoryPool.getPeakUsage().getUsed();
+			}
+		}
+		return peakHeapUsage;
+	}
+
+	/**
+	 * Deletes files created by benchmark
+	 */
+	static void deleteBenchmarkFiles() {
+		new File(BENCHMARK_TASK_RECORD_FILENAME).delete();
+		new File(BENCHMARK_TASK_RECORD_FILENAME + ".journal").delete();
+		new File(BENCHMARK_TASK_RECORD_FILENAME + ".log").delete();
+		new File(BENCHMARK_TASK_RECORD_FILENAME + ".records").delete();
+		new File(BENCHMARK_TASK_RECORD_FILENAME + ".heap.0").delete();
+		new File(BENCHMARK_TASK_RECORD_FILENAME + ".heap.1").delete();
+		File shardDirectory = new File(BENCHMARK_TASK_RECORD_FILENAME
+				+ ".shards");
+		if (shardDirectory.exists()) {
+			for (File shardFile : shardDirectory.listFiles()) {
+				shardFile.delete();
+			}
+			shardDirectory.delete();
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+//@author A0087048X
+package mhs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import mhs.src.storage.persistence.local.TaskIdAllocator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * TaskIdAllocatorTest
+ * 
+ * jUnit test for TaskIdAllocator
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ * 
+ */
+public class TaskIdAllocatorTest {
+
+	private final static String TEST_TASK_RECORD_FILENAME = "testTaskIdAllocatorRecordFile.json";
+	private final static String TEST_TASK_ID_FILENAME = TEST_TASK_RECORD_FILENAME
+			+ ".taskid";
+
+	@Before
+	public void taskIdAllocatorSetup() {
+		new File(TEST_TASK_ID_FILENAME).delete();
+	}
+
+	@After
+	public void taskIdAllocatorTearDown() {
+		new File(TEST_TASK_ID_FILENAME).delete();
+	}
+
+	@Test
+	/**
+	 * Test taskIds are allocated after largest taskId in store
+	 */
+	public void testAllocateTaskId() {
+		TaskIdAllocator taskIdAllocator = new TaskIdAllocator(
+				TEST_TASK_RECORD_FILENAME, 0);
+		assertEquals(1, taskIdAllocator.allocateTaskId());
+		assertEquals(2, taskIdAllocator.allocateTaskId());
+
+		new File(TEST_TASK_ID_FILENAME).delete();
+		taskIdAllocator = new TaskIdAllocator(TEST_TASK_RECORD_FILENAME, 41);
+		assertEquals(42, taskIdAllocator.allocateTaskId());
+		assertEquals(42, taskIdAllocator.getLastTaskId());
+	}
+
+	@Test
+	/**
+	 * Test taskIds are not reused after restart, even if tasks with the
+	 * largest taskIds were removed from store
+	 */
+	public void testAllocateTaskIdAfterRestart() {
+		TaskIdAllocator taskIdAllocator = new TaskIdAllocator(
+				TEST_TASK_RECORD_FILENAME, 0);
+		int lastTaskId = 0;
+		for (int i = 0; i < 300; i++) {
+			lastTaskId = taskIdAllocator.allocateTaskId();
+		}
+		assertTrue(new File(TEST_TASK_ID_FILENAME).exists());
+
+		TaskIdAllocator restartedTaskIdAllocator = new TaskIdAllocator(
+				TEST_TASK_RECORD_FILENAME, 10);
+		assertTrue(restartedTaskIdAllocator.allocateTaskId() > lastTaskId);
+	}
+
+	@Test
+	/**
+	 * Test reserved taskId ranges do not overlap allocated taskIds
+	 */
+	public void testReserveTaskIds() {
+		TaskIdAllocator taskIdAllocator = new TaskIdAllocator(
+				TEST_TASK_RECORD_FILENAME, 5);
+		assertEquals(6, taskIdAllocator.allocateTaskId());
+		assertEquals(7, taskIdAllocator.reserveTaskIds(1000));
+		assertEquals(1007, taskIdAllocator.allocateTaskId());
+
+		TaskIdAllocator restartedTaskIdAllocator = new TaskIdAllocator(
+				TEST_TASK_RECORD_FILENAME, 0);
+		assertTrue(restartedTaskIdAllocator.allocateTaskId() > 1007);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	/**
+	 * Test reserving empty taskId range
+	 */
+	public void testReserveNoTaskIds() {
+		new TaskIdAllocator(TEST_TASK_RECORD_FILENAME, 0).reserveTaskIds(0);
+	}
+
+	@Test
+	/**
+	 * Test allocation restarts from taskId 1 after reset
+	 */
+	public void testReset() {
+		TaskIdAllocator taskIdAllocator = new TaskIdAllocator(
+				TEST_TASK_RECORD_FILENAME, 500);
+		taskIdAllocator.allocateTaskId();
+		taskIdAllocator.reset();
+		assertEquals(1, taskIdAllocator.allocateTaskId());
+		assertTrue(new TaskIdAllocator(TEST_TASK_RECORD_FILENAME, 0)
+				.allocateTaskId() < 500);
+	}
+
+	@Test
+	/**
+	 * Test concurrent allocations return unique taskIds
+	 */
+	public void testConcurrentAllocateTaskId() throws InterruptedException {
+		final TaskIdAllocator taskIdAllocator = new TaskIdAllocator(
+				TEST_TASK_RECORD_FILENAME, 0);
+		final Set<Integer> allocatedTaskIds = Collections
+				.synchronizedSet(new HashSet<Integer>());
+		final int allocationsPerThread = 1000;
+		Thread[] allocatorThreads = new Thread[4];
+		for (int i = 0; i < allocatorThreads.length; i++) {
+			allocatorThreads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < allocationsPerThread; j++) {
+						allocatedTaskIds.add(taskIdAllocator.allocateTaskId());
+					}
+				}
+			});
+			allocatorThreads[i].start();
+		}
+		for (Thread allocatorThread : allocatorThreads) {
+			allocatorThread.join();
+		}
+		int allocationCount = allocatorThreads.length * allocationsPerThread;
+		assertEquals(allocationCount, allocatedTaskIds.size());
+		assertEquals(allocationCount, taskIdAllocator.getLastTaskId());
+	}
+
+}
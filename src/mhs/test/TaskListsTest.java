@@ -2,14 +2,23 @@
 package mhs.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import mhs.src.common.exceptions.TaskNotFoundException;
+import mhs.src.storage.persistence.TaskCountSummary;
 import mhs.src.storage.persistence.TaskLists;
+import mhs.src.storage.persistence.TaskQuery;
+import mhs.src.storage.persistence.TaskQueryCursor;
+import mhs.src.storage.persistence.TaskQueryPlan;
 import mhs.src.storage.persistence.task.DeadlineTask;
 import mhs.src.storage.persistence.task.FloatingTask;
 import mhs.src.storage.persistence.task.Task;
@@ -17,16 +26,18 @@ import mhs.src.storage.persistence.task.TaskCategory;
 import mhs.src.storage.persistence.task.TimedTask;
 
 import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
 import org.junit.Before;
 import org.junit.Test;
 
 /**
  * TaskListsTest
- * 
+ *
  * jUnit test for TaskListsTest
- * 
+ *
  * @author Timothy Lim Yi Wen A0087048X
- * 
+ *
  */
 public class TaskListsTest {
 
@@ -121,6 +132,47 @@ public class TaskListsTest {
 				.toString());
 	}
 
+	@Test
+	/**
+	 * Test tasks returned by Task List are copies of stored tasks
+	 */
+	public void TaskListTestGetTaskCopy() throws TaskNotFoundException {
+		taskLists = new TaskLists(taskList);
+		for (Task storedTask : new Task[] { task, task3, task5 }) {
+			Task copiedTask = taskLists.getTask(storedTask.getTaskId());
+			assertEquals(storedTask.getClass(), copiedTask.getClass());
+			assertEquals(storedTask.toString(), copiedTask.toString());
+
+			copiedTask.setTaskName(TEST_TASK_1_NAME + " copy");
+			copiedTask.setEndDateTime(DateTime.now().plusYears(1));
+			copiedTask.setDone(true);
+			assertEquals(storedTask.toString(),
+					taskLists.getTask(storedTask.getTaskId()).toString());
+		}
+	}
+
+	@Test
+	/**
+	 * Test Task List generation increases with every change to task lists
+	 */
+	public void TaskListTestGeneration() {
+		taskLists = new TaskLists(taskList);
+		long generation = taskLists.getGeneration();
+		assertEquals(generation, taskLists.getTaskCursor(true).getGeneration());
+
+		taskLists.updateTaskInTaskLists(task);
+		assertTrue(taskLists.getGeneration() > generation);
+		generation = taskLists.getGeneration();
+		taskLists.removeTaskInTaskLists(task);
+		assertTrue(taskLists.getGeneration() > generation);
+		generation = taskLists.getGeneration();
+		taskLists.clearTaskLists();
+		assertTrue(taskLists.getGeneration() > generation);
+		generation = taskLists.getGeneration();
+		taskLists = new TaskLists(taskList);
+		assertTrue(taskLists.getGeneration() > generation);
+	}
+
 	@Test
 	/**
 	 * Test Task List Remove
@@ -131,6 +183,95 @@ public class TaskListsTest {
 		assertEquals(4, taskLists.getTaskList().size());
 	}
 
+	@Test
+	/**
+	 * Test task list views are unaffected by later updates, and batches of
+	 * updates are seen by readers all at once
+	 */
+	public void TaskListTestSnapshotIsolation() throws InterruptedException {
+		taskLists = new TaskLists(taskList);
+		Map<Integer, Task> taskListView = taskLists.getTaskList();
+
+		Task renamedTask = task2.clone();
+		renamedTask.setTaskName(TEST_TASK_2_NAME + " renamed");
+		taskLists.updateTaskInTaskLists(renamedTask);
+		taskLists.removeTaskInTaskLists(task);
+		assertEquals(5, taskListView.size());
+		assertEquals(TEST_TASK_2_NAME, taskListView.get(task2.getTaskId())
+				.getTaskName());
+		assertEquals(4, taskLists.getTaskList().size());
+
+		final List<Task> batchTasks = new ArrayList<Task>();
+		for (int taskId = 100; taskId < 300; taskId++) {
+			batchTasks.add(new FloatingTask(taskId, TEST_TASK_5_NAME,
+					TaskCategory.FLOATING, null, null, null, null, false,
+					false));
+		}
+		Thread writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				taskLists.updateTasksInTaskLists(batchTasks);
+			}
+		});
+		writerThread.start();
+		while (writerThread.isAlive()) {
+			int floatingTaskCount = taskLists.getTasks(TaskCategory.FLOATING,
+					false).size();
+			assertTrue(floatingTaskCount == 1
+					|| floatingTaskCount == batchTasks.size() + 1);
+		}
+		writerThread.join();
+		assertEquals(batchTasks.size() + 1,
+				taskLists.getTaskCount(TaskCategory.FLOATING));
+		assertEquals(5, taskListView.size());
+	}
+
+	@Test
+	/**
+	 * Test parallel writers of different tasks keep taskList and gTaskList in
+	 * sync as gTaskIds of tasks change
+	 */
+	public void TaskListTestConcurrentUpdate() throws InterruptedException {
+		taskList.clear();
+		taskLists = new TaskLists(taskList);
+
+		final int tasksPerWriter = 50;
+		final int updatesPerTask = 20;
+		Thread[] writerThreads = new Thread[4];
+		for (int i = 0; i < writerThreads.length; i++) {
+			final int firstTaskId = i * tasksPerWriter + 1;
+			writerThreads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int update = 0; update < updatesPerTask; update++) {
+						for (int taskId = firstTaskId; taskId < firstTaskId
+								+ tasksPerWriter; taskId++) {
+							taskLists.updateTaskInTaskLists(new FloatingTask(
+									taskId, TEST_TASK_5_NAME,
+									TaskCategory.FLOATING, null, null, null,
+									"gTask" + taskId + "-" + update, false,
+									false));
+						}
+					}
+				}
+			});
+			writerThreads[i].start();
+		}
+		for (Thread writerThread : writerThreads) {
+			writerThread.join();
+		}
+
+		int taskCount = writerThreads.length * tasksPerWriter;
+		assertEquals(taskCount, taskLists.getTaskList().size());
+		assertEquals(taskCount, taskLists.getGTaskList().size());
+		for (Task taskEntry : taskLists.getTaskList().values()) {
+			String lastGTaskId = "gTask" + taskEntry.getTaskId() + "-"
+					+ (updatesPerTask - 1);
+			assertEquals(lastGTaskId, taskEntry.getGTaskId());
+			assertEquals(taskEntry, taskLists.getGTaskList().get(lastGTaskId));
+		}
+	}
+
 	@Test
 	/**
 	 * Test TaskLists Query
@@ -163,4 +304,647 @@ public class TaskListsTest {
 		retrievedTaskList = taskLists.getTasks(true);
 	}
 
+	@Test
+	/**
+	 * Test TaskLists ordered queries follow updates to start time and done
+	 * state
+	 */
+	public void TaskListTestQueryOrderAfterUpdate() {
+		taskLists = new TaskLists(taskList);
+
+		// Move task 4 before task 1, mark task 5 done
+		task4.setEndDateTime(task.getStartDateTime().minusHours(1));
+		taskLists.updateTaskInTaskLists(task4);
+		task5.setDone(true);
+		taskLists.updateTaskInTaskLists(task5);
+		Task task6 = new FloatingTask(6, TEST_TASK_5_NAME,
+				TaskCategory.FLOATING, null, null, null, null, false, false);
+		taskLists.updateTaskInTaskLists(task6);
+
+		List<Task> retrievedTaskList = taskLists.getTasks(true);
+		assertEquals(6, retrievedTaskList.size());
+		assertEquals(task6.toString(), retrievedTaskList.get(0).toString());
+		assertEquals(task5.toString(), retrievedTaskList.get(1).toString());
+		assertEquals(task4.toString(), retrievedTaskList.get(2).toString());
+		assertEquals(task.toString(), retrievedTaskList.get(3).toString());
+		assertEquals(task2.toString(), retrievedTaskList.get(4).toString());
+		assertEquals(task3.toString(), retrievedTaskList.get(5).toString());
+
+		retrievedTaskList = taskLists.getTasks(TaskCategory.DEADLINE, true);
+		assertEquals(task4.toString(), retrievedTaskList.get(0).toString());
+		assertEquals(task3.toString(), retrievedTaskList.get(1).toString());
+	}
+
+	@Test
+	/**
+	 * Test TaskLists date range query matches scan of all tasks as tasks are
+	 * updated and removed
+	 */
+	public void TaskListTestQueryDateRange() {
+		taskList.clear();
+		taskLists = new TaskLists(taskList);
+		DateTime baseDateTime = new DateTime(2012, 11, 1, 0, 0, 0, 0);
+		for (int taskId = 1; taskId <= 300; taskId++) {
+			DateTime startDateTime = baseDateTime.plusHours(taskId * 7 % 500);
+			if (taskId % 3 == 0) {
+				taskLists.updateTaskInTaskLists(new TimedTask(taskId,
+						TEST_TASK_1_NAME, TaskCategory.TIMED, startDateTime,
+						startDateTime.plusHours(taskId % 50), null, null, null,
+						null, null, false, taskId % 30 == 0));
+			} else if (taskId % 3 == 1) {
+				taskLists.updateTaskInTaskLists(new DeadlineTask(taskId,
+						TEST_TASK_3_NAME, TaskCategory.DEADLINE, startDateTime,
+						null, null, null, null, null, false, false));
+			} else {
+				taskLists.updateTaskInTaskLists(new FloatingTask(taskId,
+						TEST_TASK_5_NAME, TaskCategory.FLOATING, null, null,
+						null, null, false, false));
+			}
+		}
+		assertDateRangeQueriesMatchScan(baseDateTime);
+
+		// Move, delete and remove tasks
+		for (int taskId = 3; taskId <= 300; taskId += 9) {
+			Task taskToMove = taskLists.getTaskList().get(taskId);
+			taskToMove.setStartDateTime(taskToMove.getStartDateTime()
+					.plusHours(100));
+			taskToMove.setEndDateTime(taskToMove.getEndDateTime()
+					.plusHours(120));
+			taskLists.updateTaskInTaskLists(taskToMove);
+		}
+		for (int taskId = 1; taskId <= 300; taskId += 11) {
+			Task taskToDelete = taskLists.getTaskList().get(taskId);
+			taskToDelete.setDeleted(true);
+			taskLists.updateTaskInTaskLists(taskToDelete);
+		}
+		for (int taskId = 4; taskId <= 300; taskId += 13) {
+			taskLists.removeTaskInTaskLists(taskLists.getTaskList().get(
+					taskId));
+		}
+		assertDateRangeQueriesMatchScan(baseDateTime);
+	}
+
+	@Test
+	/**
+	 * Test TaskLists task name query matches case-insensitive substring scan
+	 * of all tasks as tasks are renamed and removed
+	 */
+	public void TaskListTestQueryTaskName() {
+		String[] queryTaskNames = { "meeting", "MEET", "eet", "a meet",
+				"project due", "ject d", "-", " ", "", "task 1", "task 1 -",
+				"games", "zzz", "5 - play" };
+		taskLists = new TaskLists(taskList);
+		assertTaskNameQueriesMatchScan(queryTaskNames);
+
+		task.setTaskName("Team MEETING - room 5");
+		taskLists.updateTaskInTaskLists(task);
+		task4.setDeleted(true);
+		taskLists.updateTaskInTaskLists(task4);
+		taskLists.removeTaskInTaskLists(task5);
+		assertTaskNameQueriesMatchScan(queryTaskNames);
+	}
+
+	@Test
+	/**
+	 * Test TaskLists category query and counts as tasks change category, are
+	 * marked done and are removed
+	 */
+	public void TaskListTestQueryTaskCategory() {
+		taskLists = new TaskLists(taskList);
+		assertEquals(2, taskLists.getTaskCount(TaskCategory.TIMED));
+		assertEquals(2, taskLists.getTaskCount(TaskCategory.DEADLINE));
+		assertEquals(1, taskLists.getTaskCount(TaskCategory.FLOATING));
+		assertEquals(0, taskLists.getTaskCount(TaskCategory.TIMED, true));
+
+		Task editedTask = new DeadlineTask(task2.getTaskId(),
+				TEST_TASK_2_NAME, TaskCategory.DEADLINE, DateTime.now(), null,
+				null, null, null, null, true, false);
+		taskLists.updateTaskInTaskLists(editedTask);
+		task3.setDone(true);
+		taskLists.updateTaskInTaskLists(task3);
+		task4.setDeleted(true);
+		taskLists.updateTaskInTaskLists(task4);
+		taskLists.removeTaskInTaskLists(task5);
+
+		List<Task> retrievedTaskList = taskLists.getTasks(
+				TaskCategory.DEADLINE, false);
+		assertEquals(2, retrievedTaskList.size());
+		assertEquals(editedTask.toString(), retrievedTaskList.get(0)
+				.toString());
+		assertEquals(task3.toString(), retrievedTaskList.get(1).toString());
+		assertEquals(1, taskLists.getTasks(TaskCategory.TIMED, false).size());
+		assertEquals(0, taskLists.getTasks(TaskCategory.FLOATING, false)
+				.size());
+
+		assertEquals(1, taskLists.getTaskCount(TaskCategory.TIMED));
+		assertEquals(2, taskLists.getTaskCount(TaskCategory.DEADLINE));
+		assertEquals(2, taskLists.getTaskCount(TaskCategory.DEADLINE, true));
+		assertEquals(0, taskLists.getTaskCount(TaskCategory.DEADLINE, false));
+		assertEquals(0, taskLists.getTaskCount(TaskCategory.FLOATING));
+
+		taskLists.clearTaskLists();
+		assertEquals(0, taskLists.getTaskCount(TaskCategory.DEADLINE, true));
+	}
+
+	@Test
+	/**
+	 * Test TaskLists query cursor pages match full query results
+	 */
+	public void TaskListTestQueryCursorPage() {
+		taskLists = new TaskLists(taskList);
+
+		List<Task> retrievedTaskList = taskLists.getTasks(true);
+		TaskQueryCursor taskCursor = taskLists.getTaskCursor(true);
+		assertEquals(5, taskCursor.getTaskCount());
+		List<Task> taskPage = taskCursor.page(1, 2);
+		assertEquals(2, taskPage.size());
+		assertEquals(retrievedTaskList.get(1).toString(), taskPage.get(0)
+				.toString());
+		assertEquals(retrievedTaskList.get(2).toString(), taskPage.get(1)
+				.toString());
+
+		// Pages past last task are cut short
+		assertEquals(1, taskCursor.page(4, 10).size());
+		assertEquals(0, taskCursor.page(5, 10).size());
+		assertEquals(5, taskCursor.page(0, Integer.MAX_VALUE).size());
+
+		taskCursor = taskLists.getTaskCursor(TaskCategory.DEADLINE, false);
+		assertEquals(2, taskCursor.getTaskCount());
+		assertEquals(task4.toString(), taskCursor.page(1, 1).get(0)
+				.toString());
+		assertEquals(task3.toString(), taskCursor.asList().get(0).toString());
+
+		taskCursor = taskLists.getTaskCursor("project", true);
+		assertEquals(2, taskCursor.getTaskCount());
+		assertEquals(task2.toString(), taskCursor.getTask(0).toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	/**
+	 * Test TaskLists query cursor rejects negative page offset
+	 */
+	public void TaskListTestQueryCursorInvalidPage() {
+		taskLists = new TaskLists(taskList);
+		taskLists.getTaskCursor(true).page(-1, 2);
+	}
+
+	@Test
+	/**
+	 * Test TaskLists query cursor is unaffected by later updates and returns
+	 * copies of stored tasks
+	 */
+	public void TaskListTestQueryCursorSnapshot() throws TaskNotFoundException {
+		taskLists = new TaskLists(taskList);
+		TaskQueryCursor taskCursor = taskLists.getTaskCursor(false);
+
+		taskLists.removeTaskInTaskLists(task5);
+		Task editedTask = task.clone();
+		editedTask.setTaskName(TEST_TASK_1_NAME + " edited");
+		taskLists.updateTaskInTaskLists(editedTask);
+		assertEquals(5, taskCursor.getTaskCount());
+		assertEquals(TEST_TASK_1_NAME, taskCursor.getTask(0).getTaskName());
+
+		Task copiedTask = taskCursor.getTask(1);
+		copiedTask.setTaskName(TEST_TASK_2_NAME + " copy");
+		assertEquals(TEST_TASK_2_NAME, taskCursor.getTask(1).getTaskName());
+		assertEquals(TEST_TASK_2_NAME, taskLists.getTask(task2.getTaskId())
+				.getTaskName());
+	}
+
+	@Test
+	/**
+	 * Test TaskLists task query with combined filters matches scan of all
+	 * tasks, in taskId and start DateTime order and with limits
+	 */
+	public void TaskListTestTaskQuery() {
+		taskList.clear();
+		taskLists = new TaskLists(taskList);
+		DateTime baseDateTime = new DateTime(2012, 11, 1, 0, 0, 0, 0);
+		addQueryTestTasks(baseDateTime);
+
+		DateTime startDateTime = baseDateTime.plusHours(40);
+		DateTime endDateTime = baseDateTime.plusHours(160);
+		TaskQuery[] taskQueries = {
+				new TaskQuery(),
+				new TaskQuery().withTaskName("MEETING"),
+				new TaskQuery().withTaskName("due").withDone(false),
+				new TaskQuery().withTaskCategories(TaskCategory.TIMED,
+						TaskCategory.FLOATING).withDone(true),
+				new TaskQuery().withinDateRange(startDateTime, endDateTime,
+						true).withTaskName("project"),
+				new TaskQuery().withinDateRange(startDateTime, endDateTime,
+						false).withTaskCategories(TaskCategory.DEADLINE),
+				new TaskQuery().withTaskName("-").withDeletedTasks(),
+				new TaskQuery().withTaskCategories(TaskCategory.TIMED)
+						.withDeletedTasks().withDone(false) };
+		for (TaskQuery taskQuery : taskQueries) {
+			assertTaskQueryMatchesScan(taskQuery);
+		}
+
+		updateQueryTestTasks();
+		for (TaskQuery taskQuery : taskQueries) {
+			assertTaskQueryMatchesScan(taskQuery);
+		}
+	}
+
+	@Test
+	/**
+	 * Test TaskLists task query scans of columns match scan of all tasks as
+	 * tasks are updated, deleted and removed
+	 */
+	public void TaskListTestColumnarTaskQuery() {
+		taskList.clear();
+		taskLists = new TaskLists(taskList, true);
+		DateTime baseDateTime = new DateTime(2012, 11, 1, 0, 0, 0, 0);
+		addQueryTestTasks(baseDateTime);
+
+		DateTime startDateTime = baseDateTime.plusHours(40);
+		DateTime endDateTime = baseDateTime.plusHours(160);
+		TaskQuery[] taskQueries = {
+				new TaskQuery().withDone(false),
+				new TaskQuery().withDeletedTasks(),
+				new TaskQuery().withDeletedTasks().withDone(true),
+				new TaskQuery().withTaskName("MEETING").withDeletedTasks(),
+				new TaskQuery().withTaskCategories(TaskCategory.TIMED,
+						TaskCategory.DEADLINE).withDone(true),
+				new TaskQuery().withinDateRange(startDateTime, endDateTime,
+						true),
+				new TaskQuery().withinDateRange(startDateTime, endDateTime,
+						false).withDeletedTasks(),
+				new TaskQuery().withinDateRange(startDateTime, startDateTime,
+						false),
+				new TaskQuery().withinDateRange(startDateTime, endDateTime,
+						false).withTaskName("due").withDeletedTasks() };
+		assertEquals(TaskQueryPlan.FULL_SCAN,
+				taskLists.getQueryPlan(taskQueries[0]));
+		for (TaskQuery taskQuery : taskQueries) {
+			assertTaskQueryMatchesScan(taskQuery);
+		}
+		assertEquals(taskLists.getTasks(taskQueries[1]).subList(0, 5)
+				.toString(), taskLists.getTasks(taskQueries[1].withLimit(5))
+				.toString());
+		assertEquals(5, taskLists.countTasks(taskQueries[1].withLimit(5)));
+
+		updateQueryTestTasks();
+		for (TaskQuery taskQuery : taskQueries) {
+			assertTaskQueryMatchesScan(taskQuery);
+		}
+
+		// Batch of new and updated tasks
+		List<Task> batchTasks = new ArrayList<Task>();
+		for (int taskId = 190; taskId <= 400; taskId++) {
+			batchTasks.add(new DeadlineTask(taskId, TEST_TASK_4_NAME,
+					TaskCategory.DEADLINE, baseDateTime.plusHours(taskId),
+					null, null, null, null, null, taskId % 2 == 0,
+					taskId % 5 == 0));
+		}
+		taskLists.updateTasksInTaskLists(batchTasks);
+		for (TaskQuery taskQuery : taskQueries) {
+			assertTaskQueryMatchesScan(taskQuery);
+		}
+	}
+
+	@Test
+	/**
+	 * Test TaskLists task query planner reads the most selective index
+	 */
+	public void TaskListTestTaskQueryPlan() {
+		taskList.clear();
+		taskLists = new TaskLists(taskList);
+		DateTime baseDateTime = new DateTime(2012, 11, 1, 0, 0, 0, 0);
+		addQueryTestTasks(baseDateTime);
+		taskLists.updateTaskInTaskLists(new FloatingTask(201,
+				"unique errand", TaskCategory.FLOATING, null, null, null, null,
+				false, false));
+
+		assertEquals(TaskQueryPlan.ORDER_INDEX,
+				taskLists.getQueryPlan(new TaskQuery()
+						.orderByStartDateTime(true)));
+		assertEquals(TaskQueryPlan.FULL_SCAN,
+				taskLists.getQueryPlan(new TaskQuery()));
+		assertEquals(TaskQueryPlan.FULL_SCAN,
+				taskLists.getQueryPlan(new TaskQuery().withTaskName("errand")
+						.withDeletedTasks()));
+		assertEquals(TaskQueryPlan.NAME_INDEX,
+				taskLists.getQueryPlan(new TaskQuery().withTaskName("errand")
+						.withTaskCategories(TaskCategory.FLOATING)));
+		assertEquals(TaskQueryPlan.CATEGORY_INDEX,
+				taskLists.getQueryPlan(new TaskQuery().withTaskName("task")
+						.withTaskCategories(TaskCategory.TIMED).withDone(true)));
+		assertEquals(TaskQueryPlan.DATE_INDEX,
+				taskLists.getQueryPlan(new TaskQuery().withinDateRange(
+						baseDateTime.plusHours(10), baseDateTime.plusHours(12),
+						false).withTaskName("task")));
+
+		List<Task> retrievedTaskList = taskLists.getTasks(new TaskQuery()
+				.withTaskName("errand"));
+		assertEquals(1, retrievedTaskList.size());
+		assertEquals(201, retrievedTaskList.get(0).getTaskId());
+	}
+
+	@Test
+	/**
+	 * Test TaskLists task count summary matches counts of queried tasks by
+	 * category, done state and day
+	 */
+	public void TaskListTestTaskCountSummary() {
+		taskList.clear();
+		taskLists = new TaskLists(taskList);
+		DateTime baseDateTime = new DateTime(2012, 11, 1, 0, 0, 0, 0);
+		addQueryTestTasks(baseDateTime);
+
+		TaskQuery[] taskQueries = {
+				new TaskQuery(),
+				new TaskQuery().withTaskCategories(TaskCategory.DEADLINE)
+						.withDone(false),
+				new TaskQuery().withinDateRange(baseDateTime.plusHours(30),
+						baseDateTime.plusHours(150), true),
+				new TaskQuery().withinDateRange(baseDateTime,
+						baseDateTime.plusDays(30), false).withTaskName("due") };
+		for (TaskQuery taskQuery : taskQueries) {
+			TaskCountSummary taskCountSummary = taskLists
+					.getTaskCountSummary(taskQuery);
+			List<Task> matchedTasks = taskLists.getTasks(taskQuery);
+			Map<LocalDate, Integer> expectedDailyTaskCounts = new TreeMap<LocalDate, Integer>();
+			int[] expectedDoneTaskCounts = new int[2];
+			int[] expectedCategoryTaskCounts = new int[TaskCategory.values().length];
+			for (Task matchedTask : matchedTasks) {
+				expectedDoneTaskCounts[matchedTask.isDone() ? 1 : 0]++;
+				expectedCategoryTaskCounts[matchedTask.getTaskCategory()
+						.ordinal()]++;
+				if (matchedTask.isFloating()) {
+					continue;
+				}
+				LocalDate taskDate = (matchedTask.isTimed() ? matchedTask
+						.getStartDateTime() : matchedTask.getEndDateTime())
+						.toLocalDate();
+				Integer dailyTaskCount = expectedDailyTaskCounts.get(taskDate);
+				expectedDailyTaskCounts.put(taskDate,
+						dailyTaskCount == null ? 1 : dailyTaskCount + 1);
+			}
+			assertEquals(matchedTasks.size(), taskCountSummary.getTaskCount());
+			assertEquals(expectedDoneTaskCounts[0],
+					taskCountSummary.getTaskCount(false));
+			assertEquals(expectedDoneTaskCounts[1],
+					taskCountSummary.getTaskCount(true));
+			for (TaskCategory taskCategory : TaskCategory.values()) {
+				assertEquals(expectedCategoryTaskCounts[taskCategory.ordinal()],
+						taskCountSummary.getTaskCount(taskCategory));
+			}
+			if (taskQuery.getStartDateTime() == null) {
+				assertTrue(taskCountSummary.getDailyTaskCounts().isEmpty());
+			} else {
+				assertEquals(expectedDailyTaskCounts,
+						taskCountSummary.getDailyTaskCounts());
+			}
+		}
+
+		// Category and done counts follow updates
+		TaskQuery taskQuery = new TaskQuery().withTaskCategories(
+				TaskCategory.TIMED).withDone(true);
+		int doneTaskCount = taskLists.countTasks(taskQuery);
+		Task taskToUpdate = taskLists.getTaskList().get(3).clone();
+		assertTrue(!taskToUpdate.isDone() && !taskToUpdate.isDeleted());
+		taskToUpdate.setDone(true);
+		taskLists.updateTaskInTaskLists(taskToUpdate);
+		assertEquals(doneTaskCount + 1, taskLists.countTasks(taskQuery));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	/**
+	 * Test task query rejects negative limit
+	 */
+	public void TaskListTestTaskQueryInvalidLimit() {
+		new TaskQuery().withLimit(-1);
+	}
+
+	@Test
+	/**
+	 * Test fuzzy task query finds mistyped task names, closest first, as tasks
+	 * are renamed, deleted and removed
+	 */
+	public void TaskListTestFuzzyTaskQuery() {
+		taskLists = new TaskLists(taskList);
+
+		// Mistyped names match within edit distance, closest first
+		List<Task> retrievedTaskList = taskLists.getFuzzyTasks("meting", 10);
+		assertEquals(2, retrievedTaskList.size());
+		assertEquals(task.toString(), retrievedTaskList.get(0).toString());
+		assertEquals(task2.toString(), retrievedTaskList.get(1).toString());
+
+		retrievedTaskList = taskLists.getFuzzyTasks("PROJCT", 10);
+		assertEquals(2, retrievedTaskList.size());
+		assertEquals(task4.toString(), retrievedTaskList.get(0).toString());
+		assertEquals(task2.toString(), retrievedTaskList.get(1).toString());
+
+		retrievedTaskList = taskLists.getFuzzyTasks("meting", 1);
+		assertEquals(1, retrievedTaskList.size());
+		assertEquals(task.toString(), retrievedTaskList.get(0).toString());
+
+		assertEquals(0, taskLists.getFuzzyTasks("zzzz", 10).size());
+		assertEquals(0, taskLists.getFuzzyTasks("meting", 0).size());
+
+		// Renamed and deleted tasks leave the index
+		Task renamedTask = task.clone();
+		renamedTask.setTaskName("lunch");
+		taskLists.updateTaskInTaskLists(renamedTask);
+		retrievedTaskList = taskLists.getFuzzyTasks("meting", 10);
+		assertEquals(1, retrievedTaskList.size());
+		assertEquals(task2.toString(), retrievedTaskList.get(0).toString());
+		assertEquals(renamedTask.toString(),
+				taskLists.getFuzzyTasks("lnch", 10).get(0).toString());
+
+		Task deletedTask = task2.clone();
+		deletedTask.setDeleted(true);
+		taskLists.updateTaskInTaskLists(deletedTask);
+		assertEquals(0, taskLists.getFuzzyTasks("meting", 10).size());
+
+		taskLists.removeTaskInTaskLists(task4);
+		assertEquals(0, taskLists.getFuzzyTasks("projct", 10).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	/**
+	 * Test fuzzy task query rejects negative max task count
+	 */
+	public void TaskListTestFuzzyTaskQueryInvalidMaxTaskCount() {
+		taskLists = new TaskLists(taskList);
+		taskLists.getFuzzyTasks("meting", -1);
+	}
+
+	/**
+	 * Renames and marks every 7th query test task, deletes every 11th and
+	 * removes every 13th
+	 */
+	private void updateQueryTestTasks() {
+		for (int taskId = 2; taskId <= 200; taskId += 7) {
+			Task taskToUpdate = taskLists.getTaskList().get(taskId).clone();
+			taskToUpdate.setTaskName(TEST_TASK_2_NAME);
+			taskToUpdate.setDone(!taskToUpdate.isDone());
+			taskLists.updateTaskInTaskLists(taskToUpdate);
+		}
+		for (int taskId = 1; taskId <= 200; taskId += 11) {
+			Task taskToDelete = taskLists.getTaskList().get(taskId).clone();
+			taskToDelete.setDeleted(true);
+			taskLists.updateTaskInTaskLists(taskToDelete);
+		}
+		for (int taskId = 4; taskId <= 200; taskId += 13) {
+			taskLists.removeTaskInTaskLists(taskLists.getTaskList().get(
+					taskId));
+		}
+	}
+
+	/**
+	 * Adds 200 timed, deadline and floating tasks with varied names, dates,
+	 * done and deleted states
+	 *
+	 * @param baseDateTime
+	 */
+	private void addQueryTestTasks(DateTime baseDateTime) {
+		String[] taskNames = { TEST_TASK_1_NAME, TEST_TASK_2_NAME,
+				TEST_TASK_3_NAME, TEST_TASK_4_NAME, TEST_TASK_5_NAME };
+		for (int taskId = 1; taskId <= 200; taskId++) {
+			String taskName = taskNames[taskId * 3 % taskNames.length];
+			DateTime startDateTime = baseDateTime.plusHours(taskId * 7 % 300);
+			boolean isDone = taskId % 4 == 0;
+			boolean isDeleted = taskId % 17 == 0;
+			if (taskId % 3 == 0) {
+				taskLists.updateTaskInTaskLists(new TimedTask(taskId, taskName,
+						TaskCategory.TIMED, startDateTime, startDateTime
+								.plusHours(taskId % 30), null, null, null,
+						null, null, isDone, isDeleted));
+			} else if (taskId % 3 == 1) {
+				taskLists.updateTaskInTaskLists(new DeadlineTask(taskId,
+						taskName, TaskCategory.DEADLINE, startDateTime, null,
+						null, null, null, null, isDone, isDeleted));
+			} else {
+				taskLists.updateTaskInTaskLists(new FloatingTask(taskId,
+						taskName, TaskCategory.FLOATING, null, null, null,
+						null, isDone, isDeleted));
+			}
+		}
+	}
+
+	/**
+	 * Asserts query results equal a scan of all tasks with the same filters,
+	 * ordered by taskId or by start DateTime, and cut short by limits
+	 *
+	 * @param taskQuery
+	 */
+	private void assertTaskQueryMatchesScan(TaskQuery taskQuery) {
+		String lowercaseTaskName = taskQuery.getLowercaseTaskName();
+		DateTime startDateTime = taskQuery.getStartDateTime();
+		Interval queryInterval = startDateTime == null ? null : new Interval(
+				startDateTime.minusMillis(1), taskQuery.getEndDateTime()
+						.plusMillis(1));
+		List<Task> expectedTaskList = new ArrayList<Task>();
+		Set<Integer> expectedTaskIds = new HashSet<Integer>();
+		for (Task taskEntry : taskLists.getTaskList().values()) {
+			if (taskEntry.isDeleted() && !taskQuery.isIncludeDeletedTasks()) {
+				continue;
+			}
+			if (lowercaseTaskName != null
+					&& !taskEntry.getTaskName().toLowerCase()
+							.contains(lowercaseTaskName)) {
+				continue;
+			}
+			if (taskQuery.getTaskCategories() != null
+					&& !taskQuery.getTaskCategories().contains(
+							taskEntry.getTaskCategory())) {
+				continue;
+			}
+			if (taskQuery.getDone() != null
+					&& taskEntry.isDone() != taskQuery.getDone()) {
+				continue;
+			}
+			if (queryInterval != null) {
+				if (taskEntry.isFloating()) {
+					if (!taskQuery.isIncludeFloatingTasks()) {
+						continue;
+					}
+				} else {
+					DateTime taskStartDateTime = taskEntry.isTimed() ? taskEntry
+							.getStartDateTime() : taskEntry.getEndDateTime();
+					if (!queryInterval.overlaps(new Interval(taskStartDateTime
+							.minusMillis(1), taskEntry.getEndDateTime()
+							.plusMillis(1)))) {
+						continue;
+					}
+				}
+			}
+			expectedTaskList.add(taskEntry);
+			expectedTaskIds.add(taskEntry.getTaskId());
+		}
+		assertEquals(taskQuery.toString(), expectedTaskList.toString(),
+				taskLists.getTasks(taskQuery).toString());
+		assertEquals(expectedTaskList.size(), taskLists.countTasks(taskQuery));
+		assertEquals(expectedTaskList.size(),
+				taskLists.getTaskCountSummary(taskQuery).getTaskCount());
+
+		// Ordered results are the matched tasks in display order
+		List<Task> orderedTaskList = taskLists.getTasks(taskQuery
+				.orderByStartDateTime(true));
+		assertEquals(expectedTaskList.size(), orderedTaskList.size());
+		List<Task> expectedOrderedTaskList = new ArrayList<Task>();
+		for (Task taskEntry : taskLists.getTasks(new TaskQuery()
+				.withDeletedTasks().orderByStartDateTime(true))) {
+			if (expectedTaskIds.contains(taskEntry.getTaskId())) {
+				expectedOrderedTaskList.add(taskEntry);
+			}
+		}
+		assertEquals(expectedOrderedTaskList.toString(),
+				orderedTaskList.toString());
+
+		int limit = expectedTaskList.size() / 2;
+		assertEquals(limit, taskLists.countTasks(taskQuery.withLimit(limit)));
+		assertEquals(expectedTaskList.subList(0, limit).toString(), taskLists
+				.getTasks(taskQuery.withLimit(limit)).toString());
+		assertEquals(expectedOrderedTaskList.subList(0, limit).toString(),
+				taskLists.getTasks(
+						taskQuery.orderByStartDateTime(true).withLimit(limit))
+						.toString());
+	}
+
+	private void assertTaskNameQueriesMatchScan(String[] queryTaskNames) {
+		for (String queryTaskName : queryTaskNames) {
+			List<Task> expectedTaskList = new ArrayList<Task>();
+			for (Task taskEntry : taskLists.getTaskList().values()) {
+				if (!taskEntry.isDeleted()
+						&& taskEntry.getTaskName().toLowerCase()
+								.contains(queryTaskName.toLowerCase())) {
+					expectedTaskList.add(taskEntry);
+				}
+			}
+			assertEquals(queryTaskName, expectedTaskList.toString(), taskLists
+					.getTasks(queryTaskName, false).toString());
+		}
+	}
+
+	private void assertDateRangeQueriesMatchScan(DateTime baseDateTime) {
+		for (int hours = 0; hours < 700; hours += 37) {
+			DateTime startDateTime = baseDateTime.plusHours(hours);
+			DateTime endDateTime = startDateTime.plusHours(hours % 60);
+			List<Task> expectedTaskList = new ArrayList<Task>();
+			Interval queryInterval = new Interval(startDateTime.minusMillis(1),
+					endDateTime.plusMillis(1));
+			for (Task taskEntry : taskLists.getTaskList().values()) {
+				if (taskEntry.isDeleted() || taskEntry.isFloating()) {
+					continue;
+				}
+				DateTime taskStartDateTime = taskEntry.isTimed() ? taskEntry
+						.getStartDateTime() : taskEntry.getEndDateTime();
+				if (queryInterval.overlaps(new Interval(taskStartDateTime
+						.minusMillis(1), taskEntry.getEndDateTime()
+						.plusMillis(1)))) {
+					expectedTaskList.add(taskEntry);
+				}
+			}
+
+			List<Task> retrievedTaskList = taskLists.getTasks(startDateTime,
+					endDateTime, false, false);
+			assertEquals(expectedTaskList.toString(),
+					retrievedTaskList.toString());
+		}
+	}
+
 }
\ No newline at end of file
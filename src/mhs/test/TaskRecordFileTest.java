@@ -2,12 +2,17 @@
 package mhs.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 import mhs.src.storage.persistence.local.TaskRecordFile;
+import mhs.src.storage.persistence.local.TaskRecordFileFormat;
 import mhs.src.storage.persistence.task.DeadlineTask;
 import mhs.src.storage.persistence.task.FloatingTask;
 import mhs.src.storage.persistence.task.Task;
@@ -115,4 +120,95 @@ public class TaskRecordFileTest {
 		}
 	}
 
-}
\ No newline at end of file
+	@Test
+	/**
+	 * Tests journaled task mutations are replayed on load
+	 * @throws IOException
+	 */
+	public void testJournalReplay() throws IOException {
+		TaskRecordFile journaledTaskRecordFile = new TaskRecordFile(
+				TEST_TASK_RECORD_FILENAME, true);
+		journaledTaskRecordFile.saveTaskList(taskList);
+
+		task2.setTaskName(TEST_TASK_5_NAME);
+		journaledTaskRecordFile.saveTask(task2);
+		journaledTaskRecordFile.removeTask(task3.getTaskId());
+
+		TaskRecordFile reloadedTaskRecordFile = new TaskRecordFile(
+				TEST_TASK_RECORD_FILENAME, true);
+		Map<Integer, Task> loadTaskList = reloadedTaskRecordFile.getTaskList();
+
+		assertEquals(taskList.size() - 1, loadTaskList.size());
+		assertEquals(task2.toJson(), loadTaskList.get(2).toJson());
+		assertFalse(loadTaskList.containsKey(task3.getTaskId()));
+
+		// Checkpoint folds journal into snapshot
+		reloadedTaskRecordFile.saveTaskList(loadTaskList);
+		loadTaskList = new TaskRecordFile(TEST_TASK_RECORD_FILENAME)
+				.getTaskList();
+		assertEquals(taskList.size() - 1, loadTaskList.size());
+	}
+
+	@Test
+	/**
+	 * Tests json array files are detected and migrated to compact format
+	 * @throws IOException
+	 */
+	public void testMigrateJsonToCompactFormat() throws IOException {
+		new TaskRecordFile(TEST_TASK_RECORD_FILENAME, false,
+				TaskRecordFileFormat.JSON).saveTaskList(taskList);
+		assertEquals('[', readFirstByte());
+
+		Map<Integer, Task> loadTaskList = new TaskRecordFile(
+				TEST_TASK_RECORD_FILENAME).getTaskList();
+		assertEquals('{', readFirstByte());
+		assertTaskListEquals(taskList, loadTaskList);
+
+		loadTaskList = new TaskRecordFile(TEST_TASK_RECORD_FILENAME)
+				.getTaskList();
+		assertTaskListEquals(taskList, loadTaskList);
+	}
+
+	@Test
+	/**
+	 * Tests save and load in gzip compressed compact format
+	 * @throws IOException
+	 */
+	public void testSaveAndLoadCompressedFormat() throws IOException {
+		new TaskRecordFile(TEST_TASK_RECORD_FILENAME, false,
+				TaskRecordFileFormat.COMPACT_GZIP).saveTaskList(taskList);
+		assertEquals(0x1f, readFirstByte());
+
+		Map<Integer, Task> loadTaskList = new TaskRecordFile(
+				TEST_TASK_RECORD_FILENAME, false,
+				TaskRecordFileFormat.COMPACT_GZIP).getTaskList();
+		assertTaskListEquals(taskList, loadTaskList);
+
+		// Compressed file is detected and migrated back to compact format
+		loadTaskList = new TaskRecordFile(TEST_TASK_RECORD_FILENAME)
+				.getTaskList();
+		assertEquals('{', readFirstByte());
+		assertTaskListEquals(taskList, loadTaskList);
+	}
+
+	private void assertTaskListEquals(Map<Integer, Task> expectedTaskList,
+			Map<Integer, Task> actualTaskList) {
+		assertEquals(expectedTaskList.size(), actualTaskList.size());
+		for (Task expectedTask : expectedTaskList.values()) {
+			assertTrue(actualTaskList.containsKey(expectedTask.getTaskId()));
+			assertEquals(expectedTask.toJson(),
+					actualTaskList.get(expectedTask.getTaskId()).toJson());
+		}
+	}
+
+	private int readFirstByte() throws IOException {
+		InputStream inputStream = new FileInputStream(
+				TEST_TASK_RECORD_FILENAME);
+		try {
+			return inputStream.read();
+		} finally {
+			inputStream.close();
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+//@author A0087048X
+package mhs.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mhs.src.storage.persistence.local.TaskRecordFile;
+import mhs.src.storage.persistence.local.TaskRecordFileFormat;
+import mhs.src.storage.persistence.local.TaskRecordMappedFile;
+import mhs.src.storage.persistence.task.DeadlineTask;
+import mhs.src.storage.persistence.task.FloatingTask;
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+import mhs.src.storage.persistence.task.TimedTask;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * TaskRecordMappedFileTest
+ * 
+ * jUnit test for TaskRecordMappedFile
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ * 
+ */
+public class TaskRecordMappedFileTest {
+
+	Map<Integer, Task> taskList;
+
+	Task task;
+	Task task2;
+	Task task3;
+
+	private static final String TEST_TASK_3_NAME = "task 3 - play more games";
+	private static final String TEST_TASK_2_NAME = "task 2 - project due";
+	private static final String TEST_TASK_1_NAME = "task 1 - a meeting";
+	private static final String TEST_G_CAL_TASK_ID = "gCalTaskId";
+	private static final String TEST_TIME_ZONE_ID = "Pacific/Chatham";
+	private static final String TEST_OTHER_TIME_ZONE_ID = "America/St_Johns";
+	private static final int TEST_COMPACTION_RENAME_COUNT = 400;
+
+	private final static String TEST_TASK_RECORD_FILENAME = "testTaskRecordMappedFile.json";
+
+	@Before
+	public void taskRecordMappedFileSetup() throws IOException {
+		deleteTestFiles();
+		DateTime dt = DateTime.now();
+		task = new TimedTask(1, TEST_TASK_1_NAME, TaskCategory.TIMED, dt,
+				dt.plusHours(5), dt, dt, null, TEST_G_CAL_TASK_ID, null,
+				false, false);
+		task2 = new DeadlineTask(2, TEST_TASK_2_NAME, TaskCategory.DEADLINE,
+				dt, dt, dt, null, null, null, false, false);
+		task3 = new FloatingTask(3, TEST_TASK_3_NAME, TaskCategory.FLOATING,
+				dt, dt, null, null, false, false);
+
+		taskList = new LinkedHashMap<Integer, Task>();
+		taskList.put(task.getTaskId(), task);
+		taskList.put(task2.getTaskId(), task2);
+		taskList.put(task3.getTaskId(), task3);
+	}
+
+	@After
+	public void taskRecordMappedFileTearDown() {
+		deleteTestFiles();
+	}
+
+	private void deleteTestFiles() {
+		new File(TEST_TASK_RECORD_FILENAME).delete();
+		new File(TEST_TASK_RECORD_FILENAME + ".journal").delete();
+		new File(TEST_TASK_RECORD_FILENAME + ".records").delete();
+		new File(TEST_TASK_RECORD_FILENAME + ".heap.0").delete();
+		new File(TEST_TASK_RECORD_FILENAME + ".heap.1").delete();
+	}
+
+	@Test
+	/**
+	 * Tests save and load
+	 * @throws IOException
+	 */
+	public void testSaveAndLoadTasks() throws IOException {
+		TaskRecordMappedFile mappedFile = new TaskRecordMappedFile(
+				TEST_TASK_RECORD_FILENAME);
+		mappedFile.saveTaskList(taskList);
+		mappedFile.close();
+
+		assertTaskListLoaded(taskList);
+	}
+
+	@Test
+	/**
+	 * Tests single task updates and removals are persisted
+	 * @throws IOException
+	 */
+	public void testSaveAndRemoveTask() throws IOException {
+		TaskRecordMappedFile mappedFile = new TaskRecordMappedFile(
+				TEST_TASK_RECORD_FILENAME);
+		mappedFile.saveTaskList(taskList);
+
+		task.setDone(true);
+		task.setTaskUpdated(DateTime.now().plusMinutes(1));
+		mappedFile.saveTask(task);
+		task2.setTaskName(TEST_TASK_3_NAME);
+		mappedFile.saveTask(task2);
+		mappedFile.removeTask(task3.getTaskId());
+		taskList.remove(task3.getTaskId());
+		mappedFile.close();
+
+		assertTaskListLoaded(taskList);
+	}
+
+	@Test
+	/**
+	 * Tests tasks are migrated from json task record file on first start
+	 * @throws IOException
+	 */
+	public void testMigrateFromTaskRecordFile() throws IOException {
+		TaskRecordFile taskRecordFile = new TaskRecordFile(
+				TEST_TASK_RECORD_FILENAME, false, TaskRecordFileFormat.JSON);
+		taskRecordFile.saveTaskList(taskList);
+		taskRecordFile.close();
+		File jsonFile = new File(TEST_TASK_RECORD_FILENAME);
+		byte[] jsonFileBytes = Files.readAllBytes(jsonFile.toPath());
+
+		assertTaskListLoaded(taskList);
+		assertArrayEquals(jsonFileBytes, Files.readAllBytes(jsonFile.toPath()));
+		assertFalse(new File(TEST_TASK_RECORD_FILENAME + ".journal").exists());
+	}
+
+	@Test
+	/**
+	 * Tests DateTimes are loaded in the time zone they were saved in
+	 * @throws IOException
+	 */
+	public void testSaveAndLoadTimeZones() throws IOException {
+		DateTimeZone zone = DateTimeZone.forID(TEST_TIME_ZONE_ID);
+		if (zone.equals(DateTimeZone.getDefault())) {
+			zone = DateTimeZone.forID(TEST_OTHER_TIME_ZONE_ID);
+		}
+		DateTime dt = DateTime.now(zone);
+		Task zonedTask = new TimedTask(4, TEST_TASK_1_NAME,
+				TaskCategory.TIMED, dt, dt.plusHours(1), dt, dt, dt, null,
+				null, false, false);
+		taskList.put(zonedTask.getTaskId(), zonedTask);
+
+		TaskRecordMappedFile mappedFile = new TaskRecordMappedFile(
+				TEST_TASK_RECORD_FILENAME);
+		mappedFile.saveTaskList(taskList);
+		mappedFile.close();
+
+		assertTaskListLoaded(taskList);
+		mappedFile = new TaskRecordMappedFile(TEST_TASK_RECORD_FILENAME);
+		Task loadedTask = mappedFile.getTaskList().get(zonedTask.getTaskId());
+		mappedFile.close();
+		assertEquals(zone, loadedTask.getStartDateTime().getZone());
+		assertEquals(zone, loadedTask.getTaskLastSync().getZone());
+	}
+
+	@Test
+	/**
+	 * Tests tasks are kept when heap garbage is compacted, and by later saves
+	 * to the compacted heap
+	 * @throws IOException
+	 */
+	public void testCompactHeap() throws IOException {
+		TaskRecordMappedFile mappedFile = new TaskRecordMappedFile(
+				TEST_TASK_RECORD_FILENAME);
+		mappedFile.saveTaskList(taskList);
+		StringBuilder longTaskName = new StringBuilder();
+		while (longTaskName.length() < 1024) {
+			longTaskName.append(TEST_TASK_2_NAME);
+		}
+		for (int i = 0; i < TEST_COMPACTION_RENAME_COUNT; i++) {
+			task2.setTaskName(longTaskName.toString() + i);
+			mappedFile.saveTask(task2);
+		}
+		assertEquals(true, mappedFile.isCheckpointRequired());
+		mappedFile.saveTaskList(taskList);
+		assertFalse(mappedFile.isCheckpointRequired());
+
+		task.setTaskName(TEST_TASK_3_NAME);
+		mappedFile.saveTask(task);
+		mappedFile.close();
+
+		assertTaskListLoaded(taskList);
+	}
+
+	/**
+	 * Asserts mapped file loads the expected tasks
+	 * 
+	 * @param expectedTaskList
+	 * @throws IOException
+	 */
+	private void assertTaskListLoaded(Map<Integer, Task> expectedTaskList)
+			throws IOException {
+		TaskRecordMappedFile mappedFile = new TaskRecordMappedFile(
+				TEST_TASK_RECORD_FILENAME);
+		Map<Integer, Task> loadTaskList = mappedFile.getTaskList();
+		mappedFile.close();
+
+		assertEquals(expectedTaskList.size(), loadTaskList.size());
+		for (Task expectedTask : expectedTaskList.values()) {
+			assertEquals(expectedTask.toJson(),
+					loadTaskList.get(expectedTask.getTaskId()).toJson());
+		}
+	}
+
+}
@@ -0,0 +1,276 @@
+//@author A0087048X
+package mhs.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mhs.src.storage.persistence.local.TaskRecordFile;
+import mhs.src.storage.persistence.local.TaskRecordShardedFile;
+import mhs.src.storage.persistence.task.DeadlineTask;
+import mhs.src.storage.persistence.task.FloatingTask;
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+import mhs.src.storage.persistence.task.TimedTask;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * TaskRecordShardedFileTest
+ * 
+ * jUnit test for TaskRecordShardedFile
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ * 
+ */
+public class TaskRecordShardedFileTest {
+
+	Map<Integer, Task> taskList;
+
+	Task task;
+	Task task2;
+	Task task3;
+
+	DateTime dt;
+
+	private static final String TEST_TASK_3_NAME = "task 3 - play more games";
+	private static final String TEST_TASK_2_NAME = "task 2 - project due";
+	private static final String TEST_TASK_1_NAME = "task 1 - a meeting";
+
+	private final static String TEST_TASK_RECORD_FILENAME = "testTaskRecordShardedFile.json";
+	private final static String TEST_SHARD_DIRECTORY = TEST_TASK_RECORD_FILENAME
+			+ ".shards";
+
+	@Before
+	public void taskRecordShardedFileSetup() throws IOException {
+		deleteTestFiles();
+		dt = DateTime.now();
+		task = new TimedTask(1, TEST_TASK_1_NAME, TaskCategory.TIMED, dt,
+				dt.plusHours(5), dt, dt, null, null, null, false, false);
+		task2 = new DeadlineTask(2, TEST_TASK_2_NAME, TaskCategory.DEADLINE,
+				dt.minusYears(2), dt, dt, null, null, null, false, false);
+		task3 = new FloatingTask(3, TEST_TASK_3_NAME, TaskCategory.FLOATING,
+				dt, dt, null, null, false, false);
+
+		taskList = new LinkedHashMap<Integer, Task>();
+		taskList.put(task.getTaskId(), task);
+		taskList.put(task2.getTaskId(), task2);
+		taskList.put(task3.getTaskId(), task3);
+	}
+
+	@After
+	public void taskRecordShardedFileTearDown() {
+		deleteTestFiles();
+	}
+
+	private void deleteTestFiles() {
+		new File(TEST_TASK_RECORD_FILENAME).delete();
+		new File(TEST_TASK_RECORD_FILENAME + ".journal").delete();
+		File shardDirectory = new File(TEST_SHARD_DIRECTORY);
+		if (shardDirectory.exists()) {
+			for (File shardFile : shardDirectory.listFiles()) {
+				shardFile.delete();
+			}
+			shardDirectory.delete();
+		}
+	}
+
+	@Test
+	/**
+	 * Tests save and load
+	 * @throws IOException
+	 */
+	public void testSaveAndLoadTasks() throws IOException {
+		TaskRecordShardedFile shardedFile = new TaskRecordShardedFile(
+				TEST_TASK_RECORD_FILENAME);
+		shardedFile.saveTaskList(taskList);
+
+		// 1 shard per month and 1 floating shard
+		assertEquals(3, shardedFile.getShardCount());
+		assertTaskListLoaded(taskList);
+	}
+
+	@Test
+	/**
+	 * Tests single task saves move tasks between shards
+	 * @throws IOException
+	 */
+	public void testSaveAndRemoveTask() throws IOException {
+		TaskRecordShardedFile shardedFile = new TaskRecordShardedFile(
+				TEST_TASK_RECORD_FILENAME);
+		shardedFile.saveTaskList(taskList);
+
+		task2.setEndDateTime(dt);
+		task2.setTaskUpdated(dt.plusMinutes(1));
+		shardedFile.saveTask(task2);
+		assertEquals(2, shardedFile.getShardCount());
+
+		shardedFile.removeTask(task3.getTaskId());
+		taskList.remove(task3.getTaskId());
+		assertEquals(1, shardedFile.getShardCount());
+		assertFalse(new File(TEST_SHARD_DIRECTORY, "floating.json").exists());
+
+		assertTaskListLoaded(taskList);
+	}
+
+	@Test
+	/**
+	 * Tests timed tasks spanning months are loaded by load windows and date
+	 * ranges after the month they start in
+	 * @throws IOException
+	 */
+	public void testLoadShardsOfTasksSpanningMonths() throws IOException {
+		DateTime spanStartDateTime = new DateTime(2012, 1, 15, 9, 0);
+		DateTime spanEndDateTime = new DateTime(2012, 3, 20, 18, 0);
+		Task spanningTask = new TimedTask(4, TEST_TASK_1_NAME,
+				TaskCategory.TIMED, spanStartDateTime, spanEndDateTime, dt,
+				dt, null, null, null, false, false);
+		taskList.put(spanningTask.getTaskId(), spanningTask);
+		new TaskRecordShardedFile(TEST_TASK_RECORD_FILENAME)
+				.saveTaskList(taskList);
+
+		TaskRecordShardedFile shardedFile = new TaskRecordShardedFile(
+				TEST_TASK_RECORD_FILENAME, new DateTime(2012, 3, 1, 0, 0),
+				new DateTime(2012, 3, 31, 0, 0));
+		assertTrue(shardedFile.getLoadedTaskList().containsKey(
+				spanningTask.getTaskId()));
+
+		shardedFile = new TaskRecordShardedFile(TEST_TASK_RECORD_FILENAME,
+				dt.minusMonths(1), dt.plusMonths(1));
+		assertTrue(shardedFile.loadShards(new DateTime(2012, 2, 1, 0, 0),
+				new DateTime(2012, 2, 2, 0, 0)).containsKey(
+				spanningTask.getTaskId()));
+		assertTrue(shardedFile.loadShards(new DateTime(2012, 3, 21, 0, 0),
+				new DateTime(2012, 4, 1, 0, 0)).isEmpty());
+	}
+
+	@Test
+	/**
+	 * Tests shards outside load window are loaded when needed
+	 * @throws IOException
+	 */
+	public void testLoadShardsOutsideWindow() throws IOException {
+		new TaskRecordShardedFile(TEST_TASK_RECORD_FILENAME)
+				.saveTaskList(taskList);
+
+		TaskRecordShardedFile shardedFile = new TaskRecordShardedFile(
+				TEST_TASK_RECORD_FILENAME, dt.minusMonths(1), dt.plusMonths(1));
+		assertEquals(2, shardedFile.getLoadedShardCount());
+		assertEquals(2, shardedFile.getLoadedTaskList().size());
+		assertFalse(shardedFile.getLoadedTaskList().containsKey(
+				task2.getTaskId()));
+
+		assertEquals(1,
+				shardedFile.loadShards(dt.minusYears(3), dt.minusYears(1))
+						.size());
+		assertEquals(3, shardedFile.getLoadedShardCount());
+		assertEquals(3, shardedFile.getTaskList().size());
+	}
+
+	@Test
+	/**
+	 * Tests name search only loads shards with matching task names
+	 * @throws IOException
+	 */
+	public void testLoadShardsMatchingTaskName() throws IOException {
+		new TaskRecordShardedFile(TEST_TASK_RECORD_FILENAME)
+				.saveTaskList(taskList);
+
+		TaskRecordShardedFile shardedFile = new TaskRecordShardedFile(
+				TEST_TASK_RECORD_FILENAME, dt.minusMonths(1), dt.plusMonths(1));
+		assertEquals(0, shardedFile.loadShardsMatchingTaskName("meeting")
+				.size());
+		assertEquals(2, shardedFile.getLoadedShardCount());
+
+		Map<Integer, Task> loadedTasks = shardedFile
+				.loadShardsMatchingTaskName("PROJECT");
+		assertEquals(1, loadedTasks.size());
+		assertTrue(loadedTasks.containsKey(task2.getTaskId()));
+		assertEquals(3, shardedFile.getLoadedShardCount());
+	}
+
+	@Test
+	/**
+	 * Tests largest taskId includes shards not loaded
+	 * @throws IOException
+	 */
+	public void testGetMaxTaskId() throws IOException {
+		task2.setTaskId(10);
+		taskList.remove(2);
+		taskList.put(task2.getTaskId(), task2);
+		new TaskRecordShardedFile(TEST_TASK_RECORD_FILENAME)
+				.saveTaskList(taskList);
+
+		TaskRecordShardedFile shardedFile = new TaskRecordShardedFile(
+				TEST_TASK_RECORD_FILENAME, dt.minusMonths(1), dt.plusMonths(1));
+		assertFalse(shardedFile.getLoadedTaskList().containsKey(10));
+		assertEquals(10, shardedFile.getMaxTaskId());
+	}
+
+	@Test
+	/**
+	 * Tests tasks are migrated from json task record file on first start
+	 * @throws IOException
+	 */
+	public void testMigrateFromTaskRecordFile() throws IOException {
+		new TaskRecordFile(TEST_TASK_RECORD_FILENAME).saveTaskList(taskList);
+
+		assertTaskListLoaded(taskList);
+	}
+
+	@Test
+	/**
+	 * Tests journaled mutations not checkpointed yet are migrated, without
+	 * modifying the json task record file or its journal
+	 * @throws IOException
+	 */
+	public void testMigrateFromJournaledTaskRecordFile() throws IOException {
+		TaskRecordFile taskRecordFile = new TaskRecordFile(
+				TEST_TASK_RECORD_FILENAME, true);
+		taskRecordFile.saveTaskList(taskList);
+		task2.setTaskName(TEST_TASK_2_NAME + " - renamed");
+		task2.setTaskUpdated(dt.plusMinutes(1));
+		taskRecordFile.saveTask(task2);
+		taskRecordFile.removeTask(task3.getTaskId());
+		taskList.remove(task3.getTaskId());
+		taskRecordFile.close();
+		File jsonFile = new File(TEST_TASK_RECORD_FILENAME);
+		File journalFile = new File(TEST_TASK_RECORD_FILENAME + ".journal");
+		byte[] jsonFileBytes = Files.readAllBytes(jsonFile.toPath());
+		byte[] journalFileBytes = Files.readAllBytes(journalFile.toPath());
+
+		assertTaskListLoaded(taskList);
+		assertArrayEquals(jsonFileBytes, Files.readAllBytes(jsonFile.toPath()));
+		assertArrayEquals(journalFileBytes,
+				Files.readAllBytes(journalFile.toPath()));
+	}
+
+	/**
+	 * Asserts sharded file loads the expected tasks
+	 * 
+	 * @param expectedTaskList
+	 * @throws IOException
+	 */
+	private void assertTaskListLoaded(Map<Integer, Task> expectedTaskList)
+			throws IOException {
+		Map<Integer, Task> loadTaskList = new TaskRecordShardedFile(
+				TEST_TASK_RECORD_FILENAME).getTaskList();
+
+		assertEquals(expectedTaskList.size(), loadTaskList.size());
+		for (Task expectedTask : expectedTaskList.values()) {
+			assertEquals(expectedTask.toJson(),
+					loadTaskList.get(expectedTask.getTaskId()).toJson());
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+//@author A0087048X
+package mhs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mhs.src.storage.persistence.local.TaskStore;
+import mhs.src.storage.persistence.local.TaskStoreType;
+import mhs.src.storage.persistence.task.DeadlineTask;
+import mhs.src.storage.persistence.task.FloatingTask;
+import mhs.src.storage.persistence.task.Task;
+import mhs.src.storage.persistence.task.TaskCategory;
+import mhs.src.storage.persistence.task.TimedTask;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * TaskStoreConformanceTest
+ * 
+ * jUnit test run against every TaskStoreType, checking each task store
+ * implementation keeps the same TaskStore contract
+ * 
+ * @author Timothy Lim Yi Wen A0087048X
+ * 
+ */
+@RunWith(Parameterized.class)
+public class TaskStoreConformanceTest {
+
+	Map<Integer, Task> taskList;
+
+	Task task;
+	Task task2;
+	Task task3;
+
+	DateTime dt;
+
+	private static final String TEST_TASK_3_NAME = "task 3 - play more games";
+	private static final String TEST_TASK_2_NAME = "task 2 - project due";
+	private static final String TEST_TASK_1_NAME = "task 1 - a meeting";
+
+	private final static String TEST_TASK_RECORD_FILENAME = "testTaskStoreConformance.json";
+
+	private final TaskStoreType taskStoreType;
+	private TaskStore taskStore;
+
+	public TaskStoreConformanceTest(TaskStoreType taskStoreType) {
+		this.taskStoreType = taskStoreType;
+	}
+
+	@Parameters
+	public static Collection<Object[]> taskStoreTypes() {
+		Collection<Object[]> taskStoreTypes = new ArrayList<Object[]>();
+		for (TaskStoreType taskStoreType : TaskStoreType.values()) {
+			taskStoreTypes.add(new Object[] { taskStoreType });
+		}
+		return taskStoreTypes;
+	}
+
+	@Before
+	public void taskStoreSetup() throws IOException {
+		deleteTestFiles();
+		dt = DateTime.now();
+		task = new TimedTask(1, TEST_TASK_1_NAME, TaskCategory.TIMED, dt,
+				dt.plusHours(5), dt, dt, null, null, null, false, false);
+		task2 = new DeadlineTask(2, TEST_TASK_2_NAME, TaskCategory.DEADLINE,
+				dt.minusYears(2), dt, dt, null, null, null, false, false);
+		task3 = new FloatingTask(3, TEST_TASK_3_NAME, TaskCategory.FLOATING,
+				dt, dt, null, null, false, false);
+
+		taskList = new LinkedHashMap<Integer, Task>();
+		taskList.put(task.getTaskId(), task);
+		taskList.put(task2.getTaskId(), task2);
+		taskList.put(task3.getTaskId(), task3);
+
+		taskStore = taskStoreType.createTaskStore(TEST_TASK_RECORD_FILENAME);
+	}
+
+	@After
+	public void taskStoreTearDown() throws IOException {
+		taskStore.close();
+		deleteTestFiles();
+	}
+
+	private void deleteTestFiles() {
+		for (File testFile : new File(".").listFiles()) {
+			if (!testFile.getName().startsWith(TEST_TASK_RECORD_FILENAME)) {
+				continue;
+			}
+			if (testFile.isDirectory()) {
+				for (File shardFile : testFile.listFiles()) {
+					shardFile.delete();
+				}
+			}
+			testFile.delete();
+		}
+	}
+
+	@Test
+	/**
+	 * Tests new store is empty
+	 * @throws IOException
+	 */
+	public void testNewStoreIsEmpty() throws IOException {
+		assertTrue(taskStore.getTaskList().isEmpty());
+		assertFalse(taskStore.iterator().hasNext());
+	}
+
+	@Test
+	/**
+	 * Tests saved task list is loaded back
+	 * @throws IOException
+	 */
+	public void testSaveTaskListAndLoad() throws IOException {
+		taskStore.saveTaskList(taskList);
+		assertTaskListEquals(taskList, taskStore.getTaskList());
+
+		reopenTaskStore();
+		assertTaskListEquals(taskList, taskStore.getTaskList());
+	}
+
+	@Test
+	/**
+	 * Tests tasks missing from saved task list are removed
+	 * @throws IOException
+	 */
+	public void testSaveTaskListReplacesTasks() throws IOException {
+		taskStore.saveTaskList(taskList);
+		taskList.remove(task2.getTaskId());
+		taskStore.saveTaskList(taskList);
+
+		reopenTaskStore();
+		assertTaskListEquals(taskList, taskStore.getTaskList());
+	}
+
+	@Test
+	/**
+	 * Tests single task saves and removes are loaded back
+	 * @throws IOException
+	 */
+	public void testSaveAndRemoveTask() throws IOException {
+		taskStore.saveTaskList(taskList);
+		task.setTaskName(TEST_TASK_1_NAME + " edited");
+		task.setTaskUpdated(dt.plusMinutes(1));
+		saveTask(task);
+		removeTask(task3);
+
+		assertTaskListEquals(taskList, taskStore.getTaskList());
+		taskStore.flush();
+		reopenTaskStore();
+		assertTaskListEquals(taskList, taskStore.getTaskList());
+	}
+
+	@Test
+	/**
+	 * Tests iterator visits every saved task once
+	 * @throws IOException
+	 */
+	public void testIterateTasks() throws IOException {
+		taskStore.saveTaskList(taskList);
+		reopenTaskStore();
+
+		Map<Integer, Task> iteratedTaskList = new LinkedHashMap<Integer, Task>();
+		for (Task iteratedTask : taskStore) {
+			assertFalse(iteratedTaskList.containsKey(iteratedTask.getTaskId()));
+			iteratedTaskList.put(iteratedTask.getTaskId(), iteratedTask);
+		}
+		assertTaskListEquals(taskList, iteratedTaskList);
+	}
+
+	/**
+	 * Saves task alone if store supports it, otherwise saves task list
+	 * 
+	 * @param taskToSave
+	 * @throws IOException
+	 */
+	private void saveTask(Task taskToSave) throws IOException {
+		taskList.put(taskToSave.getTaskId(), taskToSave);
+		if (taskStore.isIncrementalSaveEnabled()) {
+			taskStore.saveTask(taskToSave);
+		} else {
+			taskStore.saveTaskList(taskList);
+		}
+	}
+
+	/**
+	 * Removes task alone if store supports it, otherwise saves task list
+	 * 
+	 * @param taskToRemove
+	 * @throws IOException
+	 */
+	private void removeTask(Task taskToRemove) throws IOException {
+		taskList.remove(taskToRemove.getTaskId());
+		if (taskStore.isIncrementalSaveEnabled()) {
+			taskStore.removeTask(taskToRemove.getTaskId());
+		} else {
+			taskStore.saveTaskList(taskList);
+		}
+	}
+
+	/**
+	 * Closes and reloads persistent stores from disk
+	 * 
+	 * @throws IOException
+	 */
+	private void reopenTaskStore() throws IOException {
+		if (!taskStoreType.isPersistent()) {
+			return;
+		}
+		taskStore.close();
+		taskStore = taskStoreType.createTaskStore(TEST_TASK_RECORD_FILENAME);
+	}
+
+	private void assertTaskListEquals(Map<Integer, Task> expectedTaskList,
+			Map<Integer, Task> actualTaskList) {
+		assertEquals(taskStoreType.toString(), expectedTaskList.size(),
+				actualTaskList.size());
+		for (Task expectedTask : expectedTaskList.values()) {
+			assertTrue(actualTaskList.containsKey(expectedTask.getTaskId()));
+			assertEquals(taskStoreType.toString(), expectedTask.toJson(),
+					actualTaskList.get(expectedTask.getTaskId()).toJson());
+		}
+	}
+
+}